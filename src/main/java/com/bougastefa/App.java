@@ -1,13 +1,186 @@
 package com.bougastefa;
 
+import com.bougastefa.database.ArchiveMaintenance;
+import com.bougastefa.database.SchemaMigrator;
 import com.bougastefa.gui.MainFrame;
+import com.bougastefa.monitoring.CacheStats;
+import com.bougastefa.monitoring.Monitoring;
+import com.bougastefa.services.ChangePoller;
+import com.bougastefa.services.DoctorService;
+import com.bougastefa.services.DrugService;
+import com.bougastefa.services.EntityCache;
+import com.bougastefa.services.ExistenceIndex;
+import com.bougastefa.services.InsuranceService;
+import com.bougastefa.services.PatientService;
+import com.bougastefa.services.PrescriptionService;
+import com.bougastefa.services.ReferenceSnapshot;
+import com.bougastefa.services.ResultCache;
+import com.bougastefa.services.ServiceException;
+import com.bougastefa.services.VisitService;
+import java.awt.GraphicsEnvironment;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.SQLException;
+import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class App {
+  private static final Logger logger = LoggerFactory.getLogger(App.class);
+
+  /** Command-line switch that rebuilds the primary doctor counts and exits without the GUI */
+  private static final String REBUILD_VISIT_COUNTS = "--rebuild-visit-counts";
+  /** Command-line switch that runs the partition and archive maintenance and exits */
+  private static final String ARCHIVE = "--archive";
+
   public static void main(String[] args) {
+    if (args.length > 0) {
+      // The command-line modes have no window to show meanwhile, so they migrate first
+      migrateOrExit(true);
+    }
+
+    if (args.length > 0 && args[0].equals(REBUILD_VISIT_COUNTS)) {
+      try {
+        int pairs = new VisitService().rebuildVisitCounts();
+        System.out.println("Rebuilt visit counts for " + pairs + " patient and doctor pairs");
+      } catch (ServiceException e) {
+        System.err.println(e.getMessage() + ": " + e.getCause().getMessage());
+        System.exit(1);
+      }
+      return;
+    }
+
+    if (args.length > 0 && args[0].equals(ARCHIVE)) {
+      try {
+        ArchiveMaintenance.Result result = ArchiveMaintenance.run();
+        System.out.println(
+            "Added "
+                + result.getPartitionsAdded()
+                + " visit partition(s), archived "
+                + result.getVisitsArchived()
+                + " visit(s) and "
+                + result.getPrescriptionsArchived()
+                + " prescription(s)");
+      } catch (SQLException e) {
+        System.err.println("Archive maintenance failed: " + e.getMessage());
+        System.exit(1);
+      }
+      return;
+    }
+
+    registerCacheStats();
+
+    // The window opens with the rows saved last session, without waiting for the database; the
+    // panels' queries wait for the migration below
     SwingUtilities.invokeLater(
         () -> {
           MainFrame mainFrame = new MainFrame();
         });
+
+    Thread startup =
+        new Thread(
+            () -> {
+              migrateOrExit(false);
+
+              // Keep the caches and panels in step with the changes other clients make. Started
+              // first, so the existence indexes built next learn of the IDs inserted while they
+              // read the tables.
+              ChangePoller.shared().start();
+
+              // Build the ID existence indexes in the background while the panels load
+              PatientService.getExistenceIndex().refreshInBackground();
+              DoctorService.getExistenceIndex().refreshInBackground();
+              PrescriptionService.getExistenceIndex().refreshInBackground();
+            },
+            "schema-migration");
+    startup.start();
+  }
+
+  /**
+   * Brings the schema up to date before anything else queries it. The DAOs rely on the columns,
+   * tables and triggers the migrations add, so the application cannot run without them and exits
+   * if the migration fails.
+   *
+   * @param console Whether the application was started in a command-line mode
+   */
+  private static void migrateOrExit(boolean console) {
+    try {
+      SchemaMigrator.migrate();
+    } catch (SQLException | RuntimeException | ExceptionInInitializerError e) {
+      // A bad db.properties fails in DatabaseConnection's static initializer
+      Throwable cause = e instanceof ExceptionInInitializerError ? e.getCause() : e;
+      logger.error("Schema migration failed", e);
+      reportStartupFailure("Schema migration failed: " + cause.getMessage(), console);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Tells the user why the application cannot start: on the console for the command-line modes,
+   * otherwise in an error dialog, since the GUI may have been started without a console.
+   *
+   * @param message The reason
+   * @param console Whether the application was started in a command-line mode
+   */
+  private static void reportStartupFailure(String message, boolean console) {
+    if (console || GraphicsEnvironment.isHeadless()) {
+      System.err.println(message);
+      return;
+    }
+    try {
+      SwingUtilities.invokeAndWait(
+          () ->
+              JOptionPane.showMessageDialog(
+                  null, message, "Health Track cannot start", JOptionPane.ERROR_MESSAGE));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (InvocationTargetException e) {
+      System.err.println(message);
+    }
+  }
+
+  /** Exposes the counters of the in-memory caches over JMX, under com.bougastefa:type=Cache */
+  private static void registerCacheStats() {
+    registerCache(PatientService.getCache());
+    registerCache(DoctorService.getCache());
+    registerCache("drug", DrugService.getSnapshot());
+    registerCache("insurance", InsuranceService.getSnapshot());
+    registerCache(PatientService.getExistenceIndex());
+    registerCache(DoctorService.getExistenceIndex());
+    registerCache(PrescriptionService.getExistenceIndex());
+
+    ResultCache results = ResultCache.shared();
+    Monitoring.registerCache(
+        "results",
+        new CacheStats(
+            results::size, results::getHits, results::getMisses, results::getEvictions));
+  }
+
+  private static void registerCache(EntityCache<?> cache) {
+    Monitoring.registerCache(
+        cache.getName(),
+        new CacheStats(cache::size, cache::getHits, cache::getMisses, cache::getEvictions));
+  }
+
+  private static void registerCache(String name, ReferenceSnapshot<?> snapshot) {
+    // Every read is answered from memory except those that re-read the table
+    Monitoring.registerCache(
+        name,
+        new CacheStats(
+            snapshot::size,
+            () -> snapshot.getReads() - snapshot.getReloads(),
+            snapshot::getReloads,
+            () -> 0));
+  }
+
+  private static void registerCache(ExistenceIndex index) {
+    // A hit is a lookup the index answered alone, because the ID certainly does not exist
+    Monitoring.registerCache(
+        index.getName() + "Ids",
+        new CacheStats(
+            index::size,
+            index::getSkipped,
+            () -> index.getLookups() - index.getSkipped(),
+            () -> 0));
   }
 }
@@ -0,0 +1,242 @@
+package com.bougastefa.database;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps Visit and Prescription down to recent rows by moving expired ones to the {@code
+ * VisitArchive} and {@code PrescriptionArchive} tables, so the day-to-day queries and their
+ * indexes only cover the last few years.
+ *
+ * <p>Visit is partitioned by year on dateOfVisit; partition {@code p<year>} holds the dates before
+ * January 1 of the following year. A maintenance run adds the partitions of the coming years and
+ * copies every expired partition to VisitArchive before dropping it, which costs far less than
+ * deleting its rows. Prescription cannot be partitioned by date, because MariaDB requires every
+ * unique key of a partitioned table to include the partitioning column and its primary key is
+ * prescriptionID alone, so its expired rows are moved one year per transaction instead.
+ * Prescriptions without a date never expire.
+ *
+ * <p>Rows dated before {@link #getRecentCutoff()} are expired. The DAOs apply the same cutoff to
+ * their filtered queries unless the caller asks for history, so rows that expired since the last
+ * run are hidden as well, and MariaDB only reads the recent Visit partitions.
+ *
+ * <p>The {@code archive.*} properties in db.properties set how many full years before the
+ * current one stay recent and how many years ahead partitions are created.
+ */
+public final class ArchiveMaintenance {
+  private static final Logger logger = LoggerFactory.getLogger(ArchiveMaintenance.class);
+
+  /** Partition that holds the dates after the last yearly partition */
+  private static final String FUTURE_PARTITION = "p_future";
+  private static final Pattern YEAR_PARTITION = Pattern.compile("p(\\d{4})");
+  /** Full years before the current one whose rows are still recent */
+  private static final int RETENTION_YEARS =
+      DatabaseConnection.getIntProperty("archive.retentionYears", 5);
+  /** Years after the current one that get a partition in advance */
+  private static final int PARTITIONS_AHEAD =
+      DatabaseConnection.getIntProperty("archive.partitionsAhead", 2);
+
+  private ArchiveMaintenance() {}
+
+  /** What one maintenance run did */
+  public static final class Result {
+    private final int partitionsAdded;
+    private final long visitsArchived;
+    private final long prescriptionsArchived;
+
+    private Result(int partitionsAdded, long visitsArchived, long prescriptionsArchived) {
+      this.partitionsAdded = partitionsAdded;
+      this.visitsArchived = visitsArchived;
+      this.prescriptionsArchived = prescriptionsArchived;
+    }
+
+    /** @return The number of yearly Visit partitions created */
+    public int getPartitionsAdded() {
+      return partitionsAdded;
+    }
+
+    /** @return The number of visits moved to VisitArchive */
+    public long getVisitsArchived() {
+      return visitsArchived;
+    }
+
+    /** @return The number of prescriptions moved to PrescriptionArchive */
+    public long getPrescriptionsArchived() {
+      return prescriptionsArchived;
+    }
+  }
+
+  /**
+   * Returns the first date that is still recent: January 1 of the year {@code
+   * archive.retentionYears} before the current one. Visits and prescriptions dated earlier are
+   * moved to the archive tables by {@link #run()}.
+   *
+   * @return The earliest recent date
+   */
+  public static LocalDate getRecentCutoff() {
+    return LocalDate.now().minusYears(RETENTION_YEARS).withDayOfYear(1);
+  }
+
+  /**
+   * Adds the Visit partitions up to {@code archive.partitionsAhead} years after the current one and
+   * moves the visits and prescriptions dated before {@link #getRecentCutoff()} to the archive
+   * tables. The visit counts of the primary doctor include archived visits, so they are not
+   * changed.
+   *
+   * <p>Partition changes are DDL and are not transactional, but each step is safe to repeat: a run
+   * that fails part way through can simply be started again.
+   *
+   * @return What the run did
+   * @throws SQLException If a database access error occurs, or Visit has not been partitioned by
+   *     the schema migrations
+   */
+  public static Result run() throws SQLException {
+    LocalDate cutoff = getRecentCutoff();
+    int partitionsAdded = 0;
+    long visitsArchived = 0;
+    try (Connection conn = DatabaseConnection.getConnection()) {
+      List<Integer> years = readVisitPartitionYears(conn);
+      if (years.isEmpty()) {
+        throw new SQLException("Visit is not partitioned by year; apply the schema migrations");
+      }
+      int lastYear = LocalDate.now().getYear() + PARTITIONS_AHEAD;
+      for (int year = years.get(years.size() - 1) + 1; year <= lastYear; year++) {
+        addVisitPartition(conn, year);
+        partitionsAdded++;
+      }
+      // The partitions just added are all in the future, so the last partition is never dropped
+      for (int year : years) {
+        if (year < cutoff.getYear()) {
+          visitsArchived += archiveVisitPartition(conn, year);
+        }
+      }
+    }
+    long prescriptionsArchived = archivePrescriptions(cutoff);
+    logger.info(
+        "Archive maintenance added {} partition(s) and archived {} visit(s) and {}"
+            + " prescription(s) dated before {}",
+        partitionsAdded,
+        visitsArchived,
+        prescriptionsArchived,
+        cutoff);
+    return new Result(partitionsAdded, visitsArchived, prescriptionsArchived);
+  }
+
+  /** Reads the years of the yearly Visit partitions, in ascending order. */
+  private static List<Integer> readVisitPartitionYears(Connection conn) throws SQLException {
+    String sql =
+        "SELECT PARTITION_NAME FROM information_schema.PARTITIONS"
+            + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'Visit'"
+            + " AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION";
+    List<Integer> years = new ArrayList<>();
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(sql)) {
+      while (rs.next()) {
+        Matcher name = YEAR_PARTITION.matcher(rs.getString(1));
+        if (name.matches()) {
+          years.add(Integer.parseInt(name.group(1)));
+        }
+      }
+    }
+    return years;
+  }
+
+  /** Splits the partition of the year off the front of the future partition. */
+  private static void addVisitPartition(Connection conn, int year) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute(
+          "ALTER TABLE Visit REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO ("
+              + "PARTITION p" + year + " VALUES LESS THAN ('" + (year + 1) + "-01-01'), "
+              + "PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN (MAXVALUE))");
+    }
+    logger.info("Added Visit partition p{}", year);
+  }
+
+  /**
+   * Copies the visits of an expired partition to VisitArchive and drops the partition. Both tables
+   * are locked meanwhile so no visit can be added to the partition between the copy and the drop.
+   *
+   * @return The number of visits archived
+   */
+  private static int archiveVisitPartition(Connection conn, int year) throws SQLException {
+    String partition = "p" + year;
+    int archived;
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("LOCK TABLES Visit WRITE, VisitArchive WRITE");
+      try {
+        try (ResultSet rs =
+            stmt.executeQuery("SELECT COUNT(*) FROM Visit PARTITION (" + partition + ")")) {
+          rs.next();
+          archived = rs.getInt(1);
+        }
+        // REPLACE, so visits copied by an earlier run that failed before the drop are not rejected
+        stmt.executeUpdate(
+            "REPLACE INTO VisitArchive (" + VisitDAO.COLUMNS + ")"
+                + " SELECT " + VisitDAO.COLUMNS + " FROM Visit PARTITION (" + partition + ")");
+        stmt.execute("ALTER TABLE Visit DROP PARTITION " + partition);
+      } finally {
+        stmt.execute("UNLOCK TABLES");
+      }
+    }
+    logger.info("Archived {} visit(s) from partition {}", archived, partition);
+    return archived;
+  }
+
+  /**
+   * Moves the prescriptions dated before the cutoff to PrescriptionArchive, one year per
+   * transaction so no single transaction has to hold every expired row.
+   *
+   * @return The number of prescriptions archived
+   */
+  private static long archivePrescriptions(LocalDate cutoff) throws SQLException {
+    LocalDate oldest;
+    try (Connection conn = DatabaseConnection.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT MIN(dateprescribed) FROM Prescription")) {
+      Date date = rs.next() ? rs.getDate(1) : null;
+      if (date == null) {
+        return 0;
+      }
+      oldest = date.toLocalDate();
+    }
+    long archived = 0;
+    // The cutoff is always January 1, so the last year ends exactly at the cutoff
+    for (LocalDate from = oldest.withDayOfYear(1); from.isBefore(cutoff); from = from.plusYears(1)) {
+      archived += movePrescriptions(from, from.plusYears(1));
+    }
+    return archived;
+  }
+
+  /** Moves the prescriptions dated from the first date up to, not including, the second. */
+  private static int movePrescriptions(LocalDate from, LocalDate to) throws SQLException {
+    String columns = PrescriptionDAO.COLUMNS;
+    String range = " FROM Prescription WHERE dateprescribed >= ? AND dateprescribed < ?";
+    return TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              PreparedStatement copy =
+                  conn.prepareStatement(
+                      "REPLACE INTO PrescriptionArchive (" + columns + ") SELECT " + columns
+                          + range);
+              PreparedStatement delete = conn.prepareStatement("DELETE" + range)) {
+            copy.setDate(1, Date.valueOf(from));
+            copy.setDate(2, Date.valueOf(to));
+            copy.executeUpdate();
+            delete.setDate(1, Date.valueOf(from));
+            delete.setDate(2, Date.valueOf(to));
+            return delete.executeUpdate();
+          }
+        });
+  }
+}
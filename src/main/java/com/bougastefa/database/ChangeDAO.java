@@ -0,0 +1,155 @@
+package com.bougastefa.database;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object (DAO) class for the change tracking columns and the DeletedRow tombstones.
+ * Every tracked table has an indexed {@code updated_at} column set on insert and update, and
+ * triggers record each deleted row in DeletedRow, so the rows changed since a given time can be
+ * found without reading the tables. Triggers also record the client that made each change, in
+ * {@code updated_by} and in the tombstone.
+ *
+ * <p>All queries run on the primary database: a replica that lags behind could return the changes
+ * of a period before it has received all of them, and they would never be asked for again.
+ */
+public class ChangeDAO {
+  /** The tracked tables and the expression identifying a row, as the delete triggers write it */
+  private static final Map<String, String> ROW_IDS = new LinkedHashMap<>();
+
+  static {
+    ROW_IDS.put("Patient", "patientID");
+    ROW_IDS.put("Doctor", "doctorID");
+    ROW_IDS.put("Visit", "CONCAT_WS('|', patientID, doctorID, dateOfVisit)");
+    ROW_IDS.put("Drug", "drugID");
+    ROW_IDS.put("Insurance", "insuranceID");
+    ROW_IDS.put("Prescription", "prescriptionID");
+  }
+
+  /** A row inserted, updated or deleted at a given time, by a given client */
+  public static final class Change {
+    private final String table;
+    private final String rowId;
+    private final Timestamp changedAt;
+    private final boolean deleted;
+    private final String clientId;
+
+    private Change(
+        String table, String rowId, Timestamp changedAt, boolean deleted, String clientId) {
+      this.table = table;
+      this.rowId = rowId;
+      this.changedAt = changedAt;
+      this.deleted = deleted;
+      this.clientId = clientId;
+    }
+
+    /** @return The name of the table, e.g. "Patient" */
+    public String getTable() {
+      return table;
+    }
+
+    /**
+     * @return The ID of the row; for a visit, its patient ID, doctor ID and date (yyyy-MM-dd)
+     *     separated by "|"
+     */
+    public String getRowId() {
+      return rowId;
+    }
+
+    /** @return When the row was last written or deleted, by the database's clock */
+    public Timestamp getChangedAt() {
+      return changedAt;
+    }
+
+    /** @return Whether the row was deleted */
+    public boolean isDeleted() {
+      return deleted;
+    }
+
+    /**
+     * @return The {@link DatabaseConnection#getClientId() ID} of the client that made the change,
+     *     or null if it was made outside the application
+     */
+    public String getClientId() {
+      return clientId;
+    }
+  }
+
+  /**
+   * Reads the database's current time, the starting point for {@link #getChangesSince}.
+   *
+   * @return The current time, by the database's clock
+   * @throws SQLException If a database access error occurs
+   */
+  public Timestamp getCurrentTime() throws SQLException {
+    try (Connection conn = DatabaseConnection.getPrimaryReadConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT NOW(6)")) {
+      rs.next();
+      return rs.getTimestamp(1);
+    }
+  }
+
+  /**
+   * Reads the rows of every tracked table written or deleted after the given time, with one range
+   * scan of each table's {@code updated_at} index and one of DeletedRow.
+   *
+   * @param since The time after which changes are returned, by the database's clock
+   * @return The changes, written rows before deleted ones
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Change> getChangesSince(Timestamp since) throws SQLException {
+    List<Change> changes = new ArrayList<>();
+    try (Connection conn = DatabaseConnection.getPrimaryReadConnection()) {
+      for (Map.Entry<String, String> table : ROW_IDS.entrySet()) {
+        String sql =
+            "SELECT " + table.getValue() + ", updated_at, updated_by FROM " + table.getKey()
+                + " WHERE updated_at > ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+          stmt.setTimestamp(1, since);
+          try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+              changes.add(
+                  new Change(
+                      table.getKey(), rs.getString(1), rs.getTimestamp(2), false, rs.getString(3)));
+            }
+          }
+        }
+      }
+
+      String sql =
+          "SELECT table_name, row_id, deleted_at, deleted_by FROM DeletedRow WHERE deleted_at > ?";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setTimestamp(1, since);
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            changes.add(
+                new Change(
+                    rs.getString(1), rs.getString(2), rs.getTimestamp(3), true, rs.getString(4)));
+          }
+        }
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * Deletes the tombstones of rows deleted more than the given number of hours ago. Clients that
+   * have not polled for longer than that may miss those deletions until they reload.
+   *
+   * @param hours The age in hours after which tombstones are deleted
+   * @return The number of tombstones deleted
+   * @throws SQLException If a database access error occurs
+   */
+  public int purgeDeletedRows(long hours) throws SQLException {
+    String sql = "DELETE FROM DeletedRow WHERE deleted_at < NOW(6) - INTERVAL ? HOUR";
+    try (Connection conn = DatabaseConnection.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setLong(1, hours);
+      return stmt.executeUpdate();
+    }
+  }
+}
@@ -0,0 +1,585 @@
+package com.bougastefa.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of physical database connections.
+ *
+ * <p>Callers borrow a connection with {@link #getConnection()} and give it back by calling {@link
+ * Connection#close()} on it, so code written against plain {@code DriverManager} connections (for
+ * example try-with-resources blocks in the DAOs) works unchanged. The number of open connections
+ * never exceeds the configured maximum; when all of them are in use, callers wait up to the
+ * acquire timeout and then receive an {@link SQLTransientConnectionException}.
+ *
+ * <p>Idle connections are handed out most-recently-used first, validated on borrow if configured,
+ * and closed by a background task once they have been idle for longer than the idle timeout
+ * (never dropping below the minimum size).
+ *
+ * <p>Each physical connection also keeps a bounded LRU cache of prepared statements keyed by SQL
+ * text. {@code prepareStatement(sql)} on a borrowed connection returns the cached statement when
+ * one exists, and closing it returns it to the cache instead of closing it on the server. Combined
+ * with MariaDB server-side prepared statements this means a DAO query is parsed and planned once
+ * per connection rather than once per call.
+ */
+public class ConnectionPool implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+  private final String url;
+  private final Properties connectionProperties;
+  private final PoolConfig config;
+
+  /** One permit per connection that may be handed out; bounds the pool at maxSize */
+  private final Semaphore permits;
+  /** Connections that are open but not borrowed; the head is the most recently returned */
+  private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+  /** Background thread running idle eviction and minimum size top-up */
+  private final ScheduledExecutorService housekeeper;
+
+  private final AtomicInteger totalConnections = new AtomicInteger();
+  private final AtomicLong borrowCount = new AtomicLong();
+  private final AtomicLong timeoutCount = new AtomicLong();
+  private final AtomicLong createdCount = new AtomicLong();
+  private final AtomicLong destroyedCount = new AtomicLong();
+  private final AtomicLong validationFailureCount = new AtomicLong();
+  private final AtomicLong totalAcquireNanos = new AtomicLong();
+  private final AtomicLong statementCacheHits = new AtomicLong();
+  private final AtomicLong statementCacheMisses = new AtomicLong();
+
+  private volatile boolean closed;
+
+  /**
+   * Creates a pool for the given database. No connection is opened here; the housekeeping task
+   * fills the pool up to its minimum size in the background, so a database that is down at
+   * startup does not prevent the application from starting.
+   *
+   * @param url The JDBC URL of the database
+   * @param connectionProperties Driver properties, including user and password
+   * @param config The pool sizing and timeout configuration
+   */
+  public ConnectionPool(String url, Properties connectionProperties, PoolConfig config) {
+    this.url = url;
+    this.config = config;
+    this.connectionProperties = new Properties();
+    this.connectionProperties.putAll(connectionProperties);
+    this.permits = new Semaphore(config.getMaxSize(), true);
+    this.housekeeper =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "db-pool-housekeeper");
+              thread.setDaemon(true);
+              return thread;
+            });
+    housekeeper.scheduleWithFixedDelay(
+        this::housekeep, 0, config.getEvictionIntervalMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Borrows a connection from the pool, opening a new one if none is idle and the pool is below
+   * its maximum size. Closing the returned connection gives it back to the pool.
+   *
+   * @return A pooled Connection
+   * @throws SQLTransientConnectionException If no connection became available within the acquire
+   *     timeout
+   * @throws SQLException If the pool is closed or a new connection could not be opened
+   */
+  public Connection getConnection() throws SQLException {
+    if (closed) {
+      throw new SQLException("Connection pool is closed");
+    }
+    long start = System.nanoTime();
+    try {
+      if (!permits.tryAcquire(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+        timeoutCount.incrementAndGet();
+        throw new SQLTransientConnectionException(
+            "Timed out after "
+                + config.getAcquireTimeoutMillis()
+                + " ms waiting for a database connection (pool size "
+                + config.getMaxSize()
+                + ")");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a database connection", e);
+    }
+
+    // From here on we hold a permit, which must be released if we fail to hand out a connection
+    try {
+      PooledEntry entry = null;
+      while (entry == null) {
+        entry = idle.pollFirst();
+        if (entry == null) {
+          entry = create();
+        }
+        if (entry == null) {
+          // The pool is at its maximum size, so a connection is about to be returned by the
+          // housekeeper; our permit guarantees it is not handed to anyone else first
+          entry = idle.pollFirst(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS);
+          if (entry == null) {
+            throw new SQLTransientConnectionException("No pooled connection became available");
+          }
+        }
+        if (!isUsable(entry)) {
+          validationFailureCount.incrementAndGet();
+          destroy(entry);
+          entry = null;
+        }
+      }
+      borrowCount.incrementAndGet();
+      totalAcquireNanos.addAndGet(System.nanoTime() - start);
+      return entry.lease();
+    } catch (InterruptedException e) {
+      permits.release();
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a database connection", e);
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a snapshot of the pool counters.
+   *
+   * @return The current pool statistics
+   */
+  public PoolStats getStats() {
+    int total = totalConnections.get();
+    int idleCount = idle.size();
+    return new PoolStats(
+        total,
+        idleCount,
+        Math.max(0, total - idleCount),
+        permits.getQueueLength(),
+        borrowCount.get(),
+        timeoutCount.get(),
+        createdCount.get(),
+        destroyedCount.get(),
+        validationFailureCount.get(),
+        totalAcquireNanos.get(),
+        statementCacheHits.get(),
+        statementCacheMisses.get());
+  }
+
+  /**
+   * Closes all idle connections and stops the housekeeping task. Connections that are still
+   * borrowed are closed when their borrowers return them.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    housekeeper.shutdownNow();
+    PooledEntry entry;
+    while ((entry = idle.pollFirst()) != null) {
+      destroy(entry);
+    }
+  }
+
+  /**
+   * Opens a new physical connection if the pool is below its maximum size.
+   *
+   * @return The new entry, or null if the pool is already at its maximum size
+   */
+  private PooledEntry create() throws SQLException {
+    // Reserve a slot first so concurrent creators can never push the pool past its maximum
+    int current;
+    do {
+      current = totalConnections.get();
+      if (current >= config.getMaxSize()) {
+        return null;
+      }
+    } while (!totalConnections.compareAndSet(current, current + 1));
+
+    try {
+      Connection physical = DriverManager.getConnection(url, connectionProperties);
+      try {
+        identifyClient(physical);
+      } catch (SQLException | RuntimeException e) {
+        physical.close();
+        throw e;
+      }
+      createdCount.incrementAndGet();
+      return new PooledEntry(physical);
+    } catch (SQLException | RuntimeException e) {
+      totalConnections.decrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * Sets the session variable the change tracking triggers record as the author of each write.
+   * Session variables outlive borrows, and the pool never resets the session, so this is done
+   * once per physical connection.
+   */
+  private static void identifyClient(Connection physical) throws SQLException {
+    try (PreparedStatement stmt = physical.prepareStatement("SET @health_track_client = ?")) {
+      stmt.setString(1, DatabaseConnection.getClientId());
+      stmt.execute();
+    }
+  }
+
+  /** Closes a physical connection, ignoring errors since it is being discarded anyway. */
+  private void destroy(PooledEntry entry) {
+    totalConnections.decrementAndGet();
+    destroyedCount.incrementAndGet();
+    entry.closeStatements();
+    try {
+      entry.physical.close();
+    } catch (SQLException e) {
+      logger.debug("Error closing pooled connection", e);
+    }
+  }
+
+  /** Checks an idle connection before handing it out. */
+  private boolean isUsable(PooledEntry entry) {
+    if (!config.isValidateOnBorrow()) {
+      return true;
+    }
+    // Connections that were in use a moment ago are almost certainly still alive
+    long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.lastReturnedNanos);
+    if (idleMillis < config.getValidationIntervalMillis()) {
+      return true;
+    }
+    try {
+      return entry.physical.isValid(config.getValidationTimeoutSeconds());
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Takes back a connection from a borrower. Any transaction left open is rolled back and session
+   * settings are restored so the next borrower gets a clean connection.
+   */
+  private void release(PooledEntry entry) {
+    try {
+      entry.reclaimStatements();
+      if (closed || entry.physical.isClosed()) {
+        destroy(entry);
+        return;
+      }
+      if (!entry.physical.getAutoCommit()) {
+        entry.physical.rollback();
+        entry.physical.setAutoCommit(true);
+      }
+      if (entry.physical.isReadOnly()) {
+        entry.physical.setReadOnly(false);
+      }
+      entry.lastReturnedNanos = System.nanoTime();
+      idle.offerFirst(entry);
+    } catch (SQLException e) {
+      logger.warn("Discarding connection that could not be reset: {}", e.getMessage());
+      destroy(entry);
+    } finally {
+      permits.release();
+    }
+  }
+
+  /** Evicts connections idle for too long and tops the pool up to its minimum size. */
+  private void housekeep() {
+    try {
+      long now = System.nanoTime();
+      for (PooledEntry entry : idle) {
+        long idleMillis = TimeUnit.NANOSECONDS.toMillis(now - entry.lastReturnedNanos);
+        if (totalConnections.get() > config.getMinSize()
+            && idleMillis > config.getIdleTimeoutMillis()
+            && idle.remove(entry)) {
+          destroy(entry);
+        }
+      }
+
+      while (!closed && totalConnections.get() < config.getMinSize() && permits.tryAcquire()) {
+        try {
+          PooledEntry entry = create();
+          if (entry == null) {
+            break;
+          }
+          idle.offerLast(entry);
+        } finally {
+          permits.release();
+        }
+      }
+    } catch (SQLException e) {
+      logger.warn(
+          "Could not open connection to keep the pool at its minimum size: {}", e.getMessage());
+    } catch (RuntimeException e) {
+      logger.error("Connection pool housekeeping failed", e);
+    }
+  }
+
+  /** A physical connection owned by the pool, together with its statement cache. */
+  private final class PooledEntry {
+    private final Connection physical;
+    private volatile long lastReturnedNanos = System.nanoTime();
+
+    /** Prepared statements by SQL text, least recently used first */
+    private final Map<String, CachedStatement> statements =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+            if (size() <= config.getStatementCacheSize()) {
+              return false;
+            }
+            eldest.getValue().evict();
+            return true;
+          }
+        };
+
+    private PooledEntry(Connection physical) {
+      this.physical = physical;
+    }
+
+    /** Wraps the physical connection in a handle whose close() returns it to the pool. */
+    private Connection lease() {
+      return (Connection)
+          Proxy.newProxyInstance(
+              Connection.class.getClassLoader(),
+              new Class<?>[] {Connection.class},
+              new LeaseHandler(this));
+    }
+
+    /**
+     * Returns a prepared statement for the SQL, reusing the cached one if it is not already open.
+     * A second prepare of the same SQL while the first is still open gets a plain, uncached
+     * statement so the two callers never share parameter state.
+     */
+    private synchronized PreparedStatement prepare(String sql, Connection owner)
+        throws SQLException {
+      if (config.getStatementCacheSize() == 0) {
+        return physical.prepareStatement(sql);
+      }
+      CachedStatement cached = statements.get(sql);
+      if (cached != null && cached.inUse) {
+        return physical.prepareStatement(sql);
+      }
+      if (cached == null) {
+        statementCacheMisses.incrementAndGet();
+        cached = new CachedStatement(this, physical.prepareStatement(sql));
+        statements.put(sql, cached);
+      } else {
+        statementCacheHits.incrementAndGet();
+      }
+      return cached.open(owner);
+    }
+
+    /** Makes statements a borrower forgot to close available again before the next borrow. */
+    private synchronized void reclaimStatements() {
+      for (CachedStatement cached : new ArrayList<>(statements.values())) {
+        if (cached.inUse) {
+          cached.checkIn();
+        }
+      }
+    }
+
+    private synchronized void closeStatements() {
+      List<CachedStatement> all = new ArrayList<>(statements.values());
+      statements.clear();
+      for (CachedStatement cached : all) {
+        cached.evict();
+      }
+    }
+
+    private synchronized void remove(CachedStatement cached) {
+      statements.values().remove(cached);
+    }
+  }
+
+  /** A prepared statement kept open in a connection's statement cache. */
+  private final class CachedStatement {
+    private final PooledEntry owner;
+    private final PreparedStatement physical;
+    /** Handle given to the current user, or null when the statement is sitting in the cache */
+    private StatementHandler handle;
+    private boolean inUse;
+    private boolean evicted;
+
+    private CachedStatement(PooledEntry owner, PreparedStatement physical) {
+      this.owner = owner;
+      this.physical = physical;
+    }
+
+    private PreparedStatement open(Connection connection) {
+      inUse = true;
+      handle = new StatementHandler(this, connection);
+      return (PreparedStatement)
+          Proxy.newProxyInstance(
+              PreparedStatement.class.getClassLoader(),
+              new Class<?>[] {PreparedStatement.class},
+              handle);
+    }
+
+    /**
+     * Called when the user closes the statement: clears per-call state so the next user starts
+     * from a freshly prepared statement, or closes it for real if it was evicted meanwhile.
+     */
+    private void checkIn() {
+      synchronized (owner) {
+        if (handle != null) {
+          handle.statement = null;
+          handle = null;
+        }
+        inUse = false;
+        if (evicted) {
+          closeQuietly();
+          return;
+        }
+        try {
+          ResultSet open = physical.getResultSet();
+          if (open != null) {
+            open.close();
+          }
+          physical.clearParameters();
+          physical.clearBatch();
+          physical.setFetchSize(0);
+          physical.setMaxRows(0);
+          physical.setQueryTimeout(0);
+        } catch (SQLException e) {
+          // A statement that cannot be reset is not worth keeping
+          owner.remove(this);
+          closeQuietly();
+        }
+      }
+    }
+
+    /** Drops the statement from the cache; it is closed now or when its user closes it. */
+    private void evict() {
+      evicted = true;
+      if (!inUse) {
+        closeQuietly();
+      }
+    }
+
+    private void closeQuietly() {
+      try {
+        physical.close();
+      } catch (SQLException e) {
+        logger.debug("Error closing cached statement", e);
+      }
+    }
+  }
+
+  /**
+   * Invocation handler behind each cached statement handed to a caller. Closing it checks the
+   * statement back into the cache; any other call after that fails as it would on a closed
+   * statement.
+   */
+  private static final class StatementHandler implements InvocationHandler {
+    private CachedStatement statement;
+    private final Connection connection;
+
+    private StatementHandler(CachedStatement statement, Connection connection) {
+      this.statement = statement;
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      CachedStatement current = statement;
+      switch (method.getName()) {
+        case "close":
+          if (current != null) {
+            current.checkIn();
+          }
+          return null;
+        case "isClosed":
+          return current == null;
+        case "getConnection":
+          return connection;
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "CachedStatement[" + (current == null ? "closed" : current.physical) + "]";
+        default:
+          break;
+      }
+
+      if (current == null) {
+        throw new SQLException("Statement is closed");
+      }
+      try {
+        return method.invoke(current.physical, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+  /**
+   * Invocation handler behind each borrowed connection. Every borrow gets a fresh handle, so a
+   * handle that has been closed cannot be used to reach a connection that now belongs to someone
+   * else.
+   */
+  private final class LeaseHandler implements InvocationHandler {
+    private volatile PooledEntry entry;
+
+    private LeaseHandler(PooledEntry entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      // Read once: close() on another thread may clear the field between two reads
+      PooledEntry current = entry;
+      switch (method.getName()) {
+        case "close":
+          synchronized (this) {
+            if (entry != null) {
+              PooledEntry returned = entry;
+              entry = null;
+              release(returned);
+            }
+          }
+          return null;
+        case "isClosed":
+          return current == null || current.physical.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "PooledConnection[" + (current == null ? "closed" : current.physical) + "]";
+        default:
+          break;
+      }
+
+      if (current == null) {
+        throw new SQLException("Connection has already been returned to the pool");
+      }
+      if ("prepareStatement".equals(method.getName())
+          && args != null
+          && args.length == 1
+          && args[0] instanceof String) {
+        return current.prepare((String) args[0], (Connection) proxy);
+      }
+      try {
+        return method.invoke(current.physical, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+}
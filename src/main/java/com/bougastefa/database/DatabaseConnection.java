@@ -3,23 +3,50 @@ package com.bougastefa.database;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides centralized database connection management for the application.
  * This utility class handles the loading of database configuration from
  * an external properties file and provides methods to establish database
  * connections using those properties.
+ *
+ * <p>Connections are served from a bounded {@link ConnectionPool} configured through the
+ * {@code db.pool.*} properties. Callers still close the connection when they are done; closing a
+ * pooled connection hands it back to the pool instead of tearing down the socket.
+ *
+ * <p>Read-only DAO methods borrow through {@link #getReadConnection()}. When read replicas are
+ * listed in {@code db.replica.urls}, those reads are spread over the healthy replicas while every
+ * write stays on the primary; without replicas both kinds of connection come from the primary.
  */
 public class DatabaseConnection {
+  /** Identifies this application instance in the changes it writes; set before the pool opens */
+  private static final String CLIENT_ID = UUID.randomUUID().toString();
   /** Database connection URL loaded from configuration */
   private static final String URL;
   /** Database username loaded from configuration */
   private static final String USER;
   /** Database password loaded from configuration */
   private static final String PASSWORD;
+  /** All properties loaded from db.properties */
+  private static final Properties PROPERTIES = new Properties();
+  /** Pool that all connections handed out by this class are borrowed from */
+  private static volatile ConnectionPool pool;
+  /** Routes reads to the read replicas; null when no replica is configured */
+  private static volatile ReplicaRouter replicaRouter;
+  /** Reads this soon after a write go to the primary, so the writer sees its own changes */
+  private static final long PRIMARY_AFTER_WRITE_NANOS;
+  /**
+   * Time of the last write connection handed out or transaction committed, from System.nanoTime().
+   * It is shared by all threads because the panels save on the event dispatch thread and reload on
+   * background threads.
+   */
+  private static volatile long lastWriteNanos;
 
   /**
    * Static initialization block that loads database configuration parameters
@@ -30,27 +57,295 @@ public class DatabaseConnection {
     // Load database properties from the configuration file
     try (InputStream input =
         DatabaseConnection.class.getClassLoader().getResourceAsStream("db.properties")) {
-      Properties props = new Properties();
-      props.load(input);
+      PROPERTIES.load(input);
       // Initialize database connection parameters from the properties
-      URL = props.getProperty("db.url");
-      USER = props.getProperty("db.user");
-      PASSWORD = props.getProperty("db.password");
+      URL = PROPERTIES.getProperty("db.url");
+      USER = PROPERTIES.getProperty("db.user");
+      PASSWORD = PROPERTIES.getProperty("db.password");
+      PoolConfig poolConfig = PoolConfig.fromProperties(PROPERTIES);
+      pool = new ConnectionPool(URL, buildConnectionProperties(), poolConfig);
+      PRIMARY_AFTER_WRITE_NANOS =
+          TimeUnit.MILLISECONDS.toNanos(getLongProperty("db.replica.primaryAfterWriteMs", 2000));
+      // Nothing has been written yet, so reads may use the replicas straight away
+      lastWriteNanos = System.nanoTime() - PRIMARY_AFTER_WRITE_NANOS - 1;
+      List<String> replicaUrls = parseReplicaUrls(PROPERTIES.getProperty("db.replica.urls"));
+      if (!replicaUrls.isEmpty()) {
+        replicaRouter =
+            new ReplicaRouter(
+                replicaUrls,
+                buildConnectionProperties(),
+                poolConfig,
+                getLongProperty("db.replica.healthCheckIntervalMs", 5000),
+                getLongProperty("db.replica.maxLagSeconds", 0));
+      }
     } catch (IOException e) {
       // Convert checked exception to unchecked for easier error handling
       throw new RuntimeException("Failed to load database properties", e);
     }
+    // Close idle pooled connections cleanly when the application exits
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  if (replicaRouter != null) {
+                    replicaRouter.close();
+                  }
+                  pool.close();
+                },
+                "db-pool-shutdown"));
+  }
+
+  /**
+   * Splits the comma-separated replica URL list, ignoring blank entries.
+   *
+   * @param urls The value of db.replica.urls, may be null
+   * @return The replica URLs, empty if none are configured
+   */
+  private static List<String> parseReplicaUrls(String urls) {
+    List<String> result = new ArrayList<>();
+    if (urls != null) {
+      for (String url : urls.split(",")) {
+        if (!url.trim().isEmpty()) {
+          result.add(url.trim());
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Builds the properties handed to the JDBC driver: the credentials plus every
+   * {@code db.driver.*} key with the prefix removed (for example
+   * {@code db.driver.useServerPrepStmts=true} becomes {@code useServerPrepStmts=true}).
+   *
+   * @return The driver connection properties
+   */
+  static Properties buildConnectionProperties() {
+    Properties connectionProps = new Properties();
+    if (USER != null) {
+      connectionProps.setProperty("user", USER);
+    }
+    if (PASSWORD != null) {
+      connectionProps.setProperty("password", PASSWORD);
+    }
+    for (String key : PROPERTIES.stringPropertyNames()) {
+      if (key.startsWith("db.driver.")) {
+        connectionProps.setProperty(
+            key.substring("db.driver.".length()), PROPERTIES.getProperty(key).trim());
+      }
+    }
+    return connectionProps;
+  }
+
+  /**
+   * Returns a copy of the properties loaded from db.properties.
+   *
+   * @return The database configuration properties
+   */
+  static Properties getProperties() {
+    Properties copy = new Properties();
+    copy.putAll(PROPERTIES);
+    return copy;
+  }
+
+  /**
+   * Returns the ID of this application instance. Every pooled connection stores it in the
+   * {@code @health_track_client} session variable, from which triggers record it as the author of
+   * each insert, update and delete, so the change poller can tell this client's own changes from
+   * those of other clients.
+   *
+   * @return A random ID, the same for the lifetime of the application
+   */
+  public static String getClientId() {
+    return CLIENT_ID;
+  }
+
+  /**
+   * Returns one setting from db.properties, for the settings of other layers that are kept in the
+   * same file, such as the service caches.
+   *
+   * @param key The property name
+   * @return The value, or null if the property is not set
+   */
+  public static String getProperty(String key) {
+    return PROPERTIES.getProperty(key);
+  }
+
+  /**
+   * Returns a whole-number setting from db.properties.
+   *
+   * @param key The property name
+   * @param defaultValue The value to use if the property is not set or blank
+   * @return The configured value, or the default
+   * @throws IllegalArgumentException If the value is not a whole number of type int
+   */
+  public static int getIntProperty(String key, int defaultValue) {
+    long value = getLongProperty(key, defaultValue);
+    if (value != (int) value) {
+      throw new IllegalArgumentException(key + " is out of range: " + value);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Returns a whole-number setting from db.properties.
+   *
+   * @param key The property name
+   * @param defaultValue The value to use if the property is not set or blank
+   * @return The configured value, or the default
+   * @throws IllegalArgumentException If the value is not a whole number
+   */
+  public static long getLongProperty(String key, long defaultValue) {
+    String value = PROPERTIES.getProperty(key);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(key + " must be a number: " + value, e);
+    }
+  }
+
+  /**
+   * Returns a decimal setting from db.properties.
+   *
+   * @param key The property name
+   * @param defaultValue The value to use if the property is not set or blank
+   * @return The configured value, or the default
+   * @throws IllegalArgumentException If the value is not a number
+   */
+  public static double getDoubleProperty(String key, double defaultValue) {
+    String value = PROPERTIES.getProperty(key);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(key + " must be a number: " + value, e);
+    }
   }
 
   /**
-   * Creates and returns a new database connection using the configured properties.
+   * Returns the configured JDBC URL of the primary database.
+   *
+   * @return The database URL
+   */
+  static String getUrl() {
+    return URL;
+  }
+
+  /**
+   * Swaps the pool connections are borrowed from and returns the previous one without closing
+   * it. Intended for benchmarks that compare pool configurations against the same DAOs.
+   *
+   * @param replacement The pool to use from now on
+   * @return The pool that was in use before
+   */
+  static ConnectionPool replacePool(ConnectionPool replacement) {
+    ConnectionPool previous = pool;
+    pool = replacement;
+    return previous;
+  }
+
+  /**
+   * Borrows a connection to the primary database from the connection pool, for writes and for
+   * reads that must see the latest data.
    * This method centralizes connection creation to ensure consistent configuration
-   * across the application.
+   * across the application. Closing the returned connection returns it to the pool.
+   * When called inside {@link TransactionTemplate#inTransaction}, the transaction's
+   * connection is returned instead, and closing it leaves the transaction open.
    *
    * @return A Connection object representing an active database connection
-   * @throws SQLException If a database access error occurs or connection parameters are invalid
+   * @throws SQLException If a database access error occurs, connection parameters are invalid,
+   *     or no pooled connection became available within the acquire timeout
    */
   public static Connection getConnection() throws SQLException {
-    return DriverManager.getConnection(URL, USER, PASSWORD);
+    // Inside TransactionTemplate.inTransaction all DAO calls share the transaction's connection,
+    // whose writes only become visible when TransactionTemplate commits and calls recordWrite()
+    Connection transactional = TransactionTemplate.currentConnection();
+    if (transactional != null) {
+      return transactional;
+    }
+    Connection connection = pool.getConnection();
+    recordWrite();
+    return connection;
+  }
+
+  /**
+   * Sends the reads of the next {@code db.replica.primaryAfterWriteMs} to the primary, so they
+   * see a write the replicas may not have received yet.
+   */
+  static void recordWrite() {
+    lastWriteNanos = System.nanoTime();
+  }
+
+  /**
+   * Borrows a connection to the primary database for a query that must see the latest data. Unlike
+   * {@link #getConnection()}, it does not send the reads that follow to the primary, so it suits
+   * reads made regularly in the background.
+   *
+   * @return A Connection to the primary database, or the transaction's connection inside {@link
+   *     TransactionTemplate#inTransaction}
+   * @throws SQLException If a database access error occurs or no pooled connection became
+   *     available within the acquire timeout
+   */
+  static Connection getPrimaryReadConnection() throws SQLException {
+    Connection transactional = TransactionTemplate.currentConnection();
+    if (transactional != null) {
+      return transactional;
+    }
+    return pool.getConnection();
+  }
+
+  /**
+   * Borrows a connection for a read-only query. The connection comes from the next healthy read
+   * replica in round-robin order, or from the primary if no replica is configured or healthy, or
+   * if a write connection was handed out or a transaction committed within {@code
+   * db.replica.primaryAfterWriteMs}, so a panel reloading right after a save is not served data
+   * the replicas have not caught up with.
+   * Inside {@link TransactionTemplate#inTransaction} the transaction's connection is returned, so
+   * reads see the transaction's own uncommitted changes.
+   *
+   * <p>The connection must only be used for queries; replicas reject or silently diverge on
+   * writes.
+   *
+   * @return A Connection for read-only queries
+   * @throws SQLException If a database access error occurs or no pooled connection became
+   *     available within the acquire timeout
+   */
+  public static Connection getReadConnection() throws SQLException {
+    Connection transactional = TransactionTemplate.currentConnection();
+    if (transactional != null) {
+      return transactional;
+    }
+    ReplicaRouter router = replicaRouter;
+    if (router != null && System.nanoTime() - lastWriteNanos > PRIMARY_AFTER_WRITE_NANOS) {
+      Connection replica = router.getConnection();
+      if (replica != null) {
+        return replica;
+      }
+    }
+    return pool.getConnection();
+  }
+
+  /**
+   * Returns a snapshot of the connection pool statistics, for monitoring and diagnostics.
+   *
+   * @return The current pool statistics
+   */
+  public static PoolStats getPoolStats() {
+    return pool.getStats();
+  }
+
+  /**
+   * Returns how many read replicas currently receive reads, for monitoring and diagnostics.
+   *
+   * @return The number of healthy replicas, 0 if none are configured
+   */
+  public static int getHealthyReplicaCount() {
+    ReplicaRouter router = replicaRouter;
+    return router == null ? 0 : router.getHealthyReplicaCount();
   }
 }
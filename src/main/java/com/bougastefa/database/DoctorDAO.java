@@ -4,7 +4,10 @@ import com.bougastefa.models.Doctor;
 import com.bougastefa.models.Specialist;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Data Access Object (DAO) class for Doctor entities.
@@ -12,12 +15,69 @@ import java.util.List;
  * on Doctor records in the database, handling both regular doctors and specialists.
  */
 public class DoctorDAO {
+  /** Number of rows sent to the database per batch by the upsert methods */
+  private static final int UPSERT_BATCH_SIZE = 500;
+
+  /** Columns read by every Doctor query, in the order {@link #ROW_MAPPER} expects them */
+  static final String COLUMNS =
+      "doctorID, firstname, surname, address, email, hospital, specialization";
+
+  /**
+   * Maps a row selected with {@link #COLUMNS} to a Specialist when a specialization is set and to
+   * a plain Doctor otherwise.
+   */
+  static final RowMapper<Doctor> ROW_MAPPER =
+      rs -> {
+        String specialization = rs.getString(7);
+        if (specialization != null) {
+          return new Specialist(
+              rs.getString(1),
+              rs.getString(2),
+              rs.getString(3),
+              rs.getString(4),
+              rs.getString(5),
+              rs.getString(6),
+              specialization);
+        }
+        return new Doctor(
+            rs.getString(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getString(4),
+            rs.getString(5),
+            rs.getString(6));
+      };
+
+  /** Filter field names accepted by {@link #getFilteredDoctors} and the columns they match */
+  private static final Map<String, String> FILTER_COLUMNS =
+      Map.of(
+          "doctorId", "doctorID",
+          "firstName", "firstname",
+          "surname", "surname",
+          "address", "address",
+          "email", "email",
+          "hospital", "hospital",
+          "specialization", "specialization");
+
+  /**
+   * Sort field names accepted by {@link #getFilteredDoctors(FilterCriteria, SortSpec)} and the
+   * columns they sort by; each column is the first column of an index
+   */
+  private static final Map<String, String> SORT_COLUMNS =
+      Map.of(
+          "doctorId", "doctorID",
+          "firstName", "firstname",
+          "surname", "surname",
+          "hospital", "hospital",
+          "specialization", "specialization");
+
   /**
    * Inserts a new doctor record into the database.
    * Handles both regular doctors and specialists by using different SQL statements
    * based on the doctor type.
    *
    * @param doctor The doctor object to be added to the database
+   * @throws DuplicateKeyException If a doctor with the same ID already exists
    * @throws SQLException If a database access error occurs
    */
   public void addDoctor(Doctor doctor) throws SQLException {
@@ -49,7 +109,13 @@ public class DoctorDAO {
         stmt.setString(7, specialist.getSpecialization());
       }
 
-      stmt.executeUpdate();
+      try {
+        stmt.executeUpdate();
+      } catch (SQLException e) {
+        // The primary key rejects duplicates, so no existence check is needed beforehand
+        throw DuplicateKeyException.translate(
+            e, "Doctor ID already exists: " + doctor.getDoctorId());
+      }
     }
   }
 
@@ -63,31 +129,140 @@ public class DoctorDAO {
    */
   public List<Doctor> getAllDoctors() throws SQLException {
     List<Doctor> doctors = new ArrayList<>();
-    String sql = "SELECT * FROM Doctor";
+    String sql = "SELECT " + COLUMNS + " FROM Doctor";
     // Connection, statement and result set are automatically closed after the try block
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         Statement stmt = conn.createStatement();
         ResultSet rs = stmt.executeQuery(sql)) {
       // Iterate over the result set and create a doctor object for each row
       while (rs.next()) {
-        String doctorId = rs.getString("doctorID");
-        String firstname = rs.getString("firstname");
-        String surname = rs.getString("surname");
-        String address = rs.getString("address");
-        String email = rs.getString("email");
-        String hospital = rs.getString("hospital");
-        String specialization = rs.getString("specialization");
-
-        Doctor doctor;
-        // Check if the doctor is a specialist and create the appropriate object
-        if (specialization != null) {
-          doctor =
-              new Specialist(
-                  doctorId, firstname, surname, address, email, hospital, specialization);
-        } else {
-          doctor = new Doctor(doctorId, firstname, surname, address, email, hospital);
+        doctors.add(ROW_MAPPER.mapRow(rs));
+      }
+    }
+    return doctors;
+  }
+
+  /**
+   * Retrieves the doctors matching the filter criteria, in the default order.
+   *
+   * @param criteria The filter conditions; empty criteria return every doctor
+   * @return A List of the matching doctors
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Doctor> getFilteredDoctors(FilterCriteria criteria) throws SQLException {
+    return getFilteredDoctors(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the doctors matching the filter criteria, sorted by the database. The conditions are
+   * applied in SQL, so only matching rows are transferred. Conditions on fields this DAO does not
+   * map to a column are ignored and left to the caller.
+   *
+   * @param criteria The filter conditions; empty criteria return every doctor
+   * @param sort The sort order; the default order if none
+   * @return A List of the matching doctors
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Doctor> getFilteredDoctors(FilterCriteria criteria, SortSpec sort)
+      throws SQLException {
+    List<Doctor> doctors = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    String sql =
+        "SELECT " + COLUMNS + " FROM Doctor"
+            + criteria.toWhereClause(FILTER_COLUMNS, params)
+            + sort.toOrderByClause(SORT_COLUMNS, "doctorID");
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          doctors.add(ROW_MAPPER.mapRow(rs));
+        }
+      }
+    }
+    return doctors;
+  }
+
+  /**
+   * Counts all doctor records without transferring them.
+   *
+   * @return The number of doctors in the database
+   * @throws SQLException If a database access error occurs
+   */
+  public long countDoctors() throws SQLException {
+    return countFilteredDoctors(FilterCriteria.none());
+  }
+
+  /**
+   * Reads every doctor ID and passes it to the action one row at a time, without holding the IDs in
+   * memory. Rows are fetched from the server in chunks of {@value StreamingQuery#FETCH_SIZE}, in no
+   * particular order. The connection is held until the last ID has been processed, so the action
+   * should not call back into the DAOs.
+   *
+   * @param action Called once for each doctor ID
+   * @throws SQLException If a database access error occurs
+   */
+  public void forEachDoctorId(Consumer<? super String> action) throws SQLException {
+    StreamingQuery.forEach("SELECT doctorID FROM Doctor", rs -> rs.getString(1), action);
+  }
+
+  /**
+   * Counts the doctors matching the filter criteria without transferring them. Conditions on fields
+   * this DAO does not map to a column are ignored, as in {@link
+   * #getFilteredDoctors(FilterCriteria)}, so the caller's own filtering may leave fewer rows.
+   *
+   * @param criteria The filter conditions; empty criteria count every doctor
+   * @return The number of matching doctors
+   * @throws SQLException If a database access error occurs
+   */
+  public long countFilteredDoctors(FilterCriteria criteria) throws SQLException {
+    List<String> params = new ArrayList<>();
+    String sql = "SELECT COUNT(*) FROM Doctor" + criteria.toWhereClause(FILTER_COLUMNS, params);
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        return rs.getLong(1);
+      }
+    }
+  }
+
+  /**
+   * Retrieves one page of doctors in doctor ID order, using the primary key as the cursor
+   * instead of an OFFSET, so every page costs the same however deep into the table it is.
+   * Pass the ID of the last doctor of the previous page to get the next one.
+   *
+   * @param afterDoctorId The ID of the last doctor already read, or null for the first page
+   * @param limit The maximum number of doctors to return
+   * @return The next page of at most limit doctors; an empty list after the last page
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Doctor> getDoctorsPage(String afterDoctorId, int limit) throws SQLException {
+    List<Doctor> doctors = new ArrayList<>();
+    String sql =
+        afterDoctorId == null
+            ? "SELECT " + COLUMNS + " FROM Doctor ORDER BY doctorID LIMIT ?"
+            : "SELECT " + COLUMNS + " FROM Doctor WHERE doctorID > ?"
+                + " ORDER BY doctorID LIMIT ?";
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      int index = 1;
+      if (afterDoctorId != null) {
+        stmt.setString(index++, afterDoctorId);
+      }
+      stmt.setInt(index, limit);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          doctors.add(ROW_MAPPER.mapRow(rs));
         }
-        doctors.add(doctor);
       }
     }
     return doctors;
@@ -102,39 +277,33 @@ public class DoctorDAO {
    * @throws SQLException If a database access error occurs
    */
   public Doctor getDoctorById(String doctorId) throws SQLException {
-    String sql = "SELECT * FROM Doctor WHERE doctorID = ?";
+    String sql = "SELECT " + COLUMNS + " FROM Doctor WHERE doctorID = ?";
     // Connection, statement and result set are automatically closed after the try block
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         PreparedStatement stmt = conn.prepareStatement(sql)) {
       stmt.setString(1, doctorId);
       try (ResultSet rs = stmt.executeQuery()) {
         if (rs.next()) {
-          String specialization = rs.getString("specialization");
-          // Check if the doctor is a specialist and create the appropriate object
-          if (specialization != null) {
-            return new Specialist(
-                rs.getString("doctorID"),
-                rs.getString("firstname"),
-                rs.getString("surname"),
-                rs.getString("address"),
-                rs.getString("email"),
-                rs.getString("hospital"),
-                specialization);
-          } else {
-            return new Doctor(
-                rs.getString("doctorID"),
-                rs.getString("firstname"),
-                rs.getString("surname"),
-                rs.getString("address"),
-                rs.getString("email"),
-                rs.getString("hospital"));
-          }
+          return ROW_MAPPER.mapRow(rs);
         }
       }
     }
     return null;
   }
 
+  /**
+   * Retrieves many doctors by ID at once, as regular doctors or specialists like {@link
+   * #getDoctorById}. One IN list query is made per 65,000 IDs, on the primary database.
+   *
+   * @param doctorIds The IDs of the doctors to retrieve
+   * @return The doctors found, in no particular order; IDs with no doctor are left out
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Doctor> getDoctorsByIds(Collection<String> doctorIds) throws SQLException {
+    return KeyListQuery.readByIds(
+        "SELECT " + COLUMNS + " FROM Doctor", "doctorID", doctorIds, ROW_MAPPER);
+  }
+
   /**
    * Updates an existing doctor record in the database.
    * Uses different SQL statements for regular doctors and specialists.
@@ -192,4 +361,50 @@ public class DoctorDAO {
       stmt.executeUpdate();
     }
   }
+
+  /**
+   * Inserts or updates a batch of doctors in a single transaction, for bulk synchronisation jobs.
+   * Doctors whose ID already exists are overwritten with the given values instead of being
+   * rejected; doctors that are not specialists have their specialization cleared.
+   *
+   * @param doctors The doctors to insert or update
+   * @throws SQLException If a database access error occurs; no doctor is written in that case
+   */
+  public void upsertDoctors(List<Doctor> doctors) throws SQLException {
+    String sql =
+        "INSERT INTO Doctor (doctorID, firstname, surname, address, email, hospital,"
+            + " specialization) VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE"
+            + " firstname = VALUES(firstname), surname = VALUES(surname),"
+            + " address = VALUES(address), email = VALUES(email), hospital = VALUES(hospital),"
+            + " specialization = VALUES(specialization)";
+    TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int pending = 0;
+            for (Doctor doctor : doctors) {
+              stmt.setString(1, doctor.getDoctorId());
+              stmt.setString(2, doctor.getFirstName());
+              stmt.setString(3, doctor.getSurname());
+              stmt.setString(4, doctor.getAddress());
+              stmt.setString(5, doctor.getEmail());
+              stmt.setString(6, doctor.getHospital());
+              if (doctor instanceof Specialist) {
+                stmt.setString(7, ((Specialist) doctor).getSpecialization());
+              } else {
+                stmt.setNull(7, Types.VARCHAR);
+              }
+              stmt.addBatch();
+              if (++pending == UPSERT_BATCH_SIZE) {
+                stmt.executeBatch();
+                pending = 0;
+              }
+            }
+            if (pending > 0) {
+              stmt.executeBatch();
+            }
+          }
+          return null;
+        });
+  }
 }
@@ -3,7 +3,11 @@ package com.bougastefa.database;
 import com.bougastefa.models.Drug;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Data Access Object (DAO) class for Drug entities.
@@ -12,10 +16,54 @@ import java.util.List;
  * by various drug attributes.
  */
 public class DrugDAO {
+  /** Number of rows sent to the database per batch by the upsert methods */
+  private static final int UPSERT_BATCH_SIZE = 500;
+
+  /** Columns read by every Drug query, in the order {@link #ROW_MAPPER} expects them */
+  static final String COLUMNS = "drugID, drugname, sideeffects, benefits";
+
+  /** Maps a row selected with {@link #COLUMNS} to a Drug */
+  static final RowMapper<Drug> ROW_MAPPER =
+      rs -> new Drug(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4));
+
+  /**
+   * Filter field names accepted by {@link #getFilteredDrugs} and the columns they match; the
+   * in-memory drug catalogue accepts the same fields
+   */
+  public static final Map<String, String> FILTER_COLUMNS =
+      Map.of(
+          "drugId", "drugID",
+          "name", "drugname",
+          "sideEffects", "sideeffects",
+          "benefits", "benefits");
+
+  /**
+   * Sort field names accepted by {@link #getFilteredDrugs(FilterCriteria, SortSpec)} and the
+   * columns they sort by; each column is the first column of an index
+   */
+  public static final Map<String, String> SORT_COLUMNS =
+      Map.of(
+          "drugId", "drugID",
+          "name", "drugname");
+
+  /**
+   * InnoDB's built-in full-text stopword list. Stopwords are not indexed, so a search requiring one
+   * would never match; they are matched with LIKE instead.
+   */
+  private static final Set<String> FULLTEXT_STOPWORDS =
+      Set.of(
+          "a", "about", "an", "are", "as", "at", "be", "by", "com", "de", "en", "for", "from",
+          "how", "i", "in", "is", "it", "la", "of", "on", "or", "that", "the", "this", "to", "was",
+          "what", "when", "where", "who", "will", "with", "und", "www");
+
+  /** The server's innodb_ft_min_token_size, read on the first search; 0 until then */
+  private static volatile int fullTextMinTokenSize;
+
   /**
    * Inserts a new drug record into the database.
    *
    * @param drug The drug object to be added to the database
+   * @throws DuplicateKeyException If a drug with the same ID already exists
    * @throws SQLException If a database access error occurs
    */
   public void addDrug(Drug drug) throws SQLException {
@@ -27,7 +75,12 @@ public class DrugDAO {
       stmt.setString(2, drug.getName());
       stmt.setString(3, drug.getSideEffects());
       stmt.setString(4, drug.getBenefits());
-      stmt.executeUpdate();
+      try {
+        stmt.executeUpdate();
+      } catch (SQLException e) {
+        // The primary key rejects duplicates, so no existence check is needed beforehand
+        throw DuplicateKeyException.translate(e, "Drug ID already exists: " + drug.getDrugId());
+      }
     }
   }
 
@@ -39,19 +92,125 @@ public class DrugDAO {
    */
   public List<Drug> getAllDrugs() throws SQLException {
     List<Drug> drugs = new ArrayList<>();
-    String sql = "SELECT * FROM Drug";
+    String sql = "SELECT " + COLUMNS + " FROM Drug";
     // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         Statement stmt = conn.createStatement();
         ResultSet rs = stmt.executeQuery(sql)) {
       while (rs.next()) {
-        Drug drug =
-            new Drug(
-                rs.getString("drugID"),
-                rs.getString("drugname"),
-                rs.getString("sideeffects"),
-                rs.getString("benefits"));
-        drugs.add(drug);
+        drugs.add(ROW_MAPPER.mapRow(rs));
+      }
+    }
+    return drugs;
+  }
+
+  /**
+   * Retrieves the drugs matching the filter criteria, in the default order.
+   *
+   * @param criteria The filter conditions; empty criteria return every drug
+   * @return A List of the matching drugs
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Drug> getFilteredDrugs(FilterCriteria criteria) throws SQLException {
+    return getFilteredDrugs(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the drugs matching the filter criteria, sorted by the database. The conditions are
+   * applied in SQL, so only matching rows are transferred. Conditions on fields this DAO does not
+   * map to a column are ignored and left to the caller.
+   *
+   * @param criteria The filter conditions; empty criteria return every drug
+   * @param sort The sort order; the default order if none
+   * @return A List of the matching drugs
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Drug> getFilteredDrugs(FilterCriteria criteria, SortSpec sort) throws SQLException {
+    List<Drug> drugs = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    String sql =
+        "SELECT " + COLUMNS + " FROM Drug"
+            + criteria.toWhereClause(FILTER_COLUMNS, params)
+            + sort.toOrderByClause(SORT_COLUMNS, "drugID");
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          drugs.add(ROW_MAPPER.mapRow(rs));
+        }
+      }
+    }
+    return drugs;
+  }
+
+  /**
+   * Counts all drug records without transferring them.
+   *
+   * @return The number of drugs in the database
+   * @throws SQLException If a database access error occurs
+   */
+  public long countDrugs() throws SQLException {
+    return countFilteredDrugs(FilterCriteria.none());
+  }
+
+  /**
+   * Counts the drugs matching the filter criteria without transferring them. Conditions on fields
+   * this DAO does not map to a column are ignored, as in {@link #getFilteredDrugs(FilterCriteria)},
+   * so the caller's own filtering may leave fewer rows.
+   *
+   * @param criteria The filter conditions; empty criteria count every drug
+   * @return The number of matching drugs
+   * @throws SQLException If a database access error occurs
+   */
+  public long countFilteredDrugs(FilterCriteria criteria) throws SQLException {
+    List<String> params = new ArrayList<>();
+    String sql = "SELECT COUNT(*) FROM Drug" + criteria.toWhereClause(FILTER_COLUMNS, params);
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        return rs.getLong(1);
+      }
+    }
+  }
+
+  /**
+   * Retrieves one page of drugs in drug ID order, using the primary key as the cursor
+   * instead of an OFFSET, so every page costs the same however deep into the table it is.
+   * Pass the ID of the last drug of the previous page to get the next one.
+   *
+   * @param afterDrugId The ID of the last drug already read, or null for the first page
+   * @param limit The maximum number of drugs to return
+   * @return The next page of at most limit drugs; an empty list after the last page
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Drug> getDrugsPage(String afterDrugId, int limit) throws SQLException {
+    List<Drug> drugs = new ArrayList<>();
+    String sql =
+        afterDrugId == null
+            ? "SELECT " + COLUMNS + " FROM Drug ORDER BY drugID LIMIT ?"
+            : "SELECT " + COLUMNS + " FROM Drug WHERE drugID > ?"
+                + " ORDER BY drugID LIMIT ?";
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      int index = 1;
+      if (afterDrugId != null) {
+        stmt.setString(index++, afterDrugId);
+      }
+      stmt.setInt(index, limit);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          drugs.add(ROW_MAPPER.mapRow(rs));
+        }
       }
     }
     return drugs;
@@ -65,24 +224,33 @@ public class DrugDAO {
    * @throws SQLException If a database access error occurs
    */
   public Drug getDrugById(String drugId) throws SQLException {
-    String sql = "SELECT * FROM Drug WHERE drugID = ?";
+    String sql = "SELECT " + COLUMNS + " FROM Drug WHERE drugID = ?";
     // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         PreparedStatement stmt = conn.prepareStatement(sql)) {
       stmt.setString(1, drugId);
       try (ResultSet rs = stmt.executeQuery()) {
         if (rs.next()) {
-          return new Drug(
-              rs.getString("drugID"),
-              rs.getString("drugname"),
-              rs.getString("sideeffects"),
-              rs.getString("benefits"));
+          return ROW_MAPPER.mapRow(rs);
         }
       }
     }
     return null;
   }
 
+  /**
+   * Retrieves the drugs with the given IDs in one query, or one per 65,000 IDs for longer lists.
+   * Unlike the other reads, it does not use a replica, which may not have the latest writes yet.
+   *
+   * @param drugIds The IDs of the drugs to retrieve
+   * @return The drugs found, in no particular order; IDs with no drug are left out
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Drug> getDrugsByIds(Collection<String> drugIds) throws SQLException {
+    return KeyListQuery.readByIds(
+        "SELECT " + COLUMNS + " FROM Drug", "drugID", drugIds, ROW_MAPPER);
+  }
+
   /**
    * Updates an existing drug record in the database.
    *
@@ -119,69 +287,191 @@ public class DrugDAO {
   }
 
   /**
-   * Helper method to retrieve drugs by a given column using partial matching.
-   * This method uses SQL LIKE operator for substring searching within the specified column.
+   * Searches the given columns for drugs containing every word of the search text, using the
+   * FULLTEXT index on exactly those columns. Each word is matched as a word prefix, so "ibu"
+   * finds "ibuprofen", and results are ordered by relevance.
+   *
+   * <p>Words the full-text index cannot see, because they are shorter than the server's
+   * innodb_ft_min_token_size or are stopwords, are matched with {@code LIKE '%word%'} on the same
+   * columns instead. If no word can use the index at all, the whole text is matched with a single
+   * LIKE as before, which also means an empty text matches every drug.
    *
-   * @param column The database column to search in
-   * @param value The value to search for (will be matched partially)
-   * @return A list of drugs matching the search criteria
+   * @param columns The columns to search; a FULLTEXT index on exactly these columns must exist
+   * @param text The search text
+   * @return The matching drugs, most relevant first
    * @throws SQLException If a database access error occurs
    */
-  private List<Drug> getDrugsByColumn(String column, String value) throws SQLException {
+  private List<Drug> searchColumns(String[] columns, String text) throws SQLException {
     List<Drug> drugs = new ArrayList<>();
-    String sql = "SELECT * FROM Drug WHERE " + column + " LIKE ?";
-    try (Connection conn = DatabaseConnection.getConnection();
-        PreparedStatement stmt = conn.prepareStatement(sql)) {
-      stmt.setString(1, "%" + value + "%");
-      try (ResultSet rs = stmt.executeQuery()) {
-        while (rs.next()) {
-          Drug drug =
-              new Drug(
-                  rs.getString("drugID"),
-                  rs.getString("drugname"),
-                  rs.getString("sideeffects"),
-                  rs.getString("benefits"));
-          drugs.add(drug);
+    try (Connection conn = DatabaseConnection.getReadConnection()) {
+      int minTokenSize = getFullTextMinTokenSize(conn);
+      StringBuilder against = new StringBuilder();
+      List<String> likeTerms = new ArrayList<>();
+      for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+        if (word.isEmpty()) {
+          continue;
+        }
+        if (word.length() >= minTokenSize
+            && !FULLTEXT_STOPWORDS.contains(word.toLowerCase(Locale.ROOT))) {
+          // Required word, matched as a prefix
+          against.append(against.length() == 0 ? "+" : " +").append(word).append('*');
+        } else {
+          likeTerms.add(word);
         }
       }
-    }
+      if (against.length() == 0) {
+        // Nothing the index can match, so keep the original substring search
+        likeTerms = List.of(text);
+      }
 
+      String columnList = String.join(", ", columns);
+      StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS);
+      List<String> params = new ArrayList<>();
+      if (against.length() > 0) {
+        sql.append(", MATCH(").append(columnList).append(") AGAINST(? IN BOOLEAN MODE) AS score");
+        params.add(against.toString());
+      }
+      sql.append(" FROM Drug");
+      String separator = " WHERE ";
+      if (against.length() > 0) {
+        sql.append(separator)
+            .append("MATCH(")
+            .append(columnList)
+            .append(") AGAINST(? IN BOOLEAN MODE)");
+        params.add(against.toString());
+        separator = " AND ";
+      }
+      for (String term : likeTerms) {
+        sql.append(separator).append('(');
+        for (int i = 0; i < columns.length; i++) {
+          sql.append(i == 0 ? "" : " OR ").append(columns[i]).append(" LIKE ?");
+          params.add("%" + FilterCriteria.escapeLike(term) + "%");
+        }
+        sql.append(')');
+        separator = " AND ";
+      }
+      if (against.length() > 0) {
+        sql.append(" ORDER BY score DESC");
+      }
+
+      try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+        for (int i = 0; i < params.size(); i++) {
+          stmt.setString(i + 1, params.get(i));
+        }
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            drugs.add(ROW_MAPPER.mapRow(rs));
+          }
+        }
+      }
+    }
     return drugs;
   }
 
   /**
-   * Retrieves drugs by name using partial matching.
-   * Allows searching for drugs with names containing the specified string.
+   * Returns the shortest word the server's full-text indexes contain, reading it on first use.
+   *
+   * @param conn A connection to read the setting with
+   * @return The value of innodb_ft_min_token_size
+   * @throws SQLException If a database access error occurs
+   */
+  private static int getFullTextMinTokenSize(Connection conn) throws SQLException {
+    int minTokenSize = fullTextMinTokenSize;
+    if (minTokenSize == 0) {
+      try (Statement stmt = conn.createStatement();
+          ResultSet rs = stmt.executeQuery("SELECT @@innodb_ft_min_token_size")) {
+        // The setting cannot change without a server restart, so it is read only once
+        minTokenSize = rs.next() ? Math.max(rs.getInt(1), 1) : 1;
+      }
+      fullTextMinTokenSize = minTokenSize;
+    }
+    return minTokenSize;
+  }
+
+  /**
+   * Performs a ranked search for drugs whose name, side effects or benefits contain every word of
+   * the search text, using the combined FULLTEXT index. Words shorter than the server's minimum
+   * full-text token length fall back to LIKE matching as described for the column searches.
+   *
+   * @param text The words to search for
+   * @return The matching drugs, most relevant first
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Drug> searchDrugs(String text) throws SQLException {
+    return searchColumns(new String[] {"drugname", "sideeffects", "benefits"}, text);
+  }
+
+  /**
+   * Retrieves drugs by name using the name's FULLTEXT index.
+   * Every word of the search text must start a word of the name, as described for {@link
+   * #searchColumns}.
    *
    * @param name The drug name or partial name to search for
-   * @return A list of drugs with matching names
+   * @return A list of drugs with matching names, most relevant first
    * @throws SQLException If a database access error occurs
    */
   public List<Drug> getDrugsByName(String name) throws SQLException {
-    return getDrugsByColumn("drugname", name);
+    return searchColumns(new String[] {"drugname"}, name);
   }
 
   /**
-   * Retrieves drugs by side effects using partial matching.
-   * Allows searching for drugs with side effects containing the specified string.
+   * Retrieves drugs by side effects using the side effects' FULLTEXT index.
+   * Every word of the search text must start a word of the side effects.
    *
    * @param sideEffects The side effects or partial side effects to search for
    * @return A list of drugs with matching side effects
    * @throws SQLException If a database access error occurs
    */
   public List<Drug> getDrugsBySideEffects(String sideEffects) throws SQLException {
-    return getDrugsByColumn("sideeffects", sideEffects);
+    return searchColumns(new String[] {"sideeffects"}, sideEffects);
   }
 
   /**
-   * Retrieves drugs by benefits using partial matching.
-   * Allows searching for drugs with benefits containing the specified string.
+   * Retrieves drugs by benefits using the benefits' FULLTEXT index.
+   * Every word of the search text must start a word of the benefits.
    *
    * @param benefits The benefits or partial benefits to search for
    * @return A list of drugs with matching benefits
    * @throws SQLException If a database access error occurs
    */
   public List<Drug> getDrugsByBenefits(String benefits) throws SQLException {
-    return getDrugsByColumn("benefits", benefits);
+    return searchColumns(new String[] {"benefits"}, benefits);
+  }
+
+  /**
+   * Inserts or updates a batch of drugs in a single transaction, for bulk synchronisation jobs.
+   * Drugs whose ID already exists are overwritten with the given values instead of being
+   * rejected.
+   *
+   * @param drugs The drugs to insert or update
+   * @throws SQLException If a database access error occurs; no drug is written in that case
+   */
+  public void upsertDrugs(List<Drug> drugs) throws SQLException {
+    String sql =
+        "INSERT INTO Drug (drugID, drugname, sideeffects, benefits) VALUES (?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE drugname = VALUES(drugname),"
+            + " sideeffects = VALUES(sideeffects), benefits = VALUES(benefits)";
+    TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int pending = 0;
+            for (Drug drug : drugs) {
+              stmt.setString(1, drug.getDrugId());
+              stmt.setString(2, drug.getName());
+              stmt.setString(3, drug.getSideEffects());
+              stmt.setString(4, drug.getBenefits());
+              stmt.addBatch();
+              if (++pending == UPSERT_BATCH_SIZE) {
+                stmt.executeBatch();
+                pending = 0;
+              }
+            }
+            if (pending > 0) {
+              stmt.executeBatch();
+            }
+          }
+          return null;
+        });
   }
 }
@@ -0,0 +1,50 @@
+package com.bougastefa.database;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+/**
+ * Thrown by the DAO insert methods when the row could not be inserted because its primary key
+ * already exists. The DAOs insert directly instead of reading the key first, so this exception is
+ * how callers learn about the collision; the original driver exception is kept as the cause.
+ */
+public class DuplicateKeyException extends SQLIntegrityConstraintViolationException {
+  /** MariaDB error code for "Duplicate entry ... for key ..." */
+  private static final int ER_DUP_ENTRY = 1062;
+  /** MariaDB error code for the same error when the key name is reported */
+  private static final int ER_DUP_ENTRY_WITH_KEY_NAME = 1586;
+
+  /**
+   * Constructs a new DuplicateKeyException.
+   *
+   * @param reason A description of the duplicate key
+   * @param cause The driver exception reporting the duplicate key
+   */
+  public DuplicateKeyException(String reason, SQLException cause) {
+    super(reason, cause.getSQLState(), cause.getErrorCode(), cause);
+  }
+
+  /**
+   * Checks whether a driver exception reports a duplicate key. Other integrity constraint
+   * violations share SQLState 23000, so the MariaDB error code is checked as well.
+   *
+   * @param e The exception to check
+   * @return true if the exception was caused by a duplicate primary or unique key
+   */
+  public static boolean isDuplicateKey(SQLException e) {
+    return "23000".equals(e.getSQLState())
+        && (e.getErrorCode() == ER_DUP_ENTRY || e.getErrorCode() == ER_DUP_ENTRY_WITH_KEY_NAME);
+  }
+
+  /**
+   * Converts a duplicate key error into a DuplicateKeyException and returns any other exception
+   * unchanged, so DAOs can simply {@code throw translate(e, ...)}.
+   *
+   * @param e The exception raised by the driver
+   * @param reason A description of the duplicate key, used if the exception is one
+   * @return The exception to throw
+   */
+  static SQLException translate(SQLException e, String reason) {
+    return isDuplicateKey(e) ? new DuplicateKeyException(reason, e) : e;
+  }
+}
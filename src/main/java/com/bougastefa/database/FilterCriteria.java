@@ -0,0 +1,306 @@
+package com.bougastefa.database;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable set of filter conditions that the DAOs translate into a parameterized WHERE clause,
+ * so filtered views only transfer the matching rows.
+ *
+ * <p>Conditions are keyed by the field names of the filter dialogs (for example {@code
+ * "firstName"}); every DAO maps the field names it supports to columns and ignores the others,
+ * which the caller is expected to filter in memory. A condition either matches values containing
+ * the term, case-insensitively like the in-memory filters it replaces ({@code col LIKE ?}), or
+ * matches one exact value ({@code col = ?}), which lets MariaDB use the index of an ID column, or
+ * matches dates in a range ({@code col >= ? AND col <= ?}), which can use the index of a date
+ * column. All conditions must match.
+ *
+ * <p>Criteria are equal when they match the same rows under the tables' case-insensitive
+ * collation: the order of the conditions and the case of their terms do not matter, so equal
+ * criteria can key a cache of query results.
+ */
+public final class FilterCriteria {
+  private static final FilterCriteria NONE = new FilterCriteria(Map.of());
+
+  /** Field name to condition, in the order the conditions were added */
+  private final Map<String, Condition> conditions;
+
+  /** A single condition on one field */
+  private static final class Condition {
+    private final String value;
+    private final boolean exact;
+    /** Bounds of a range condition, either of which may be open; both null otherwise */
+    private final LocalDate from;
+    private final LocalDate to;
+
+    private Condition(String value, boolean exact) {
+      this(value, exact, null, null);
+    }
+
+    private Condition(String value, boolean exact, LocalDate from, LocalDate to) {
+      this.value = value;
+      this.exact = exact;
+      this.from = from;
+      this.to = to;
+    }
+
+    private boolean isRange() {
+      return from != null || to != null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Condition)) {
+        return false;
+      }
+      Condition that = (Condition) other;
+      return exact == that.exact
+          && (value == null ? that.value == null : value.equalsIgnoreCase(that.value))
+          && Objects.equals(from, that.from)
+          && Objects.equals(to, that.to);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(
+          value == null ? null : value.toLowerCase(Locale.ROOT), exact, from, to);
+    }
+  }
+
+  private FilterCriteria(Map<String, Condition> conditions) {
+    this.conditions = conditions;
+  }
+
+  /**
+   * Returns criteria without any condition, which match every row.
+   *
+   * @return The empty criteria
+   */
+  public static FilterCriteria none() {
+    return NONE;
+  }
+
+  /**
+   * Builds "contains" criteria from the values of a filter dialog. Only non-empty String values
+   * become conditions, so fields left blank and non-text controls are ignored.
+   *
+   * @param formData The field names and values submitted by the filter dialog
+   * @return The criteria for the filled-in fields
+   */
+  public static FilterCriteria fromFormData(Map<String, Object> formData) {
+    FilterCriteria criteria = NONE;
+    for (Map.Entry<String, Object> entry : formData.entrySet()) {
+      if (entry.getValue() instanceof String) {
+        criteria = criteria.contains(entry.getKey(), (String) entry.getValue());
+      }
+    }
+    return criteria;
+  }
+
+  /**
+   * Returns a copy of these criteria that also requires the field to contain the term, ignoring
+   * case. A null or empty term adds no condition.
+   *
+   * @param field The filter field name
+   * @param term The text the field must contain
+   * @return The extended criteria
+   */
+  public FilterCriteria contains(String field, String term) {
+    if (term == null || term.isEmpty()) {
+      return this;
+    }
+    return with(field, new Condition(term, false));
+  }
+
+  /**
+   * Returns a copy of these criteria that also requires the field to equal the value. Intended
+   * for ID fields, where the comparison can use the column's index.
+   *
+   * @param field The filter field name
+   * @param value The exact value the field must have
+   * @return The extended criteria
+   * @throws IllegalArgumentException If the value is null
+   */
+  public FilterCriteria equalTo(String field, String value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Filter value cannot be null");
+    }
+    return with(field, new Condition(value, true));
+  }
+
+  /**
+   * Returns a copy of these criteria that also requires the field's date to lie in the range,
+   * both ends included. Either end may be null to leave that side open; if both are null no
+   * condition is added.
+   *
+   * @param field The filter field name of a date column
+   * @param from The earliest date to match, or null for no lower bound
+   * @param to The latest date to match, or null for no upper bound
+   * @return The extended criteria
+   * @throws IllegalArgumentException If from is after to
+   */
+  public FilterCriteria between(String field, LocalDate from, LocalDate to) {
+    if (from == null && to == null) {
+      return this;
+    }
+    if (from != null && to != null && from.isAfter(to)) {
+      throw new IllegalArgumentException("Start date cannot be after end date");
+    }
+    return with(field, new Condition(null, false, from, to));
+  }
+
+  private FilterCriteria with(String field, Condition condition) {
+    Map<String, Condition> copy = new LinkedHashMap<>(conditions);
+    copy.put(field, condition);
+    return new FilterCriteria(Collections.unmodifiableMap(copy));
+  }
+
+  /** @return true if these criteria match every row */
+  public boolean isEmpty() {
+    return conditions.isEmpty();
+  }
+
+  /** @return The names of the fields that have a condition */
+  public Set<String> getFields() {
+    return conditions.keySet();
+  }
+
+  /**
+   * Returns the term or value of a field's condition.
+   *
+   * @param field The filter field name
+   * @return The term or value, or null if the field has no condition or a range condition
+   */
+  public String getValue(String field) {
+    Condition condition = conditions.get(field);
+    return condition == null ? null : condition.value;
+  }
+
+  /**
+   * Checks whether a field's condition requires an exact match.
+   *
+   * @param field The filter field name
+   * @return true for an {@link #equalTo} condition, false for a contains condition or no condition
+   */
+  public boolean isExact(String field) {
+    Condition condition = conditions.get(field);
+    return condition != null && condition.exact;
+  }
+
+  /**
+   * Returns the lower bound of a field's range condition.
+   *
+   * @param field The filter field name
+   * @return The earliest matching date, or null if the range is open below or there is no range
+   */
+  public LocalDate getFrom(String field) {
+    Condition condition = conditions.get(field);
+    return condition == null ? null : condition.from;
+  }
+
+  /**
+   * Returns the upper bound of a field's range condition.
+   *
+   * @param field The filter field name
+   * @return The latest matching date, or null if the range is open above or there is no range
+   */
+  public LocalDate getTo(String field) {
+    Condition condition = conditions.get(field);
+    return condition == null ? null : condition.to;
+  }
+
+  /**
+   * Builds the WHERE clause for the conditions on the given fields and collects the values to
+   * bind, in placeholder order. Conditions on fields that are not in the map are left out.
+   *
+   * @param columns The supported field names and the column each maps to; only trusted column
+   *     names may be used here because they are inserted into the SQL text
+   * @param params Receives one value per placeholder of the returned clause
+   * @return " WHERE ..." starting with a space, or an empty string if no condition applies
+   */
+  String toWhereClause(Map<String, String> columns, List<String> params) {
+    StringBuilder where = new StringBuilder();
+    for (Map.Entry<String, Condition> entry : conditions.entrySet()) {
+      String column = columns.get(entry.getKey());
+      if (column == null) {
+        continue;
+      }
+      Condition condition = entry.getValue();
+      where.append(where.length() == 0 ? " WHERE " : " AND ");
+      if (condition.isRange()) {
+        // ISO dates compare as DATE values, so the bounds are bound as strings like the others
+        if (condition.from != null) {
+          where.append(column).append(" >= ?");
+          params.add(condition.from.toString());
+        }
+        if (condition.to != null) {
+          where.append(condition.from != null ? " AND " : "").append(column).append(" <= ?");
+          params.add(condition.to.toString());
+        }
+      } else if (condition.exact) {
+        where.append(column).append(" = ?");
+        params.add(condition.value);
+      } else {
+        // The tables use a case-insensitive collation, so LIKE matches regardless of case
+        where.append(column).append(" LIKE ?");
+        params.add("%" + escapeLike(condition.value) + "%");
+      }
+    }
+    return where.toString();
+  }
+
+  /**
+   * Escapes the LIKE wildcards in a search term so they match literally, using MariaDB's default
+   * LIKE escape character.
+   *
+   * @param term The search term typed by the user
+   * @return The term with backslash, percent and underscore escaped
+   */
+  static String escapeLike(String term) {
+    return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof FilterCriteria)) {
+      return false;
+    }
+    // Map equality ignores the order the conditions were added in
+    return conditions.equals(((FilterCriteria) other).conditions);
+  }
+
+  @Override
+  public int hashCode() {
+    return conditions.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder("FilterCriteria[");
+    for (Map.Entry<String, Condition> entry : conditions.entrySet()) {
+      if (text.charAt(text.length() - 1) != '[') {
+        text.append(", ");
+      }
+      Condition condition = entry.getValue();
+      text.append(entry.getKey());
+      if (condition.isRange()) {
+        text.append(" between ").append(condition.from).append(" and ").append(condition.to);
+      } else {
+        text.append(condition.exact ? " = " : " contains ").append(condition.value);
+      }
+    }
+    return text.append(']').toString();
+  }
+}
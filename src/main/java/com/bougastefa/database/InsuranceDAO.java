@@ -3,7 +3,9 @@ package com.bougastefa.database;
 import com.bougastefa.models.Insurance;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object (DAO) class for Insurance entities.
@@ -12,10 +14,41 @@ import java.util.List;
  * insurance provider data without direct SQL manipulation.
  */
 public class InsuranceDAO {
+  /** Number of rows sent to the database per batch by the upsert methods */
+  private static final int UPSERT_BATCH_SIZE = 500;
+
+  /** Columns read by every Insurance query, in the order {@link #ROW_MAPPER} expects them */
+  static final String COLUMNS = "insuranceID, company, address, phone";
+
+  /** Maps a row selected with {@link #COLUMNS} to an Insurance */
+  static final RowMapper<Insurance> ROW_MAPPER =
+      rs -> new Insurance(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4));
+
+  /**
+   * Filter field names accepted by {@link #getFilteredInsurances} and the columns they match; the
+   * in-memory list of providers accepts the same fields
+   */
+  public static final Map<String, String> FILTER_COLUMNS =
+      Map.of(
+          "insuranceId", "insuranceID",
+          "company", "company",
+          "address", "address",
+          "phone", "phone");
+
+  /**
+   * Sort field names accepted by {@link #getFilteredInsurances(FilterCriteria, SortSpec)} and the
+   * columns they sort by; each column is the first column of an index
+   */
+  public static final Map<String, String> SORT_COLUMNS =
+      Map.of(
+          "insuranceId", "insuranceID",
+          "company", "company");
+
   /**
    * Inserts a new insurance record into the database.
    *
    * @param insurance The insurance object to be added to the database
+   * @throws DuplicateKeyException If an insurance with the same ID already exists
    * @throws SQLException If a database access error occurs
    */
   public void addInsurance(Insurance insurance) throws SQLException {
@@ -27,7 +60,13 @@ public class InsuranceDAO {
       stmt.setString(2, insurance.getCompany());
       stmt.setString(3, insurance.getAddress());
       stmt.setString(4, insurance.getPhone());
-      stmt.executeUpdate();
+      try {
+        stmt.executeUpdate();
+      } catch (SQLException e) {
+        // The primary key rejects duplicates, so no existence check is needed beforehand
+        throw DuplicateKeyException.translate(
+            e, "Insurance ID already exists: " + insurance.getInsuranceId());
+      }
     }
   }
 
@@ -39,20 +78,127 @@ public class InsuranceDAO {
    */
   public List<Insurance> getAllInsurances() throws SQLException {
     List<Insurance> insurances = new ArrayList<>();
-    String sql = "SELECT * FROM Insurance";
+    String sql = "SELECT " + COLUMNS + " FROM Insurance";
     // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         Statement stmt = conn.createStatement();
         ResultSet rs = stmt.executeQuery(sql)) {
       while (rs.next()) {
         // Create a new insurance object for each row
-        Insurance insurance =
-            new Insurance(
-                rs.getString("insuranceID"),
-                rs.getString("company"),
-                rs.getString("address"),
-                rs.getString("phone"));
-        insurances.add(insurance);
+        insurances.add(ROW_MAPPER.mapRow(rs));
+      }
+    }
+    return insurances;
+  }
+
+  /**
+   * Retrieves the insurances matching the filter criteria, in the default order.
+   *
+   * @param criteria The filter conditions; empty criteria return every insurance
+   * @return A List of the matching insurances
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Insurance> getFilteredInsurances(FilterCriteria criteria) throws SQLException {
+    return getFilteredInsurances(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the insurances matching the filter criteria, sorted by the database. The conditions
+   * are applied in SQL, so only matching rows are transferred. Conditions on fields this DAO does
+   * not map to a column are ignored and left to the caller.
+   *
+   * @param criteria The filter conditions; empty criteria return every insurance
+   * @param sort The sort order; the default order if none
+   * @return A List of the matching insurances
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Insurance> getFilteredInsurances(FilterCriteria criteria, SortSpec sort)
+      throws SQLException {
+    List<Insurance> insurances = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    String sql =
+        "SELECT " + COLUMNS + " FROM Insurance"
+            + criteria.toWhereClause(FILTER_COLUMNS, params)
+            + sort.toOrderByClause(SORT_COLUMNS, "insuranceID");
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          insurances.add(ROW_MAPPER.mapRow(rs));
+        }
+      }
+    }
+    return insurances;
+  }
+
+  /**
+   * Counts all insurance records without transferring them.
+   *
+   * @return The number of insurances in the database
+   * @throws SQLException If a database access error occurs
+   */
+  public long countInsurances() throws SQLException {
+    return countFilteredInsurances(FilterCriteria.none());
+  }
+
+  /**
+   * Counts the insurances matching the filter criteria without transferring them. Conditions on
+   * fields this DAO does not map to a column are ignored, as in {@link
+   * #getFilteredInsurances(FilterCriteria)}, so the caller's own filtering may leave fewer rows.
+   *
+   * @param criteria The filter conditions; empty criteria count every insurance
+   * @return The number of matching insurances
+   * @throws SQLException If a database access error occurs
+   */
+  public long countFilteredInsurances(FilterCriteria criteria) throws SQLException {
+    List<String> params = new ArrayList<>();
+    String sql = "SELECT COUNT(*) FROM Insurance" + criteria.toWhereClause(FILTER_COLUMNS, params);
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        return rs.getLong(1);
+      }
+    }
+  }
+
+  /**
+   * Retrieves one page of insurances in insurance ID order, using the primary key as the cursor
+   * instead of an OFFSET, so every page costs the same however deep into the table it is.
+   * Pass the ID of the last insurance of the previous page to get the next one.
+   *
+   * @param afterInsuranceId The ID of the last insurance already read, or null for the first page
+   * @param limit The maximum number of insurances to return
+   * @return The next page of at most limit insurances; an empty list after the last page
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Insurance> getInsurancesPage(String afterInsuranceId, int limit) throws SQLException {
+    List<Insurance> insurances = new ArrayList<>();
+    String sql =
+        afterInsuranceId == null
+            ? "SELECT " + COLUMNS + " FROM Insurance ORDER BY insuranceID LIMIT ?"
+            : "SELECT " + COLUMNS + " FROM Insurance WHERE insuranceID > ?"
+                + " ORDER BY insuranceID LIMIT ?";
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      int index = 1;
+      if (afterInsuranceId != null) {
+        stmt.setString(index++, afterInsuranceId);
+      }
+      stmt.setInt(index, limit);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          insurances.add(ROW_MAPPER.mapRow(rs));
+        }
       }
     }
     return insurances;
@@ -66,24 +212,33 @@ public class InsuranceDAO {
    * @throws SQLException If a database access error occurs
    */
   public Insurance getInsuranceById(String insuranceId) throws SQLException {
-    String sql = "SELECT * FROM Insurance WHERE insuranceID = ?";
+    String sql = "SELECT " + COLUMNS + " FROM Insurance WHERE insuranceID = ?";
     // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         PreparedStatement stmt = conn.prepareStatement(sql)) {
       stmt.setString(1, insuranceId);
       try (ResultSet rs = stmt.executeQuery()) {
         if (rs.next()) {
-          return new Insurance(
-              rs.getString("insuranceID"),
-              rs.getString("company"),
-              rs.getString("address"),
-              rs.getString("phone"));
+          return ROW_MAPPER.mapRow(rs);
         }
       }
     }
     return null;
   }
 
+  /**
+   * Retrieves the insurance providers with the given IDs from the primary database, for
+   * refreshing the providers another client has just changed.
+   *
+   * @param insuranceIds The IDs of the insurance providers to retrieve
+   * @return The providers found, in no particular order; unknown IDs are left out
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Insurance> getInsurancesByIds(Collection<String> insuranceIds) throws SQLException {
+    return KeyListQuery.readByIds(
+        "SELECT " + COLUMNS + " FROM Insurance", "insuranceID", insuranceIds, ROW_MAPPER);
+  }
+
   /**
    * Updates an existing insurance record in the database.
    *
@@ -118,4 +273,41 @@ public class InsuranceDAO {
       stmt.executeUpdate();
     }
   }
+
+  /**
+   * Inserts or updates a batch of insurances in a single transaction, for bulk synchronisation
+   * jobs. Insurances whose ID already exists are overwritten with the given values instead of
+   * being rejected.
+   *
+   * @param insurances The insurances to insert or update
+   * @throws SQLException If a database access error occurs; nothing is written in that case
+   */
+  public void upsertInsurances(List<Insurance> insurances) throws SQLException {
+    String sql =
+        "INSERT INTO Insurance (insuranceID, company, address, phone) VALUES (?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE company = VALUES(company), address = VALUES(address),"
+            + " phone = VALUES(phone)";
+    TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int pending = 0;
+            for (Insurance insurance : insurances) {
+              stmt.setString(1, insurance.getInsuranceId());
+              stmt.setString(2, insurance.getCompany());
+              stmt.setString(3, insurance.getAddress());
+              stmt.setString(4, insurance.getPhone());
+              stmt.addBatch();
+              if (++pending == UPSERT_BATCH_SIZE) {
+                stmt.executeBatch();
+                pending = 0;
+              }
+            }
+            if (pending > 0) {
+              stmt.executeBatch();
+            }
+          }
+          return null;
+        });
+  }
 }
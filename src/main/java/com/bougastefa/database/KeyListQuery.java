@@ -0,0 +1,109 @@
+package com.bougastefa.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Reads the rows with the given keys through an IN list, for the DAO methods that fetch the rows
+ * the change poller reported as written. The keys are split into as few queries as MariaDB's
+ * limit on placeholders allows.
+ *
+ * <p>The rows are read from the primary database: the poller found the changes there, and a
+ * replica that has not received them yet would return old rows, or none for new ones, which the
+ * caller would take for deleted.
+ */
+final class KeyListQuery {
+  /**
+   * Most values bound to one query; MariaDB accepts at most 65535 placeholders per prepared
+   * statement
+   */
+  private static final int MAX_PARAMETERS = 65_000;
+
+  private KeyListQuery() {}
+
+  /**
+   * Reads the rows whose key column holds one of the IDs.
+   *
+   * @param select The query up to, not including, its WHERE clause
+   * @param idColumn The column the IDs are matched against
+   * @param ids The IDs; duplicates are read once
+   * @param mapper Maps each row
+   * @param <T> The row type
+   * @return The rows found, in no particular order
+   * @throws SQLException If a database access error occurs
+   */
+  static <T> List<T> readByIds(
+      String select, String idColumn, Collection<String> ids, RowMapper<T> mapper)
+      throws SQLException {
+    List<String[]> keys = new ArrayList<>();
+    for (String id : new LinkedHashSet<>(ids)) {
+      keys.add(new String[] {id});
+    }
+    return readByKeys(select, idColumn, keys, null, List.of(), mapper);
+  }
+
+  /**
+   * Reads the rows whose key columns hold one of the keys and that match a further condition.
+   *
+   * @param select The query up to, not including, its WHERE clause
+   * @param keyColumns The key column, or the parenthesized columns of a composite key, e.g.
+   *     "(patientID, doctorID, dateOfVisit)"
+   * @param keys The keys, each with one value per key column
+   * @param condition A condition the rows must also match, or null
+   * @param conditionParams The values bound to the placeholders of the condition
+   * @param mapper Maps each row
+   * @param <T> The row type
+   * @return The rows found, in no particular order
+   * @throws SQLException If a database access error occurs
+   */
+  static <T> List<T> readByKeys(
+      String select,
+      String keyColumns,
+      List<String[]> keys,
+      String condition,
+      List<String> conditionParams,
+      RowMapper<T> mapper)
+      throws SQLException {
+    List<T> rows = new ArrayList<>();
+    if (keys.isEmpty()) {
+      return rows;
+    }
+    int width = keys.get(0).length;
+    String placeholder =
+        width == 1 ? "?" : "(" + String.join(", ", Collections.nCopies(width, "?")) + ")";
+    int chunkSize = (MAX_PARAMETERS - conditionParams.size()) / width;
+    try (Connection conn = DatabaseConnection.getPrimaryReadConnection()) {
+      for (int from = 0; from < keys.size(); from += chunkSize) {
+        List<String[]> chunk = keys.subList(from, Math.min(from + chunkSize, keys.size()));
+        String sql =
+            select + " WHERE " + keyColumns + " IN ("
+                + String.join(", ", Collections.nCopies(chunk.size(), placeholder)) + ")"
+                + (condition == null ? "" : " AND " + condition);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+          int index = 1;
+          for (String[] key : chunk) {
+            for (String value : key) {
+              stmt.setString(index++, value);
+            }
+          }
+          for (String param : conditionParams) {
+            stmt.setString(index++, param);
+          }
+          try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+              rows.add(mapper.mapRow(rs));
+            }
+          }
+        }
+      }
+    }
+    return rows;
+  }
+}
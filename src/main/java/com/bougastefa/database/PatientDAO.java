@@ -4,7 +4,10 @@ import com.bougastefa.models.InsuredPatient;
 import com.bougastefa.models.Patient;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Data Access Object (DAO) class for handling database operations related to Patient entities.
@@ -12,11 +15,72 @@ import java.util.List;
  * on the Patient table in the database.
  */
 public class PatientDAO {
+  /** Number of rows sent to the database per batch by the upsert methods */
+  private static final int UPSERT_BATCH_SIZE = 500;
+
+  /** Columns read by every Patient query, in the order {@link #ROW_MAPPER} expects them */
+  static final String COLUMNS =
+      "patientID, firstname, surname, postcode, address, phone, email, insuranceID";
+
+  /**
+   * Maps a row selected with {@link #COLUMNS} to an InsuredPatient when an insurance ID is set
+   * and to a plain Patient otherwise.
+   */
+  static final RowMapper<Patient> ROW_MAPPER =
+      rs -> {
+        String insuranceId = rs.getString(8);
+        // The model constructors take email before phone
+        if (insuranceId != null) {
+          return new InsuredPatient(
+              rs.getString(1),
+              rs.getString(2),
+              rs.getString(3),
+              rs.getString(4),
+              rs.getString(5),
+              rs.getString(7),
+              rs.getString(6),
+              insuranceId);
+        }
+        return new Patient(
+            rs.getString(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getString(4),
+            rs.getString(5),
+            rs.getString(7),
+            rs.getString(6));
+      };
+
+  /** Filter field names accepted by {@link #getFilteredPatients} and the columns they match */
+  private static final Map<String, String> FILTER_COLUMNS =
+      Map.of(
+          "patientId", "patientID",
+          "firstName", "firstname",
+          "surname", "surname",
+          "postcode", "postcode",
+          "address", "address",
+          "phone", "phone",
+          "email", "email",
+          "insuranceId", "insuranceID");
+
+  /**
+   * Sort field names accepted by {@link #getFilteredPatients(FilterCriteria, SortSpec)} and the
+   * columns they sort by; each column is the first column of an index
+   */
+  private static final Map<String, String> SORT_COLUMNS =
+      Map.of(
+          "patientId", "patientID",
+          "firstName", "firstname",
+          "surname", "surname",
+          "postcode", "postcode",
+          "insuranceId", "insuranceID");
+
   /**
    * Adds a new patient to the database.
    * Handles both regular patients and insured patients with different SQL statements.
    *
    * @param patient The patient object to be added to the database
+   * @throws DuplicateKeyException If a patient with the same ID already exists
    * @throws SQLException If a database access error occurs
    */
   public void addPatient(Patient patient) throws SQLException {
@@ -50,7 +114,13 @@ public class PatientDAO {
         stmt.setString(8, insuredPatient.getInsuranceId());
       }
 
-      stmt.executeUpdate();
+      try {
+        stmt.executeUpdate();
+      } catch (SQLException e) {
+        // The primary key rejects duplicates, so no existence check is needed beforehand
+        throw DuplicateKeyException.translate(
+            e, "Patient with ID " + patient.getPatientId() + " already exists");
+      }
     }
   }
 
@@ -63,32 +133,139 @@ public class PatientDAO {
    */
   public List<Patient> getAllPatients() throws SQLException {
     List<Patient> patients = new ArrayList<>();
-    String sql = "SELECT * FROM Patient";
-    
-    try (Connection conn = DatabaseConnection.getConnection();
+    String sql = "SELECT " + COLUMNS + " FROM Patient";
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
         Statement stmt = conn.createStatement();
         ResultSet rs = stmt.executeQuery(sql)) {
       while (rs.next()) {
-        // Extract patient data from the current row
-        String patientid = rs.getString("patientID");
-        String firstname = rs.getString("firstname");
-        String surname = rs.getString("surname");
-        String postcode = rs.getString("postcode");
-        String address = rs.getString("address");
-        String phone = rs.getString("phone");
-        String email = rs.getString("email");
-        String insuranceid = rs.getString("insuranceID");
-
-        Patient patient;
-        // Create either an InsuredPatient or regular Patient object based on insuranceID presence
-        if (insuranceid != null) {
-          patient =
-              new InsuredPatient(
-                  patientid, firstname, surname, postcode, address, email, phone, insuranceid);
-        } else {
-          patient = new Patient(patientid, firstname, surname, postcode, address, email, phone);
+        patients.add(ROW_MAPPER.mapRow(rs));
+      }
+    }
+    return patients;
+  }
+
+  /**
+   * Retrieves the patients matching the filter criteria, in the default order.
+   *
+   * @param criteria The filter conditions; empty criteria return every patient
+   * @return A List of the matching patients
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Patient> getFilteredPatients(FilterCriteria criteria) throws SQLException {
+    return getFilteredPatients(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the patients matching the filter criteria, sorted by the database. The conditions are
+   * applied in SQL, so only matching rows are transferred. Conditions on fields this DAO does not
+   * map to a column are ignored and left to the caller.
+   *
+   * @param criteria The filter conditions; empty criteria return every patient
+   * @param sort The sort order; the default order if none
+   * @return A List of the matching patients
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Patient> getFilteredPatients(FilterCriteria criteria, SortSpec sort)
+      throws SQLException {
+    List<Patient> patients = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    String sql =
+        "SELECT " + COLUMNS + " FROM Patient"
+            + criteria.toWhereClause(FILTER_COLUMNS, params)
+            + sort.toOrderByClause(SORT_COLUMNS, "patientID");
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          patients.add(ROW_MAPPER.mapRow(rs));
+        }
+      }
+    }
+    return patients;
+  }
+
+  /**
+   * Counts all patient records without transferring them.
+   *
+   * @return The number of patients in the database
+   * @throws SQLException If a database access error occurs
+   */
+  public long countPatients() throws SQLException {
+    return countFilteredPatients(FilterCriteria.none());
+  }
+
+  /**
+   * Reads every patient ID and passes it to the action one row at a time, without holding the IDs
+   * in memory. Rows are fetched from the server in chunks of {@value StreamingQuery#FETCH_SIZE}, in
+   * no particular order. The connection is held until the last ID has been processed, so the action
+   * should not call back into the DAOs.
+   *
+   * @param action Called once for each patient ID
+   * @throws SQLException If a database access error occurs
+   */
+  public void forEachPatientId(Consumer<? super String> action) throws SQLException {
+    StreamingQuery.forEach("SELECT patientID FROM Patient", rs -> rs.getString(1), action);
+  }
+
+  /**
+   * Counts the patients matching the filter criteria without transferring them. Conditions on
+   * fields this DAO does not map to a column are ignored, as in {@link
+   * #getFilteredPatients(FilterCriteria)}, so the caller's own filtering may leave fewer rows.
+   *
+   * @param criteria The filter conditions; empty criteria count every patient
+   * @return The number of matching patients
+   * @throws SQLException If a database access error occurs
+   */
+  public long countFilteredPatients(FilterCriteria criteria) throws SQLException {
+    List<String> params = new ArrayList<>();
+    String sql = "SELECT COUNT(*) FROM Patient" + criteria.toWhereClause(FILTER_COLUMNS, params);
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        return rs.getLong(1);
+      }
+    }
+  }
+
+  /**
+   * Retrieves one page of patients in patient ID order, using the primary key as the cursor
+   * instead of an OFFSET, so every page costs the same however deep into the table it is.
+   * Pass the ID of the last patient of the previous page to get the next one.
+   *
+   * @param afterPatientId The ID of the last patient already read, or null for the first page
+   * @param limit The maximum number of patients to return
+   * @return The next page of at most limit patients; an empty list after the last page
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Patient> getPatientsPage(String afterPatientId, int limit) throws SQLException {
+    List<Patient> patients = new ArrayList<>();
+    String sql =
+        afterPatientId == null
+            ? "SELECT " + COLUMNS + " FROM Patient ORDER BY patientID LIMIT ?"
+            : "SELECT " + COLUMNS + " FROM Patient WHERE patientID > ?"
+                + " ORDER BY patientID LIMIT ?";
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      int index = 1;
+      if (afterPatientId != null) {
+        stmt.setString(index++, afterPatientId);
+      }
+      stmt.setInt(index, limit);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          patients.add(ROW_MAPPER.mapRow(rs));
         }
-        patients.add(patient);
       }
     }
     return patients;
@@ -102,35 +279,14 @@ public class PatientDAO {
    * @throws SQLException If a database access error occurs
    */
   public Patient getPatientById(String patientId) throws SQLException {
-    String sql = "SELECT * FROM Patient WHERE patientID = ?";
-    
-    try (Connection conn = DatabaseConnection.getConnection();
+    String sql = "SELECT " + COLUMNS + " FROM Patient WHERE patientID = ?";
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
         PreparedStatement stmt = conn.prepareStatement(sql)) {
       stmt.setString(1, patientId);
       try (ResultSet rs = stmt.executeQuery()) {
         if (rs.next()) {
-          String insuranceId = rs.getString("insuranceID");
-          // Return appropriate patient type based on whether insurance ID exists
-          if (insuranceId != null) {
-            return new InsuredPatient(
-                rs.getString("patientID"),
-                rs.getString("firstname"),
-                rs.getString("surname"),
-                rs.getString("postcode"),
-                rs.getString("address"),
-                rs.getString("email"),
-                rs.getString("phone"),
-                insuranceId);
-          } else {
-            return new Patient(
-                rs.getString("patientID"),
-                rs.getString("firstname"),
-                rs.getString("surname"),
-                rs.getString("postcode"),
-                rs.getString("address"),
-                rs.getString("email"),
-                rs.getString("phone"));
-          }
+          return ROW_MAPPER.mapRow(rs);
         }
       }
     }
@@ -138,6 +294,19 @@ public class PatientDAO {
     return null;
   }
 
+  /**
+   * Retrieves the patients with the given IDs, with one query per 65,000 IDs instead of one per
+   * patient. The rows are read from the primary database, so those written a moment ago are found.
+   *
+   * @param patientIds The IDs of the patients to retrieve
+   * @return The patients found, in no particular order; IDs with no patient are left out
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Patient> getPatientsByIds(Collection<String> patientIds) throws SQLException {
+    return KeyListQuery.readByIds(
+        "SELECT " + COLUMNS + " FROM Patient", "patientID", patientIds, ROW_MAPPER);
+  }
+
   /**
    * Updates an existing patient's information in the database.
    * Uses different SQL statements depending on whether the patient is insured.
@@ -195,4 +364,51 @@ public class PatientDAO {
       stmt.executeUpdate();
     }
   }
+
+  /**
+   * Inserts or updates a batch of patients in a single transaction, for bulk synchronisation jobs.
+   * Patients whose ID already exists are overwritten with the given values instead of being
+   * rejected; patients that are not insured have their insurance ID cleared.
+   *
+   * @param patients The patients to insert or update
+   * @throws SQLException If a database access error occurs; no patient is written in that case
+   */
+  public void upsertPatients(List<Patient> patients) throws SQLException {
+    String sql =
+        "INSERT INTO Patient (patientID, firstname, surname, postcode, address, phone, email,"
+            + " insuranceID) VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE"
+            + " firstname = VALUES(firstname), surname = VALUES(surname),"
+            + " postcode = VALUES(postcode), address = VALUES(address), phone = VALUES(phone),"
+            + " email = VALUES(email), insuranceID = VALUES(insuranceID)";
+    TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int pending = 0;
+            for (Patient patient : patients) {
+              stmt.setString(1, patient.getPatientId());
+              stmt.setString(2, patient.getFirstName());
+              stmt.setString(3, patient.getSurname());
+              stmt.setString(4, patient.getPostcode());
+              stmt.setString(5, patient.getAddress());
+              stmt.setString(6, patient.getPhone());
+              stmt.setString(7, patient.getEmail());
+              if (patient instanceof InsuredPatient) {
+                stmt.setString(8, ((InsuredPatient) patient).getInsuranceId());
+              } else {
+                stmt.setNull(8, Types.VARCHAR);
+              }
+              stmt.addBatch();
+              if (++pending == UPSERT_BATCH_SIZE) {
+                stmt.executeBatch();
+                pending = 0;
+              }
+            }
+            if (pending > 0) {
+              stmt.executeBatch();
+            }
+          }
+          return null;
+        });
+  }
 }
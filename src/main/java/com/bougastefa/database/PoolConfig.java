@@ -0,0 +1,140 @@
+package com.bougastefa.database;
+
+import java.util.Properties;
+
+/**
+ * Immutable configuration for the {@link ConnectionPool}. Values are read from the
+ * {@code db.pool.*} keys of {@code db.properties}; any key that is missing falls back to a
+ * conservative default so existing configuration files keep working unchanged.
+ */
+public class PoolConfig {
+  /** Number of connections the pool tries to keep open at all times */
+  private final int minSize;
+  /** Hard upper bound on the number of open connections */
+  private final int maxSize;
+  /** How long a caller waits for a free connection before giving up */
+  private final long acquireTimeoutMillis;
+  /** Idle connections above the minimum are closed after this long without use */
+  private final long idleTimeoutMillis;
+  /** How often the background task checks for idle connections to evict */
+  private final long evictionIntervalMillis;
+  /** Whether connections are checked with {@link java.sql.Connection#isValid} when borrowed */
+  private final boolean validateOnBorrow;
+  /** Connections returned more recently than this are handed out without being validated */
+  private final long validationIntervalMillis;
+  /** Timeout passed to {@link java.sql.Connection#isValid} */
+  private final int validationTimeoutSeconds;
+  /** Number of prepared statements kept open per connection; 0 disables statement caching */
+  private final int statementCacheSize;
+
+  private PoolConfig(Properties props) {
+    this.minSize = getInt(props, "db.pool.minSize", 2);
+    this.maxSize = getInt(props, "db.pool.maxSize", 10);
+    this.acquireTimeoutMillis = getLong(props, "db.pool.acquireTimeoutMs", 5000);
+    this.idleTimeoutMillis = getLong(props, "db.pool.idleTimeoutMs", 300000);
+    this.evictionIntervalMillis = getLong(props, "db.pool.evictionIntervalMs", 60000);
+    this.validateOnBorrow =
+        Boolean.parseBoolean(props.getProperty("db.pool.validateOnBorrow", "true").trim());
+    this.validationIntervalMillis = getLong(props, "db.pool.validationIntervalMs", 1000);
+    this.validationTimeoutSeconds = getInt(props, "db.pool.validationTimeoutSeconds", 2);
+    this.statementCacheSize = getInt(props, "db.pool.statementCacheSize", 64);
+
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("db.pool.maxSize must be at least 1");
+    }
+    if (minSize < 0 || minSize > maxSize) {
+      throw new IllegalArgumentException("db.pool.minSize must be between 0 and db.pool.maxSize");
+    }
+    if (statementCacheSize < 0) {
+      throw new IllegalArgumentException("db.pool.statementCacheSize must not be negative");
+    }
+    if (evictionIntervalMillis <= 0) {
+      throw new IllegalArgumentException("db.pool.evictionIntervalMs must be positive");
+    }
+    if (acquireTimeoutMillis < 0) {
+      throw new IllegalArgumentException("db.pool.acquireTimeoutMs must not be negative");
+    }
+    if (idleTimeoutMillis < 0) {
+      throw new IllegalArgumentException("db.pool.idleTimeoutMs must not be negative");
+    }
+    if (validationIntervalMillis < 0) {
+      throw new IllegalArgumentException("db.pool.validationIntervalMs must not be negative");
+    }
+    if (validationTimeoutSeconds < 0) {
+      throw new IllegalArgumentException("db.pool.validationTimeoutSeconds must not be negative");
+    }
+  }
+
+  /**
+   * Builds a pool configuration from the given properties.
+   *
+   * @param props The properties loaded from db.properties
+   * @return The pool configuration
+   * @throws IllegalArgumentException If a value is not a number or is out of range, or the sizes
+   *     are inconsistent
+   */
+  public static PoolConfig fromProperties(Properties props) {
+    return new PoolConfig(props);
+  }
+
+  private static int getInt(Properties props, String key, int defaultValue) {
+    String value = props.getProperty(key);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          key + " must be a whole number up to " + Integer.MAX_VALUE + ": " + value, e);
+    }
+  }
+
+  private static long getLong(Properties props, String key, long defaultValue) {
+    String value = props.getProperty(key);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(key + " must be a number: " + value, e);
+    }
+  }
+
+  public int getMinSize() {
+    return minSize;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public long getAcquireTimeoutMillis() {
+    return acquireTimeoutMillis;
+  }
+
+  public long getIdleTimeoutMillis() {
+    return idleTimeoutMillis;
+  }
+
+  public long getEvictionIntervalMillis() {
+    return evictionIntervalMillis;
+  }
+
+  public boolean isValidateOnBorrow() {
+    return validateOnBorrow;
+  }
+
+  public long getValidationIntervalMillis() {
+    return validationIntervalMillis;
+  }
+
+  public int getValidationTimeoutSeconds() {
+    return validationTimeoutSeconds;
+  }
+
+  public int getStatementCacheSize() {
+    return statementCacheSize;
+  }
+}
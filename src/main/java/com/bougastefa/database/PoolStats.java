@@ -0,0 +1,127 @@
+package com.bougastefa.database;
+
+/**
+ * Point-in-time snapshot of the {@link ConnectionPool} counters. Instances are immutable, so they
+ * can be logged or displayed without holding any pool locks.
+ */
+public class PoolStats {
+  private final int totalConnections;
+  private final int idleConnections;
+  private final int activeConnections;
+  private final int waitingThreads;
+  private final long borrowCount;
+  private final long timeoutCount;
+  private final long createdCount;
+  private final long destroyedCount;
+  private final long validationFailureCount;
+  private final long totalAcquireNanos;
+  private final long statementCacheHits;
+  private final long statementCacheMisses;
+
+  PoolStats(
+      int totalConnections,
+      int idleConnections,
+      int activeConnections,
+      int waitingThreads,
+      long borrowCount,
+      long timeoutCount,
+      long createdCount,
+      long destroyedCount,
+      long validationFailureCount,
+      long totalAcquireNanos,
+      long statementCacheHits,
+      long statementCacheMisses) {
+    this.totalConnections = totalConnections;
+    this.idleConnections = idleConnections;
+    this.activeConnections = activeConnections;
+    this.waitingThreads = waitingThreads;
+    this.borrowCount = borrowCount;
+    this.timeoutCount = timeoutCount;
+    this.createdCount = createdCount;
+    this.destroyedCount = destroyedCount;
+    this.validationFailureCount = validationFailureCount;
+    this.totalAcquireNanos = totalAcquireNanos;
+    this.statementCacheHits = statementCacheHits;
+    this.statementCacheMisses = statementCacheMisses;
+  }
+
+  /** @return Number of open physical connections, both idle and in use */
+  public int getTotalConnections() {
+    return totalConnections;
+  }
+
+  /** @return Number of open connections waiting in the pool */
+  public int getIdleConnections() {
+    return idleConnections;
+  }
+
+  /** @return Number of connections currently borrowed by callers */
+  public int getActiveConnections() {
+    return activeConnections;
+  }
+
+  /** @return Number of threads blocked waiting for a connection */
+  public int getWaitingThreads() {
+    return waitingThreads;
+  }
+
+  /** @return Number of successful borrows since the pool was created */
+  public long getBorrowCount() {
+    return borrowCount;
+  }
+
+  /** @return Number of borrows that gave up after the acquire timeout */
+  public long getTimeoutCount() {
+    return timeoutCount;
+  }
+
+  /** @return Number of physical connections opened since the pool was created */
+  public long getCreatedCount() {
+    return createdCount;
+  }
+
+  /** @return Number of physical connections closed since the pool was created */
+  public long getDestroyedCount() {
+    return destroyedCount;
+  }
+
+  /** @return Number of idle connections discarded because validation failed */
+  public long getValidationFailureCount() {
+    return validationFailureCount;
+  }
+
+  /** @return Average time spent waiting for a connection, in milliseconds */
+  public double getAverageAcquireMillis() {
+    return borrowCount == 0 ? 0.0 : totalAcquireNanos / 1_000_000.0 / borrowCount;
+  }
+
+  /** @return Number of prepareStatement calls served from a connection's statement cache */
+  public long getStatementCacheHits() {
+    return statementCacheHits;
+  }
+
+  /** @return Number of prepareStatement calls that had to prepare a new statement */
+  public long getStatementCacheMisses() {
+    return statementCacheMisses;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "PoolStats[total=%d, idle=%d, active=%d, waiting=%d, borrows=%d, timeouts=%d,"
+            + " created=%d, destroyed=%d, validationFailures=%d, avgAcquireMs=%.3f,"
+            + " statementCacheHits=%d, statementCacheMisses=%d]",
+        totalConnections,
+        idleConnections,
+        activeConnections,
+        waitingThreads,
+        borrowCount,
+        timeoutCount,
+        createdCount,
+        destroyedCount,
+        validationFailureCount,
+        getAverageAcquireMillis(),
+        statementCacheHits,
+        statementCacheMisses);
+  }
+}
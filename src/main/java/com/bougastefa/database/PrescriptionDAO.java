@@ -1,20 +1,123 @@
 package com.bougastefa.database;
 
 import com.bougastefa.models.Prescription;
+import com.bougastefa.models.PrescriptionView;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object (DAO) class for managing Prescription entities in the database.
  * Provides methods for performing CRUD operations (Create, Read, Update, Delete)
  * on the Prescription table in the database.
+ *
+ * <p>The filtered queries only return prescriptions dated since {@link
+ * ArchiveMaintenance#getRecentCutoff()}, and undated ones, unless the caller asks for history;
+ * history queries also read the prescriptions that have been moved to PrescriptionArchive. Lookups
+ * by ID and the paging and streaming methods read the Prescription table as it is.
  */
 public class PrescriptionDAO {
+  /** Number of rows sent to the database per batch by the upsert methods */
+  private static final int UPSERT_BATCH_SIZE = 500;
+
+  /** Columns read by every Prescription query, in the order {@link #ROW_MAPPER} expects them */
+  static final String COLUMNS =
+      "prescriptionID, dateprescribed, dosage, duration, comment, drugID, doctorID, patientID";
+
+  /** Maps a row selected with {@link #COLUMNS} to a Prescription */
+  static final RowMapper<Prescription> ROW_MAPPER =
+      rs -> {
+        Date dateprescribed = rs.getDate(2);
+        return new Prescription(
+            rs.getString(1),
+            dateprescribed == null ? null : dateprescribed.toLocalDate(),
+            rs.getInt(3),
+            rs.getInt(4),
+            rs.getString(5),
+            rs.getString(6),
+            rs.getString(7),
+            rs.getString(8));
+      };
+
+  /**
+   * Prescriptions in Prescription and in PrescriptionArchive together, for the history queries,
+   * under the alias of the view query
+   */
+  private static final String ALL_PRESCRIPTIONS =
+      "(SELECT " + COLUMNS + " FROM Prescription"
+          + " UNION ALL SELECT " + COLUMNS + " FROM PrescriptionArchive) p";
+
+  /**
+   * Columns read by the prescription view query: the Prescription columns in {@link #COLUMNS}
+   * order, qualified with the table alias, followed by the drug, doctor and patient names
+   */
+  private static final String VIEW_COLUMNS =
+      "p.prescriptionID, p.dateprescribed, p.dosage, p.duration, p.comment, p.drugID,"
+          + " p.doctorID, p.patientID, dr.drugname, CONCAT_WS(' ', doc.firstname, doc.surname),"
+          + " CONCAT_WS(' ', pat.firstname, pat.surname)";
+
+  /**
+   * Joins the prescriptions, aliased p, with the tables they reference. LEFT JOINs keep
+   * prescriptions whose drug, doctor or patient no longer exists; their names are null.
+   */
+  private static final String VIEW_JOINS =
+      " LEFT JOIN Drug dr ON dr.drugID = p.drugID"
+          + " LEFT JOIN Doctor doc ON doc.doctorID = p.doctorID"
+          + " LEFT JOIN Patient pat ON pat.patientID = p.patientID";
+
+  /** Maps a row selected with {@link #VIEW_COLUMNS} to a PrescriptionView */
+  private static final RowMapper<PrescriptionView> VIEW_ROW_MAPPER =
+      rs -> {
+        // CONCAT_WS returns '' rather than null when the doctor or patient is missing
+        String doctorName = rs.getString(10);
+        String patientName = rs.getString(11);
+        return new PrescriptionView(
+            ROW_MAPPER.mapRow(rs),
+            rs.getString(9),
+            doctorName == null || doctorName.isEmpty() ? null : doctorName,
+            patientName == null || patientName.isEmpty() ? null : patientName);
+      };
+
+  /** Filter field names accepted by {@link #getFilteredPrescriptions} and the columns they match */
+  private static final Map<String, String> FILTER_COLUMNS =
+      Map.of(
+          "prescriptionId", "prescriptionID",
+          "drugId", "drugID",
+          "doctorId", "doctorID",
+          "patientId", "patientID",
+          "comment", "comment",
+          "datePrescribed", "dateprescribed");
+
+  /**
+   * Sort field names accepted by {@link #getFilteredPrescriptions(FilterCriteria, SortSpec)} and
+   * the columns they sort by; each column is the first column of an index
+   */
+  private static final Map<String, String> SORT_COLUMNS =
+      Map.of(
+          "prescriptionId", "prescriptionID",
+          "datePrescribed", "dateprescribed",
+          "drugId", "drugID",
+          "doctorId", "doctorID",
+          "patientId", "patientID");
+
+  /** {@link #FILTER_COLUMNS} qualified for the joined view query */
+  private static final Map<String, String> VIEW_FILTER_COLUMNS = qualify(FILTER_COLUMNS);
+
+  /** {@link #SORT_COLUMNS} qualified for the joined view query */
+  private static final Map<String, String> VIEW_SORT_COLUMNS = qualify(SORT_COLUMNS);
+
   /**
    * Inserts a new prescription record into the database.
    * 
    * @param prescription The Prescription object containing the data to be inserted
+   * @throws DuplicateKeyException If a prescription with the same ID already exists
    * @throws SQLException If a database access error occurs
    */
   public void addPrescription(Prescription prescription) throws SQLException {
@@ -33,7 +136,13 @@ public class PrescriptionDAO {
       stmt.setString(6, prescription.getDrugId());
       stmt.setString(7, prescription.getDoctorId());
       stmt.setString(8, prescription.getPatientId());
-      stmt.executeUpdate();
+      try {
+        stmt.executeUpdate();
+      } catch (SQLException e) {
+        // The primary key rejects duplicates, so no existence check is needed beforehand
+        throw DuplicateKeyException.translate(
+            e, "Prescription ID already exists: " + prescription.getPrescriptionId());
+      }
     }
   }
 
@@ -46,30 +155,347 @@ public class PrescriptionDAO {
   public List<Prescription> getAllPrescriptions() throws SQLException {
     List<Prescription> prescriptions = new ArrayList<>();
     // Retrieve all prescriptions in descending order of date prescribed
-    String sql = "SELECT * FROM Prescription ORDER BY dateprescribed DESC";
+    String sql = "SELECT " + COLUMNS + " FROM Prescription ORDER BY dateprescribed DESC";
 
     // Try-with-resources block to automatically close all database resources
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         Statement stmt = conn.createStatement();
         ResultSet rs = stmt.executeQuery(sql)) {
       while (rs.next()) {
         // Create a new prescription object for each row in the result set
-        Prescription prescription =
-            new Prescription(
-                rs.getString("prescriptionID"),
-                rs.getDate("dateprescribed").toLocalDate(),
-                rs.getInt("dosage"),
-                rs.getInt("duration"),
-                rs.getString("comment"),
-                rs.getString("drugID"),
-                rs.getString("doctorID"),
-                rs.getString("patientID"));
-        prescriptions.add(prescription);
+        prescriptions.add(ROW_MAPPER.mapRow(rs));
+      }
+    }
+    return prescriptions;
+  }
+
+  /**
+   * Retrieves the recent prescriptions matching the filter criteria, most recent first.
+   *
+   * @param criteria The filter conditions; empty criteria return every recent prescription
+   * @return A List of the matching prescriptions
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Prescription> getFilteredPrescriptions(FilterCriteria criteria) throws SQLException {
+    return getFilteredPrescriptions(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the recent prescriptions matching the filter criteria, sorted by the database.
+   *
+   * @param criteria The filter conditions; empty criteria return every recent prescription
+   * @param sort The sort order; most recent first if none
+   * @return A List of the matching prescriptions
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Prescription> getFilteredPrescriptions(FilterCriteria criteria, SortSpec sort)
+      throws SQLException {
+    return getFilteredPrescriptions(criteria, sort, false);
+  }
+
+  /**
+   * Retrieves the prescriptions matching the filter criteria, sorted by the database, or most
+   * recent first like {@link #getAllPrescriptions()} by default. The conditions are applied in SQL,
+   * so only matching rows are transferred. Conditions on fields this DAO does not map to a column
+   * are ignored and left to the caller.
+   *
+   * @param criteria The filter conditions; empty criteria return every prescription
+   * @param sort The sort order; the default order if none
+   * @param includeHistory true to include archived and expired prescriptions, false for recent
+   *     and undated prescriptions only
+   * @return A List of the matching prescriptions
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Prescription> getFilteredPrescriptions(
+      FilterCriteria criteria, SortSpec sort, boolean includeHistory) throws SQLException {
+    List<Prescription> prescriptions = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    String sql =
+        "SELECT " + COLUMNS + " FROM " + (includeHistory ? ALL_PRESCRIPTIONS : "Prescription")
+            + toWhereClause(criteria, FILTER_COLUMNS, "dateprescribed", params, includeHistory)
+            + (sort.isNone()
+                ? " ORDER BY dateprescribed DESC"
+                : sort.toOrderByClause(SORT_COLUMNS, "prescriptionID"));
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          prescriptions.add(ROW_MAPPER.mapRow(rs));
+        }
+      }
+    }
+    return prescriptions;
+  }
+
+  /**
+   * Retrieves the recent prescriptions dated between the two dates, both included, in date order.
+   *
+   * @param from The earliest date to include
+   * @param to The latest date to include
+   * @return A List of the recent prescriptions in the range, oldest first
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Prescription> getPrescriptionsBetween(LocalDate from, LocalDate to)
+      throws SQLException {
+    return getPrescriptionsBetween(from, to, false);
+  }
+
+  /**
+   * Retrieves the prescriptions dated between the two dates, both included, in date order. The
+   * range is applied in SQL and served by the index on dateprescribed.
+   *
+   * @param from The earliest date to include
+   * @param to The latest date to include
+   * @param includeHistory true to include archived and expired prescriptions, false for recent
+   *     prescriptions only
+   * @return A List of the prescriptions in the range, oldest first
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Prescription> getPrescriptionsBetween(
+      LocalDate from, LocalDate to, boolean includeHistory) throws SQLException {
+    return getFilteredPrescriptions(
+        FilterCriteria.none().between("datePrescribed", from, to),
+        SortSpec.ascending("datePrescribed"),
+        includeHistory);
+  }
+
+  /**
+   * Retrieves the recent prescriptions matching the filter criteria together with the names of
+   * their drug, doctor and patient.
+   *
+   * @param criteria The filter conditions; empty criteria return every recent prescription
+   * @param sort The sort order; most recent first if none
+   * @return A List of the matching prescriptions with their names
+   * @throws SQLException If a database access error occurs
+   */
+  public List<PrescriptionView> getFilteredPrescriptionViews(
+      FilterCriteria criteria, SortSpec sort) throws SQLException {
+    return getFilteredPrescriptionViews(criteria, sort, false);
+  }
+
+  /**
+   * Retrieves the prescriptions matching the filter criteria together with the names of their
+   * drug, doctor and patient, read in one query that joins the referenced tables, so the caller
+   * needs no lookup per row. Filtering and sorting work as in {@link
+   * #getFilteredPrescriptions(FilterCriteria, SortSpec)}.
+   *
+   * @param criteria The filter conditions; empty criteria return every prescription
+   * @param sort The sort order; most recent first if none
+   * @param includeHistory true to include archived and expired prescriptions, false for recent
+   *     and undated prescriptions only
+   * @return A List of the matching prescriptions with their names
+   * @throws SQLException If a database access error occurs
+   */
+  public List<PrescriptionView> getFilteredPrescriptionViews(
+      FilterCriteria criteria, SortSpec sort, boolean includeHistory) throws SQLException {
+    List<PrescriptionView> views = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    String sql =
+        "SELECT " + VIEW_COLUMNS
+            + " FROM " + (includeHistory ? ALL_PRESCRIPTIONS : "Prescription p") + VIEW_JOINS
+            + toWhereClause(
+                criteria, VIEW_FILTER_COLUMNS, "p.dateprescribed", params, includeHistory)
+            + (sort.isNone()
+                ? " ORDER BY p.dateprescribed DESC"
+                : sort.toOrderByClause(VIEW_SORT_COLUMNS, "p.prescriptionID"));
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          views.add(VIEW_ROW_MAPPER.mapRow(rs));
+        }
+      }
+    }
+    return views;
+  }
+
+  /**
+   * Retrieves the recent and undated prescriptions with the given IDs together with the names of
+   * their drug, doctor and patient, as {@link #getFilteredPrescriptionViews(FilterCriteria,
+   * SortSpec)} shows them. The IDs are matched with one IN list per 65,000, on the primary
+   * database, since they usually come from changes a replica may not have received yet.
+   *
+   * @param prescriptionIds The IDs of the prescriptions to retrieve
+   * @return The prescriptions found with their names, in no particular order; IDs of expired or
+   *     missing prescriptions are left out
+   * @throws SQLException If a database access error occurs
+   */
+  public List<PrescriptionView> getRecentPrescriptionViewsByIds(
+      Collection<String> prescriptionIds) throws SQLException {
+    List<String[]> keys = new ArrayList<>();
+    for (String id : new LinkedHashSet<>(prescriptionIds)) {
+      keys.add(new String[] {id});
+    }
+    return KeyListQuery.readByKeys(
+        "SELECT " + VIEW_COLUMNS + " FROM Prescription p" + VIEW_JOINS,
+        "p.prescriptionID",
+        keys,
+        "(p.dateprescribed >= ? OR p.dateprescribed IS NULL)",
+        List.of(ArchiveMaintenance.getRecentCutoff().toString()),
+        VIEW_ROW_MAPPER);
+  }
+
+  /**
+   * Counts the recent prescription records without transferring them.
+   *
+   * @return The number of recent and undated prescriptions in the database
+   * @throws SQLException If a database access error occurs
+   */
+  public long countPrescriptions() throws SQLException {
+    return countFilteredPrescriptions(FilterCriteria.none());
+  }
+
+  /**
+   * Counts the recent prescriptions matching the filter criteria without transferring them.
+   *
+   * @param criteria The filter conditions; empty criteria count every recent prescription
+   * @return The number of matching prescriptions
+   * @throws SQLException If a database access error occurs
+   */
+  public long countFilteredPrescriptions(FilterCriteria criteria) throws SQLException {
+    return countFilteredPrescriptions(criteria, false);
+  }
+
+  /**
+   * Counts the prescriptions matching the filter criteria without transferring them. Conditions on
+   * fields this DAO does not map to a column are ignored, as in {@link
+   * #getFilteredPrescriptions(FilterCriteria)}, so the caller's own filtering may leave fewer rows.
+   *
+   * @param criteria The filter conditions; empty criteria count every prescription
+   * @param includeHistory true to include archived and expired prescriptions, false for recent
+   *     and undated prescriptions only
+   * @return The number of matching prescriptions
+   * @throws SQLException If a database access error occurs
+   */
+  public long countFilteredPrescriptions(FilterCriteria criteria, boolean includeHistory)
+      throws SQLException {
+    List<String> params = new ArrayList<>();
+    String sql =
+        "SELECT COUNT(*) FROM " + (includeHistory ? ALL_PRESCRIPTIONS : "Prescription")
+            + toWhereClause(criteria, FILTER_COLUMNS, "dateprescribed", params, includeHistory);
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        return rs.getLong(1);
+      }
+    }
+  }
+
+  /**
+   * Retrieves one page of prescriptions, most recent first like {@link #getAllPrescriptions()},
+   * with the prescription ID breaking ties between prescriptions of the same date. The date and
+   * ID of the last prescription already read are used as the cursor instead of an OFFSET, so
+   * every page costs the same however deep into the table it is.
+   *
+   * <p>Prescriptions without a date sort after all dated ones, as NULLs do in a descending
+   * MariaDB sort, so a cursor with a null date continues among the undated prescriptions.
+   *
+   * @param afterDatePrescribed The date of the last prescription already read; may be null if
+   *     that prescription had no date
+   * @param afterPrescriptionId The ID of the last prescription already read, or null for the
+   *     first page
+   * @param limit The maximum number of prescriptions to return
+   * @return Up to limit prescriptions following the cursor; an empty list after the last page
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Prescription> getPrescriptionsPage(
+      LocalDate afterDatePrescribed, String afterPrescriptionId, int limit)
+      throws SQLException {
+    List<Prescription> prescriptions = new ArrayList<>();
+    String where;
+    if (afterPrescriptionId == null) {
+      where = "";
+    } else if (afterDatePrescribed == null) {
+      where = " WHERE dateprescribed IS NULL AND prescriptionID < ?";
+    } else {
+      where =
+          " WHERE dateprescribed < ? OR (dateprescribed = ? AND prescriptionID < ?)"
+              + " OR dateprescribed IS NULL";
+    }
+    String sql =
+        "SELECT " + COLUMNS + " FROM Prescription" + where
+            + " ORDER BY dateprescribed DESC, prescriptionID DESC LIMIT ?";
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      int index = 1;
+      if (afterPrescriptionId != null) {
+        if (afterDatePrescribed != null) {
+          stmt.setDate(index++, Date.valueOf(afterDatePrescribed));
+          stmt.setDate(index++, Date.valueOf(afterDatePrescribed));
+        }
+        stmt.setString(index++, afterPrescriptionId);
+      }
+      stmt.setInt(index, limit);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          prescriptions.add(ROW_MAPPER.mapRow(rs));
+        }
       }
     }
     return prescriptions;
   }
 
+  /**
+   * Reads every prescription and passes it to the action one row at a time, without holding the
+   * whole table in memory. Rows are fetched from the server in chunks of
+   * {@value StreamingQuery#FETCH_SIZE}, in no particular order. The connection is held until the
+   * last row has been processed, so the action should not call back into the DAOs.
+   *
+   * @param action Called once for each prescription
+   * @throws SQLException If a database access error occurs
+   */
+  public void forEachPrescription(Consumer<? super Prescription> action) throws SQLException {
+    StreamingQuery.forEach("SELECT " + COLUMNS + " FROM Prescription", ROW_MAPPER, action);
+  }
+
+  /**
+   * Reads every prescription ID and passes it to the action one row at a time, without holding the
+   * IDs in memory. Archived prescriptions are not included. Rows are fetched from the server in
+   * chunks of {@value StreamingQuery#FETCH_SIZE}, in no particular order. The connection is held
+   * until the last ID has been processed, so the action should not call back into the DAOs.
+   *
+   * @param action Called once for each prescription ID
+   * @throws SQLException If a database access error occurs
+   */
+  public void forEachPrescriptionId(Consumer<? super String> action) throws SQLException {
+    StreamingQuery.forEach(
+        "SELECT prescriptionID FROM Prescription", rs -> rs.getString(1), action);
+  }
+
+  /**
+   * Returns a lazy stream over every prescription, for exports and reports over tables too large
+   * to load with {@link #getAllPrescriptions()}. Rows are fetched from the server in chunks of
+   * {@value StreamingQuery#FETCH_SIZE}, in no particular order. The stream holds a database
+   * connection until it is closed, so it must be used in a try-with-resources block:
+   *
+   * <pre>
+   * try (Stream&lt;Prescription&gt; prescriptions = dao.streamPrescriptions()) {
+   *   prescriptions.forEach(exporter::write);
+   * }
+   * </pre>
+   *
+   * @return A stream of all prescriptions that releases its connection when closed
+   * @throws SQLException If the query cannot be started; errors while reading rows are thrown as
+   *     {@link UncheckedSQLException}
+   */
+  public Stream<Prescription> streamPrescriptions() throws SQLException {
+    return StreamingQuery.stream("SELECT " + COLUMNS + " FROM Prescription", ROW_MAPPER);
+  }
+
   /**
    * Retrieves a specific prescription from the database by its ID.
    * 
@@ -78,23 +504,15 @@ public class PrescriptionDAO {
    * @throws SQLException If a database access error occurs
    */
   public Prescription getPrescriptionById(String prescriptionId) throws SQLException {
-    String sql = "SELECT * FROM Prescription WHERE prescriptionID = ?";
+    String sql = "SELECT " + COLUMNS + " FROM Prescription WHERE prescriptionID = ?";
     // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         PreparedStatement stmt = conn.prepareStatement(sql)) {
       stmt.setString(1, prescriptionId);
       try (ResultSet rs = stmt.executeQuery()) {
         if (rs.next()) {
           // Create and return a Prescription object from the result set data
-          return new Prescription(
-              rs.getString("prescriptionID"),
-              rs.getDate("dateprescribed").toLocalDate(),
-              rs.getInt("dosage"),
-              rs.getInt("duration"),
-              rs.getString("comment"),
-              rs.getString("drugID"),
-              rs.getString("doctorID"),
-              rs.getString("patientID"));
+          return ROW_MAPPER.mapRow(rs);
         }
       }
     }
@@ -142,4 +560,76 @@ public class PrescriptionDAO {
       stmt.executeUpdate();
     }
   }
+
+  /**
+   * Inserts or updates a batch of prescriptions in a single transaction, for bulk synchronisation
+   * jobs. Prescriptions whose ID already exists are overwritten with the given values instead of
+   * being rejected.
+   *
+   * @param prescriptions The prescriptions to insert or update
+   * @throws SQLException If a database access error occurs; nothing is written in that case
+   */
+  public void upsertPrescriptions(List<Prescription> prescriptions) throws SQLException {
+    String sql =
+        "INSERT INTO Prescription (prescriptionID, dateprescribed, dosage, duration, comment,"
+            + " drugID, doctorID, patientID) VALUES (?, ?, ?, ?, ?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE dateprescribed = VALUES(dateprescribed),"
+            + " dosage = VALUES(dosage), duration = VALUES(duration), comment = VALUES(comment),"
+            + " drugID = VALUES(drugID), doctorID = VALUES(doctorID),"
+            + " patientID = VALUES(patientID)";
+    TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int pending = 0;
+            for (Prescription prescription : prescriptions) {
+              stmt.setString(1, prescription.getPrescriptionId());
+              stmt.setDate(2, Date.valueOf(prescription.getDateOfPrescribe()));
+              stmt.setInt(3, prescription.getDosage());
+              stmt.setInt(4, prescription.getDuration());
+              stmt.setString(5, prescription.getComment());
+              stmt.setString(6, prescription.getDrugId());
+              stmt.setString(7, prescription.getDoctorId());
+              stmt.setString(8, prescription.getPatientId());
+              stmt.addBatch();
+              if (++pending == UPSERT_BATCH_SIZE) {
+                stmt.executeBatch();
+                pending = 0;
+              }
+            }
+            if (pending > 0) {
+              stmt.executeBatch();
+            }
+          }
+          return null;
+        });
+  }
+
+  /**
+   * Builds the WHERE clause for the criteria, limited to prescriptions dated since {@link
+   * ArchiveMaintenance#getRecentCutoff()} unless history is included. Undated prescriptions are
+   * never archived, so they always count as recent.
+   */
+  private static String toWhereClause(
+      FilterCriteria criteria,
+      Map<String, String> columns,
+      String dateColumn,
+      List<String> params,
+      boolean includeHistory) {
+    String where = criteria.toWhereClause(columns, params);
+    if (includeHistory) {
+      return where;
+    }
+    params.add(ArchiveMaintenance.getRecentCutoff().toString());
+    return where
+        + (where.isEmpty() ? " WHERE " : " AND ")
+        + "(" + dateColumn + " >= ? OR " + dateColumn + " IS NULL)";
+  }
+
+  /** Prefixes every column of a field map with the Prescription alias of the view query. */
+  private static Map<String, String> qualify(Map<String, String> columns) {
+    Map<String, String> qualified = new HashMap<>();
+    columns.forEach((field, column) -> qualified.put(field, "p." + column));
+    return Map.copyOf(qualified);
+  }
 }
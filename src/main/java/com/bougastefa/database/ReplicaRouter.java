@@ -0,0 +1,183 @@
+package com.bougastefa.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads read-only connections over the configured read replicas, one {@link ConnectionPool}
+ * per replica, in round-robin order.
+ *
+ * <p>A background task checks every replica at a fixed interval. A replica that cannot be reached,
+ * or whose replication lag exceeds the configured maximum, is skipped until a later check finds it
+ * healthy again. A replica that fails while a connection is being borrowed is marked unhealthy
+ * straight away rather than waiting for the next check. When no replica is healthy {@link
+ * #getConnection()} returns null and {@link DatabaseConnection} falls back to the primary.
+ */
+final class ReplicaRouter implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ReplicaRouter.class);
+
+  private final List<Replica> replicas = new ArrayList<>();
+  /** Position of the next replica to try, advanced on every borrow */
+  private final AtomicInteger next = new AtomicInteger();
+  /** Replication lag above which a replica is skipped; 0 disables the lag check */
+  private final long maxLagSeconds;
+  private final int validationTimeoutSeconds;
+  /** Background thread running the periodic health checks */
+  private final ScheduledExecutorService healthChecker;
+
+  /** One replica together with its connection pool and last known health */
+  private static final class Replica {
+    private final String url;
+    private final ConnectionPool pool;
+    private volatile boolean healthy = true;
+
+    private Replica(String url, ConnectionPool pool) {
+      this.url = url;
+      this.pool = pool;
+    }
+  }
+
+  /**
+   * Creates a pool for every replica and starts the health checks. As with {@link
+   * ConnectionPool}, no connection is opened here, so an unreachable replica does not prevent the
+   * application from starting.
+   *
+   * @param urls The JDBC URLs of the replicas; must not be empty
+   * @param connectionProperties Driver properties, including user and password
+   * @param config The pool configuration used for every replica pool
+   * @param healthCheckIntervalMillis Time between two health checks of the replicas
+   * @param maxLagSeconds Replication lag above which a replica is skipped; 0 disables the check
+   */
+  ReplicaRouter(
+      List<String> urls,
+      Properties connectionProperties,
+      PoolConfig config,
+      long healthCheckIntervalMillis,
+      long maxLagSeconds) {
+    for (String url : urls) {
+      replicas.add(new Replica(url, new ConnectionPool(url, connectionProperties, config)));
+    }
+    this.maxLagSeconds = maxLagSeconds;
+    this.validationTimeoutSeconds = config.getValidationTimeoutSeconds();
+    this.healthChecker =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "db-replica-health");
+              thread.setDaemon(true);
+              return thread;
+            });
+    healthChecker.scheduleWithFixedDelay(
+        this::checkHealth, 0, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Borrows a connection from the next healthy replica. Replicas are tried in round-robin order,
+   * starting after the one used by the previous call.
+   *
+   * @return A pooled replica connection, or null if no replica could provide one
+   */
+  Connection getConnection() {
+    int size = replicas.size();
+    int start = Math.floorMod(next.getAndIncrement(), size);
+    for (int i = 0; i < size; i++) {
+      Replica replica = replicas.get((start + i) % size);
+      if (!replica.healthy) {
+        continue;
+      }
+      try {
+        return replica.pool.getConnection();
+      } catch (SQLTransientConnectionException e) {
+        // The replica is busy rather than broken; try the next one without marking it down
+        logger.debug("Replica {} has no free connection: {}", replica.url, e.getMessage());
+      } catch (SQLException e) {
+        markUnhealthy(replica, e.getMessage());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns how many replicas passed their last health check, for monitoring.
+   *
+   * @return The number of replicas reads are currently routed to
+   */
+  int getHealthyReplicaCount() {
+    int healthy = 0;
+    for (Replica replica : replicas) {
+      if (replica.healthy) {
+        healthy++;
+      }
+    }
+    return healthy;
+  }
+
+  /** Stops the health checks and closes every replica pool. */
+  @Override
+  public void close() {
+    healthChecker.shutdownNow();
+    for (Replica replica : replicas) {
+      replica.pool.close();
+    }
+  }
+
+  private void checkHealth() {
+    for (Replica replica : replicas) {
+      try (Connection conn = replica.pool.getConnection()) {
+        if (!conn.isValid(validationTimeoutSeconds)) {
+          markUnhealthy(replica, "connection is not valid");
+          continue;
+        }
+        String lagProblem = maxLagSeconds > 0 ? checkLag(conn) : null;
+        if (lagProblem != null) {
+          markUnhealthy(replica, lagProblem);
+        } else if (!replica.healthy) {
+          replica.healthy = true;
+          logger.info("Replica {} is healthy again, routing reads to it", replica.url);
+        }
+      } catch (SQLException e) {
+        markUnhealthy(replica, e.getMessage());
+      } catch (RuntimeException e) {
+        logger.error("Health check of replica {} failed", replica.url, e);
+      }
+    }
+  }
+
+  /**
+   * Reads the replication lag of a replica.
+   *
+   * @return A description of the problem if the replica lags too far behind or replication is
+   *     stopped, or null if the lag is acceptable or the server is not set up as a replica
+   */
+  private String checkLag(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+      if (!rs.next()) {
+        return null;
+      }
+      long lag = rs.getLong("Seconds_Behind_Master");
+      if (rs.wasNull()) {
+        return "replication is not running";
+      }
+      return lag > maxLagSeconds ? "replication lag of " + lag + " s" : null;
+    }
+  }
+
+  private void markUnhealthy(Replica replica, String reason) {
+    if (replica.healthy) {
+      replica.healthy = false;
+      logger.warn("Replica {} is unhealthy ({}), routing its reads elsewhere", replica.url, reason);
+    }
+  }
+}
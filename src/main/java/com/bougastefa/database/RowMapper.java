@@ -0,0 +1,26 @@
+package com.bougastefa.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts the current row of a {@link ResultSet} into a model object.
+ *
+ * <p>Each DAO declares one mapper next to its column list and reads columns by position, so
+ * column names are not resolved again for every row. A query using a DAO's mapper must select
+ * exactly that DAO's columns, in the declared order.
+ *
+ * @param <T> The type of object produced for each row
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+  /**
+   * Maps the row the result set is currently positioned on. Implementations must not move the
+   * cursor.
+   *
+   * @param rs The result set, positioned on a row
+   * @return The object built from the row
+   * @throws SQLException If a column cannot be read
+   */
+  T mapRow(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,369 @@
+package com.bougastefa.database;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings the database schema up to date by applying the versioned SQL scripts under {@code
+ * db/migration} on the classpath, in version order, and recording each one in the {@code
+ * schema_version} table so it runs only once per database.
+ *
+ * <p>Scripts are listed, one file name per line, in {@code db/migration/migrations.list} and are
+ * named {@code V<version>__<description>.sql}. Statements end with {@code ;} at the end of a line;
+ * a {@code DELIMITER} line changes the terminator for statements such as triggers whose bodies
+ * contain semicolons, as in the mysql command-line client. DDL is not transactional in MariaDB, so
+ * scripts should be safe to re-run ({@code CREATE INDEX IF NOT EXISTS} and the like) in case a
+ * migration fails part way through.
+ *
+ * <p>A script can declare index checks as comments of the form
+ *
+ * <pre>
+ * -- @uses-index idx_visit_doctor: SELECT doctorID FROM Visit WHERE doctorID = 'D1'
+ * </pre>
+ *
+ * After the script has run, the query is EXPLAINed. The migration fails if the index is not among
+ * the possible keys, because the index is then missing or cannot serve the query; a warning is
+ * logged if the optimizer could use it but chose another plan, which is normal on small tables.
+ */
+public final class SchemaMigrator {
+  private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+  /** Classpath directory holding the migration scripts */
+  static final String MIGRATION_DIR = "db/migration/";
+  /** Classpath resource listing the migration scripts */
+  private static final String MIGRATION_LIST = MIGRATION_DIR + "migrations.list";
+  private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+  private static final Pattern INDEX_CHECK =
+      Pattern.compile("--\\s*@uses-index\\s+(\\w+)\\s*:\\s*(.+)");
+  private static final Pattern DELIMITER = Pattern.compile("(?i)DELIMITER\\s+(\\S+)\\s*");
+  /** Server-side lock that keeps two application instances from migrating at the same time */
+  private static final String LOCK_NAME = "health_track_schema_migration";
+  /** Completed when migrate() has brought the schema up to date in this process */
+  private static final CompletableFuture<Void> MIGRATED = new CompletableFuture<>();
+  private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+  private SchemaMigrator() {}
+
+  /** One versioned script, parsed into statements and index checks */
+  static final class Migration {
+    final int version;
+    final String description;
+    final String script;
+    final long checksum;
+    final List<String> statements;
+    final List<IndexCheck> indexChecks;
+
+    private Migration(
+        int version,
+        String description,
+        String script,
+        long checksum,
+        List<String> statements,
+        List<IndexCheck> indexChecks) {
+      this.version = version;
+      this.description = description;
+      this.script = script;
+      this.checksum = checksum;
+      this.statements = statements;
+      this.indexChecks = indexChecks;
+    }
+  }
+
+  /** A query the named index is expected to serve */
+  static final class IndexCheck {
+    final String index;
+    final String query;
+
+    private IndexCheck(String index, String query) {
+      this.index = index;
+      this.query = query;
+    }
+  }
+
+  /**
+   * Applies every migration that has not been recorded in {@code schema_version} yet, on the
+   * primary database. Migrations that were applied before are skipped; if their script has been
+   * edited since, a warning is logged because the change will not be applied.
+   *
+   * @return The number of migrations applied
+   * @throws SQLException If a script fails, an index check fails or the migration lock cannot be
+   *     obtained; migrations applied before the failing one stay recorded
+   */
+  public static int migrate() throws SQLException {
+    List<Migration> migrations = loadMigrations();
+    try (Connection conn = DatabaseConnection.getConnection()) {
+      acquireLock(conn);
+      try {
+        createVersionTable(conn);
+        Map<Integer, Long> applied = readAppliedVersions(conn);
+        int count = 0;
+        for (Migration migration : migrations) {
+          Long checksum = applied.get(migration.version);
+          if (checksum != null) {
+            if (checksum != migration.checksum) {
+              logger.warn(
+                  "Migration {} was changed after it was applied; the change is ignored",
+                  migration.script);
+            }
+            continue;
+          }
+          apply(conn, migration);
+          count++;
+        }
+        if (count > 0) {
+          logger.info("Applied {} schema migration(s)", count);
+        }
+        MIGRATED.complete(null);
+        return count;
+      } finally {
+        releaseLock(conn);
+      }
+    }
+  }
+
+  /**
+   * Waits until {@link #migrate()} has succeeded in this process, for work started before the
+   * migration that must not query the database until the schema is up to date. A failed migration
+   * ends the application, so the wait is then never over.
+   */
+  public static void awaitMigration() {
+    MIGRATED.join();
+  }
+
+  /**
+   * Runs an action once {@link #migrate()} has succeeded in this process, at once if it already
+   * has. The action runs on the thread that ran the migration, or on the calling thread.
+   *
+   * @param action The action, which must not block
+   */
+  public static void whenMigrated(Runnable action) {
+    MIGRATED.thenRun(action);
+  }
+
+  /**
+   * Reads and parses the migration scripts listed on the classpath.
+   *
+   * @return The migrations in ascending version order
+   * @throws IllegalStateException If a listed script is missing, misnamed or a version is repeated
+   */
+  static List<Migration> loadMigrations() {
+    List<Migration> migrations = new ArrayList<>();
+    for (String script : readLines(MIGRATION_LIST)) {
+      script = script.trim();
+      if (script.isEmpty() || script.startsWith("#")) {
+        continue;
+      }
+      Matcher name = FILE_NAME.matcher(script);
+      if (!name.matches()) {
+        throw new IllegalStateException(
+            "Migration " + script + " is not named V<version>__<description>.sql");
+      }
+      migrations.add(parse(script, Integer.parseInt(name.group(1)), name.group(2)));
+    }
+    migrations.sort((a, b) -> Integer.compare(a.version, b.version));
+    for (int i = 1; i < migrations.size(); i++) {
+      if (migrations.get(i).version == migrations.get(i - 1).version) {
+        throw new IllegalStateException(
+            "Migration version " + migrations.get(i).version + " is used twice");
+      }
+    }
+    return migrations;
+  }
+
+  /**
+   * Reads one script from the migration directory and splits it into statements.
+   *
+   * @param script The script's path relative to the migration directory
+   * @param version The version from the script's name
+   * @param description The description from the script's name, words separated by underscores
+   * @return The parsed migration, whose checksum covers every line but not the line endings
+   * @throws IllegalStateException If the script is missing or ends inside a statement
+   */
+  static Migration parse(String script, int version, String description) {
+    List<String> lines = readLines(MIGRATION_DIR + script);
+    List<String> statements = new ArrayList<>();
+    List<IndexCheck> indexChecks = new ArrayList<>();
+    CRC32 crc = new CRC32();
+    String delimiter = ";";
+    StringBuilder current = new StringBuilder();
+    for (String line : lines) {
+      crc.update(line.getBytes(StandardCharsets.UTF_8));
+      String trimmed = line.trim();
+      Matcher check = INDEX_CHECK.matcher(trimmed);
+      Matcher newDelimiter = DELIMITER.matcher(trimmed);
+      if (check.matches()) {
+        indexChecks.add(new IndexCheck(check.group(1), check.group(2).trim()));
+      } else if (newDelimiter.matches()) {
+        delimiter = newDelimiter.group(1);
+      } else if (!(current.length() == 0 && (trimmed.isEmpty() || trimmed.startsWith("--")))) {
+        current.append(line).append('\n');
+        if (trimmed.endsWith(delimiter)) {
+          String statement = current.toString().trim();
+          statements.add(statement.substring(0, statement.length() - delimiter.length()).trim());
+          current.setLength(0);
+        }
+      }
+    }
+    if (current.toString().trim().length() > 0) {
+      throw new IllegalStateException(
+          "Migration " + script + " ends with an unterminated statement");
+    }
+    return new Migration(
+        version,
+        description.replace('_', ' '),
+        script,
+        crc.getValue(),
+        statements,
+        indexChecks);
+  }
+
+  private static List<String> readLines(String resource) {
+    InputStream input = SchemaMigrator.class.getClassLoader().getResourceAsStream(resource);
+    if (input == null) {
+      throw new IllegalStateException("Migration resource not found: " + resource);
+    }
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read migration resource " + resource, e);
+    }
+    return lines;
+  }
+
+  private static void apply(Connection conn, Migration migration) throws SQLException {
+    logger.info("Applying migration {}", migration.script);
+    try (Statement stmt = conn.createStatement()) {
+      for (String statement : migration.statements) {
+        stmt.execute(statement);
+      }
+    } catch (SQLException e) {
+      throw new SQLException(
+          "Migration " + migration.script + " failed: " + e.getMessage(),
+          e.getSQLState(),
+          e.getErrorCode(),
+          e);
+    }
+    for (IndexCheck check : migration.indexChecks) {
+      verifyIndexUsed(conn, migration, check);
+    }
+    String sql =
+        "INSERT INTO schema_version (version, description, script, checksum) VALUES (?, ?, ?, ?)";
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setInt(1, migration.version);
+      stmt.setString(2, migration.description);
+      stmt.setString(3, migration.script);
+      stmt.setLong(4, migration.checksum);
+      stmt.executeUpdate();
+    }
+  }
+
+  /**
+   * EXPLAINs the check's query and makes sure the index can serve it.
+   *
+   * @throws SQLException If no table access in the plan lists the index as a possible key
+   */
+  private static void verifyIndexUsed(Connection conn, Migration migration, IndexCheck check)
+      throws SQLException {
+    boolean possible = false;
+    boolean chosen = false;
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("EXPLAIN " + check.query)) {
+      while (rs.next()) {
+        possible |= listsIndex(rs.getString("possible_keys"), check.index);
+        chosen |= check.index.equalsIgnoreCase(rs.getString("key"));
+      }
+    }
+    if (!possible) {
+      throw new SQLException(
+          "Migration "
+              + migration.script
+              + ": index "
+              + check.index
+              + " cannot be used by: "
+              + check.query);
+    }
+    if (!chosen) {
+      logger.warn(
+          "Migration {}: index {} is usable but was not chosen for: {} (expected on small tables)",
+          migration.script,
+          check.index,
+          check.query);
+    }
+  }
+
+  private static boolean listsIndex(String keys, String index) {
+    return keys != null
+        && Arrays.stream(keys.split(",")).anyMatch(key -> key.trim().equalsIgnoreCase(index));
+  }
+
+  private static void createVersionTable(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute(
+          "CREATE TABLE IF NOT EXISTS schema_version ("
+              + " version INT NOT NULL PRIMARY KEY,"
+              + " description VARCHAR(200) NOT NULL,"
+              + " script VARCHAR(200) NOT NULL,"
+              + " checksum BIGINT NOT NULL,"
+              + " installed_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP"
+              + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci");
+    }
+  }
+
+  private static Map<Integer, Long> readAppliedVersions(Connection conn) throws SQLException {
+    Map<Integer, Long> applied = new HashMap<>();
+    try (Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+      while (rs.next()) {
+        applied.put(rs.getInt(1), rs.getLong(2));
+      }
+    }
+    return applied;
+  }
+
+  private static void acquireLock(Connection conn) throws SQLException {
+    try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+      stmt.setString(1, LOCK_NAME);
+      stmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+      try (ResultSet rs = stmt.executeQuery()) {
+        if (!rs.next() || rs.getInt(1) != 1) {
+          throw new SQLException(
+              "Timed out waiting for another instance to finish migrating the schema");
+        }
+      }
+    }
+  }
+
+  private static void releaseLock(Connection conn) {
+    try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+      stmt.setString(1, LOCK_NAME);
+      stmt.executeQuery().close();
+    } catch (SQLException e) {
+      // The lock is released anyway when the session ends
+      logger.debug("Could not release the schema migration lock", e);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.bougastefa.database;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable sort order that the DAOs translate into an ORDER BY clause, so large tables are
+ * sorted by the database rather than in memory.
+ *
+ * <p>Like {@link FilterCriteria}, a sort order names a field of the filter dialogs (for example
+ * {@code "surname"}) rather than a column. Every DAO whitelists the fields it can sort by, each
+ * backed by an index, and rejects the others. The primary key is appended as a tiebreaker so rows
+ * with equal values always come back in the same order.
+ */
+public final class SortSpec {
+  private static final SortSpec NONE = new SortSpec(null, true);
+
+  /** The field to sort by, or null for the DAO's default order */
+  private final String field;
+  private final boolean ascending;
+
+  private SortSpec(String field, boolean ascending) {
+    this.field = field;
+    this.ascending = ascending;
+  }
+
+  /**
+   * Returns the sort order that leaves rows in the DAO's default order.
+   *
+   * @return The unsorted order
+   */
+  public static SortSpec none() {
+    return NONE;
+  }
+
+  /**
+   * Returns a sort order by the field, smallest value first.
+   *
+   * @param field The field name to sort by
+   * @return The ascending sort order
+   * @throws IllegalArgumentException If the field is null
+   */
+  public static SortSpec ascending(String field) {
+    return new SortSpec(requireField(field), true);
+  }
+
+  /**
+   * Returns a sort order by the field, largest value first.
+   *
+   * @param field The field name to sort by
+   * @return The descending sort order
+   * @throws IllegalArgumentException If the field is null
+   */
+  public static SortSpec descending(String field) {
+    return new SortSpec(requireField(field), false);
+  }
+
+  private static String requireField(String field) {
+    if (field == null) {
+      throw new IllegalArgumentException("Sort field cannot be null");
+    }
+    return field;
+  }
+
+  /**
+   * Returns the order a click on the field's column header should switch to: the reverse of this
+   * order if it already sorts by the field, otherwise ascending by the field.
+   *
+   * @param field The field name of the clicked column
+   * @return The new sort order
+   */
+  public SortSpec toggle(String field) {
+    return field.equals(this.field) && ascending ? descending(field) : ascending(field);
+  }
+
+  /** @return true if this order leaves rows in the DAO's default order */
+  public boolean isNone() {
+    return field == null;
+  }
+
+  /** @return The field name to sort by, or null for the default order */
+  public String getField() {
+    return field;
+  }
+
+  /** @return true if the smallest value comes first */
+  public boolean isAscending() {
+    return ascending;
+  }
+
+  /**
+   * Builds the ORDER BY clause for this sort order. The tiebreaker columns follow the sort column
+   * in the same direction, so an index on the sort column, which InnoDB extends with the primary
+   * key, can return the rows in order either way.
+   *
+   * @param columns The sortable field names and the column each maps to; only trusted column
+   *     names may be used here because they are inserted into the SQL text
+   * @param tiebreakers The primary key columns, in key order
+   * @return " ORDER BY ..." starting with a space, or an empty string for the default order
+   * @throws IllegalArgumentException If the field is not one of the sortable fields
+   */
+  String toOrderByClause(Map<String, String> columns, String... tiebreakers) {
+    if (field == null) {
+      return "";
+    }
+    String column = columns.get(field);
+    if (column == null) {
+      throw new IllegalArgumentException("Cannot sort by field: " + field);
+    }
+    String direction = ascending ? " ASC" : " DESC";
+    StringBuilder orderBy = new StringBuilder(" ORDER BY ").append(column).append(direction);
+    for (String tiebreaker : tiebreakers) {
+      if (!tiebreaker.equals(column)) {
+        orderBy.append(", ").append(tiebreaker).append(direction);
+      }
+    }
+    return orderBy.toString();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof SortSpec)) {
+      return false;
+    }
+    SortSpec that = (SortSpec) other;
+    return ascending == that.ascending && Objects.equals(field, that.field);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(field, ascending);
+  }
+
+  @Override
+  public String toString() {
+    return field == null ? "SortSpec[none]" : "SortSpec[" + field + (ascending ? " ASC]" : " DESC]");
+  }
+}
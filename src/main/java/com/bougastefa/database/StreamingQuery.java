@@ -0,0 +1,134 @@
+package com.bougastefa.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs full-table reads as streaming result sets, so rows are mapped as they arrive from the
+ * server instead of being collected into a list first. With a positive fetch size the MariaDB
+ * driver fetches that many rows at a time, which keeps memory use constant however large the
+ * table grows.
+ *
+ * <p>A streaming read keeps its pooled connection until the last row has been read or the stream
+ * is closed, and the connection cannot run other statements meanwhile. Callers should therefore
+ * consume the rows promptly and must never call DAO methods from inside the row callback or while
+ * a stream is open. Inside a transaction this matters most: every DAO call then uses the
+ * transaction's connection, the one the stream is still reading from.
+ */
+final class StreamingQuery {
+  /** Number of rows the driver fetches from the server per round trip */
+  static final int FETCH_SIZE = 1000;
+
+  private StreamingQuery() {}
+
+  /**
+   * Runs the query and passes each mapped row to the action. All resources are closed before
+   * this method returns, including when the action throws.
+   *
+   * @param sql The query, which must not take parameters
+   * @param mapper Maps each row
+   * @param action Called once per row, in result set order
+   * @param <T> The row type
+   * @throws SQLException If a database access error occurs
+   */
+  static <T> void forEach(String sql, RowMapper<T> mapper, Consumer<? super T> action)
+      throws SQLException {
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setFetchSize(FETCH_SIZE);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          action.accept(mapper.mapRow(rs));
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the query and returns a lazy stream over the mapped rows. The connection, statement and
+   * result set stay open until the stream is closed, so the stream must be used in a
+   * try-with-resources block.
+   *
+   * @param sql The query, which must not take parameters
+   * @param mapper Maps each row
+   * @param <T> The row type
+   * @return A sequential stream of rows that releases its connection when closed
+   * @throws SQLException If the query cannot be started; errors while reading rows are thrown as
+   *     {@link UncheckedSQLException}
+   */
+  static <T> Stream<T> stream(String sql, RowMapper<T> mapper) throws SQLException {
+    Connection conn = DatabaseConnection.getReadConnection();
+    PreparedStatement stmt = null;
+    ResultSet rs;
+    try {
+      stmt = conn.prepareStatement(sql);
+      stmt.setFetchSize(FETCH_SIZE);
+      rs = stmt.executeQuery();
+    } catch (SQLException | RuntimeException e) {
+      closeAll(null, stmt, conn, e);
+      throw e;
+    }
+
+    Spliterator<T> rows =
+        new Spliterators.AbstractSpliterator<T>(
+            Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+          @Override
+          public boolean tryAdvance(Consumer<? super T> action) {
+            try {
+              if (!rs.next()) {
+                return false;
+              }
+              action.accept(mapper.mapRow(rs));
+              return true;
+            } catch (SQLException e) {
+              throw new UncheckedSQLException(e);
+            }
+          }
+        };
+    PreparedStatement openStmt = stmt;
+    return StreamSupport.stream(rows, false)
+        .onClose(
+            () -> {
+              SQLException failure = closeAll(rs, openStmt, conn, null);
+              if (failure != null) {
+                throw new UncheckedSQLException(failure);
+              }
+            });
+  }
+
+  /**
+   * Closes the result set, statement and connection in that order, continuing past failures.
+   *
+   * @param primary An exception already being thrown, to which close failures are added as
+   *     suppressed exceptions; may be null
+   * @return The first close failure if there was no primary exception, otherwise null
+   */
+  private static SQLException closeAll(
+      ResultSet rs, PreparedStatement stmt, Connection conn, Exception primary) {
+    SQLException failure = null;
+    for (AutoCloseable resource : new AutoCloseable[] {rs, stmt, conn}) {
+      if (resource == null) {
+        continue;
+      }
+      try {
+        resource.close();
+      } catch (Exception e) {
+        if (primary != null) {
+          primary.addSuppressed(e);
+        } else if (failure == null) {
+          failure = e instanceof SQLException ? (SQLException) e : new SQLException(e);
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    return failure;
+  }
+}
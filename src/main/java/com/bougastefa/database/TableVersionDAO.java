@@ -0,0 +1,28 @@
+package com.bougastefa.database;
+
+import java.sql.*;
+
+/**
+ * Data Access Object (DAO) class for the TableVersion change counters. Triggers on the reference
+ * tables bump a table's version on every insert, update and delete, so comparing versions tells
+ * whether a table has changed without reading it.
+ */
+public class TableVersionDAO {
+  /**
+   * Reads the current version of a table, a single primary key lookup.
+   *
+   * @param tableName The name of the table, as written in its triggers, e.g. "Drug"
+   * @return The version, or -1 if the table has no change counter
+   * @throws SQLException If a database access error occurs
+   */
+  public long getVersion(String tableName) throws SQLException {
+    String sql = "SELECT version FROM TableVersion WHERE table_name = ?";
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setString(1, tableName);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getLong(1) : -1;
+      }
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package com.bougastefa.database;
+
+import java.sql.SQLException;
+
+/**
+ * A unit of work executed by {@link TransactionTemplate#inTransaction(TransactionCallback)}.
+ * DAO calls made from inside the callback run on the transaction's connection.
+ *
+ * @param <T> The type of the value produced by the unit of work
+ */
+@FunctionalInterface
+public interface TransactionCallback<T> {
+  /**
+   * Performs the unit of work.
+   *
+   * @param context The context of the enclosing transaction
+   * @return The result of the unit of work, or null if there is none
+   * @throws SQLException If a database access error occurs; the transaction is rolled back
+   */
+  T doInTransaction(TransactionContext context) throws SQLException;
+}
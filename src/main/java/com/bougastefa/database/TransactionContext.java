@@ -0,0 +1,81 @@
+package com.bougastefa.database;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * State of a transaction started by {@link TransactionTemplate}. It owns the single connection
+ * every DAO call inside the transaction runs on.
+ */
+public class TransactionContext {
+  /** The pooled connection the transaction runs on */
+  private final Connection connection;
+  /** View of the connection handed to DAOs; closing it does not end the transaction */
+  private final Connection joinedView;
+  private boolean rollbackOnly;
+
+  TransactionContext(Connection connection) {
+    this.connection = connection;
+    this.joinedView =
+        (Connection)
+            Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "close":
+                      // The transaction owns the connection; DAOs closing it is a no-op
+                      return null;
+                    case "commit":
+                    case "rollback":
+                    case "setAutoCommit":
+                      throw new SQLException(
+                          "Transaction boundaries are managed by TransactionTemplate");
+                    case "equals":
+                      return proxy == args[0];
+                    case "hashCode":
+                      return System.identityHashCode(proxy);
+                    default:
+                      try {
+                        return method.invoke(connection, args);
+                      } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                      }
+                  }
+                });
+  }
+
+  /**
+   * Returns the connection of this transaction, for SQL that is not covered by a DAO. Closing it
+   * has no effect; the transaction is committed or rolled back by {@link TransactionTemplate}.
+   *
+   * @return The transaction's connection
+   */
+  public Connection getConnection() {
+    return joinedView;
+  }
+
+  /**
+   * Marks the transaction so that it is rolled back instead of committed when the outermost
+   * callback returns.
+   */
+  public void setRollbackOnly() {
+    rollbackOnly = true;
+  }
+
+  /**
+   * Checks whether the transaction will be rolled back when it ends.
+   *
+   * @return true if {@link #setRollbackOnly()} has been called
+   */
+  public boolean isRollbackOnly() {
+    return rollbackOnly;
+  }
+
+  /** Returns the underlying connection, used by TransactionTemplate to end the transaction. */
+  Connection getPhysicalConnection() {
+    return connection;
+  }
+}
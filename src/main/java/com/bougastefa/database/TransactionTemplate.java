@@ -0,0 +1,133 @@
+package com.bougastefa.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs several DAO calls as one unit of work on a single connection and transaction.
+ *
+ * <p>While a callback passed to {@link #inTransaction(TransactionCallback)} is running, every
+ * {@link DatabaseConnection#getConnection()} call made on the same thread returns the
+ * transaction's connection, so existing DAO methods join the transaction without any change to
+ * their signatures. The transaction is committed when the outermost callback returns normally and
+ * rolled back if it throws. Nested calls join the enclosing transaction.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * TransactionTemplate.inTransaction(ctx -&gt; {
+ *   visitDAO.deleteVisit(patientId, doctorId, date);
+ *   prescriptionDAO.deletePrescription(prescriptionId);
+ *   return null;
+ * });
+ * </pre>
+ */
+public final class TransactionTemplate {
+  private static final Logger logger = LoggerFactory.getLogger(TransactionTemplate.class);
+  /** How many times a transaction chosen as a deadlock victim is run in total */
+  private static final int MAX_ATTEMPTS = 3;
+  /** The transaction currently open on each thread, if any */
+  private static final ThreadLocal<TransactionContext> CURRENT = new ThreadLocal<>();
+
+  private TransactionTemplate() {}
+
+  /**
+   * Executes the callback inside a transaction. If the thread is already inside a transaction the
+   * callback joins it; otherwise a new transaction is started on a pooled connection and committed
+   * or rolled back when the callback finishes. A new transaction that is rolled back by the
+   * database because of a deadlock is retried from the start a limited number of times.
+   *
+   * @param callback The unit of work to execute
+   * @param <T> The type of the value produced by the unit of work
+   * @return The value returned by the callback
+   * @throws SQLException If a database access error occurs; the transaction has been rolled back
+   */
+  public static <T> T inTransaction(TransactionCallback<T> callback) throws SQLException {
+    TransactionContext existing = CURRENT.get();
+    if (existing != null) {
+      return callback.doInTransaction(existing);
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return runInNewTransaction(callback);
+      } catch (SQLException e) {
+        if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+          throw e;
+        }
+        logger.warn("Transaction rolled back by the database ({}), retrying", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Checks whether the current thread is inside a transaction started by this class.
+   *
+   * @return true if DAO calls on this thread currently join a transaction
+   */
+  public static boolean isInTransaction() {
+    return CURRENT.get() != null;
+  }
+
+  /**
+   * Returns the connection DAOs should use when the current thread is inside a transaction.
+   *
+   * @return The transaction's connection, or null if there is no transaction on this thread
+   */
+  static Connection currentConnection() {
+    TransactionContext context = CURRENT.get();
+    return context == null ? null : context.getConnection();
+  }
+
+  private static <T> T runInNewTransaction(TransactionCallback<T> callback) throws SQLException {
+    // Borrowed before the context is registered, so this is a fresh pooled connection
+    try (Connection connection = DatabaseConnection.getConnection()) {
+      connection.setAutoCommit(false);
+      TransactionContext context = new TransactionContext(connection);
+      CURRENT.set(context);
+      try {
+        T result = callback.doInTransaction(context);
+        if (context.isRollbackOnly()) {
+          connection.rollback();
+        } else {
+          connection.commit();
+          DatabaseConnection.recordWrite();
+        }
+        return result;
+      } catch (SQLException | RuntimeException | Error e) {
+        rollbackQuietly(connection, e);
+        throw e;
+      } finally {
+        CURRENT.remove();
+        restoreAutoCommit(connection);
+      }
+    }
+  }
+
+  private static void rollbackQuietly(Connection connection, Throwable cause) {
+    try {
+      connection.rollback();
+    } catch (SQLException e) {
+      cause.addSuppressed(e);
+    }
+  }
+
+  private static void restoreAutoCommit(Connection connection) {
+    try {
+      connection.setAutoCommit(true);
+    } catch (SQLException e) {
+      // The pool resets or discards connections it cannot reset, so this is not fatal
+      logger.debug("Could not restore auto-commit on transaction connection", e);
+    }
+  }
+
+  /** Deadlocks and serialization failures (SQLState class 40) are safe to retry from scratch. */
+  private static boolean isRetryable(SQLException e) {
+    String sqlState = e.getSQLState();
+    return e instanceof SQLTransactionRollbackException
+        || (sqlState != null && sqlState.startsWith("40"));
+  }
+}
@@ -0,0 +1,24 @@
+package com.bougastefa.database;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps a {@link SQLException} raised while a DAO stream is being consumed. Stream operations
+ * cannot throw checked exceptions, so the driver exception is carried as the cause and can be
+ * recovered with {@link #getCause()}.
+ */
+public class UncheckedSQLException extends RuntimeException {
+  /**
+   * Constructs a new UncheckedSQLException.
+   *
+   * @param cause The driver exception
+   */
+  public UncheckedSQLException(SQLException cause) {
+    super(cause.getMessage(), cause);
+  }
+
+  @Override
+  public synchronized SQLException getCause() {
+    return (SQLException) super.getCause();
+  }
+}
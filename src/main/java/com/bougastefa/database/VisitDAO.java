@@ -4,19 +4,82 @@ import com.bougastefa.models.Visit;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object (DAO) class for managing Visit entities in the database.
  * Provides methods for performing CRUD operations (Create, Read, Update, Delete)
  * on the Visit table in the database. Visit records represent patient consultations
  * with doctors and contain medical information such as symptoms and diagnosis.
+ *
+ * <p>The filtered queries only return visits since {@link ArchiveMaintenance#getRecentCutoff()},
+ * which lets MariaDB skip the Visit partitions of older years, unless the caller asks for history;
+ * history queries also read the visits that have been moved to VisitArchive. Lookups by key and
+ * the paging and streaming methods read the Visit table as it is.
  */
 public class VisitDAO {
+  /** Number of rows sent to the database per batch by the upsert methods */
+  private static final int UPSERT_BATCH_SIZE = 500;
+
+  /**
+   * Most IDs bound to one IN list; MariaDB accepts at most 65535 placeholders per prepared
+   * statement
+   */
+  private static final int MAX_IN_LIST_SIZE = 65_000;
+
+  /** Columns read by every Visit query, in the order {@link #ROW_MAPPER} expects them */
+  static final String COLUMNS = "patientID, doctorID, dateOfVisit, symptoms, diagnosis";
+
+  /**
+   * Visits in Visit and in VisitArchive together, for the history queries and the visit counts,
+   * which include archived visits
+   */
+  private static final String ALL_VISITS =
+      "(SELECT " + COLUMNS + " FROM Visit UNION ALL SELECT " + COLUMNS + " FROM VisitArchive) v";
+
+  /** Maps a row selected with {@link #COLUMNS} to a Visit */
+  static final RowMapper<Visit> ROW_MAPPER =
+      rs ->
+          new Visit(
+              rs.getDate(3).toLocalDate(),
+              rs.getString(4),
+              rs.getString(5),
+              rs.getString(2),
+              rs.getString(1));
+
+  /** Filter field names accepted by {@link #getFilteredVisits} and the columns they match */
+  private static final Map<String, String> FILTER_COLUMNS =
+      Map.of(
+          "patientId", "patientID",
+          "doctorId", "doctorID",
+          "symptoms", "symptoms",
+          "diagnosis", "diagnosis",
+          "dateOfVisit", "dateOfVisit");
+
+  /**
+   * Sort field names accepted by {@link #getFilteredVisits(FilterCriteria, SortSpec)} and the
+   * columns they sort by; each column is the first column of an index
+   */
+  private static final Map<String, String> SORT_COLUMNS =
+      Map.of(
+          "dateOfVisit", "dateOfVisit",
+          "doctorId", "doctorID",
+          "patientId", "patientID");
+
   /**
-   * Inserts a new visit record into the database.
+   * Inserts a new visit record into the database and adds it to the
+   * patient's visit count for the doctor, in one transaction.
    * 
    * @param visit The Visit object containing the data to be inserted
+   * @throws DuplicateKeyException If a visit with the same patient, doctor and date already exists
    * @throws SQLException If a database access error occurs
    */
   public void addVisit(Visit visit) throws SQLException {
@@ -24,16 +87,33 @@ public class VisitDAO {
     String sql =
         "INSERT INTO Visit (patientID, doctorID, dateOfVisit, symptoms, diagnosis) VALUES (?, ?,"
             + " ?, ?, ?)";
-    // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
-        PreparedStatement stmt = conn.prepareStatement(sql)) {
-      stmt.setString(1, visit.getPatientId());
-      stmt.setString(2, visit.getDoctorId());
-      stmt.setDate(3, Date.valueOf(visit.getDateOfVisit()));
-      stmt.setString(4, visit.getSymptoms());
-      stmt.setString(5, visit.getDiagnosis());
-      stmt.executeUpdate();
-    }
+    // The visit and its count are written together so the count never disagrees with Visit
+    TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, visit.getPatientId());
+            stmt.setString(2, visit.getDoctorId());
+            stmt.setDate(3, Date.valueOf(visit.getDateOfVisit()));
+            stmt.setString(4, visit.getSymptoms());
+            stmt.setString(5, visit.getDiagnosis());
+            try {
+              stmt.executeUpdate();
+            } catch (SQLException e) {
+              // The composite primary key rejects duplicates, so no pre-read is needed
+              throw DuplicateKeyException.translate(
+                  e,
+                  "Visit already exists for patient: "
+                      + visit.getPatientId()
+                      + ", doctor: "
+                      + visit.getDoctorId()
+                      + ", date: "
+                      + visit.getDateOfVisit());
+            }
+            incrementVisitCount(conn, visit.getPatientId(), visit.getDoctorId());
+          }
+          return null;
+        });
   }
 
   /**
@@ -44,26 +124,239 @@ public class VisitDAO {
    */
   public List<Visit> getAllVisits() throws SQLException {
     List<Visit> visits = new ArrayList<>();
-    String sql = "SELECT * FROM Visit";
+    String sql = "SELECT " + COLUMNS + " FROM Visit";
     // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         Statement stmt = conn.createStatement();
         ResultSet rs = stmt.executeQuery(sql)) {
       // Iterate over the result set and create a new visit object for each row
       while (rs.next()) {
-        Visit visit =
-            new Visit(
-                rs.getDate("dateOfVisit").toLocalDate(),
-                rs.getString("symptoms"),
-                rs.getString("diagnosis"),
-                rs.getString("doctorID"),
-                rs.getString("patientID"));
-        visits.add(visit);
+        visits.add(ROW_MAPPER.mapRow(rs));
       }
     }
     return visits;
   }
 
+  /**
+   * Retrieves the recent visits matching the filter criteria, in the default order.
+   *
+   * @param criteria The filter conditions; empty criteria return every visit
+   * @return A List of the matching visits
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Visit> getFilteredVisits(FilterCriteria criteria) throws SQLException {
+    return getFilteredVisits(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the recent visits matching the filter criteria, sorted by the database.
+   *
+   * @param criteria The filter conditions; empty criteria return every recent visit
+   * @param sort The sort order; the default order if none
+   * @return A List of the matching visits
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Visit> getFilteredVisits(FilterCriteria criteria, SortSpec sort) throws SQLException {
+    return getFilteredVisits(criteria, sort, false);
+  }
+
+  /**
+   * Retrieves the visits matching the filter criteria, sorted by the database. The conditions are
+   * applied in SQL, so only matching rows are transferred. Conditions on fields this DAO does not
+   * map to a column are ignored and left to the caller.
+   *
+   * @param criteria The filter conditions; empty criteria return every visit
+   * @param sort The sort order; the default order if none
+   * @param includeHistory true to include archived and expired visits, false for recent visits only
+   * @return A List of the matching visits
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Visit> getFilteredVisits(
+      FilterCriteria criteria, SortSpec sort, boolean includeHistory) throws SQLException {
+    List<Visit> visits = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    String sql =
+        "SELECT " + COLUMNS + " FROM " + (includeHistory ? ALL_VISITS : "Visit")
+            + toWhereClause(criteria, params, includeHistory)
+            + sort.toOrderByClause(SORT_COLUMNS, "patientID", "doctorID", "dateOfVisit");
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          visits.add(ROW_MAPPER.mapRow(rs));
+        }
+      }
+    }
+    return visits;
+  }
+
+  /**
+   * Retrieves the recent visits dated between the two dates, both included, in date order.
+   *
+   * @param from The earliest date to include
+   * @param to The latest date to include
+   * @return A List of the recent visits in the range, oldest first
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Visit> getVisitsBetween(LocalDate from, LocalDate to) throws SQLException {
+    return getVisitsBetween(from, to, false);
+  }
+
+  /**
+   * Retrieves the visits dated between the two dates, both included, in date order. The range is
+   * applied in SQL and served by the index on dateOfVisit.
+   *
+   * @param from The earliest date to include
+   * @param to The latest date to include
+   * @param includeHistory true to include archived and expired visits, false for recent visits only
+   * @return A List of the visits in the range, oldest first
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Visit> getVisitsBetween(LocalDate from, LocalDate to, boolean includeHistory)
+      throws SQLException {
+    return getFilteredVisits(
+        FilterCriteria.none().between("dateOfVisit", from, to),
+        SortSpec.ascending("dateOfVisit"),
+        includeHistory);
+  }
+
+  /**
+   * Counts the recent visit records without transferring them.
+   *
+   * @return The number of recent visits in the database
+   * @throws SQLException If a database access error occurs
+   */
+  public long countVisits() throws SQLException {
+    return countFilteredVisits(FilterCriteria.none());
+  }
+
+  /**
+   * Counts the recent visits matching the filter criteria without transferring them.
+   *
+   * @param criteria The filter conditions; empty criteria count every recent visit
+   * @return The number of matching visits
+   * @throws SQLException If a database access error occurs
+   */
+  public long countFilteredVisits(FilterCriteria criteria) throws SQLException {
+    return countFilteredVisits(criteria, false);
+  }
+
+  /**
+   * Counts the visits matching the filter criteria without transferring them. Conditions on fields
+   * this DAO does not map to a column are ignored, as in {@link
+   * #getFilteredVisits(FilterCriteria)}, so the caller's own filtering may leave fewer rows.
+   *
+   * @param criteria The filter conditions; empty criteria count every visit
+   * @param includeHistory true to include archived and expired visits, false for recent visits only
+   * @return The number of matching visits
+   * @throws SQLException If a database access error occurs
+   */
+  public long countFilteredVisits(FilterCriteria criteria, boolean includeHistory)
+      throws SQLException {
+    List<String> params = new ArrayList<>();
+    String sql =
+        "SELECT COUNT(*) FROM " + (includeHistory ? ALL_VISITS : "Visit")
+            + toWhereClause(criteria, params, includeHistory);
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++) {
+        stmt.setString(i + 1, params.get(i));
+      }
+      try (ResultSet rs = stmt.executeQuery()) {
+        rs.next();
+        return rs.getLong(1);
+      }
+    }
+  }
+
+  /**
+   * Retrieves one page of visits in primary key order (patient ID, doctor ID, date of visit),
+   * using the key of the last visit already read as the cursor instead of an OFFSET, so every
+   * page costs the same however deep into the table it is. The three cursor values are either
+   * all null, for the first page, or all set.
+   *
+   * <p>The "greater than the cursor" condition is written out column by column rather than as a
+   * row comparison, which MariaDB can turn into a range scan on the primary key.
+   *
+   * @param afterPatientId The patient ID of the last visit already read, or null
+   * @param afterDoctorId The doctor ID of the last visit already read, or null
+   * @param afterDateOfVisit The date of the last visit already read, or null
+   * @param limit The maximum number of visits to return
+   * @return Up to limit visits following the cursor; an empty list after the last page
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Visit> getVisitsPage(
+      String afterPatientId, String afterDoctorId, LocalDate afterDateOfVisit, int limit)
+      throws SQLException {
+    List<Visit> visits = new ArrayList<>();
+    String sql =
+        afterPatientId == null
+            ? "SELECT " + COLUMNS + " FROM Visit"
+                + " ORDER BY patientID, doctorID, dateOfVisit LIMIT ?"
+            : "SELECT " + COLUMNS + " FROM Visit"
+                + " WHERE patientID >= ? AND (patientID > ? OR (doctorID > ?"
+                + " OR (doctorID = ? AND dateOfVisit > ?)))"
+                + " ORDER BY patientID, doctorID, dateOfVisit LIMIT ?";
+
+    try (Connection conn = DatabaseConnection.getReadConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      int index = 1;
+      if (afterPatientId != null) {
+        // The leading patientID >= ? bounds the scan; the rest skips what was already read
+        stmt.setString(index++, afterPatientId);
+        stmt.setString(index++, afterPatientId);
+        stmt.setString(index++, afterDoctorId);
+        stmt.setString(index++, afterDoctorId);
+        stmt.setDate(index++, Date.valueOf(afterDateOfVisit));
+      }
+      stmt.setInt(index, limit);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          visits.add(ROW_MAPPER.mapRow(rs));
+        }
+      }
+    }
+    return visits;
+  }
+
+  /**
+   * Reads every visit and passes it to the action one row at a time, without holding the
+   * whole table in memory. Rows are fetched from the server in chunks of
+   * {@value StreamingQuery#FETCH_SIZE}, in no particular order. The connection is held until the
+   * last row has been processed, so the action should not call back into the DAOs.
+   *
+   * @param action Called once for each visit
+   * @throws SQLException If a database access error occurs
+   */
+  public void forEachVisit(Consumer<? super Visit> action) throws SQLException {
+    StreamingQuery.forEach("SELECT " + COLUMNS + " FROM Visit", ROW_MAPPER, action);
+  }
+
+  /**
+   * Returns a lazy stream over every visit, for exports and reports over tables too large
+   * to load with {@link #getAllVisits()}. Rows are fetched from the server in chunks of
+   * {@value StreamingQuery#FETCH_SIZE}, in no particular order. The stream holds a database
+   * connection until it is closed, so it must be used in a try-with-resources block:
+   *
+   * <pre>
+   * try (Stream&lt;Visit&gt; visits = dao.streamVisits()) {
+   *   visits.forEach(exporter::write);
+   * }
+   * </pre>
+   *
+   * @return A stream of all visits that releases its connection when closed
+   * @throws SQLException If the query cannot be started; errors while reading rows are thrown as
+   *     {@link UncheckedSQLException}
+   */
+  public Stream<Visit> streamVisits() throws SQLException {
+    return StreamingQuery.stream("SELECT " + COLUMNS + " FROM Visit", ROW_MAPPER);
+  }
+
   /**
    * Retrieves a specific visit from the database using the composite primary key.
    * The visit is uniquely identified by a combination of patientId, doctorId, and dateOfVisit.
@@ -77,9 +370,11 @@ public class VisitDAO {
   public Visit getVisit(String patientId, String doctorId, LocalDate dateOfVisit)
       throws SQLException {
     // SQL query to retrieve a visit by patient ID, doctor ID, and date of visit (composite key)
-    String sql = "SELECT * FROM Visit WHERE patientID = ? AND doctorID = ? AND dateOfVisit = ?";
+    String sql =
+        "SELECT " + COLUMNS + " FROM Visit"
+            + " WHERE patientID = ? AND doctorID = ? AND dateOfVisit = ?";
     // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         PreparedStatement stmt = conn.prepareStatement(sql)) {
       stmt.setString(1, patientId);
       stmt.setString(2, doctorId);
@@ -87,18 +382,44 @@ public class VisitDAO {
       stmt.setDate(3, Date.valueOf(dateOfVisit));
       try (ResultSet rs = stmt.executeQuery()) {
         if (rs.next()) {
-          return new Visit(
-              rs.getDate("dateOfVisit").toLocalDate(),
-              rs.getString("patientID"),
-              rs.getString("doctorID"),
-              rs.getString("symptoms"),
-              rs.getString("diagnosis"));
+          return ROW_MAPPER.mapRow(rs);
         }
       }
     }
     return null;
   }
 
+  /**
+   * Retrieves the recent visits with the given keys, as the unfiltered visit queries return them,
+   * matching the composite key with one IN list per 21,000 keys. The keys are in the form {@link
+   * ChangeDAO.Change#getRowId()} reports for visits, and the visits are read from the primary
+   * database, which the change poller reads as well.
+   *
+   * @param rowIds The keys of the visits, each the patient ID, doctor ID and date (yyyy-MM-dd)
+   *     separated by "|"
+   * @return The visits found, in no particular order; keys of expired or missing visits are left
+   *     out
+   * @throws IllegalArgumentException If a key does not have three parts
+   * @throws SQLException If a database access error occurs
+   */
+  public List<Visit> getRecentVisitsByRowIds(Collection<String> rowIds) throws SQLException {
+    List<String[]> keys = new ArrayList<>();
+    for (String rowId : new LinkedHashSet<>(rowIds)) {
+      String[] key = rowId.split("\\|", -1);
+      if (key.length != 3) {
+        throw new IllegalArgumentException("Not a visit key: " + rowId);
+      }
+      keys.add(key);
+    }
+    return KeyListQuery.readByKeys(
+        "SELECT " + COLUMNS + " FROM Visit",
+        "(patientID, doctorID, dateOfVisit)",
+        keys,
+        "dateOfVisit >= ?",
+        List.of(ArchiveMaintenance.getRecentCutoff().toString()),
+        ROW_MAPPER);
+  }
+
   /**
    * Updates an existing visit record in the database.
    * Only the symptoms and diagnosis fields can be updated; the composite key
@@ -124,7 +445,8 @@ public class VisitDAO {
   }
 
   /**
-   * Deletes a visit record from the database using the composite primary key.
+   * Deletes a visit record from the database using the composite primary key,
+   * and removes it from the patient's visit count for the doctor in the same transaction.
    * 
    * @param patientId The ID of the patient involved in the visit
    * @param doctorId The ID of the doctor conducting the visit
@@ -134,19 +456,27 @@ public class VisitDAO {
   public void deleteVisit(String patientId, String doctorId, LocalDate dateOfVisit)
       throws SQLException {
     String sql = "DELETE FROM Visit WHERE patientID = ? AND doctorID = ? AND dateOfVisit = ?";
-    // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
-        PreparedStatement stmt = conn.prepareStatement(sql)) {
-      stmt.setString(1, patientId);
-      stmt.setString(2, doctorId);
-      stmt.setDate(3, Date.valueOf(dateOfVisit));
-      stmt.executeUpdate();
-    }
+    TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, patientId);
+            stmt.setString(2, doctorId);
+            stmt.setDate(3, Date.valueOf(dateOfVisit));
+            if (stmt.executeUpdate() > 0) {
+              decrementVisitCount(conn, patientId, doctorId);
+            }
+          }
+          return null;
+        });
   }
 
   /**
    * Determines which doctor has seen a particular patient most frequently,
    * making them the patient's "primary doctor".
+   * The answer is read from the PatientDoctorVisitCount summary table, which
+   * addVisit, deleteVisit and upsertVisits keep up to date, rather than counted
+   * from the patient's visits.
    * 
    * @param patientId The ID of the patient to find the primary doctor for
    * @return The ID of the doctor who has conducted the most visits with this patient,
@@ -154,29 +484,206 @@ public class VisitDAO {
    * @throws SQLException If a database access error occurs
    */
   public String getPrimaryDoctorId(String patientId) throws SQLException {
-    /* SQL query to retrieve the doctor with the most visits for a patient
-    Not checking if there are multiple doctors with the same number of visits
-    If there are multiple doctors with the same number of visits, the first one will be returned */
+    // One descending scan of idx_visit_count_patient; ties go to the highest doctor ID so the
+    // answer does not change between calls
     String sql =
-        """
-            SELECT doctorID, COUNT(*) as visit_count
-            FROM Visit
-            WHERE patientID = ?
-            GROUP BY doctorID
-            ORDER BY visit_count DESC
-            LIMIT 1
-        """;
+        "SELECT doctorID FROM PatientDoctorVisitCount WHERE patientID = ?"
+            + " ORDER BY visit_count DESC, doctorID DESC LIMIT 1";
 
     // Try-with-resources block to automatically close the connection
-    try (Connection conn = DatabaseConnection.getConnection();
+    try (Connection conn = DatabaseConnection.getReadConnection();
         PreparedStatement stmt = conn.prepareStatement(sql)) {
       stmt.setString(1, patientId);
       try (ResultSet rs = stmt.executeQuery()) {
         if (rs.next()) {
-          return rs.getString("doctorID");
+          return rs.getString(1);
         }
       }
     }
     return null;
   }
+
+  /**
+   * Determines the primary doctor of many patients at once, with one query per 65,000 patients
+   * instead of one per patient. Each patient's doctors are ranked by visit count with a window
+   * function over the PatientDoctorVisitCount summary table, breaking ties like {@link
+   * #getPrimaryDoctorId}.
+   *
+   * @param patientIds The IDs of the patients to find the primary doctor for
+   * @return Patient ID mapped to the primary doctor's ID; patients without visits are left out
+   * @throws SQLException If a database access error occurs
+   */
+  public Map<String, String> getPrimaryDoctorIds(Collection<String> patientIds)
+      throws SQLException {
+    Map<String, String> primaryDoctors = new HashMap<>();
+    List<String> ids = new ArrayList<>(new LinkedHashSet<>(patientIds));
+    for (int from = 0; from < ids.size(); from += MAX_IN_LIST_SIZE) {
+      List<String> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST_SIZE, ids.size()));
+      String sql =
+          "SELECT patientID, doctorID FROM ("
+              + "SELECT patientID, doctorID, ROW_NUMBER() OVER (PARTITION BY patientID"
+              + " ORDER BY visit_count DESC, doctorID DESC) AS doctor_rank"
+              + " FROM PatientDoctorVisitCount WHERE patientID IN ("
+              + String.join(", ", Collections.nCopies(chunk.size(), "?"))
+              + ")) ranked WHERE doctor_rank = 1";
+
+      try (Connection conn = DatabaseConnection.getReadConnection();
+          PreparedStatement stmt = conn.prepareStatement(sql)) {
+        for (int i = 0; i < chunk.size(); i++) {
+          stmt.setString(i + 1, chunk.get(i));
+        }
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            primaryDoctors.put(rs.getString(1), rs.getString(2));
+          }
+        }
+      }
+    }
+    return primaryDoctors;
+  }
+
+  /**
+   * Recomputes the PatientDoctorVisitCount summary table from Visit and VisitArchive in one
+   * transaction, for use after the table has drifted, for example because visits were changed
+   * outside this DAO.
+   *
+   * @return The number of patient and doctor pairs in the rebuilt table
+   * @throws SQLException If a database access error occurs; the old counts are kept in that case
+   */
+  public int rebuildVisitCounts() throws SQLException {
+    return TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM PatientDoctorVisitCount");
+            return stmt.executeUpdate(
+                "INSERT INTO PatientDoctorVisitCount (patientID, doctorID, visit_count)"
+                    + " SELECT patientID, doctorID, COUNT(*) FROM " + ALL_VISITS
+                    + " GROUP BY patientID, doctorID");
+          }
+        });
+  }
+
+  /**
+   * Inserts or updates a batch of visits in a single transaction, for bulk synchronisation jobs.
+   * Visits whose composite key already exists get the given symptoms and diagnosis instead of
+   * being rejected. The visit counts of the affected patient and doctor pairs are recomputed in
+   * the same transaction.
+   *
+   * @param visits The visits to insert or update
+   * @throws SQLException If a database access error occurs; no visit is written in that case
+   */
+  public void upsertVisits(List<Visit> visits) throws SQLException {
+    String sql =
+        "INSERT INTO Visit (patientID, doctorID, dateOfVisit, symptoms, diagnosis) VALUES (?, ?,"
+            + " ?, ?, ?) ON DUPLICATE KEY UPDATE symptoms = VALUES(symptoms),"
+            + " diagnosis = VALUES(diagnosis)";
+    TransactionTemplate.inTransaction(
+        ctx -> {
+          try (Connection conn = DatabaseConnection.getConnection();
+              PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int pending = 0;
+            for (Visit visit : visits) {
+              stmt.setString(1, visit.getPatientId());
+              stmt.setString(2, visit.getDoctorId());
+              stmt.setDate(3, Date.valueOf(visit.getDateOfVisit()));
+              stmt.setString(4, visit.getSymptoms());
+              stmt.setString(5, visit.getDiagnosis());
+              stmt.addBatch();
+              if (++pending == UPSERT_BATCH_SIZE) {
+                stmt.executeBatch();
+                pending = 0;
+              }
+            }
+            if (pending > 0) {
+              stmt.executeBatch();
+            }
+            // An upsert may or may not add a visit, so recount the pairs it touched
+            Set<List<String>> pairs = new LinkedHashSet<>();
+            for (Visit visit : visits) {
+              pairs.add(List.of(visit.getPatientId(), visit.getDoctorId()));
+            }
+            recountVisits(conn, pairs);
+          }
+          return null;
+        });
+  }
+
+  /** Adds one visit to the pair's count, creating its row for the pair's first visit. */
+  private static void incrementVisitCount(Connection conn, String patientId, String doctorId)
+      throws SQLException {
+    String sql =
+        "INSERT INTO PatientDoctorVisitCount (patientID, doctorID, visit_count) VALUES (?, ?, 1)"
+            + " ON DUPLICATE KEY UPDATE visit_count = visit_count + 1";
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setString(1, patientId);
+      stmt.setString(2, doctorId);
+      stmt.executeUpdate();
+    }
+  }
+
+  /** Removes one visit from the pair's count, dropping its row once no visit is left. */
+  private static void decrementVisitCount(Connection conn, String patientId, String doctorId)
+      throws SQLException {
+    try (PreparedStatement update =
+            conn.prepareStatement(
+                "UPDATE PatientDoctorVisitCount SET visit_count = visit_count - 1"
+                    + " WHERE patientID = ? AND doctorID = ?");
+        PreparedStatement delete =
+            conn.prepareStatement(
+                "DELETE FROM PatientDoctorVisitCount"
+                    + " WHERE patientID = ? AND doctorID = ? AND visit_count <= 0")) {
+      update.setString(1, patientId);
+      update.setString(2, doctorId);
+      update.executeUpdate();
+      delete.setString(1, patientId);
+      delete.setString(2, doctorId);
+      delete.executeUpdate();
+    }
+  }
+
+  /**
+   * Sets the counts of the given patient and doctor pairs to their number of rows in Visit and
+   * VisitArchive.
+   *
+   * @param pairs Patient ID and doctor ID of each pair to recount
+   */
+  private static void recountVisits(Connection conn, Set<List<String>> pairs)
+      throws SQLException {
+    String sql =
+        "INSERT INTO PatientDoctorVisitCount (patientID, doctorID, visit_count)"
+            + " SELECT patientID, doctorID, COUNT(*) FROM " + ALL_VISITS
+            + " WHERE patientID = ? AND doctorID = ? GROUP BY patientID, doctorID"
+            + " ON DUPLICATE KEY UPDATE visit_count = VALUES(visit_count)";
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      int pending = 0;
+      for (List<String> pair : pairs) {
+        stmt.setString(1, pair.get(0));
+        stmt.setString(2, pair.get(1));
+        stmt.addBatch();
+        if (++pending == UPSERT_BATCH_SIZE) {
+          stmt.executeBatch();
+          pending = 0;
+        }
+      }
+      if (pending > 0) {
+        stmt.executeBatch();
+      }
+    }
+  }
+
+  /**
+   * Builds the WHERE clause for the criteria, limited to visits since {@link
+   * ArchiveMaintenance#getRecentCutoff()} unless history is included. The date condition lets
+   * MariaDB prune the Visit partitions of older years.
+   */
+  private static String toWhereClause(
+      FilterCriteria criteria, List<String> params, boolean includeHistory) {
+    String where = criteria.toWhereClause(FILTER_COLUMNS, params);
+    if (includeHistory) {
+      return where;
+    }
+    params.add(ArchiveMaintenance.getRecentCutoff().toString());
+    return where + (where.isEmpty() ? " WHERE " : " AND ") + "dateOfVisit >= ?";
+  }
 }
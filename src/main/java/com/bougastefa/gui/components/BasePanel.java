@@ -1,15 +1,29 @@
 package com.bougastefa.gui.components;
 
+import com.bougastefa.database.SchemaMigrator;
+import com.bougastefa.database.SortSpec;
+import com.bougastefa.services.ChangePoller;
+import com.bougastefa.services.ResultCache;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import javax.swing.BorderFactory;
 import java.awt.Frame;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import javax.swing.JComponent;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -17,7 +31,9 @@ import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableColumn;
 
 /**
  * An abstract base panel class that provides common functionality for all entity panels.
@@ -38,6 +54,42 @@ public abstract class BasePanel<T> extends JPanel {
     /** Panel containing action buttons for this entity type */
     protected ButtonPanel buttonPanel;
 
+    /** Sort order chosen by clicking a column header, applied by the database */
+    private SortSpec sortSpec = SortSpec.none();
+
+    /** Values of the filter currently shown, or null when the table shows every item */
+    private Map<String, Object> activeFilter;
+
+    /** Status bar below the table showing how many items are visible out of the total */
+    private final JLabel statusLabel = new JLabel(" ");
+
+    /** Whether a status bar update has been scheduled but has not run yet */
+    private boolean statusUpdatePending;
+
+    /** The count started by the latest status bar update, until its total is shown */
+    private SwingWorker<Long, Void> statusCount;
+
+    /** The total shown by the last status bar update, or -1 if it is unknown */
+    private long lastTotal = -1;
+
+    /** The rows of the unfiltered table, saved for the next session to show at startup */
+    private final TableSnapshot snapshot;
+
+    /** The query started by loadInBackground(), until its rows are shown or another load starts */
+    private SwingWorker<?, ?> backgroundLoad;
+
+    /** Whether the background load is the initial one, replacing the rows saved last session */
+    private boolean initialLoad;
+
+    /** The read of rows other clients changed, until they are patched into the table */
+    private SwingWorker<List<Object[]>, Void> rowRefresh;
+
+    /** IDs of changed rows to read once the running row refresh has finished */
+    private final Set<String> staleRowIds = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    /** Whether the schema migration has finished, so the database may be queried on this thread */
+    private boolean schemaReady;
+
     /**
      * Creates a new BasePanel.
      * Initializes the standard layout with a button panel at the top and a data table 
@@ -55,12 +107,26 @@ public abstract class BasePanel<T> extends JPanel {
         buttonPanel.setEditButtonListener(e -> editSelectedItem());
         buttonPanel.setDeleteButtonListener(e -> deleteSelectedItem());
         buttonPanel.setFilterButtonListener(e -> showAdvancedFilterDialog());
-        buttonPanel.setRefreshButtonListener(e -> loadData());
+        // Refresh always reads from the database, including changes made by other clients
+        buttonPanel.setRefreshButtonListener(e -> {
+            ResultCache.shared().invalidateAll();
+            loadData();
+            saveSnapshot();
+        });
         
         add(buttonPanel, BorderLayout.NORTH);
         
+        // The window opens before the schema is migrated; until then the buttons, which query
+        // the database on the event dispatch thread, stay disabled
+        buttonPanel.setEnabled(false);
+        SchemaMigrator.whenMigrated(() -> SwingUtilities.invokeLater(() -> {
+            schemaReady = true;
+            buttonPanel.setEnabled(true);
+        }));
+        
         // Set up the data table with column names from subclass
         String[] columnNames = getColumnNames();
+        snapshot = TableSnapshot.forPanel(entityName, columnNames);
         tableModel = createTableModel(columnNames);
         dataTable = createTable(tableModel);
         JScrollPane scrollPane = new JScrollPane(dataTable);
@@ -68,6 +134,30 @@ public abstract class BasePanel<T> extends JPanel {
         
         // Allow subclasses to customize table if needed
         customizeTable(dataTable);
+
+        // Clicking a sortable column header reloads the data sorted by that column
+        dataTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = dataTable.columnAtPoint(e.getPoint());
+                if (column != -1) {
+                    sortBy(dataTable.convertColumnIndexToModel(column));
+                }
+            }
+        });
+
+        // Status bar, refreshed once after each batch of table changes rather than per row
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        add(statusLabel, BorderLayout.SOUTH);
+        tableModel.addTableModelListener(e -> scheduleStatusUpdate());
+        // Also covers an initial load that leaves the table empty and so fires no event
+        scheduleStatusUpdate();
+
+        // Show the changes other clients make to the tables this panel displays
+        if (!getChangeTables().isEmpty()) {
+            ChangePoller.shared().addListener(
+                changes -> SwingUtilities.invokeLater(() -> applyChanges(changes)));
+        }
     }
     
     /**
@@ -102,6 +192,541 @@ public abstract class BasePanel<T> extends JPanel {
         buttonPanel.addCustomButton(buttonText, listener);
     }
     
+    /**
+     * Gets the columns the table can be sorted by.
+     * Subclasses override this to whitelist the columns their DAO can sort with an index,
+     * mapping each column name to the sort field name the service accepts.
+     * Clicks on other column headers are ignored.
+     * 
+     * @return Column names mapped to sort field names; empty if the table cannot be sorted
+     */
+    protected Map<String, String> getSortFields() {
+        return Map.of();
+    }
+    
+    /**
+     * Gets the sort order the user chose by clicking a column header.
+     * Subclasses pass it to the service when loading or filtering data.
+     * 
+     * @return The current sort order, or {@link SortSpec#none()} before any header was clicked
+     */
+    protected SortSpec getSortSpec() {
+        return sortSpec;
+    }
+    
+    /**
+     * Records the filter the table currently shows, so a change of sort order
+     * can reload the same rows in the new order.
+     * Subclasses call this from applyFilters() with the filter values, and
+     * from loadData() with null.
+     * 
+     * @param formData The filter values, or null when the table shows every item
+     */
+    protected void setActiveFilter(Map<String, Object> formData) {
+        activeFilter = formData;
+        // The rows read in the background would replace or patch the ones this load shows
+        cancelBackgroundWork();
+    }
+    
+    /**
+     * Cancels the background load and row refresh in progress, if any, and forgets the changed
+     * rows waiting to be read, since the load that follows reads them anyway.
+     */
+    private void cancelBackgroundWork() {
+        if (backgroundLoad != null) {
+            backgroundLoad.cancel(false);
+            backgroundLoad = null;
+        }
+        initialLoad = false;
+        if (rowRefresh != null) {
+            rowRefresh.cancel(false);
+            rowRefresh = null;
+        }
+        staleRowIds.clear();
+    }
+    
+    /**
+     * Loads the first rows of the panel without making the window wait for the database.
+     * The rows saved at the end of the previous session's load, if any, are shown at once;
+     * the query then runs in the background once the schema migration has finished, and its
+     * rows replace the saved ones and are saved in turn. A load or filter started meanwhile
+     * cancels the replacement.
+     * Subclasses call this from their constructor instead of loadData().
+     * 
+     * @param <L> The type of the query result
+     * @param query Reads all items, off the event dispatch thread
+     * @param populate Shows the items in the table, on the event dispatch thread
+     */
+    protected <L> void loadInitialData(Callable<L> query, Consumer<L> populate) {
+        Object[][] saved = snapshot.load();
+        if (saved != null) {
+            for (Object[] row : saved) {
+                tableModel.addRow(row);
+            }
+        }
+        loadInBackground(query, populate);
+        initialLoad = true;
+    }
+    
+    /**
+     * Replaces the rows of the table with the result of a query run in the background, keeping
+     * the selected row selected if it is still shown. The current rows stay until the result
+     * arrives; a later load, filter or change of sort order cancels the replacement.
+     * 
+     * @param <L> The type of the query result
+     * @param query Reads the items, off the event dispatch thread
+     * @param populate Shows the items in the table, on the event dispatch thread
+     */
+    protected <L> void loadInBackground(Callable<L> query, Consumer<L> populate) {
+        cancelBackgroundWork();
+        SwingWorker<L, Void> worker = new SwingWorker<L, Void>() {
+            @Override
+            protected L doInBackground() throws Exception {
+                // The initial load starts when the window opens, before the schema is migrated
+                SchemaMigrator.awaitMigration();
+                return query.call();
+            }
+            
+            @Override
+            protected void done() {
+                if (backgroundLoad != this) {
+                    return;
+                }
+                backgroundLoad = null;
+                initialLoad = false;
+                try {
+                    L result = get();
+                    String selectedId = getSelectedRowId();
+                    populate.accept(result);
+                    selectRow(selectedId);
+                    saveSnapshot();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    showError(
+                        "Error loading data",
+                        cause instanceof Exception ? (Exception) cause : ex);
+                }
+                // Rows changed while the query ran may have been read before the change
+                refreshStaleRows();
+                scheduleStatusUpdate();
+            }
+        };
+        backgroundLoad = worker;
+        worker.execute();
+    }
+    
+    /**
+     * Saves the rows of the table for the next session, unless they are filtered.
+     * The rows are copied here, on the event dispatch thread, and written in the background.
+     */
+    private void saveSnapshot() {
+        if (activeFilter != null) {
+            return;
+        }
+        Object[][] rows = new Object[tableModel.getRowCount()][tableModel.getColumnCount()];
+        for (int row = 0; row < rows.length; row++) {
+            for (int column = 0; column < rows[row].length; column++) {
+                rows[row][column] = tableModel.getValueAt(row, column);
+            }
+        }
+        snapshot.save(rows);
+    }
+    
+    /**
+     * Sorts the table by the given column, reversing the order if the table is
+     * already sorted by it, and reloads the rows shown from the database.
+     * 
+     * @param modelColumn The index of the clicked column in the table model
+     */
+    private void sortBy(int modelColumn) {
+        String field = getSortFields().get(tableModel.getColumnName(modelColumn));
+        if (field == null || !schemaReady) {
+            return;
+        }
+        sortSpec = sortSpec.toggle(field);
+        
+        // Mark the sorted column with an arrow showing the direction
+        for (int i = 0; i < dataTable.getColumnCount(); i++) {
+            TableColumn column = dataTable.getColumnModel().getColumn(i);
+            String name = tableModel.getColumnName(column.getModelIndex());
+            if (column.getModelIndex() == modelColumn) {
+                name += sortSpec.isAscending() ? " \u25B2" : " \u25BC";
+            }
+            column.setHeaderValue(name);
+        }
+        dataTable.getTableHeader().repaint();
+        
+        if (activeFilter != null) {
+            applyFilters(activeFilter);
+        } else {
+            loadData();
+        }
+    }
+    
+    /**
+     * Gets the tables whose rows this panel displays, so changes other clients make to them
+     * can be shown without a full refresh. The first table is the one each row comes from;
+     * the others, if any, only contribute columns.
+     * Subclasses override this; the default returns no tables, and the panel then only shows
+     * other clients' changes when it is refreshed.
+     * 
+     * @return The table names, e.g. "Patient", first the panel's own table
+     */
+    protected List<String> getChangeTables() {
+        return List.of();
+    }
+    
+    /**
+     * Gets the columns holding the IDs of the rows of the other change tables that each row
+     * shows data from, such as the drug whose name a prescription row shows. When such a row
+     * changes, only the rows referencing it are read again.
+     * Subclasses whose getChangeTables() lists other tables override this; a change to a table
+     * with no column here reloads the whole table.
+     * 
+     * @return Table names mapped to the index of the column holding that table's row IDs
+     */
+    protected Map<String, Integer> getReferenceColumns() {
+        return Map.of();
+    }
+    
+    /**
+     * Gets the ID of a row of the table, in the form the change poller reports it.
+     * The default returns the value of the first column.
+     * 
+     * @param row The values of the row, in column order
+     * @return The row ID, or null if it is unknown
+     */
+    protected String getRowId(Object[] row) {
+        return row[0] == null ? null : row[0].toString();
+    }
+    
+    /**
+     * Reads the current values of the rows with the given IDs, for showing the rows other
+     * clients changed without reloading the table. Called off the event dispatch thread.
+     * Subclasses override this to read just those rows through their service; the default
+     * returns null, and the panel then reloads all its rows instead.
+     * 
+     * @param ids The IDs of the rows, in the form getRowId() returns
+     * @return The rows found, with the values the table would show; IDs of rows that no longer
+     *     exist are left out. Null if single rows cannot be read
+     * @throws Exception If the rows could not be read
+     */
+    protected List<Object[]> readRows(Set<String> ids) throws Exception {
+        return null;
+    }
+    
+    /**
+     * Reloads the rows shown, with the given filter and the current sort order, when other
+     * clients' changes cannot be patched into the table row by row. Subclasses override this
+     * to read the rows in the background with loadInBackground(), as applyFilters() or
+     * loadData() would read them; the default calls those directly.
+     * 
+     * @param filter The values of the filter shown, or null when the table shows every item
+     */
+    protected void reloadInBackground(Map<String, Object> filter) {
+        if (filter != null) {
+            applyFilters(filter);
+        } else {
+            loadData();
+            saveSnapshot();
+        }
+    }
+    
+    /**
+     * Reads the rows shown again in the background, with the current filter and sort order,
+     * for a subclass that changed what its rows contain, such as a column shown on demand.
+     */
+    protected void reloadShownRows() {
+        reloadInBackground(activeFilter);
+    }
+    
+    /**
+     * Shows the changes other clients made to this panel's tables. Deleted rows are removed at
+     * once; the rows that were written, or that show data from a written or deleted row of
+     * another table, are read again in the background with readRows() and replaced, inserted at
+     * the top or removed in place. The whole table is reloaded in the background instead when
+     * the changed rows cannot be placed without asking the database: while a filter is shown,
+     * which a written row may no longer match, or when a row would move or be added in a sorted
+     * table.
+     * 
+     * @param changes The changes found by the poller
+     */
+    private void applyChanges(ChangePoller.Changes changes) {
+        List<String> tables = getChangeTables();
+        String ownTable = tables.get(0);
+        Map<String, Integer> referenceColumns = getReferenceColumns();
+        // IDs are compared ignoring case, as the database compares them
+        Set<String> stale = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        boolean reload = false;
+        for (String table : changes.getTables()) {
+            if (table.equals(ownTable)) {
+                stale.addAll(changes.getWritten(table));
+            } else if (referenceColumns.containsKey(table)) {
+                Set<String> referenced = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                referenced.addAll(changes.getWritten(table));
+                referenced.addAll(changes.getDeleted(table));
+                int column = referenceColumns.get(table);
+                for (int row = 0; row < tableModel.getRowCount(); row++) {
+                    Object value = tableModel.getValueAt(row, column);
+                    String id = getRowId(row);
+                    if (value != null && id != null && referenced.contains(value.toString())) {
+                        stale.add(id);
+                    }
+                }
+            } else if (tables.contains(table)) {
+                reload = true;
+            }
+        }
+        
+        if (reload || (!stale.isEmpty() && activeFilter != null)) {
+            reloadInBackground(activeFilter);
+            return;
+        }
+        if (backgroundLoad != null) {
+            // The load may have read these rows before their deletion, so they are checked after it
+            stale.addAll(changes.getDeleted(ownTable));
+        }
+        
+        // A row deleted and inserted again is read like any other written row
+        Set<String> deleted = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        deleted.addAll(changes.getDeleted(ownTable));
+        deleted.removeAll(stale);
+        boolean removed = false;
+        for (int row = tableModel.getRowCount() - 1; row >= 0 && !deleted.isEmpty(); row--) {
+            String id = getRowId(row);
+            if (id != null && deleted.contains(id)) {
+                tableModel.removeRow(row);
+                removed = true;
+            }
+        }
+        if (removed) {
+            saveSnapshot();
+        }
+        staleRowIds.addAll(stale);
+        refreshStaleRows();
+    }
+    
+    /**
+     * Reads the rows waiting in staleRowIds in the background and patches them into the table,
+     * unless a read or a background load is already running; the rows that become stale meanwhile
+     * are read after it. If the read fails, the rows wait for the next change or refresh.
+     */
+    private void refreshStaleRows() {
+        if (rowRefresh != null || backgroundLoad != null || staleRowIds.isEmpty()) {
+            return;
+        }
+        Set<String> ids = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        ids.addAll(staleRowIds);
+        staleRowIds.clear();
+        rowRefresh = new SwingWorker<List<Object[]>, Void>() {
+            @Override
+            protected List<Object[]> doInBackground() throws Exception {
+                return readRows(ids);
+            }
+            
+            @Override
+            protected void done() {
+                if (rowRefresh != this) {
+                    return;
+                }
+                rowRefresh = null;
+                try {
+                    List<Object[]> rows = get();
+                    if (rows == null || !patchRows(ids, rows)) {
+                        reloadInBackground(activeFilter);
+                        return;
+                    }
+                    saveSnapshot();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    // The services log their own errors
+                    staleRowIds.addAll(ids);
+                    return;
+                }
+                refreshStaleRows();
+            }
+        };
+        rowRefresh.execute();
+    }
+    
+    /**
+     * Replaces, inserts or removes the rows with the given IDs, leaving the other rows and the
+     * selection as they are. Nothing is changed if the table is sorted and a row would be added
+     * or its sorted column has changed, since only the database knows where it then belongs.
+     * 
+     * @param ids The IDs of the rows that were read
+     * @param rows The rows found; the IDs without a row are removed from the table
+     * @return true if the rows were patched, false if the table must be reloaded
+     */
+    private boolean patchRows(Set<String> ids, List<Object[]> rows) {
+        Map<String, Object[]> found = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Object[] row : rows) {
+            found.put(getRowId(row), row);
+        }
+        int sortColumn = getSortColumn();
+        if (sortColumn != -1) {
+            Set<String> shown = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            for (int row = 0; row < tableModel.getRowCount(); row++) {
+                String id = getRowId(row);
+                Object[] values = id == null ? null : found.get(id);
+                if (values != null) {
+                    shown.add(id);
+                    Object sorted = tableModel.getValueAt(row, sortColumn);
+                    if (!Objects.equals(sorted, values[sortColumn])) {
+                        return false;
+                    }
+                }
+            }
+            if (!shown.containsAll(found.keySet())) {
+                return false;
+            }
+        }
+        
+        for (int row = tableModel.getRowCount() - 1; row >= 0; row--) {
+            String id = getRowId(row);
+            if (id == null || !ids.contains(id)) {
+                continue;
+            }
+            Object[] values = found.remove(id);
+            if (values == null) {
+                tableModel.removeRow(row);
+                continue;
+            }
+            for (int column = 0; column < values.length; column++) {
+                if (!Objects.equals(tableModel.getValueAt(row, column), values[column])) {
+                    tableModel.setValueAt(values[column], row, column);
+                }
+            }
+        }
+        // Rows new to the table go first, where the newest rows of an unsorted table are
+        int position = 0;
+        for (Object[] values : found.values()) {
+            tableModel.insertRow(position++, values);
+        }
+        return true;
+    }
+    
+    /** @return The model index of the column the table is sorted by, or -1 if it is unsorted */
+    private int getSortColumn() {
+        if (sortSpec.isNone()) {
+            return -1;
+        }
+        Map<String, String> sortFields = getSortFields();
+        for (int column = 0; column < tableModel.getColumnCount(); column++) {
+            if (sortSpec.getField().equals(sortFields.get(tableModel.getColumnName(column)))) {
+                return column;
+            }
+        }
+        return -1;
+    }
+    
+    /** Gets the ID of the row at the given index of the table model. */
+    private String getRowId(int modelRow) {
+        Object[] row = new Object[tableModel.getColumnCount()];
+        for (int column = 0; column < row.length; column++) {
+            row[column] = tableModel.getValueAt(modelRow, column);
+        }
+        return getRowId(row);
+    }
+    
+    /** @return The ID of the selected row, or null if no row is selected */
+    private String getSelectedRowId() {
+        int selected = dataTable.getSelectedRow();
+        return selected == -1 ? null : getRowId(dataTable.convertRowIndexToModel(selected));
+    }
+    
+    /** Selects the row with the given ID, if the table shows it. */
+    private void selectRow(String id) {
+        for (int row = 0; id != null && row < tableModel.getRowCount(); row++) {
+            if (id.equalsIgnoreCase(getRowId(row))) {
+                int viewRow = dataTable.convertRowIndexToView(row);
+                dataTable.setRowSelectionInterval(viewRow, viewRow);
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Counts all items of this panel's entity without loading them.
+     * Subclasses override this to ask their service, which counts in the database.
+     * Called off the event dispatch thread.
+     * 
+     * @return The total number of items, or -1 if it is unknown
+     */
+    protected long countAllItems() {
+        return -1;
+    }
+    
+    /**
+     * Schedules a status bar update on the event dispatch thread, unless one is already pending.
+     */
+    private void scheduleStatusUpdate() {
+        if (!statusUpdatePending) {
+            statusUpdatePending = true;
+            SwingUtilities.invokeLater(this::updateStatusBar);
+        }
+    }
+    
+    /**
+     * Shows the number of rows in the table and the total number of items
+     * in the status bar. Only the total is queried, in the background; until it
+     * arrives the previous total is shown. The visible rows are counted from the
+     * table model.
+     */
+    private void updateStatusBar() {
+        statusUpdatePending = false;
+        int visible = tableModel.getRowCount();
+        if (backgroundLoad != null && initialLoad) {
+            // Counting would wait for the database the initial load is still waiting for
+            statusLabel.setText(visible == 0
+                ? "Loading..."
+                : "Showing " + visible + " saved in the last session, updating...");
+            return;
+        }
+        showStatus();
+        
+        // Only the latest count is shown; an earlier one still running is outdated
+        if (statusCount != null) {
+            statusCount.cancel(false);
+        }
+        statusCount = new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() {
+                SchemaMigrator.awaitMigration();
+                return countAllItems();
+            }
+            
+            @Override
+            protected void done() {
+                if (statusCount != this) {
+                    return;
+                }
+                statusCount = null;
+                try {
+                    lastTotal = get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    // The services log their own errors; the total is then unknown
+                    lastTotal = -1;
+                }
+                showStatus();
+            }
+        };
+        statusCount.execute();
+    }
+    
+    /** Shows the rows in the table and the last total counted in the status bar. */
+    private void showStatus() {
+        int visible = tableModel.getRowCount();
+        statusLabel.setText(lastTotal < 0
+            ? "Showing " + visible
+            : "Showing " + visible + " of " + lastTotal);
+    }
+    
     /**
      * Loads data into the table.
      * Must be implemented by subclasses to retrieve entity-specific data
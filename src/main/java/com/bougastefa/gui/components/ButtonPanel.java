@@ -105,9 +105,23 @@ public class ButtonPanel extends JPanel {
    */
   public void addCustomButton(String buttonText, ActionListener listener) {
     JButton customButton = new JButton(buttonText);
+    customButton.setEnabled(isEnabled());
     customButton.addActionListener(listener);
     add(customButton);
     revalidate();  // Update the layout to include the new button
     repaint();     // Ensure the new button is visually displayed
   }
+
+  /**
+   * Enables or disables every button on the panel, including custom buttons added later.
+   *
+   * @param enabled Whether the buttons can be clicked
+   */
+  @Override
+  public void setEnabled(boolean enabled) {
+    super.setEnabled(enabled);
+    for (Component button : getComponents()) {
+      button.setEnabled(enabled);
+    }
+  }
 }
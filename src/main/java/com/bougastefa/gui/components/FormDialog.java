@@ -2,6 +2,8 @@ package com.bougastefa.gui.components;
 
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.List;
 import java.util.function.Consumer;
@@ -17,6 +19,9 @@ import javax.swing.event.DocumentListener;
  * The class uses a builder pattern to simplify the creation and configuration process.
  */
 public class FormDialog extends JDialog {
+  /** Client property marking text fields whose value is collected as a LocalDate */
+  private static final String DATE_FIELD = "FormDialog.dateField";
+
   /**
    * Map storing all form field components by their field names.
    * This allows for easy access and retrieval of field values when processing the form.
@@ -145,8 +150,10 @@ public class FormDialog extends JDialog {
    * Collects all form field values into a map for processing.
    * Iterates through all form components and extracts their values based on component type.
    * Currently supports JTextField and JCheckBox components, but can be extended for other types.
+   * Date fields are collected as LocalDate values, or null if left empty.
    *
    * @return A map where keys are field names and values are the corresponding field values
+   * @throws IllegalArgumentException If a date field does not hold a valid date
    */
   private Map<String, Object> collectFormData() {
     Map<String, Object> data = new HashMap<>();
@@ -155,7 +162,9 @@ public class FormDialog extends JDialog {
       String fieldName = entry.getKey();
       JComponent component = entry.getValue();
 
-      if (component instanceof JTextField) {
+      if (component.getClientProperty(DATE_FIELD) != null) {
+        data.put(fieldName, parseDate(((JTextField) component).getText().trim()));
+      } else if (component instanceof JTextField) {
         data.put(fieldName, ((JTextField) component).getText().trim());
       } else if (component instanceof JCheckBox) {
         data.put(fieldName, ((JCheckBox) component).isSelected());
@@ -166,6 +175,24 @@ public class FormDialog extends JDialog {
     return data;
   }
 
+  /**
+   * Parses the text of a date field.
+   *
+   * @param text The trimmed text of the field
+   * @return The date, or null if the text is empty
+   * @throws IllegalArgumentException If the text is not a date in YYYY-MM-DD format
+   */
+  private static LocalDate parseDate(String text) {
+    if (text.isEmpty()) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(text);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid date: " + text + ". Use the format YYYY-MM-DD");
+    }
+  }
+
   /**
    * Sets a custom text for the save button.
    * This allows for context-specific labeling (e.g., "Create", "Update", "Submit").
@@ -374,6 +401,23 @@ public Builder addTextField(String label, String fieldName, String initialValue)
   return this;
 }
 
+    /**
+     * Adds a date field to the form. The date is typed in YYYY-MM-DD format and passed to the
+     * save action as a LocalDate, or null if the field is left empty; an invalid date keeps the
+     * dialog open with an error message.
+     *
+     * @param label The label to display for the field
+     * @param fieldName The field name for data binding
+     * @return This builder, for method chaining
+     */
+    public Builder addDateField(String label, String fieldName) {
+      JTextField dateField = new JTextField(20);
+      dateField.setToolTipText("YYYY-MM-DD");
+      dateField.putClientProperty(DATE_FIELD, Boolean.TRUE);
+      fields.add(new FormField<>(label + " (YYYY-MM-DD)", fieldName, dateField));
+      return this;
+    }
+
     /**
      * Adds a checkbox field to the form.
      *
@@ -0,0 +1,263 @@
+package com.bougastefa.gui.components;
+
+import com.bougastefa.database.DatabaseConnection;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The rows a panel showed in the previous session, saved in a local file so the next session can
+ * show them before the database has answered. One file per panel is kept under {@code
+ * panelSnapshot.dir}, by default {@code ~/.health-track/snapshots}, readable by the current user
+ * only. The files hold patient data unencrypted, so they are only written once {@code
+ * panelSnapshot.enabled=true} is set, on machines whose disks are encrypted and not shared.
+ *
+ * <p>The files use a compact binary format that is read in one piece into a buffer, without
+ * parsing text: a header with the database URL and the column names, then each cell as a type tag
+ * followed by its value. The file is not memory-mapped, since Windows refuses to replace a file
+ * while a mapping of it is still waiting to be garbage collected. A file saved for another
+ * database or other columns, or one that cannot be read, is ignored. Files are written to a
+ * temporary file on a background thread and then moved over the old one, so a crash never leaves
+ * a half-written snapshot behind.
+ */
+final class TableSnapshot {
+  private static final Logger logger = LoggerFactory.getLogger(TableSnapshot.class);
+
+  /** "HTS1", identifying the file format and its version */
+  private static final int MAGIC = 0x48545331;
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INTEGER = 2;
+  private static final byte LONG = 3;
+  private static final byte DOUBLE = 4;
+
+  /** Writes the files one at a time, off the event dispatch thread */
+  private static final ExecutorService WRITER =
+      Executors.newSingleThreadExecutor(
+          task -> {
+            Thread thread = new Thread(task, "table-snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** The file, or null if snapshots are disabled */
+  private final Path file;
+  /** The database the rows are read from; a file saved for another database is ignored */
+  private final String source;
+  private final String[] columns;
+
+  /**
+   * Creates the snapshot of one panel's table in the given directory.
+   *
+   * @param directory The directory holding the file, or null to disable the snapshot
+   * @param source The database the rows are read from, e.g. its JDBC URL
+   * @param name The panel's entity name, e.g. "Patient", which names the file
+   * @param columns The table's column names; a file saved with other columns is ignored
+   */
+  TableSnapshot(Path directory, String source, String name, String[] columns) {
+    this.file =
+        directory == null ? null : directory.resolve(name.toLowerCase(Locale.ROOT) + ".snapshot");
+    this.source = String.valueOf(source);
+    this.columns = columns.clone();
+  }
+
+  /**
+   * Creates the snapshot of one panel's table with the {@code panelSnapshot.*} settings and the
+   * database URL of db.properties.
+   *
+   * @param name The panel's entity name, e.g. "Patient", which names the file
+   * @param columns The table's column names; a file saved with other columns is ignored
+   * @return The snapshot, disabled unless {@code panelSnapshot.enabled=true}
+   */
+  static TableSnapshot forPanel(String name, String[] columns) {
+    Path directory = isEnabled() ? getDirectory() : null;
+    return new TableSnapshot(directory, DatabaseConnection.getProperty("db.url"), name, columns);
+  }
+
+  /**
+   * Reads the rows saved by {@link #save}, on the calling thread. Reading the file in one piece
+   * and copying out the cells takes a few milliseconds even for large tables.
+   *
+   * @return The rows, or null if snapshots are disabled or no usable file exists
+   */
+  Object[][] load() {
+    if (file == null || !Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+      if (buffer.getInt() != MAGIC
+          || !source.equals(readString(buffer))
+          || buffer.getInt() != columns.length) {
+        return null;
+      }
+      for (String column : columns) {
+        if (!column.equals(readString(buffer))) {
+          return null;
+        }
+      }
+      int rowCount = buffer.getInt();
+      // Each cell takes at least one byte, which bounds the row count of a damaged file
+      if (rowCount < 0 || (long) rowCount * columns.length > buffer.remaining()) {
+        return null;
+      }
+      Object[][] rows = new Object[rowCount][columns.length];
+      for (Object[] row : rows) {
+        for (int i = 0; i < row.length; i++) {
+          row[i] = readCell(buffer);
+        }
+      }
+      return rows;
+    } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+      logger.debug("Ignoring unreadable table snapshot {}", file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Saves the rows in the background, replacing the previous file. The caller must not change the
+   * arrays afterwards.
+   *
+   * @param rows The rows of the table, each with one value per column
+   */
+  void save(Object[][] rows) {
+    if (file == null) {
+      return;
+    }
+    WRITER.execute(
+        () -> {
+          try {
+            write(rows);
+          } catch (IOException | RuntimeException e) {
+            logger.warn("Could not save table snapshot {}", file, e);
+          }
+        });
+  }
+
+  /**
+   * Writes the rows on the calling thread, replacing the previous file.
+   *
+   * @param rows The rows of the table, each with one value per column
+   * @throws IOException If the file cannot be written
+   */
+  void write(Object[][] rows) throws IOException {
+    Path directory = file.getParent();
+    createDirectory(directory);
+    Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        writeString(out, source);
+        out.writeInt(columns.length);
+        for (String column : columns) {
+          writeString(out, column);
+        }
+        out.writeInt(rows.length);
+        for (Object[] row : rows) {
+          for (int i = 0; i < columns.length; i++) {
+            writeCell(out, i < row.length ? row[i] : null);
+          }
+        }
+      }
+      Files.move(
+          temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /** Writes a cell, keeping the types the panels put in their tables and any other as text. */
+  private static void writeCell(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof Integer) {
+      out.writeByte(INTEGER);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else {
+      out.writeByte(STRING);
+      writeString(out, value.toString());
+    }
+  }
+
+  private static Object readCell(ByteBuffer buffer) {
+    byte tag = buffer.get();
+    switch (tag) {
+      case NULL:
+        return null;
+      case STRING:
+        return readString(buffer);
+      case INTEGER:
+        return buffer.getInt();
+      case LONG:
+        return buffer.getLong();
+      case DOUBLE:
+        return buffer.getDouble();
+      default:
+        throw new IllegalArgumentException("Unknown cell type " + tag);
+    }
+  }
+
+  /** Writes a string as its length in bytes followed by its UTF-8 bytes. */
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IllegalArgumentException("Invalid string length " + length);
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Creates the directory readable by the current user only, where the file system allows it. */
+  private static void createDirectory(Path directory) throws IOException {
+    if (Files.isDirectory(directory)) {
+      return;
+    }
+    try {
+      Files.createDirectories(
+          directory,
+          PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+    } catch (UnsupportedOperationException e) {
+      Files.createDirectories(directory);
+    }
+  }
+
+  private static boolean isEnabled() {
+    String value = DatabaseConnection.getProperty("panelSnapshot.enabled");
+    return value != null && value.trim().equalsIgnoreCase("true");
+  }
+
+  private static Path getDirectory() {
+    String directory = DatabaseConnection.getProperty("panelSnapshot.dir");
+    if (directory == null || directory.isBlank()) {
+      return Paths.get(System.getProperty("user.home"), ".health-track", "snapshots");
+    }
+    return Paths.get(directory.trim());
+  }
+}
@@ -1,16 +1,18 @@
 package com.bougastefa.gui.panels;
 
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.gui.components.BasePanel;
-import com.bougastefa.gui.components.FilterResult;
 import com.bougastefa.gui.components.FormDialog;
 import com.bougastefa.models.Doctor;
 import com.bougastefa.models.Specialist;
 import com.bougastefa.services.DoctorService;
 import com.bougastefa.utils.FieldLengthConstants;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Set;
 import javax.swing.*;
 
 /**
@@ -20,6 +22,15 @@ import javax.swing.*;
  * Specialist doctors which are a subclass of Doctor with additional specialization information.
  */
 public class DoctorPanel extends BasePanel<Doctor> {
+  /** Columns that can be sorted by clicking their header, and the sort field of each */
+  private static final Map<String, String> SORT_FIELDS =
+      Map.of(
+          "Doctor ID", "doctorId",
+          "First Name", "firstName",
+          "Surname", "surname",
+          "Hospital", "hospital",
+          "Specialization", "specialization");
+
   /** Service object that handles business logic and data operations for doctors */
   private final DoctorService doctorService;
 
@@ -30,7 +41,9 @@ public class DoctorPanel extends BasePanel<Doctor> {
   public DoctorPanel() {
     super("Doctor");
     doctorService = new DoctorService();
-    loadData();
+    loadInitialData(
+        () -> doctorService.getFilteredDoctors(FilterCriteria.none(), getSortSpec()),
+        this::populateTable);
   }
 
   /**
@@ -44,6 +57,24 @@ public class DoctorPanel extends BasePanel<Doctor> {
     };
   }
 
+  /** {@inheritDoc} Whitelists the columns the database can sort with an index. */
+  @Override
+  protected Map<String, String> getSortFields() {
+    return SORT_FIELDS;
+  }
+
+  /** {@inheritDoc} Counts the doctor records in the database. */
+  @Override
+  protected long countAllItems() {
+    return doctorService.countDoctors();
+  }
+
+  /** {@inheritDoc} Shows the changes other clients make to the doctors. */
+  @Override
+  protected List<String> getChangeTables() {
+    return List.of("Doctor");
+  }
+
   /**
    * {@inheritDoc}
    * Loads all doctors from the service and populates the table with the data.
@@ -51,7 +82,8 @@ public class DoctorPanel extends BasePanel<Doctor> {
   @Override
   protected void loadData() {
     try {
-      List<Doctor> doctors = doctorService.getAllDoctors();
+      setActiveFilter(null);
+      List<Doctor> doctors = doctorService.getFilteredDoctors(FilterCriteria.none(), getSortSpec());
       populateTable(doctors);
     } catch (Exception ex) {
       showError("Error loading doctors", ex);
@@ -68,24 +100,50 @@ public class DoctorPanel extends BasePanel<Doctor> {
   private void populateTable(List<Doctor> doctors) {
     tableModel.setRowCount(0);
     for (Doctor doctor : doctors) {
-      // Determine specialization value based on doctor type
-      String specialization = "";
-      if (doctor instanceof Specialist) {
-        specialization = ((Specialist) doctor).getSpecialization();
-      }
+      tableModel.addRow(toRow(doctor));
+    }
+  }
 
-      // Add all doctor data to the table as a new row
-      tableModel.addRow(
-          new Object[] {
-            doctor.getDoctorId(),
-            doctor.getFirstName(),
-            doctor.getSurname(),
-            doctor.getAddress(),
-            doctor.getEmail(),
-            doctor.getHospital(),
-            specialization
-          });
+  /**
+   * Builds the table row of a doctor.
+   *
+   * @param doctor The doctor to show
+   * @return The values of the row, in column order
+   */
+  private static Object[] toRow(Doctor doctor) {
+    // Determine specialization value based on doctor type
+    String specialization = "";
+    if (doctor instanceof Specialist) {
+      specialization = ((Specialist) doctor).getSpecialization();
+    }
+    return new Object[] {
+      doctor.getDoctorId(),
+      doctor.getFirstName(),
+      doctor.getSurname(),
+      doctor.getAddress(),
+      doctor.getEmail(),
+      doctor.getHospital(),
+      specialization
+    };
+  }
+
+  /** {@inheritDoc} Reads the changed doctors with one query. */
+  @Override
+  protected List<Object[]> readRows(Set<String> ids) {
+    List<Object[]> rows = new ArrayList<>();
+    for (Doctor doctor : doctorService.getDoctorsByIds(ids)) {
+      rows.add(toRow(doctor));
     }
+    return rows;
+  }
+
+  /** {@inheritDoc} Reads the doctors as applyFilters() or loadData() would. */
+  @Override
+  protected void reloadInBackground(Map<String, Object> filter) {
+    FilterCriteria criteria =
+        filter == null ? FilterCriteria.none() : FilterCriteria.fromFormData(filter);
+    SortSpec sort = getSortSpec();
+    loadInBackground(() -> doctorService.getFilteredDoctors(criteria, sort), this::populateTable);
   }
 
   /**
@@ -346,53 +404,19 @@ public class DoctorPanel extends BasePanel<Doctor> {
 
   /**
    * {@inheritDoc}
-   * Applies filter criteria to the list of doctors and updates the table.
-   * Handles standard string fields through the parent class helper method,
-   * with special handling for the specialization field which requires type checking
-   * to identify Specialist doctors.
+   * Passes the filter criteria to the doctor service, which has the database apply them,
+   * and updates the table with the matching doctors. Only specialists have a specialization,
+   * so a specialization filter excludes general doctors.
    * 
    * @param formData Map of field names to filter values from the filter dialog
    */
   @Override
   protected void applyFilters(Map<String, Object> formData) {
     try {
-      List<Doctor> doctors = doctorService.getAllDoctors();
-      
-      // Define filter configurations for standard fields
-      Map<String, Function<Doctor, String>> filterMappings =
-          Map.of(
-              "doctorId", Doctor::getDoctorId,
-              "firstName", Doctor::getFirstName,
-              "surname", Doctor::getSurname,
-              "address", Doctor::getAddress,
-              "email", Doctor::getEmail,
-              "hospital", Doctor::getHospital);
-
-      // Apply standard filters for non-empty fields
-      FilterResult<Doctor> result = applyStandardFilters(doctors, formData, filterMappings);
-
-      // Special handling for specialization since it's in a subclass
-      String specializationFilter = (String) formData.get("specialization");
-      if (specializationFilter != null && !specializationFilter.isEmpty()) {
-        // Filter doctors to only include specialists with matching specialization
-        List<Doctor> filteredBySpecialization =
-            result.getResults().stream()
-                .filter(
-                    doctor -> {
-                      if (doctor instanceof Specialist) {
-                        String specialization = ((Specialist) doctor).getSpecialization();
-                        return specialization != null
-                            && specialization
-                                .toLowerCase()
-                                .contains(specializationFilter.toLowerCase());
-                      }
-                      return false;
-                    })
-                .toList();
-        result = new FilterResult<>(filteredBySpecialization);
-      }
-
-      populateTable(result.getResults());
+      setActiveFilter(formData);
+      List<Doctor> doctors =
+          doctorService.getFilteredDoctors(FilterCriteria.fromFormData(formData), getSortSpec());
+      populateTable(doctors);
     } catch (Exception ex) {
       showError("Error filtering doctors", ex);
     }
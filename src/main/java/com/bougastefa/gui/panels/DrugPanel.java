@@ -1,14 +1,16 @@
 package com.bougastefa.gui.panels;
 
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.gui.components.BasePanel;
-import com.bougastefa.gui.components.FilterResult;
 import com.bougastefa.gui.components.FormDialog;
 import com.bougastefa.models.Drug;
 import com.bougastefa.services.DrugService;
 import com.bougastefa.utils.FieldLengthConstants;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Set;
 import javax.swing.*;
 
 /**
@@ -18,17 +20,29 @@ import javax.swing.*;
  * side effects, and benefits.
  */
 public class DrugPanel extends BasePanel<Drug> {
+  /** Columns that can be sorted by clicking their header, and the sort field of each */
+  private static final Map<String, String> SORT_FIELDS =
+      Map.of(
+          "Drug ID", "drugId",
+          "Name", "name");
+
   /** Service object that handles business logic and data operations for drugs */
   private final DrugService drugService;
 
   /**
-   * Constructs a new DrugPanel. Initializes the panel with the "Drug" title and loads initial drug
-   * data.
+   * Constructs a new DrugPanel. Initializes the panel with the "Drug" title, adds a custom button
+   * for the ranked text search and loads initial drug data.
    */
   public DrugPanel() {
     super("Drug");
     drugService = new DrugService();
-    loadData();
+
+    // Add custom button for searching name, side effects and benefits at once
+    addCustomButton("Search", e -> showSearchDialog());
+
+    loadInitialData(
+        () -> drugService.getFilteredDrugs(FilterCriteria.none(), getSortSpec()),
+        this::populateTable);
   }
 
   /**
@@ -40,6 +54,24 @@ public class DrugPanel extends BasePanel<Drug> {
     return new String[] {"Drug ID", "Name", "Side Effects", "Benefits"};
   }
 
+  /** {@inheritDoc} Whitelists the columns the database can sort with an index. */
+  @Override
+  protected Map<String, String> getSortFields() {
+    return SORT_FIELDS;
+  }
+
+  /** {@inheritDoc} Counts the drug records in the database. */
+  @Override
+  protected long countAllItems() {
+    return drugService.countDrugs();
+  }
+
+  /** {@inheritDoc} Shows the changes other clients make to the drugs. */
+  @Override
+  protected List<String> getChangeTables() {
+    return List.of("Drug");
+  }
+
   /**
    * {@inheritDoc} Loads all drugs from the service and populates the table with the data. Handles
    * any exceptions that may occur during the data loading process.
@@ -47,7 +79,8 @@ public class DrugPanel extends BasePanel<Drug> {
   @Override
   protected void loadData() {
     try {
-      List<Drug> drugs = drugService.getAllDrugs();
+      setActiveFilter(null);
+      List<Drug> drugs = drugService.getFilteredDrugs(FilterCriteria.none(), getSortSpec());
       populateTable(drugs);
     } catch (Exception ex) {
       showError("Error loading drugs", ex);
@@ -63,13 +96,39 @@ public class DrugPanel extends BasePanel<Drug> {
   private void populateTable(List<Drug> drugs) {
     tableModel.setRowCount(0);
     for (Drug drug : drugs) {
-      tableModel.addRow(
-          new Object[] {
-            drug.getDrugId(), drug.getName(), drug.getSideEffects(), drug.getBenefits()
-          });
+      tableModel.addRow(toRow(drug));
     }
   }
 
+  /** Builds the table row of a drug. */
+  private static Object[] toRow(Drug drug) {
+    return new Object[] {
+      drug.getDrugId(), drug.getName(), drug.getSideEffects(), drug.getBenefits()
+    };
+  }
+
+  /**
+   * {@inheritDoc} Reads just the changed drugs from the database, rather than the whole drug table
+   * the service keeps in memory.
+   */
+  @Override
+  protected List<Object[]> readRows(Set<String> ids) {
+    List<Object[]> rows = new ArrayList<>();
+    for (Drug drug : drugService.getDrugsByIds(ids)) {
+      rows.add(toRow(drug));
+    }
+    return rows;
+  }
+
+  /** {@inheritDoc} Reads the drugs with the filter, if any, in the current sort order. */
+  @Override
+  protected void reloadInBackground(Map<String, Object> filter) {
+    FilterCriteria criteria =
+        filter == null ? FilterCriteria.none() : FilterCriteria.fromFormData(filter);
+    SortSpec sort = getSortSpec();
+    loadInBackground(() -> drugService.getFilteredDrugs(criteria, sort), this::populateTable);
+  }
+
   /**
    * {@inheritDoc} Retrieves the currently selected drug from the table. Maps the selected row to a
    * Drug object by using the drugId to look up the full object.
@@ -259,36 +318,50 @@ public class DrugPanel extends BasePanel<Drug> {
   }
 
   /**
-   * {@inheritDoc} Applies filter criteria to the list of drugs and updates the table. Uses the
-   * FilterResult helper class to apply string-based filtering to all drug fields based on the
-   * criteria provided in the form data.
+   * {@inheritDoc} Passes the filter criteria to the drug service, which applies them to its
+   * in-memory copy of the catalogue, and updates the table with the matching drugs.
    *
    * @param formData Map of field names to filter values from the filter dialog
    */
   @Override
   protected void applyFilters(Map<String, Object> formData) {
     try {
-      // Get all drugs to start with
-      List<Drug> drugs = drugService.getAllDrugs();
-
-      // Define filter configurations for each field
-      Map<String, Function<Drug, String>> filterMappings =
-          Map.of(
-              "drugId", Drug::getDrugId,
-              "name", Drug::getName,
-              "sideEffects", Drug::getSideEffects,
-              "benefits", Drug::getBenefits);
-
-      // Apply standard filters for each field using the helper method from BasePanel
-      FilterResult<Drug> result = applyStandardFilters(drugs, formData, filterMappings);
-
-      // Update the table with the filtered results
-      populateTable(result.getResults());
+      setActiveFilter(formData);
+      List<Drug> drugs =
+          drugService.getFilteredDrugs(FilterCriteria.fromFormData(formData), getSortSpec());
+      populateTable(drugs);
     } catch (Exception ex) {
       showError("Error filtering drugs", ex);
     }
   }
 
+  /**
+   * Shows a dialog asking for search words and fills the table with the drugs whose name, side
+   * effects or benefits contain all of them, most relevant first.
+   */
+  private void showSearchDialog() {
+    FormDialog.Builder builder = createFilterDialog("Search Drugs", "searchWords");
+
+    builder.onSave(
+        formData -> {
+          try {
+            String words = ((String) formData.get("searchWords")).trim();
+            if (words.isEmpty()) {
+              loadData();
+              return;
+            }
+            populateTable(drugService.searchDrugs(words));
+          } catch (Exception ex) {
+            showError("Error searching drugs", ex);
+          }
+        });
+
+    FormDialog dialog = builder.build();
+    dialog.setSaveButtonText("Search");
+    dialog.setCancelButtonText("Cancel");
+    dialog.setVisible(true);
+  }
+
   /**
    * {@inheritDoc} Deletes a drug from the system.
    *
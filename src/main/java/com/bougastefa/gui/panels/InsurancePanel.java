@@ -1,15 +1,17 @@
 package com.bougastefa.gui.panels;
 
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.gui.components.BasePanel;
-import com.bougastefa.gui.components.FilterResult;
 import com.bougastefa.gui.components.FormDialog;
 import com.bougastefa.models.Insurance;
 import com.bougastefa.services.InsuranceService;
 import com.bougastefa.utils.FieldLengthConstants;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Set;
 import javax.swing.*;
 
 /**
@@ -19,6 +21,12 @@ import javax.swing.*;
  * insurance providers in a table and provides forms for editing their details.
  */
 public class InsurancePanel extends BasePanel<Insurance> {
+  /** Columns that can be sorted by clicking their header, and the sort field of each */
+  private static final Map<String, String> SORT_FIELDS =
+      Map.of(
+          "Insurance ID", "insuranceId",
+          "Company", "company");
+
   /** Service object that handles business logic and data operations for insurance providers */
   private final InsuranceService insuranceService;
 
@@ -29,7 +37,9 @@ public class InsurancePanel extends BasePanel<Insurance> {
   public InsurancePanel() {
     super("Insurance");
     insuranceService = new InsuranceService();
-    loadData();
+    loadInitialData(
+        () -> insuranceService.getFilteredInsurances(FilterCriteria.none(), getSortSpec()),
+        this::populateTable);
   }
 
   /**
@@ -41,6 +51,24 @@ public class InsurancePanel extends BasePanel<Insurance> {
     return new String[] {"Insurance ID", "Company", "Address", "Phone"};
   }
 
+  /** {@inheritDoc} Whitelists the columns the database can sort with an index. */
+  @Override
+  protected Map<String, String> getSortFields() {
+    return SORT_FIELDS;
+  }
+
+  /** {@inheritDoc} Counts the insurance records in the database. */
+  @Override
+  protected long countAllItems() {
+    return insuranceService.countInsurances();
+  }
+
+  /** {@inheritDoc} Shows the changes other clients make to the insurance providers. */
+  @Override
+  protected List<String> getChangeTables() {
+    return List.of("Insurance");
+  }
+
   /**
    * {@inheritDoc}
    * Loads all insurance providers from the service and populates the table with the data.
@@ -49,7 +77,9 @@ public class InsurancePanel extends BasePanel<Insurance> {
   @Override
   protected void loadData() {
     try {
-      List<Insurance> insurances = insuranceService.getAllInsurances();
+      setActiveFilter(null);
+      List<Insurance> insurances =
+          insuranceService.getFilteredInsurances(FilterCriteria.none(), getSortSpec());
       populateTable(insurances);
     } catch (Exception ex) {
       showError("Error loading insurances", ex);
@@ -65,14 +95,46 @@ public class InsurancePanel extends BasePanel<Insurance> {
   private void populateTable(List<Insurance> insurances) {
     tableModel.setRowCount(0);
     for (Insurance insurance : insurances) {
-      tableModel.addRow(
-          new Object[] {
-            insurance.getInsuranceId(),
-            insurance.getCompany(),
-            insurance.getAddress(),
-            insurance.getPhone()
-          });
+      tableModel.addRow(toRow(insurance));
+    }
+  }
+
+  /**
+   * Builds the table row of an insurance provider.
+   * 
+   * @param insurance The insurance provider to show
+   * @return The values of the row, in column order
+   */
+  private static Object[] toRow(Insurance insurance) {
+    return new Object[] {
+      insurance.getInsuranceId(),
+      insurance.getCompany(),
+      insurance.getAddress(),
+      insurance.getPhone()
+    };
+  }
+
+  /** {@inheritDoc} Reads the changed insurance providers with one query. */
+  @Override
+  protected List<Object[]> readRows(Set<String> ids) {
+    List<Object[]> rows = new ArrayList<>();
+    for (Insurance insurance : insuranceService.getInsurancesByIds(ids)) {
+      rows.add(toRow(insurance));
     }
+    return rows;
+  }
+
+  /**
+   * {@inheritDoc}
+   * Reads the insurance providers as applyFilters() or loadData() would.
+   */
+  @Override
+  protected void reloadInBackground(Map<String, Object> filter) {
+    FilterCriteria criteria =
+        filter == null ? FilterCriteria.none() : FilterCriteria.fromFormData(filter);
+    SortSpec sort = getSortSpec();
+    loadInBackground(
+        () -> insuranceService.getFilteredInsurances(criteria, sort), this::populateTable);
   }
 
   /**
@@ -259,31 +321,19 @@ public class InsurancePanel extends BasePanel<Insurance> {
 
   /**
    * {@inheritDoc}
-   * Applies filter criteria to the list of insurance providers and updates the table.
-   * Uses the FilterResult helper class to apply string-based filtering to 
-   * all insurance fields based on the criteria provided in the form data.
+   * Passes the filter criteria to the insurance service, which applies them to its in-memory
+   * copy of the providers, and updates the table with the matching insurance providers.
    * 
    * @param formData Map of field names to filter values from the filter dialog
    */
   @Override
   protected void applyFilters(Map<String, Object> formData) {
     try {
-      // Get all insurance providers to start with
-      List<Insurance> insurances = insuranceService.getAllInsurances();
-      
-      // Define filter configurations for each field
-      Map<String, Function<Insurance, String>> filterMappings =
-          Map.of(
-              "insuranceId", Insurance::getInsuranceId,
-              "company", Insurance::getCompany,
-              "address", Insurance::getAddress,
-              "phone", Insurance::getPhone);
-
-      // Apply standard filters for each field using the helper method from BasePanel
-      FilterResult<Insurance> result = applyStandardFilters(insurances, formData, filterMappings);
-
-      // Update the table with the filtered results
-      populateTable(result.getResults());
+      setActiveFilter(formData);
+      List<Insurance> insurances =
+          insuranceService.getFilteredInsurances(
+              FilterCriteria.fromFormData(formData), getSortSpec());
+      populateTable(insurances);
     } catch (Exception ex) {
       showError("Error filtering insurances", ex);
     }
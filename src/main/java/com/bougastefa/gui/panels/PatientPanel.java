@@ -1,7 +1,8 @@
 package com.bougastefa.gui.panels;
 
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.gui.components.BasePanel;
-import com.bougastefa.gui.components.FilterResult;
 import com.bougastefa.gui.components.FormDialog;
 import com.bougastefa.models.Doctor;
 import com.bougastefa.models.InsuredPatient;
@@ -11,10 +12,12 @@ import com.bougastefa.services.DoctorService;
 import com.bougastefa.services.PatientService;
 import com.bougastefa.services.VisitService;
 import com.bougastefa.utils.FieldLengthConstants;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Set;
 import javax.swing.*;
+import javax.swing.table.TableColumn;
 
 /**
  * Panel for managing Patient entities in the application. This panel extends BasePanel to provide
@@ -24,6 +27,18 @@ import javax.swing.*;
  * display information about a patient's primary doctor (the doctor they have visited most often).
  */
 public class PatientPanel extends BasePanel<Patient> {
+  /** Columns that can be sorted by clicking their header, and the sort field of each */
+  private static final Map<String, String> SORT_FIELDS =
+      Map.of(
+          "Patient ID", "patientId",
+          "First Name", "firstName",
+          "Surname", "surname",
+          "Postcode", "postcode",
+          "Insurance ID", "insuranceId");
+
+  /** Model index of the optional Primary Doctor column, hidden until the user shows it */
+  private static final int PRIMARY_DOCTOR_COLUMN = 8;
+
   /** Service object that handles business logic and data operations for patients */
   private final PatientService patientService;
 
@@ -33,10 +48,16 @@ public class PatientPanel extends BasePanel<Patient> {
   /** Service object used to determine a patient's primary doctor based on visit history */
   private final VisitService visitService;
 
+  /** The Primary Doctor column, kept while it is removed from the table's view */
+  private final TableColumn primaryDoctorColumn;
+
+  /** Whether the Primary Doctor column is shown and filled in; also read by readRows() */
+  private volatile boolean showPrimaryDoctors;
+
   /**
    * Constructs a new PatientPanel. Initializes the panel with the "Patient" title, sets up the
-   * required services, adds a custom button for viewing the patient's primary doctor details, and
-   * loads initial patient data.
+   * required services, adds custom buttons for viewing the patient's primary doctor details and
+   * for showing every listed patient's primary doctor, and loads initial patient data.
    */
   public PatientPanel() {
     super("Patient");
@@ -47,7 +68,15 @@ public class PatientPanel extends BasePanel<Patient> {
     // Add custom button for Primary Doctor functionality
     addCustomButton("Primary Doctor", e -> showPrimaryDoctorDetails());
 
-    loadData();
+    // The Primary Doctor column costs an extra query per load, so it starts hidden
+    primaryDoctorColumn = dataTable.getColumnModel().getColumn(PRIMARY_DOCTOR_COLUMN);
+    dataTable.removeColumn(primaryDoctorColumn);
+    addCustomButton("Primary Doctor Column", e -> togglePrimaryDoctorColumn());
+
+    SortSpec sort = getSortSpec();
+    loadInitialData(
+        () -> toRows(patientService.getFilteredPatients(FilterCriteria.none(), sort)),
+        this::populateTable);
   }
 
   /**
@@ -57,10 +86,36 @@ public class PatientPanel extends BasePanel<Patient> {
   @Override
   protected String[] getColumnNames() {
     return new String[] {
-      "Patient ID", "First Name", "Surname", "Postcode", "Address", "Phone", "Email", "Insurance ID"
+      "Patient ID",
+      "First Name",
+      "Surname",
+      "Postcode",
+      "Address",
+      "Phone",
+      "Email",
+      "Insurance ID",
+      "Primary Doctor"
     };
   }
 
+  /** {@inheritDoc} Whitelists the columns the database can sort with an index. */
+  @Override
+  protected Map<String, String> getSortFields() {
+    return SORT_FIELDS;
+  }
+
+  /** {@inheritDoc} Counts the patient records in the database. */
+  @Override
+  protected long countAllItems() {
+    return patientService.countPatients();
+  }
+
+  /** {@inheritDoc} Shows the changes other clients make to the patients. */
+  @Override
+  protected List<String> getChangeTables() {
+    return List.of("Patient");
+  }
+
   /**
    * {@inheritDoc} Loads all patients from the service and populates the table with the data.
    * Handles any exceptions that may occur during the data loading process.
@@ -68,38 +123,108 @@ public class PatientPanel extends BasePanel<Patient> {
   @Override
   protected void loadData() {
     try {
-      List<Patient> patients = patientService.getAllPatients();
-      populateTable(patients);
+      setActiveFilter(null);
+      List<Patient> patients =
+          patientService.getFilteredPatients(FilterCriteria.none(), getSortSpec());
+      populateTable(toRows(patients));
     } catch (Exception ex) {
       showError("Error loading patients", ex);
     }
   }
 
   /**
-   * Populates the table with patient data. Handles both regular Patient and InsuredPatient objects,
-   * showing the insurance ID for insured patients and an empty string for regular patients.
+   * Populates the table with rows built by toRows(), without querying the database.
    *
-   * @param patients The list of patients to display in the table
+   * @param rows The rows to display in the table
    */
-  private void populateTable(List<Patient> patients) {
+  private void populateTable(List<Object[]> rows) {
     tableModel.setRowCount(0);
-    for (Patient patient : patients) {
-      // Check if this patient is insured and get insurance ID if available
-      String insuranceId = "";
-      if (patient instanceof InsuredPatient) {
-        insuranceId = ((InsuredPatient) patient).getInsuranceId();
+    for (Object[] row : rows) {
+      tableModel.addRow(row);
+    }
+  }
+
+  /**
+   * Builds the table rows of the patients. While the Primary Doctor column is shown, the primary
+   * doctors of all the patients are read with one service call rather than one query per patient,
+   * so this runs with the patient query, off the event dispatch thread when loading in the
+   * background. Patients without visits get a blank primary doctor.
+   *
+   * @param patients The patients to show
+   * @return The rows, in the order of the patients
+   */
+  private List<Object[]> toRows(List<Patient> patients) {
+    Map<String, String> primaryDoctors = Map.of();
+    if (showPrimaryDoctors && !patients.isEmpty()) {
+      List<String> patientIds = new ArrayList<>();
+      for (Patient patient : patients) {
+        patientIds.add(patient.getPatientId());
       }
-      tableModel.addRow(
-          new Object[] {
-            patient.getPatientId(),
-            patient.getFirstName(),
-            patient.getSurname(),
-            patient.getPostcode(),
-            patient.getAddress(),
-            patient.getPhone(),
-            patient.getEmail(),
-            insuranceId
-          });
+      primaryDoctors = visitService.getPrimaryDoctorIds(patientIds);
+    }
+    List<Object[]> rows = new ArrayList<>(patients.size());
+    for (Patient patient : patients) {
+      rows.add(toRow(patient, primaryDoctors.getOrDefault(patient.getPatientId(), "")));
+    }
+    return rows;
+  }
+
+  /**
+   * Builds the table row of a patient.
+   *
+   * @param patient The patient to show
+   * @param primaryDoctorId The ID of the patient's primary doctor, or "" if not shown or unknown
+   * @return The values of the row, in column order
+   */
+  private static Object[] toRow(Patient patient, String primaryDoctorId) {
+    // Check if this patient is insured and get insurance ID if available
+    String insuranceId = "";
+    if (patient instanceof InsuredPatient) {
+      insuranceId = ((InsuredPatient) patient).getInsuranceId();
+    }
+    return new Object[] {
+      patient.getPatientId(),
+      patient.getFirstName(),
+      patient.getSurname(),
+      patient.getPostcode(),
+      patient.getAddress(),
+      patient.getPhone(),
+      patient.getEmail(),
+      insuranceId,
+      primaryDoctorId
+    };
+  }
+
+  /**
+   * {@inheritDoc} Reads the changed patients with one query, and their primary doctors with
+   * another while the Primary Doctor column is shown.
+   */
+  @Override
+  protected List<Object[]> readRows(Set<String> ids) {
+    return toRows(patientService.getPatientsByIds(ids));
+  }
+
+  /** {@inheritDoc} Reads the patients as applyFilters() or loadData() would. */
+  @Override
+  protected void reloadInBackground(Map<String, Object> filter) {
+    FilterCriteria criteria =
+        filter == null ? FilterCriteria.none() : FilterCriteria.fromFormData(filter);
+    SortSpec sort = getSortSpec();
+    loadInBackground(
+        () -> toRows(patientService.getFilteredPatients(criteria, sort)), this::populateTable);
+  }
+
+  /**
+   * Shows or hides the Primary Doctor column. Showing it reads the listed patients again in the
+   * background, with the primary doctor of each.
+   */
+  private void togglePrimaryDoctorColumn() {
+    showPrimaryDoctors = !showPrimaryDoctors;
+    if (showPrimaryDoctors) {
+      dataTable.addColumn(primaryDoctorColumn);
+      reloadShownRows();
+    } else {
+      dataTable.removeColumn(primaryDoctorColumn);
     }
   }
 
@@ -456,53 +581,19 @@ public class PatientPanel extends BasePanel<Patient> {
   }
 
   /**
-   * {@inheritDoc} Applies filter criteria to the list of patients and updates the table. Uses the
-   * FilterResult helper class for standard fields, with special handling for the insuranceId field
-   * which requires type checking to identify InsuredPatient objects.
+   * {@inheritDoc} Passes the filter criteria to the patient service, which has the database apply
+   * them, and updates the table with the matching patients. Insured patients match the insurance
+   * ID filter through the nullable insuranceID column, so uninsured patients are excluded by it.
    *
    * @param formData Map of field names to filter values from the filter dialog
    */
   @Override
   protected void applyFilters(Map<String, Object> formData) {
     try {
-      // Get all patients to start with
-      List<Patient> patients = patientService.getAllPatients();
-
-      // Define filter configurations for standard fields
-      Map<String, Function<Patient, String>> filterMappings =
-          Map.of(
-              "patientId", Patient::getPatientId,
-              "firstName", Patient::getFirstName,
-              "surname", Patient::getSurname,
-              "postcode", Patient::getPostcode,
-              "address", Patient::getAddress,
-              "phone", Patient::getPhone,
-              "email", Patient::getEmail);
-
-      // Apply standard filters for each field using the helper method from BasePanel
-      FilterResult<Patient> result = applyStandardFilters(patients, formData, filterMappings);
-
-      // Special handling for insurance ID since it's in a subclass
-      String insuranceIdFilter = (String) formData.get("insuranceId");
-      if (insuranceIdFilter != null && !insuranceIdFilter.isEmpty()) {
-        // Filter patients to only include insured patients with matching insurance ID
-        List<Patient> filteredByInsuranceId =
-            result.getResults().stream()
-                .filter(
-                    patient -> {
-                      if (patient instanceof InsuredPatient) {
-                        String insuranceId = ((InsuredPatient) patient).getInsuranceId();
-                        return insuranceId != null
-                            && insuranceId.toLowerCase().contains(insuranceIdFilter.toLowerCase());
-                      }
-                      return false;
-                    })
-                .toList();
-        result = new FilterResult<>(filteredByInsuranceId);
-      }
-
-      // Update the table with the filtered results
-      populateTable(result.getResults());
+      setActiveFilter(formData);
+      List<Patient> patients =
+          patientService.getFilteredPatients(FilterCriteria.fromFormData(formData), getSortSpec());
+      populateTable(toRows(patients));
     } catch (Exception ex) {
       showError("Error filtering patients", ex);
     }
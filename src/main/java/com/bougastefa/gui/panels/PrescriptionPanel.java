@@ -1,17 +1,22 @@
 package com.bougastefa.gui.panels;
 
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.gui.components.BasePanel;
 import com.bougastefa.gui.components.FilterResult;
 import com.bougastefa.gui.components.FormDialog;
 import com.bougastefa.models.Prescription;
+import com.bougastefa.models.PrescriptionView;
 import com.bougastefa.services.PrescriptionService;
 import com.bougastefa.utils.FieldLengthConstants;
 import com.bougastefa.utils.InputValidationUtil;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 import javax.swing.*;
 
@@ -23,6 +28,19 @@ import javax.swing.*;
  * patient ID, dosage, duration, and comments.
  */
 public class PrescriptionPanel extends BasePanel<Prescription> {
+  /** Columns that can be sorted by clicking their header, and the sort field of each */
+  private static final Map<String, String> SORT_FIELDS =
+      Map.of(
+          "Prescription ID", "prescriptionId",
+          "Date", "datePrescribed",
+          "Drug ID", "drugId",
+          "Doctor ID", "doctorId",
+          "Patient ID", "patientId");
+
+  /** The columns holding the IDs of the drug, doctor and patient whose names a row shows */
+  private static final Map<String, Integer> REFERENCE_COLUMNS =
+      Map.of("Drug", 2, "Doctor", 4, "Patient", 6);
+
   /** Service object that handles business logic and data operations for prescriptions */
   private final PrescriptionService prescriptionService;
 
@@ -32,6 +50,9 @@ public class PrescriptionPanel extends BasePanel<Prescription> {
    */
   private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+  /** Whether the table shows archived and expired prescriptions, as chosen in the filter dialog */
+  private boolean includeHistory;
+
   /**
    * Constructs a new PrescriptionPanel. Initializes the panel with the "Prescription" title and
    * loads initial prescription data.
@@ -39,12 +60,15 @@ public class PrescriptionPanel extends BasePanel<Prescription> {
   public PrescriptionPanel() {
     super("Prescription");
     prescriptionService = new PrescriptionService();
-    loadData();
+    loadInitialData(
+        () ->
+            prescriptionService.getFilteredPrescriptionViews(FilterCriteria.none(), getSortSpec()),
+        this::populateTable);
   }
 
   /**
    * {@inheritDoc} Defines the column names for the prescription table, showing all relevant
-   * prescription details.
+   * prescription details and the names of the referenced drug, doctor and patient.
    */
   @Override
   protected String[] getColumnNames() {
@@ -52,14 +76,41 @@ public class PrescriptionPanel extends BasePanel<Prescription> {
       "Prescription ID",
       "Date",
       "Drug ID",
+      "Drug",
       "Doctor ID",
+      "Doctor",
       "Patient ID",
+      "Patient",
       "Dosage",
       "Duration",
       "Comment"
     };
   }
 
+  /** {@inheritDoc} Whitelists the columns the database can sort with an index. */
+  @Override
+  protected Map<String, String> getSortFields() {
+    return SORT_FIELDS;
+  }
+
+  /**
+   * {@inheritDoc} Counts the recent prescription records in the database, or all of them while
+   * the table shows the history.
+   */
+  @Override
+  protected long countAllItems() {
+    return prescriptionService.countFilteredPrescriptions(FilterCriteria.none(), includeHistory);
+  }
+
+  /**
+   * {@inheritDoc} Shows the changes other clients make to the prescriptions, and to the drugs,
+   * doctors and patients whose names the table shows.
+   */
+  @Override
+  protected List<String> getChangeTables() {
+    return List.of("Prescription", "Drug", "Doctor", "Patient");
+  }
+
   /**
    * {@inheritDoc} Loads all prescriptions from the service and populates the table with the data.
    * Handles any exceptions that may occur during the data loading process.
@@ -67,7 +118,10 @@ public class PrescriptionPanel extends BasePanel<Prescription> {
   @Override
   protected void loadData() {
     try {
-      List<Prescription> prescriptions = prescriptionService.getAllPrescriptions();
+      setActiveFilter(null);
+      includeHistory = false;
+      List<PrescriptionView> prescriptions =
+          prescriptionService.getFilteredPrescriptionViews(FilterCriteria.none(), getSortSpec());
       populateTable(prescriptions);
     } catch (Exception ex) {
       showError("Error loading prescriptions", ex);
@@ -76,24 +130,76 @@ public class PrescriptionPanel extends BasePanel<Prescription> {
 
   /**
    * Populates the table with prescription data. Formats dates using the dateFormatter to ensure
-   * consistent display.
+   * consistent display. The drug, doctor and patient names come with the prescriptions, so no
+   * lookup is made per row.
    *
-   * @param prescriptions The list of prescriptions to display in the table
+   * @param views The list of prescriptions with their names to display in the table
    */
-  private void populateTable(List<Prescription> prescriptions) {
+  private void populateTable(List<PrescriptionView> views) {
     tableModel.setRowCount(0);
-    for (Prescription prescription : prescriptions) {
-      tableModel.addRow(
-          new Object[] {
-            prescription.getPrescriptionId(),
-            prescription.getDateOfPrescribe().format(dateFormatter),
-            prescription.getDrugId(),
-            prescription.getDoctorId(),
-            prescription.getPatientId(),
-            prescription.getDosage(),
-            prescription.getDuration(),
-            prescription.getComment()
-          });
+    for (PrescriptionView view : views) {
+      tableModel.addRow(toRow(view));
+    }
+  }
+
+  /**
+   * Builds the table row of a prescription and its names.
+   *
+   * @param view The prescription with its drug, doctor and patient names
+   * @return The values of the row, in column order
+   */
+  private Object[] toRow(PrescriptionView view) {
+    Prescription prescription = view.getPrescription();
+    return new Object[] {
+      prescription.getPrescriptionId(),
+      prescription.getDateOfPrescribe().format(dateFormatter),
+      prescription.getDrugId(),
+      view.getDrugName(),
+      prescription.getDoctorId(),
+      view.getDoctorName(),
+      prescription.getPatientId(),
+      view.getPatientName(),
+      prescription.getDosage(),
+      prescription.getDuration(),
+      prescription.getComment()
+    };
+  }
+
+  /**
+   * {@inheritDoc} The names of the drug, doctor and patient come from the rows whose IDs are in
+   * these columns.
+   */
+  @Override
+  protected Map<String, Integer> getReferenceColumns() {
+    return REFERENCE_COLUMNS;
+  }
+
+  /**
+   * {@inheritDoc} Reads the changed prescriptions, and those showing a changed name, with their
+   * names in one query.
+   */
+  @Override
+  protected List<Object[]> readRows(Set<String> ids) {
+    List<Object[]> rows = new ArrayList<>();
+    for (PrescriptionView view : prescriptionService.getRecentPrescriptionViewsByIds(ids)) {
+      rows.add(toRow(view));
+    }
+    return rows;
+  }
+
+  /**
+   * {@inheritDoc} Reads the prescriptions and applies the filters on the numeric fields as
+   * applyFilters() does, all in the background.
+   */
+  @Override
+  protected void reloadInBackground(Map<String, Object> filter) {
+    SortSpec sort = getSortSpec();
+    if (filter == null) {
+      loadInBackground(
+          () -> prescriptionService.getFilteredPrescriptionViews(FilterCriteria.none(), sort),
+          this::populateTable);
+    } else {
+      loadInBackground(() -> filterPrescriptions(filter, sort), this::populateTable);
     }
   }
 
@@ -329,22 +435,25 @@ public class PrescriptionPanel extends BasePanel<Prescription> {
 
   /**
    * {@inheritDoc} Shows a dialog for advanced filtering of prescriptions. Creates a filter form
-   * with fields corresponding to all prescription properties.
+   * with fields corresponding to all prescription properties, with a date range in place of the
+   * prescription date.
    */
   @Override
   protected void showAdvancedFilterDialog() {
     // Create filter dialog with the relevant fields
     FormDialog.Builder builder =
         createFilterDialog(
-            "Advanced Filter",
-            "prescriptionId",
-            "date",
-            "drugId",
-            "doctorId",
-            "patientId",
-            "dosage",
-            "duration",
-            "comment");
+                "Advanced Filter",
+                "prescriptionId",
+                "drugId",
+                "doctorId",
+                "patientId",
+                "dosage",
+                "duration",
+                "comment")
+            .addDateField("From Date", "fromDate")
+            .addDateField("To Date", "toDate")
+            .addCheckBox("Include archived prescriptions", "includeHistory", includeHistory);
 
     // Define filter action to be called when filter is applied
     builder.onSave(this::applyFilters);
@@ -357,41 +466,57 @@ public class PrescriptionPanel extends BasePanel<Prescription> {
   }
 
   /**
-   * {@inheritDoc} Applies filter criteria to the list of prescriptions and updates the table. Maps
-   * numeric fields (dosage, duration) to strings for consistent filtering and formats dates using
-   * the dateFormatter for proper comparison.
+   * {@inheritDoc} Has the database filter the prescriptions on the ID and comment fields and on
+   * the date range, then applies the filters on the numeric fields (dosage, duration) in memory,
+   * since those match against the text shown in the table rather than a column value. Only recent
+   * prescriptions are shown unless archived prescriptions are included.
    *
    * @param formData Map of field names to filter values from the filter dialog
    */
   @Override
   protected void applyFilters(Map<String, Object> formData) {
     try {
-      // Get all prescriptions to start with
-      List<Prescription> prescriptions = prescriptionService.getAllPrescriptions();
-
-      // Define filter configurations for each field, with appropriate conversions
-      Map<String, Function<Prescription, String>> filterMappings =
-          Map.ofEntries(
-              Map.entry("prescriptionId", Prescription::getPrescriptionId),
-              Map.entry("date", p -> p.getDateOfPrescribe().format(dateFormatter)),
-              Map.entry("drugId", Prescription::getDrugId),
-              Map.entry("doctorId", Prescription::getDoctorId),
-              Map.entry("patientId", Prescription::getPatientId),
-              Map.entry("dosage", p -> String.valueOf(p.getDosage())),
-              Map.entry("duration", p -> String.valueOf(p.getDuration())),
-              Map.entry("comment", Prescription::getComment));
-
-      // Apply standard filters using the helper method from BasePanel
-      FilterResult<Prescription> result =
-          applyStandardFilters(prescriptions, formData, filterMappings);
-
+      setActiveFilter(formData);
+      includeHistory = Boolean.TRUE.equals(formData.get("includeHistory"));
       // Update the table with the filtered results
-      populateTable(result.getResults());
+      populateTable(filterPrescriptions(formData, getSortSpec()));
     } catch (Exception ex) {
       showError("Error filtering prescriptions", ex);
     }
   }
 
+  /**
+   * Reads the prescriptions matching the values of the filter dialog, in the given order. Does
+   * not touch the table, so it can run off the event dispatch thread.
+   *
+   * @param formData Map of field names to filter values from the filter dialog
+   * @param sort The sort order
+   * @return The matching prescriptions with their names
+   */
+  private List<PrescriptionView> filterPrescriptions(Map<String, Object> formData, SortSpec sort) {
+    FilterCriteria criteria =
+        FilterCriteria.fromFormData(formData)
+            .between(
+                "datePrescribed",
+                (LocalDate) formData.get("fromDate"),
+                (LocalDate) formData.get("toDate"));
+    // ID and text fields and the date range are filtered by the database
+    List<PrescriptionView> prescriptions =
+        prescriptionService.getFilteredPrescriptionViews(
+            criteria, sort, Boolean.TRUE.equals(formData.get("includeHistory")));
+
+    // Derived fields, compared as they are displayed
+    Map<String, Function<PrescriptionView, String>> filterMappings =
+        Map.of(
+            "dosage", v -> String.valueOf(v.getPrescription().getDosage()),
+            "duration", v -> String.valueOf(v.getPrescription().getDuration()));
+
+    // Apply the remaining filters using the helper method from BasePanel
+    FilterResult<PrescriptionView> result =
+        applyStandardFilters(prescriptions, formData, filterMappings);
+    return result.getResults();
+  }
+
   /**
    * {@inheritDoc} Deletes a prescription from the system.
    *
@@ -1,7 +1,8 @@
 package com.bougastefa.gui.panels;
 
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.gui.components.BasePanel;
-import com.bougastefa.gui.components.FilterResult;
 import com.bougastefa.gui.components.FormDialog;
 import com.bougastefa.models.Visit;
 import com.bougastefa.services.VisitService;
@@ -10,9 +11,10 @@ import com.bougastefa.utils.FieldLengthConstants;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Set;
 import javax.swing.*;
 
 /**
@@ -23,6 +25,13 @@ import javax.swing.*;
  * operations.
  */
 public class VisitPanel extends BasePanel<Visit> {
+  /** Columns that can be sorted by clicking their header, and the sort field of each */
+  private static final Map<String, String> SORT_FIELDS =
+      Map.of(
+          "Date of Visit", "dateOfVisit",
+          "Doctor ID", "doctorId",
+          "Patient ID", "patientId");
+
   /** Service object that handles business logic and data operations for visits */
   private final VisitService visitService;
 
@@ -32,6 +41,9 @@ public class VisitPanel extends BasePanel<Visit> {
    */
   private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+  /** Whether the table shows archived and expired visits, as chosen in the filter dialog */
+  private boolean includeHistory;
+
   /**
    * Constructs a new VisitPanel. Initializes the panel with the "Visit" title and loads initial
    * visit data.
@@ -39,7 +51,9 @@ public class VisitPanel extends BasePanel<Visit> {
   public VisitPanel() {
     super("Visit");
     visitService = new VisitService();
-    loadData();
+    loadInitialData(
+        () -> visitService.getFilteredVisits(FilterCriteria.none(), getSortSpec()),
+        this::populateTable);
   }
 
   /**
@@ -51,6 +65,36 @@ public class VisitPanel extends BasePanel<Visit> {
     return new String[] {"Date of Visit", "Doctor ID", "Patient ID", "Symptoms", "Diagnosis"};
   }
 
+  /** {@inheritDoc} Whitelists the columns the database can sort with an index. */
+  @Override
+  protected Map<String, String> getSortFields() {
+    return SORT_FIELDS;
+  }
+
+  /**
+   * {@inheritDoc} Counts the recent visit records in the database, or all of them while the table
+   * shows the history.
+   */
+  @Override
+  protected long countAllItems() {
+    return visitService.countFilteredVisits(FilterCriteria.none(), includeHistory);
+  }
+
+  /** {@inheritDoc} Shows the changes other clients make to the visits. */
+  @Override
+  protected List<String> getChangeTables() {
+    return List.of("Visit");
+  }
+
+  /**
+   * {@inheritDoc} Visits are identified by their patient ID, doctor ID and date, which the table
+   * shows in yyyy-MM-dd form.
+   */
+  @Override
+  protected String getRowId(Object[] row) {
+    return row[2] + "|" + row[1] + "|" + row[0];
+  }
+
   /**
    * {@inheritDoc} Loads all visits from the service and populates the table with the data. Handles
    * any exceptions that may occur during the data loading process.
@@ -58,7 +102,9 @@ public class VisitPanel extends BasePanel<Visit> {
   @Override
   protected void loadData() {
     try {
-      List<Visit> visits = visitService.getAllVisits();
+      setActiveFilter(null);
+      includeHistory = false;
+      List<Visit> visits = visitService.getFilteredVisits(FilterCriteria.none(), getSortSpec());
       populateTable(visits);
     } catch (Exception ex) {
       showError("Error loading visits", ex);
@@ -74,15 +120,47 @@ public class VisitPanel extends BasePanel<Visit> {
   private void populateTable(List<Visit> visits) {
     tableModel.setRowCount(0);
     for (Visit visit : visits) {
-      tableModel.addRow(
-          new Object[] {
-            visit.getDateOfVisit().format(dateFormatter),
-            visit.getDoctorId(),
-            visit.getPatientId(),
-            visit.getSymptoms(),
-            visit.getDiagnosis()
-          });
+      tableModel.addRow(toRow(visit));
+    }
+  }
+
+  /**
+   * Builds the table row of a visit, with its date formatted by the dateFormatter.
+   *
+   * @param visit The visit to show
+   * @return The values of the row, in column order
+   */
+  private Object[] toRow(Visit visit) {
+    return new Object[] {
+      visit.getDateOfVisit().format(dateFormatter),
+      visit.getDoctorId(),
+      visit.getPatientId(),
+      visit.getSymptoms(),
+      visit.getDiagnosis()
+    };
+  }
+
+  /**
+   * {@inheritDoc} Reads the changed visits by their composite keys. Only the unfiltered table is
+   * patched this way, so visits that have expired are left out as a reload would leave them out.
+   */
+  @Override
+  protected List<Object[]> readRows(Set<String> ids) {
+    List<Object[]> rows = new ArrayList<>();
+    for (Visit visit : visitService.getRecentVisitsByRowIds(ids)) {
+      rows.add(toRow(visit));
     }
+    return rows;
+  }
+
+  /** {@inheritDoc} Reads the visits with the same criteria as applyFilters() and loadData(). */
+  @Override
+  protected void reloadInBackground(Map<String, Object> filter) {
+    FilterCriteria criteria = filter == null ? FilterCriteria.none() : toCriteria(filter);
+    boolean history = filter != null && Boolean.TRUE.equals(filter.get("includeHistory"));
+    SortSpec sort = getSortSpec();
+    loadInBackground(
+        () -> visitService.getFilteredVisits(criteria, sort, history), this::populateTable);
   }
 
   /**
@@ -269,15 +347,17 @@ public class VisitPanel extends BasePanel<Visit> {
 
   /**
    * {@inheritDoc} Shows a dialog for advanced filtering of visits. Creates a filter form with
-   * fields corresponding to all visit properties, including the composite key fields and
-   * descriptive fields.
+   * fields corresponding to the doctor and patient IDs and the descriptive fields, plus a date
+   * range for the date of visit.
    */
   @Override
   protected void showAdvancedFilterDialog() {
     // Create filter dialog with the relevant fields
     FormDialog.Builder builder =
-        createFilterDialog(
-            "Advanced Filter", "dateOfVisit", "doctorId", "patientId", "symptoms", "diagnosis");
+        createFilterDialog("Advanced Filter", "doctorId", "patientId", "symptoms", "diagnosis")
+            .addDateField("From Date", "fromDate")
+            .addDateField("To Date", "toDate")
+            .addCheckBox("Include archived visits", "includeHistory", includeHistory);
 
     // Define filter action to be called when filter is applied
     builder.onSave(this::applyFilters);
@@ -290,36 +370,39 @@ public class VisitPanel extends BasePanel<Visit> {
   }
 
   /**
-   * {@inheritDoc} Applies filter criteria to the list of visits and updates the table. Formats
-   * dates using the dateFormatter for proper comparison.
+   * {@inheritDoc} Has the database filter the visits on the ID and text fields and on the date
+   * range, either end of which may be left open. Only recent visits are shown unless archived
+   * visits are included.
    *
    * @param formData Map of field names to filter values from the filter dialog
    */
   @Override
   protected void applyFilters(Map<String, Object> formData) {
     try {
-      // Get all visits to start with
-      List<Visit> visits = visitService.getAllVisits();
-
-      // Define filter configurations for each field, with appropriate formatters for dates
-      Map<String, Function<Visit, String>> filterMappings =
-          Map.of(
-              "dateOfVisit", visit -> visit.getDateOfVisit().format(dateFormatter),
-              "doctorId", Visit::getDoctorId,
-              "patientId", Visit::getPatientId,
-              "symptoms", Visit::getSymptoms,
-              "diagnosis", Visit::getDiagnosis);
-
-      // Apply standard filters using the helper method from BasePanel
-      FilterResult<Visit> result = applyStandardFilters(visits, formData, filterMappings);
-
-      // Update the table with the filtered results
-      populateTable(result.getResults());
+      FilterCriteria criteria = toCriteria(formData);
+      setActiveFilter(formData);
+      includeHistory = Boolean.TRUE.equals(formData.get("includeHistory"));
+      populateTable(visitService.getFilteredVisits(criteria, getSortSpec(), includeHistory));
     } catch (Exception ex) {
       showError("Error filtering visits", ex);
     }
   }
 
+  /**
+   * Converts the values of the filter dialog to the criteria the database filters the visits by:
+   * the ID and text fields, and the date range.
+   *
+   * @param formData Map of field names to filter values from the filter dialog
+   * @return The filter criteria
+   */
+  private static FilterCriteria toCriteria(Map<String, Object> formData) {
+    return FilterCriteria.fromFormData(formData)
+        .between(
+            "dateOfVisit",
+            (LocalDate) formData.get("fromDate"),
+            (LocalDate) formData.get("toDate"));
+  }
+
   /**
    * {@inheritDoc} Deletes a visit from the system. Uses the composite key (patient ID, doctor ID,
    * date of visit) to identify the visit to delete.
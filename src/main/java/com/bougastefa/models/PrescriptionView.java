@@ -0,0 +1,77 @@
+package com.bougastefa.models;
+
+/**
+ * Read-only projection of a prescription together with the names of its drug, doctor and
+ * patient, as shown in the prescription table.
+ * Instances are built from a single query joining the referenced tables, so displaying a list of
+ * prescriptions needs no further lookup per row.
+ */
+public final class PrescriptionView {
+    /** The prescription itself */
+    private final Prescription prescription;
+    /** Name of the prescribed drug, or null if the drug does not exist */
+    private final String drugName;
+    /** Full name of the prescribing doctor, or null if the doctor does not exist */
+    private final String doctorName;
+    /** Full name of the patient, or null if the patient does not exist */
+    private final String patientName;
+
+    /**
+     * Constructs a new PrescriptionView.
+     *
+     * @param prescription The prescription
+     * @param drugName     Name of the prescribed drug, or null if unknown
+     * @param doctorName   Full name of the prescribing doctor, or null if unknown
+     * @param patientName  Full name of the patient, or null if unknown
+     */
+    public PrescriptionView(
+        Prescription prescription, String drugName, String doctorName, String patientName) {
+        this.prescription = prescription;
+        this.drugName = drugName;
+        this.doctorName = doctorName;
+        this.patientName = patientName;
+    }
+
+    /**
+     * @return The prescription
+     */
+    public Prescription getPrescription() {
+        return prescription;
+    }
+
+    /**
+     * @return The name of the prescribed drug, or null if unknown
+     */
+    public String getDrugName() {
+        return drugName;
+    }
+
+    /**
+     * @return The full name of the prescribing doctor, or null if unknown
+     */
+    public String getDoctorName() {
+        return doctorName;
+    }
+
+    /**
+     * @return The full name of the patient, or null if unknown
+     */
+    public String getPatientName() {
+        return patientName;
+    }
+
+    /**
+     * Returns a string representation of the prescription view.
+     *
+     * @return A string containing the prescription and the resolved names
+     */
+    @Override
+    public String toString() {
+        return "PrescriptionView{"
+            + "prescription=" + prescription
+            + ", drugName='" + drugName + '\''
+            + ", doctorName='" + doctorName + '\''
+            + ", patientName='" + patientName + '\''
+            + '}';
+    }
+}
@@ -0,0 +1,58 @@
+package com.bougastefa.monitoring;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Exposes the counters of a cache through {@link CacheStatsMXBean}. The caches count in their own
+ * way, so each one is adapted by passing the methods that read its counters.
+ */
+public final class CacheStats implements CacheStatsMXBean {
+  private final LongSupplier size;
+  private final LongSupplier hits;
+  private final LongSupplier misses;
+  private final LongSupplier evictions;
+
+  /**
+   * Creates the adapter.
+   *
+   * @param size Reads the number of entries
+   * @param hits Reads the number of reads answered from memory
+   * @param misses Reads the number of reads that queried the database
+   * @param evictions Reads the number of evicted entries; use {@code () -> 0} if the cache has
+   *     no size limit
+   */
+  public CacheStats(
+      LongSupplier size, LongSupplier hits, LongSupplier misses, LongSupplier evictions) {
+    this.size = size;
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+  }
+
+  @Override
+  public long getSize() {
+    return size.getAsLong();
+  }
+
+  @Override
+  public long getHits() {
+    return hits.getAsLong();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.getAsLong();
+  }
+
+  @Override
+  public double getHitRatio() {
+    long hitCount = hits.getAsLong();
+    long reads = hitCount + misses.getAsLong();
+    return reads == 0 ? 0 : (double) hitCount / reads;
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions.getAsLong();
+  }
+}
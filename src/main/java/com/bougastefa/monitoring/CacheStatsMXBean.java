@@ -0,0 +1,23 @@
+package com.bougastefa.monitoring;
+
+/**
+ * Management interface of the in-memory caches, shown by jconsole and Java Mission Control under
+ * {@code com.bougastefa:type=Cache}. A hit is a read answered from memory and a miss one that had
+ * to query the database.
+ */
+public interface CacheStatsMXBean {
+  /** @return The number of entries held, such as entities, results or IDs */
+  long getSize();
+
+  /** @return The number of reads answered from memory */
+  long getHits();
+
+  /** @return The number of reads that queried the database */
+  long getMisses();
+
+  /** @return The share of reads answered from memory, between 0 and 1; 0 before any read */
+  double getHitRatio();
+
+  /** @return The number of entries removed to make room for others */
+  long getEvictions();
+}
@@ -0,0 +1,194 @@
+package com.bougastefa.monitoring;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the calls the services make to one DAO, one {@link MethodStats} per DAO method. Each
+ * method's counters are registered as an MXBean named {@code
+ * com.bougastefa:type=DAO,component=<DAO>,name=<method>} when the method is first called; a name
+ * the DAO class has no public method for is rejected, so a typo fails on the first call instead of
+ * creating a misnamed bean.
+ *
+ * <p>The services wrap each DAO call, for example {@code METRICS.call("getAllPatients",
+ * patientDAO::getAllPatients)}. Each call is also counted for the service method it was made for,
+ * under {@code com.bougastefa:type=Service,component=<service>,name=<method>}: the outermost
+ * method of the services package on the calling thread's stack, which is the one the panel called.
+ * A service bean thus shows the database calls and database time of one user action, however many
+ * helpers and caches sit in between. Calls answered from a service's cache never reach the DAO and
+ * are counted by the cache's own MXBean instead.
+ */
+public final class DaoMetrics {
+  /** A DAO call that returns a value */
+  @FunctionalInterface
+  public interface Call<T> {
+    T call() throws SQLException;
+  }
+
+  /** A DAO call that returns nothing */
+  @FunctionalInterface
+  public interface Run {
+    void run() throws SQLException;
+  }
+
+  /** Package prefix of the classes whose methods the DAO calls are attributed to */
+  private static final String SERVICES_PACKAGE = "com.bougastefa.services.";
+  private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+  /** Counters of the service methods, keyed by class and method name */
+  private static final Map<String, MethodStats> SERVICE_METHODS = new ConcurrentHashMap<>();
+
+  private final Class<?> dao;
+  private final Map<String, MethodStats> methods = new ConcurrentHashMap<>();
+
+  private DaoMetrics(Class<?> dao) {
+    this.dao = dao;
+  }
+
+  /**
+   * Creates the metrics of a DAO.
+   *
+   * @param dao The DAO class, whose simple name names the MXBeans, e.g. PatientDAO
+   * @return The metrics, empty until the first call
+   */
+  public static DaoMetrics forDao(Class<?> dao) {
+    return new DaoMetrics(dao);
+  }
+
+  /**
+   * Runs a DAO call and records its latency, its rows and whether it failed.
+   *
+   * @param method The DAO method name
+   * @param call The call
+   * @param <T> The result type
+   * @return The call's result
+   * @throws IllegalArgumentException If the DAO has no public method of that name
+   * @throws SQLException If the call fails
+   */
+  public <T> T call(String method, Call<T> call) throws SQLException {
+    MethodStats stats = stats(method);
+    long started = System.nanoTime();
+    boolean failed = true;
+    T result = null;
+    try {
+      result = call.call();
+      failed = false;
+      return result;
+    } finally {
+      long nanos = System.nanoTime() - started;
+      long rows = rowsOf(result);
+      stats.record(nanos, rows, failed);
+      MethodStats service = serviceStats();
+      if (service != null) {
+        service.record(nanos, rows, failed);
+      }
+    }
+  }
+
+  /**
+   * Runs a DAO call that returns nothing and records its latency and whether it failed.
+   *
+   * @param method The DAO method name
+   * @param run The call
+   * @throws IllegalArgumentException If the DAO has no public method of that name
+   * @throws SQLException If the call fails
+   */
+  public void run(String method, Run run) throws SQLException {
+    call(
+        method,
+        () -> {
+          run.run();
+          return null;
+        });
+  }
+
+  /**
+   * Returns the counters of one method, registering them on first use.
+   *
+   * @param method The DAO method name
+   * @return The method's counters
+   * @throws IllegalArgumentException If the DAO has no public method of that name
+   */
+  public MethodStats stats(String method) {
+    MethodStats stats = methods.get(method);
+    if (stats == null) {
+      stats =
+          methods.computeIfAbsent(
+              method,
+              name -> {
+                if (!declares(dao, name)) {
+                  throw new IllegalArgumentException(
+                      dao.getSimpleName() + " has no public method " + name);
+                }
+                MethodStats created = new MethodStats();
+                Monitoring.register(
+                    "type=DAO,component=" + dao.getSimpleName() + ",name=" + name, created);
+                return created;
+              });
+    }
+    return stats;
+  }
+
+  private static boolean declares(Class<?> type, String name) {
+    for (Method method : type.getMethods()) {
+      if (method.getName().equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the counters of the service method the current DAO call was made for, registering
+   * them on first use.
+   *
+   * @return The counters, or null if no service method is on the stack
+   */
+  private static MethodStats serviceStats() {
+    StackWalker.StackFrame caller =
+        STACK_WALKER.walk(
+            frames ->
+                frames
+                    .filter(
+                        frame ->
+                            frame.getClassName().startsWith(SERVICES_PACKAGE)
+                                && !frame.getMethodName().startsWith("lambda$"))
+                    .reduce((inner, outer) -> outer)
+                    .orElse(null));
+    if (caller == null) {
+      return null;
+    }
+    String component = caller.getClassName().substring(SERVICES_PACKAGE.length());
+    String key = component + '.' + caller.getMethodName();
+    MethodStats stats = SERVICE_METHODS.get(key);
+    if (stats == null) {
+      stats =
+          SERVICE_METHODS.computeIfAbsent(
+              key,
+              name -> {
+                MethodStats created = new MethodStats();
+                Monitoring.register(
+                    "type=Service,component=" + component + ",name=" + caller.getMethodName(),
+                    created);
+                return created;
+              });
+    }
+    return stats;
+  }
+
+  /** Counts a list or map by its size, any other entity as one row, and numbers as none. */
+  private static long rowsOf(Object result) {
+    if (result == null || result instanceof Number || result instanceof Boolean) {
+      return 0;
+    }
+    if (result instanceof Collection) {
+      return ((Collection<?>) result).size();
+    }
+    if (result instanceof Map) {
+      return ((Map<?, ?>) result).size();
+    }
+    return 1;
+  }
+}
@@ -0,0 +1,35 @@
+package com.bougastefa.monitoring;
+
+/**
+ * Management interface of {@link MethodStats}, shown by jconsole and Java Mission Control under
+ * {@code com.bougastefa:type=DAO} and {@code type=Service}. Latencies are in milliseconds; the
+ * percentiles are accurate to within about 25%.
+ */
+public interface MethodStatsMXBean {
+  /** @return The number of calls, including failed ones */
+  long getCalls();
+
+  /** @return The number of calls that threw an exception */
+  long getErrors();
+
+  /** @return The number of rows returned, counting one per entity and the size of each list */
+  long getRows();
+
+  /** @return The mean latency of all calls, or 0 before the first call */
+  double getMeanMillis();
+
+  /** @return The median latency */
+  double getP50Millis();
+
+  /** @return The 95th percentile latency */
+  double getP95Millis();
+
+  /** @return The 99th percentile latency */
+  double getP99Millis();
+
+  /** @return The highest latency */
+  double getMaxMillis();
+
+  /** Sets every counter back to zero, for example before measuring one workload. */
+  void reset();
+}
@@ -0,0 +1,50 @@
+package com.bougastefa.monitoring;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers the application's MXBeans with the platform MBean server, under the {@code
+ * com.bougastefa} domain, so they can be watched with jconsole or Java Mission Control without
+ * attaching a profiler.
+ */
+public final class Monitoring {
+  private static final Logger logger = LoggerFactory.getLogger(Monitoring.class);
+  private static final String DOMAIN = "com.bougastefa";
+
+  private Monitoring() {}
+
+  /**
+   * Registers the counters of a cache as {@code com.bougastefa:type=Cache,name=<name>}.
+   *
+   * @param name The cache name, e.g. "patient"
+   * @param stats The cache's counters
+   */
+  public static void registerCache(String name, CacheStatsMXBean stats) {
+    register("type=Cache,name=" + name, stats);
+  }
+
+  /**
+   * Registers an MXBean, replacing one registered under the same name before. Failures are logged
+   * rather than thrown, since monitoring must never stop the application.
+   *
+   * @param properties The key properties of the object name, e.g. "type=Cache,name=patient"
+   * @param bean The MXBean
+   */
+  static void register(String properties, Object bean) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(bean, name);
+    } catch (JMException | RuntimeException e) {
+      logger.warn("Could not register MXBean {}", properties, e);
+    }
+  }
+}
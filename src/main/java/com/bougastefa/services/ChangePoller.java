@@ -0,0 +1,328 @@
+package com.bougastefa.services;
+
+import com.bougastefa.database.ChangeDAO;
+import com.bougastefa.database.DatabaseConnection;
+import com.bougastefa.monitoring.DaoMetrics;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the in-memory data of this client in step with the changes other clients make to the
+ * same database. Every {@code changes.pollIntervalMs} a background thread asks the database for
+ * the rows written or deleted since the latest change it has seen, the high-water mark, then drops
+ * those rows from the service caches and tells the listeners, such as the panels, which rows of
+ * which tables changed.
+ *
+ * <p>A row's {@code updated_at} is the time of the statement that wrote it, not of its commit, so
+ * a transaction committing after a later one could fall behind the mark. Each poll therefore looks
+ * {@code changes.overlapMs} before the mark as well, and reports only the changes it has not
+ * reported before. Writes that stay uncommitted for longer than the overlap may go unseen until
+ * the next reload. A poll interval of 0 disables polling.
+ *
+ * <p>Changes this client made itself, recorded with its {@link DatabaseConnection#getClientId()
+ * ID}, advance the mark but are not reported: the services dropped the rows from their caches
+ * when writing them, and the panel that made the change reloads itself. Other panels of the same
+ * client that show the row, such as the names in the prescription table, pick it up at their next
+ * reload.
+ */
+public final class ChangePoller {
+  private static final Logger logger = LoggerFactory.getLogger(ChangePoller.class);
+  private static final DaoMetrics METRICS = DaoMetrics.forDao(ChangeDAO.class);
+
+  private static final long POLL_MILLIS =
+      DatabaseConnection.getLongProperty("changes.pollIntervalMs", 3000);
+  private static final long OVERLAP_MILLIS =
+      DatabaseConnection.getLongProperty("changes.overlapMs", 5000);
+  private static final long TOMBSTONE_RETENTION_HOURS =
+      DatabaseConnection.getLongProperty("changes.tombstoneRetentionHours", 24);
+  /** How often old tombstones are deleted */
+  private static final long PURGE_NANOS = TimeUnit.HOURS.toNanos(1);
+  /** How long after the last successful poll the poller still counts as current */
+  private static final long CURRENT_NANOS = TimeUnit.MILLISECONDS.toNanos(2 * POLL_MILLIS);
+
+  private static final String CLIENT_ID = DatabaseConnection.getClientId();
+
+  private static final ChangePoller SHARED = new ChangePoller();
+
+  /** Receives the changes found by a poll */
+  @FunctionalInterface
+  public interface Listener {
+    /**
+     * Called on the polling thread after the service caches have dropped the changed rows.
+     *
+     * @param changes The rows changed since the previous poll, never empty
+     */
+    void onChanges(Changes changes);
+  }
+
+  /** The rows of each table written or deleted since the previous poll */
+  public static final class Changes {
+    private final Map<String, Set<String>> written = new LinkedHashMap<>();
+    private final Map<String, Set<String>> deleted = new LinkedHashMap<>();
+
+    private Changes() {}
+
+    private void add(ChangeDAO.Change change) {
+      Map<String, Set<String>> rows = change.isDeleted() ? deleted : written;
+      rows.computeIfAbsent(change.getTable(), table -> new LinkedHashSet<>())
+          .add(change.getRowId());
+    }
+
+    private boolean isEmpty() {
+      return written.isEmpty() && deleted.isEmpty();
+    }
+
+    /** @return The names of the tables with changed rows */
+    public Set<String> getTables() {
+      Set<String> tables = new LinkedHashSet<>(written.keySet());
+      tables.addAll(deleted.keySet());
+      return tables;
+    }
+
+    /**
+     * Returns the IDs of the rows of a table that were inserted or updated. A row deleted and
+     * inserted again is both written and deleted.
+     *
+     * @param table The table name, e.g. "Patient"
+     * @return The row IDs, empty if none; see {@link ChangeDAO.Change#getRowId()} for their form
+     */
+    public Set<String> getWritten(String table) {
+      return Collections.unmodifiableSet(written.getOrDefault(table, Set.of()));
+    }
+
+    /**
+     * Returns the IDs of the rows of a table that were deleted.
+     *
+     * @param table The table name, e.g. "Patient"
+     * @return The row IDs, empty if none; see {@link ChangeDAO.Change#getRowId()} for their form
+     */
+    public Set<String> getDeleted(String table) {
+      return Collections.unmodifiableSet(deleted.getOrDefault(table, Set.of()));
+    }
+
+    @Override
+    public String toString() {
+      return "Changes{written=" + written + ", deleted=" + deleted + "}";
+    }
+  }
+
+  private final ChangeDAO changeDAO = new ChangeDAO();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  /** The latest change time seen, by the database's clock; null until the first poll */
+  private Timestamp mark;
+  /** Changes reported within the overlap before the mark, so they are not reported again */
+  private final Map<String, Timestamp> reported = new HashMap<>();
+  private long lastPurgeNanos = System.nanoTime() - PURGE_NANOS;
+  /** Changes made after this time, from System.nanoTime(), are reported; valid once tracking */
+  private volatile long trackedSinceNanos;
+  /** Whether the first poll has set the mark */
+  private volatile boolean tracking;
+  /** When the last poll that reached the database finished, from System.nanoTime() */
+  private volatile long lastPollNanos;
+  private ScheduledExecutorService executor;
+  private final LongAdder polls = new LongAdder();
+  private final LongAdder changesFound = new LongAdder();
+
+  private ChangePoller() {}
+
+  /**
+   * Returns the poller shared by the whole application, so the database is polled once per client
+   * however many panels listen.
+   *
+   * @return The shared poller, not started until {@link #start()} is called
+   */
+  public static ChangePoller shared() {
+    return SHARED;
+  }
+
+  /**
+   * Starts polling in the background, unless polling is disabled or already started. The first
+   * poll only records the database's current time, so only changes made after this call are
+   * reported.
+   */
+  public synchronized void start() {
+    if (POLL_MILLIS <= 0 || executor != null) {
+      return;
+    }
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            task -> {
+              Thread thread = new Thread(task, "change-poller");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.scheduleWithFixedDelay(this::pollQuietly, 0, POLL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Adds a listener called after each poll that found changes.
+   *
+   * @param listener The listener
+   */
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes a listener added with {@link #addListener}.
+   *
+   * @param listener The listener
+   */
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Tells whether every change made since the given time has been applied to the service caches
+   * and indexes, except those made within the last poll interval: the poller has been tracking
+   * changes since before that time, and has polled successfully within the last two intervals.
+   *
+   * @param nanos The time, from System.nanoTime()
+   * @return true if the changes since then are known, false if some may have been missed
+   */
+  public boolean coversSince(long nanos) {
+    return tracking
+        && nanos - trackedSinceNanos >= 0
+        && System.nanoTime() - lastPollNanos <= CURRENT_NANOS;
+  }
+
+  /** @return The number of polls that reached the database */
+  public long getPolls() {
+    return polls.sum();
+  }
+
+  /** @return The number of changed rows reported to the listeners */
+  public long getChangesFound() {
+    return changesFound.sum();
+  }
+
+  private void pollQuietly() {
+    try {
+      poll();
+    } catch (SQLException | RuntimeException e) {
+      // The next poll asks again from the same mark, so nothing is lost
+      logger.warn("Could not poll the database for changes", e);
+    }
+  }
+
+  /**
+   * Reads the changes after the mark, less the overlap, and applies those not reported before.
+   * Only called on the polling thread.
+   */
+  private void poll() throws SQLException {
+    if (mark == null) {
+      long started = System.nanoTime();
+      mark = METRICS.call("getCurrentTime", changeDAO::getCurrentTime);
+      // The next poll also looks back by the overlap, so it reports changes made that long before
+      trackedSinceNanos = started - TimeUnit.MILLISECONDS.toNanos(OVERLAP_MILLIS);
+      lastPollNanos = System.nanoTime();
+      tracking = true;
+      return;
+    }
+    Timestamp since = new Timestamp(mark.getTime() - OVERLAP_MILLIS);
+    List<ChangeDAO.Change> rows =
+        METRICS.call("getChangesSince", () -> changeDAO.getChangesSince(since));
+    polls.increment();
+
+    Changes changes = new Changes();
+    for (ChangeDAO.Change row : rows) {
+      String key = row.getTable() + '\0' + row.isDeleted() + '\0' + row.getRowId();
+      Timestamp previous = reported.get(key);
+      if (previous != null && !row.getChangedAt().after(previous)) {
+        continue;
+      }
+      reported.put(key, row.getChangedAt());
+      if (row.getChangedAt().after(mark)) {
+        mark = row.getChangedAt();
+      }
+      // The services already updated their caches when this client made the change
+      if (!CLIENT_ID.equals(row.getClientId())) {
+        changes.add(row);
+      }
+    }
+    // Changes before the next poll's window cannot be returned again
+    Timestamp windowStart = new Timestamp(mark.getTime() - OVERLAP_MILLIS);
+    reported.values().removeIf(changedAt -> changedAt.before(windowStart));
+
+    if (!changes.isEmpty()) {
+      logger.debug("Found changes made by other clients: {}", changes);
+      apply(changes);
+      for (Listener listener : listeners) {
+        try {
+          listener.onChanges(changes);
+        } catch (RuntimeException e) {
+          logger.warn("Change listener failed", e);
+        }
+      }
+    }
+    lastPollNanos = System.nanoTime();
+
+    if (System.nanoTime() - lastPurgeNanos >= PURGE_NANOS) {
+      lastPurgeNanos = System.nanoTime();
+      int purged =
+          METRICS.call(
+              "purgeDeletedRows", () -> changeDAO.purgeDeletedRows(TOMBSTONE_RETENTION_HOURS));
+      if (purged > 0) {
+        logger.info(
+            "Deleted {} tombstone(s) older than {} hours", purged, TOMBSTONE_RETENTION_HOURS);
+      }
+    }
+  }
+
+  /** Drops the changed rows from the service caches, so the next reads see the new data. */
+  private void apply(Changes changes) {
+    for (String table : changes.getTables()) {
+      changesFound.add(changes.getWritten(table).size() + changes.getDeleted(table).size());
+      ResultCache.shared().invalidate(table);
+      switch (table) {
+        case "Patient":
+          evict(PatientService.getCache(), PatientService.getExistenceIndex(), table, changes);
+          break;
+        case "Doctor":
+          evict(DoctorService.getCache(), DoctorService.getExistenceIndex(), table, changes);
+          break;
+        case "Prescription":
+          evict(null, PrescriptionService.getExistenceIndex(), table, changes);
+          break;
+        case "Drug":
+          DrugService.getSnapshot().invalidate();
+          break;
+        case "Insurance":
+          InsuranceService.getSnapshot().invalidate();
+          break;
+        default:
+          // Visits are not cached by ID
+          break;
+      }
+    }
+  }
+
+  private static void evict(
+      EntityCache<?> cache, ExistenceIndex index, String table, Changes changes) {
+    for (String id : changes.getWritten(table)) {
+      if (cache != null) {
+        cache.invalidate(id);
+      }
+      index.add(id);
+    }
+    if (cache != null) {
+      for (String id : changes.getDeleted(table)) {
+        cache.invalidate(id);
+      }
+    }
+  }
+}
@@ -1,13 +1,19 @@
 package com.bougastefa.services;
 
 import com.bougastefa.database.DoctorDAO;
+import com.bougastefa.database.DuplicateKeyException;
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.models.Doctor;
 import com.bougastefa.models.Specialist;
+import com.bougastefa.monitoring.DaoMetrics;
 import com.bougastefa.utils.FieldLengthConstants;
 import com.bougastefa.utils.InputValidationUtil;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +25,17 @@ import org.slf4j.LoggerFactory;
 public class DoctorService {
   private DoctorDAO doctorDAO = new DoctorDAO();
   private static final Logger logger = LoggerFactory.getLogger(DoctorService.class);
+  private static final DaoMetrics METRICS = DaoMetrics.forDao(DoctorDAO.class);
+  /** Doctors by ID, shared by all instances so every panel benefits from the others' lookups */
+  private static final EntityCache<Doctor> CACHE = new EntityCache<>("doctor");
+  /** Filtered query results shared with the other services, see {@link ResultCache} */
+  private static final ResultCache RESULTS = ResultCache.shared();
+  /** Doctor IDs that may exist, so lookups of IDs that do not exist skip the database */
+  private static final ExistenceIndex INDEX =
+      new ExistenceIndex(
+          "doctor",
+          () -> METRICS.call("countDoctors", () -> new DoctorDAO().countDoctors()),
+          action -> METRICS.run("forEachDoctorId", () -> new DoctorDAO().forEachDoctorId(action)));
 
  /**
  * Validates that the doctor fields don't exceed database column length limits.
@@ -81,16 +98,19 @@ private void validateFieldLengths(Doctor doctor) {
 
     validateFieldLengths(doctor);
 
-    Doctor existingDoctor = getDoctorById(doctor.getDoctorId());
-    if (existingDoctor != null) {
-      throw new IllegalArgumentException("Doctor ID already exists: " + doctor.getDoctorId());
-    }
     try {
-      doctorDAO.addDoctor(doctor);
+      // Recorded first, so a lookup right after the insert commits cannot miss the doctor
+      INDEX.add(doctor.getDoctorId());
+      // Inserted directly; the primary key reports an existing doctor
+      METRICS.run("addDoctor", () -> doctorDAO.addDoctor(doctor));
       logger.info("Doctor added successfully: {}", doctor.getDoctorId());
+    } catch (DuplicateKeyException e) {
+      throw new IllegalArgumentException("Doctor ID already exists: " + doctor.getDoctorId());
     } catch (SQLException e) {
       logger.error("Error adding doctor: {}", doctor.getDoctorId(), e);
       throw new ServiceException("Failed to add doctor", e);
+    } finally {
+      RESULTS.invalidate("Doctor");
     }
   }
 
@@ -102,16 +122,120 @@ private void validateFieldLengths(Doctor doctor) {
    */
   public List<Doctor> getAllDoctors() {
     try {
-      return doctorDAO.getAllDoctors();
+      return METRICS.call("getAllDoctors", doctorDAO::getAllDoctors);
     } catch (SQLException e) {
       logger.error("Error fetching doctors", e);
       return List.of();
     }
   }
 
+  /**
+   * Retrieves the doctors matching the filter criteria, filtered by the database. Returns an empty
+   * list instead of throwing exceptions if a database error occurs, like {@link #getAllDoctors()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The matching doctors, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public List<Doctor> getFilteredDoctors(FilterCriteria criteria) {
+    return getFilteredDoctors(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the doctors matching the filter criteria, filtered and sorted by the database.
+   * Repeated queries are answered from the shared {@link ResultCache} until the tables they read
+   * are written. Returns an empty list instead of throwing exceptions if a database error occurs,
+   * like {@link #getAllDoctors()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @return The matching doctors, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<Doctor> getFilteredDoctors(FilterCriteria criteria, SortSpec sort) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    if (sort == null) {
+      throw new IllegalArgumentException("Sort order cannot be null");
+    }
+    try {
+      return RESULTS.get(
+          List.of("Doctor", criteria, sort),
+          Set.of("Doctor"),
+          () ->
+              METRICS.call(
+                  "getFilteredDoctors",
+                  () -> doctorDAO.getFilteredDoctors(criteria, sort)));
+    } catch (SQLException e) {
+      logger.error("Error filtering doctors with {} and {}", criteria, sort, e);
+      return List.of();
+    }
+  }
+
+  /**
+   * Counts all doctors without loading them, for example to show a total next to a filtered view.
+   *
+   * @return The number of doctors, or -1 if an error occurs
+   */
+  public long countDoctors() {
+    try {
+      return METRICS.call("countDoctors", doctorDAO::countDoctors);
+    } catch (SQLException e) {
+      logger.error("Error counting doctors", e);
+      return -1;
+    }
+  }
+
+  /**
+   * Counts the doctors matching the filter criteria without loading them, for example to decide
+   * whether a result is small enough to load at once. Conditions the database cannot apply are
+   * ignored, as described for the DAO.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The number of matching doctors, or -1 if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public long countFilteredDoctors(FilterCriteria criteria) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    try {
+      return METRICS.call("countFilteredDoctors", () -> doctorDAO.countFilteredDoctors(criteria));
+    } catch (SQLException e) {
+      logger.error("Error counting doctors with {}", criteria, e);
+      return -1;
+    }
+  }
+
+  /**
+   * Retrieves one page of doctors in ID order. Returns an empty list instead of throwing
+   * exceptions if a database error occurs, like {@link #getAllDoctors()}.
+   *
+   * @param afterDoctorId The ID of the last doctor of the previous page, or null for the
+   *     first page
+   * @param limit The maximum number of doctors to return
+   * @return The next page of at most limit doctors, or an empty list after the last page or
+   *     if an error occurs
+   * @throws IllegalArgumentException If limit is not positive
+   */
+  public List<Doctor> getDoctorsPage(String afterDoctorId, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+    try {
+      return METRICS.call("getDoctorsPage", () -> doctorDAO.getDoctorsPage(afterDoctorId, limit));
+    } catch (SQLException e) {
+      logger.error("Error fetching doctors after: {}", afterDoctorId, e);
+      return List.of();
+    }
+  }
+
   /**
    * Retrieves a specific doctor by their ID. Validates that the provided ID is not null or empty
-   * before querying the database.
+   * before querying the database, which is skipped while the doctor is cached (see {@link
+   * #getCache()}) or if the doctor certainly does not exist (see {@link #getExistenceIndex()}).
    *
    * @param doctorId The unique identifier of the doctor to retrieve
    * @return The Doctor object if found, or null if the doctor doesn't exist or an error occurs
@@ -121,14 +245,42 @@ private void validateFieldLengths(Doctor doctor) {
     if (doctorId == null || doctorId.isEmpty()) {
       throw new IllegalArgumentException("Doctor ID cannot be empty");
     }
+    if (!INDEX.mightContain(doctorId)) {
+      return null;
+    }
     try {
-      return doctorDAO.getDoctorById(doctorId);
+      return CACHE.get(
+          doctorId, id -> METRICS.call("getDoctorById", () -> doctorDAO.getDoctorById(id)));
     } catch (SQLException e) {
       logger.error("Error fetching doctor: {}", doctorId, e);
       return null;
     }
   }
 
+  /**
+   * Reads the doctors with the given IDs straight from the database, without the cache, in one
+   * query rather than one {@link #getDoctorById} call per doctor.
+   *
+   * @param doctorIds The IDs of the doctors to read
+   * @return The doctors found; IDs of doctors that no longer exist are left out
+   * @throws IllegalArgumentException If doctorIds is null
+   * @throws ServiceException If a database error occurs
+   */
+  public List<Doctor> getDoctorsByIds(Collection<String> doctorIds) {
+    if (doctorIds == null) {
+      throw new IllegalArgumentException("Doctor IDs cannot be null");
+    }
+    if (doctorIds.isEmpty()) {
+      return List.of();
+    }
+    try {
+      return METRICS.call("getDoctorsByIds", () -> doctorDAO.getDoctorsByIds(doctorIds));
+    } catch (SQLException e) {
+      logger.error("Error fetching {} doctors by ID", doctorIds.size(), e);
+      throw new ServiceException("Failed to fetch doctors", e);
+    }
+  }
+
   /**
    * Updates an existing doctor's information in the database. Validates that the doctor object is
    * not null before proceeding with the update.
@@ -145,11 +297,14 @@ private void validateFieldLengths(Doctor doctor) {
     validateFieldLengths(doctor);
 
     try {
-      doctorDAO.updateDoctor(doctor);
+      METRICS.run("updateDoctor", () -> doctorDAO.updateDoctor(doctor));
       logger.info("Doctor updated successfully: {}", doctor.getDoctorId());
     } catch (SQLException e) {
       logger.error("Error updating doctor: {}", doctor.getDoctorId(), e);
       throw new ServiceException("Failed to update doctor", e);
+    } finally {
+      RESULTS.invalidate("Doctor");
+      CACHE.invalidate(doctor.getDoctorId());
     }
   }
 
@@ -167,11 +322,72 @@ private void validateFieldLengths(Doctor doctor) {
       throw new IllegalArgumentException("Doctor ID cannot be empty");
     }
     try {
-      doctorDAO.deleteDoctor(doctorId);
+      METRICS.run("deleteDoctor", () -> doctorDAO.deleteDoctor(doctorId));
       logger.info("Doctor deleted successfully: {}", doctorId);
     } catch (SQLException e) {
       logger.error("Error deleting doctor: {}", doctorId, e);
       throw new ServiceException("Failed to delete doctor", e);
+    } finally {
+      RESULTS.invalidate("Doctor");
+      CACHE.invalidate(doctorId);
+    }
+  }
+
+  /**
+   * Inserts or updates a batch of doctors in a single transaction, for bulk synchronisation
+   * jobs. Unlike addDoctor, an existing ID is not an error: the stored doctor is
+   * overwritten with the given values.
+   *
+   * @param doctors The doctors to insert or update
+   * @throws IllegalArgumentException If the list or any of its elements is null, or a field is
+   *     too long
+   * @throws ServiceException If a database error occurs; nothing is written in that case
+   */
+  public void upsertDoctors(List<Doctor> doctors) {
+    if (doctors == null) {
+      throw new IllegalArgumentException("Doctors cannot be null");
+    }
+    for (Doctor doctor : doctors) {
+      if (doctor == null) {
+        throw new IllegalArgumentException("Doctor cannot be null");
+      }
+      validateFieldLengths(doctor);
+    }
+
+    for (Doctor doctor : doctors) {
+      INDEX.add(doctor.getDoctorId());
+    }
+    try {
+      METRICS.run("upsertDoctors", () -> doctorDAO.upsertDoctors(doctors));
+      logger.info("Doctors upserted successfully: {}", doctors.size());
+    } catch (SQLException e) {
+      logger.error("Error upserting doctors", e);
+      throw new ServiceException("Failed to upsert doctors", e);
+    } finally {
+      RESULTS.invalidate("Doctor");
+      for (Doctor doctor : doctors) {
+        CACHE.invalidate(doctor.getDoctorId());
+      }
     }
   }
+
+  /**
+   * Returns the cache of doctors by ID used by {@link #getDoctorById}, for monitoring its hit rate
+   * and for invalidating doctors changed outside this service.
+   *
+   * @return The cache shared by all instances
+   */
+  public static EntityCache<Doctor> getCache() {
+    return CACHE;
+  }
+
+  /**
+   * Returns the index of doctor IDs used by {@link #getDoctorById} to skip lookups of doctors that
+   * do not exist, for example to build it at startup.
+   *
+   * @return The index shared by all instances
+   */
+  public static ExistenceIndex getExistenceIndex() {
+    return INDEX;
+  }
 }
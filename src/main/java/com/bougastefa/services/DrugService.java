@@ -1,11 +1,18 @@
 package com.bougastefa.services;
 
 import com.bougastefa.database.DrugDAO;
+import com.bougastefa.database.DuplicateKeyException;
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.models.Drug;
+import com.bougastefa.monitoring.DaoMetrics;
 import com.bougastefa.utils.FieldLengthConstants;
 import com.bougastefa.utils.InputValidationUtil;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +25,25 @@ import org.slf4j.LoggerFactory;
 public class DrugService {
   private DrugDAO drugDAO = new DrugDAO();
   private static final Logger logger = LoggerFactory.getLogger(DrugService.class);
+  private static final DaoMetrics METRICS = DaoMetrics.forDao(DrugDAO.class);
+  /** Filtered query results of the other services, some of which read drugs */
+  private static final ResultCache RESULTS = ResultCache.shared();
+  /**
+   * The drug catalogue in memory, shared by all instances. Reads of the whole catalogue, filters,
+   * counts and lookups by ID are answered from it; the catalogue is only re-read after it changed.
+   */
+  private static final ReferenceSnapshot<Drug> SNAPSHOT =
+      new ReferenceSnapshot<>(
+          "Drug",
+          Drug::getDrugId,
+          DrugDAO.FILTER_COLUMNS,
+          DrugDAO.SORT_COLUMNS,
+          Map.<String, Function<Drug, String>>of(
+              "drugID", Drug::getDrugId,
+              "drugname", Drug::getName,
+              "sideeffects", Drug::getSideEffects,
+              "benefits", Drug::getBenefits),
+          () -> METRICS.call("getAllDrugs", () -> new DrugDAO().getAllDrugs()));
 
   /**
    * Validates that the drug fields don't exceed database column length limits.
@@ -55,38 +81,137 @@ public class DrugService {
 
     validateFieldLengths(drug);
 
-    Drug existingDrug = getDrugById(drug.getDrugId());
-    if (existingDrug != null) {
-      throw new IllegalArgumentException("Drug ID already exists: " + drug.getDrugId());
-    }
     try {
-      drugDAO.addDrug(drug);
+      // Inserted directly; the primary key reports an existing drug
+      METRICS.run("addDrug", () -> drugDAO.addDrug(drug));
       logger.info("Drug added successfully: {}", drug.getDrugId());
+    } catch (DuplicateKeyException e) {
+      throw new IllegalArgumentException("Drug ID already exists: " + drug.getDrugId());
     } catch (SQLException e) {
       logger.error("Error adding drug: {}", drug.getDrugId(), e);
       throw new ServiceException("Failed to add drug", e);
+    } finally {
+      SNAPSHOT.invalidate();
+      RESULTS.invalidate("Drug");
     }
   }
 
   /**
-   * Retrieves all drugs from the database. Returns an empty list instead of throwing exceptions if
-   * a database error occurs, providing graceful degradation for UI components that depend on this
-   * data.
+   * Retrieves all drugs, from the in-memory catalogue (see {@link #getSnapshot()}). Returns an
+   * empty list instead of throwing exceptions if a database error occurs, providing graceful
+   * degradation for UI components that depend on this data.
    *
    * @return A List containing all drugs in the database, or an empty list if an error occurs
    */
   public List<Drug> getAllDrugs() {
     try {
-      return drugDAO.getAllDrugs();
+      return SNAPSHOT.getAll();
     } catch (SQLException e) {
       logger.error("Error fetching drugs", e);
       return List.of(); // Return an empty list on error
     }
   }
 
+  /**
+   * Retrieves the drugs matching the filter criteria, filtered in memory. Returns an empty list
+   * instead of throwing exceptions if a database error occurs, like {@link #getAllDrugs()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The matching drugs, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public List<Drug> getFilteredDrugs(FilterCriteria criteria) {
+    return getFilteredDrugs(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the drugs matching the filter criteria, filtered and sorted in memory the same way
+   * the database would. Returns an empty list instead of throwing exceptions if a database error
+   * occurs, like {@link #getAllDrugs()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @return The matching drugs, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<Drug> getFilteredDrugs(FilterCriteria criteria, SortSpec sort) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    if (sort == null) {
+      throw new IllegalArgumentException("Sort order cannot be null");
+    }
+    try {
+      return SNAPSHOT.filter(criteria, sort);
+    } catch (SQLException e) {
+      logger.error("Error filtering drugs with {} and {}", criteria, sort, e);
+      return List.of();
+    }
+  }
+
+  /**
+   * Counts all drugs in the in-memory catalogue, for example to show a total next to a filtered
+   * view.
+   *
+   * @return The number of drugs, or -1 if an error occurs
+   */
+  public long countDrugs() {
+    try {
+      return SNAPSHOT.count(FilterCriteria.none());
+    } catch (SQLException e) {
+      logger.error("Error counting drugs", e);
+      return -1;
+    }
+  }
+
+  /**
+   * Counts the drugs matching the filter criteria in the in-memory catalogue, for example to
+   * decide whether a result is small enough to load at once. Conditions on unknown fields are
+   * ignored, as described for the DAO.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The number of matching drugs, or -1 if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public long countFilteredDrugs(FilterCriteria criteria) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    try {
+      return SNAPSHOT.count(criteria);
+    } catch (SQLException e) {
+      logger.error("Error counting drugs with {}", criteria, e);
+      return -1;
+    }
+  }
+
+  /**
+   * Retrieves one page of drugs in ID order. Returns an empty list instead of throwing
+   * exceptions if a database error occurs, like {@link #getAllDrugs()}.
+   *
+   * @param afterDrugId The ID of the last drug of the previous page, or null for the
+   *     first page
+   * @param limit The maximum number of drugs to return
+   * @return The next page of at most limit drugs, or an empty list after the last page or
+   *     if an error occurs
+   * @throws IllegalArgumentException If limit is not positive
+   */
+  public List<Drug> getDrugsPage(String afterDrugId, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+    try {
+      return METRICS.call("getDrugsPage", () -> drugDAO.getDrugsPage(afterDrugId, limit));
+    } catch (SQLException e) {
+      logger.error("Error fetching drugs after: {}", afterDrugId, e);
+      return List.of();
+    }
+  }
+
   /**
    * Retrieves a specific drug by its ID. Validates that the provided ID is not null or empty before
-   * querying the database.
+   * looking it up in the in-memory catalogue (see {@link #getSnapshot()}).
    *
    * @param drugId The unique identifier of the drug to retrieve
    * @return The Drug object if found, or null if the drug doesn't exist or an error occurs
@@ -97,13 +222,37 @@ public class DrugService {
       throw new IllegalArgumentException("Drug ID cannot be empty");
     }
     try {
-      return drugDAO.getDrugById(drugId);
+      return SNAPSHOT.get(drugId);
     } catch (SQLException e) {
       logger.error("Error fetching drug: {}", drugId, e);
       return null;
     }
   }
 
+  /**
+   * Reads the drugs with the given IDs from the database. Unlike {@link #getDrugById}, it does not
+   * reload the whole in-memory snapshot of the table after a change, only the drugs asked for.
+   *
+   * @param drugIds The IDs of the drugs to read
+   * @return The drugs found; IDs of drugs that no longer exist are left out
+   * @throws IllegalArgumentException If drugIds is null
+   * @throws ServiceException If a database error occurs
+   */
+  public List<Drug> getDrugsByIds(Collection<String> drugIds) {
+    if (drugIds == null) {
+      throw new IllegalArgumentException("Drug IDs cannot be null");
+    }
+    if (drugIds.isEmpty()) {
+      return List.of();
+    }
+    try {
+      return METRICS.call("getDrugsByIds", () -> drugDAO.getDrugsByIds(drugIds));
+    } catch (SQLException e) {
+      logger.error("Error fetching {} drugs by ID", drugIds.size(), e);
+      throw new ServiceException("Failed to fetch drugs", e);
+    }
+  }
+
   /**
    * Retrieves drugs by their name or name pattern. Useful for search functionality where exact drug
    * IDs aren't known. Validates that the name parameter is not null before querying.
@@ -118,7 +267,7 @@ public class DrugService {
       throw new IllegalArgumentException("Drug name cannot be null");
     }
     try {
-      return drugDAO.getDrugsByName(name);
+      return METRICS.call("getDrugsByName", () -> drugDAO.getDrugsByName(name));
     } catch (SQLException e) {
       logger.error("Error fetching drugs by name: {}", name, e);
       return List.of();
@@ -139,7 +288,8 @@ public class DrugService {
       throw new IllegalArgumentException("Side effects cannot be null");
     }
     try {
-      return drugDAO.getDrugsBySideEffects(sideEffects);
+      return METRICS.call(
+          "getDrugsBySideEffects", () -> drugDAO.getDrugsBySideEffects(sideEffects));
     } catch (SQLException e) {
       logger.error("Error fetching drugs by side effects: {}", sideEffects, e);
       return List.of();
@@ -160,13 +310,35 @@ public class DrugService {
       throw new IllegalArgumentException("Benefits cannot be null");
     }
     try {
-      return drugDAO.getDrugsByBenefits(benefits);
+      return METRICS.call("getDrugsByBenefits", () -> drugDAO.getDrugsByBenefits(benefits));
     } catch (SQLException e) {
       logger.error("Error fetching drugs by benefits: {}", benefits, e);
       return List.of();
     }
   }
 
+  /**
+   * Performs a ranked search for drugs whose name, side effects or benefits contain every word of
+   * the search text, using the database's full-text indexes. Words are matched as word prefixes,
+   * so partially typed words still find results.
+   *
+   * @param text The words to search for
+   * @return The matching drugs, most relevant first, or an empty list if none found or an error
+   *     occurs
+   * @throws IllegalArgumentException If the text is null
+   */
+  public List<Drug> searchDrugs(String text) {
+    if (text == null) {
+      throw new IllegalArgumentException("Search text cannot be null");
+    }
+    try {
+      return METRICS.call("searchDrugs", () -> drugDAO.searchDrugs(text));
+    } catch (SQLException e) {
+      logger.error("Error searching drugs for: {}", text, e);
+      return List.of();
+    }
+  }
+
   /**
    * Updates an existing drug's information in the database. Validates that the drug object is not
    * null before proceeding with the update.
@@ -183,11 +355,14 @@ public class DrugService {
     validateFieldLengths(drug);
 
     try {
-      drugDAO.updateDrug(drug);
+      METRICS.run("updateDrug", () -> drugDAO.updateDrug(drug));
       logger.info("Drug updated successfully: {}", drug.getDrugId());
     } catch (SQLException e) {
       logger.error("Error updating drug: {}", drug.getDrugId(), e);
       throw new ServiceException("Failed to update drug", e);
+    } finally {
+      SNAPSHOT.invalidate();
+      RESULTS.invalidate("Drug");
     }
   }
 
@@ -205,11 +380,57 @@ public class DrugService {
       throw new IllegalArgumentException("Drug ID cannot be empty");
     }
     try {
-      drugDAO.deleteDrug(drugId);
+      METRICS.run("deleteDrug", () -> drugDAO.deleteDrug(drugId));
       logger.info("Drug deleted successfully: {}", drugId);
     } catch (SQLException e) {
       logger.error("Error deleting drug: {}", drugId, e);
       throw new ServiceException("Failed to delete drug", e);
+    } finally {
+      SNAPSHOT.invalidate();
+      RESULTS.invalidate("Drug");
+    }
+  }
+
+  /**
+   * Inserts or updates a batch of drugs in a single transaction, for bulk synchronisation
+   * jobs. Unlike addDrug, an existing ID is not an error: the stored drug is
+   * overwritten with the given values.
+   *
+   * @param drugs The drugs to insert or update
+   * @throws IllegalArgumentException If the list or any of its elements is null, or a field is
+   *     too long
+   * @throws ServiceException If a database error occurs; nothing is written in that case
+   */
+  public void upsertDrugs(List<Drug> drugs) {
+    if (drugs == null) {
+      throw new IllegalArgumentException("Drugs cannot be null");
     }
+    for (Drug drug : drugs) {
+      if (drug == null) {
+        throw new IllegalArgumentException("Drug cannot be null");
+      }
+      validateFieldLengths(drug);
+    }
+
+    try {
+      METRICS.run("upsertDrugs", () -> drugDAO.upsertDrugs(drugs));
+      logger.info("Drugs upserted successfully: {}", drugs.size());
+    } catch (SQLException e) {
+      logger.error("Error upserting drugs", e);
+      throw new ServiceException("Failed to upsert drugs", e);
+    } finally {
+      SNAPSHOT.invalidate();
+      RESULTS.invalidate("Drug");
+    }
+  }
+
+  /**
+   * Returns the in-memory drug catalogue used by the reads of this service, for monitoring how
+   * often it is re-read and for invalidating it after changes made outside this service.
+   *
+   * @return The snapshot shared by all instances
+   */
+  public static ReferenceSnapshot<Drug> getSnapshot() {
+    return SNAPSHOT;
   }
 }
@@ -0,0 +1,210 @@
+package com.bougastefa.services;
+
+import com.bougastefa.database.DatabaseConnection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded read-through cache of entities by ID, shared by every instance of a service so the
+ * panels' repeated lookups of the same doctor or patient do not each query the database.
+ *
+ * <p>Entries are evicted least recently used first once the cache holds {@code maxSize} entries,
+ * and are reloaded once they are older than the time to live, which bounds how long a change made
+ * outside this application can go unnoticed. IDs that do not exist and failed loads are not
+ * cached. The services invalidate an entity whenever they write it; a load that was already
+ * running when an entity was invalidated does not store its result, so a stale row read before
+ * the write cannot end up in the cache.
+ *
+ * <p>Size and time to live are read from the {@code cache.<name>.maxSize} and {@code
+ * cache.<name>.ttlSeconds} properties in db.properties. A size of 0 disables the cache. All
+ * methods are thread-safe. Cached entities are shared, so callers must not modify them.
+ *
+ * @param <V> The entity type
+ */
+public final class EntityCache<V> {
+  private static final int DEFAULT_MAX_SIZE = 1000;
+  private static final long DEFAULT_TTL_SECONDS = 300;
+
+  /** Loads an entity from the database */
+  @FunctionalInterface
+  interface Loader<V> {
+    /**
+     * @param id The entity ID
+     * @return The entity, or null if it does not exist
+     * @throws SQLException If a database access error occurs
+     */
+    V load(String id) throws SQLException;
+  }
+
+  /** A cached entity and when it was loaded */
+  private static final class Entry<V> {
+    private final V value;
+    private final long loadedNanos;
+
+    private Entry(V value, long loadedNanos) {
+      this.value = value;
+      this.loadedNanos = loadedNanos;
+    }
+  }
+
+  private final String name;
+  private final int maxSize;
+  private final long ttlNanos;
+  /** Entries in access order, so the eldest entry is the least recently used; guarded by this */
+  private final LinkedHashMap<String, Entry<V>> entries;
+  /** Incremented by every invalidation; guarded by this */
+  private long generation;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates a cache configured by the {@code cache.<name>.*} properties.
+   *
+   * @param name The name of the cache in the configuration and in log messages, e.g. "doctor"
+   */
+  EntityCache(String name) {
+    this(
+        name,
+        DatabaseConnection.getIntProperty("cache." + name + ".maxSize", DEFAULT_MAX_SIZE),
+        DatabaseConnection.getLongProperty(
+            "cache." + name + ".ttlSeconds", DEFAULT_TTL_SECONDS),
+        TimeUnit.SECONDS);
+  }
+
+  /**
+   * Creates a cache with the given limits.
+   *
+   * @param name The name of the cache in log messages
+   * @param maxSize The most entities kept; 0 disables the cache
+   * @param ttl How long an entity is served from the cache before it is reloaded
+   * @param unit The unit of ttl
+   * @throws IllegalArgumentException If maxSize or ttl is negative
+   */
+  EntityCache(String name, int maxSize, long ttl, TimeUnit unit) {
+    if (maxSize < 0 || ttl < 0) {
+      throw new IllegalArgumentException("Cache size and time to live cannot be negative");
+    }
+    this.name = name;
+    this.maxSize = maxSize;
+    this.ttlNanos = unit.toNanos(ttl);
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+            if (size() > EntityCache.this.maxSize) {
+              evictions++;
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /**
+   * Returns the cached entity, or loads it and caches the result if it is missing or expired. The
+   * load runs outside the cache's lock, so a slow query does not hold up lookups of other IDs.
+   *
+   * @param id The entity ID
+   * @param loader Loads the entity on a miss
+   * @return The entity, or null if it does not exist
+   * @throws SQLException If the loader fails; nothing is cached in that case
+   */
+  V get(String id, Loader<V> loader) throws SQLException {
+    long loadGeneration;
+    synchronized (this) {
+      Entry<V> entry = entries.get(id);
+      if (entry != null && System.nanoTime() - entry.loadedNanos < ttlNanos) {
+        hits++;
+        return entry.value;
+      }
+      if (entry != null) {
+        entries.remove(id);
+      }
+      misses++;
+      loadGeneration = generation;
+    }
+    V value = loader.load(id);
+    if (value != null && maxSize > 0) {
+      synchronized (this) {
+        // An invalidation since the load started may mean the value is already out of date
+        if (generation == loadGeneration) {
+          entries.put(id, new Entry<>(value, System.nanoTime()));
+        }
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Removes an entity, so the next lookup reads it from the database. Called after the entity has
+   * been written or deleted.
+   *
+   * @param id The entity ID
+   */
+  public synchronized void invalidate(String id) {
+    generation++;
+    entries.remove(id);
+  }
+
+  /** Removes every entity, for example after a bulk change made outside the services. */
+  public synchronized void invalidateAll() {
+    generation++;
+    entries.clear();
+  }
+
+  /** @return The name of the cache */
+  public String getName() {
+    return name;
+  }
+
+  /** @return The number of entities currently cached, including expired ones not yet removed */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** @return The most entities the cache keeps */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** @return The number of lookups answered from the cache */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** @return The number of lookups that had to query the database */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** @return The number of entities removed to make room for others */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /** @return The share of lookups answered from the cache, between 0 and 1; 0 before any lookup */
+  public synchronized double getHitRatio() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "EntityCache["
+        + name
+        + ": size="
+        + entries.size()
+        + "/"
+        + maxSize
+        + ", hits="
+        + hits
+        + ", misses="
+        + misses
+        + ", evictions="
+        + evictions
+        + "]";
+  }
+}
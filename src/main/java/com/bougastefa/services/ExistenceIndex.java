@@ -0,0 +1,334 @@
+package com.bougastefa.services;
+
+import com.bougastefa.database.DatabaseConnection;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bloom filter over the IDs of one table, which tells without a query that an ID certainly does
+ * not exist. A lookup of a missing ID, such as a mistyped ID or one checked before a bulk import,
+ * then costs no database round trip; an ID the filter may contain is still looked up as before.
+ *
+ * <p>The filter is built from every ID of the table in the background, first when the
+ * application starts, and is rebuilt every {@code existence.rebuildSeconds}. The services add the
+ * IDs they insert at once, and the {@link ChangePoller} adds those other clients insert. An ID is
+ * therefore only reported missing while the poller covers the time since the filter was built;
+ * when polling is disabled, has fallen behind or started after the build, every ID is reported as
+ * possibly present, as it is until the filter is built and while a rebuild is overdue. Deleted IDs
+ * cannot be removed from a Bloom filter and are reported as possibly present until the next
+ * rebuild, which only costs the query the filter would have saved.
+ *
+ * <p>The filter is sized for {@code existence.falsePositiveRate} with room for half as many IDs
+ * again as the table held when it was built. IDs are compared like the tables' case-insensitive
+ * collation compares them: ignoring case and trailing spaces. IDs with other than ASCII characters
+ * are always reported as possibly present, since the collation also equates accented letters. A
+ * rebuild interval of 0 disables the index. All methods are thread-safe.
+ */
+public final class ExistenceIndex {
+  private static final Logger logger = LoggerFactory.getLogger(ExistenceIndex.class);
+
+  private static final double FALSE_POSITIVE_RATE =
+      DatabaseConnection.getDoubleProperty("existence.falsePositiveRate", 0.01);
+  private static final long REBUILD_NANOS =
+      TimeUnit.SECONDS.toNanos(
+          DatabaseConnection.getLongProperty("existence.rebuildSeconds", 300));
+  /** How long to wait before retrying a build that failed */
+  private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(10);
+  /** Smallest number of IDs a filter is sized for, so a new table does not fill it at once */
+  private static final long MIN_CAPACITY = 1024;
+
+  /** Builds the filters one at a time, so a rebuild never competes with another for the pool */
+  private static final ExecutorService BUILDER =
+      Executors.newSingleThreadExecutor(
+          task -> {
+            Thread thread = new Thread(task, "existence-index-builder");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** Counts the rows of the table, to size the filter */
+  @FunctionalInterface
+  interface Counter {
+    long count() throws SQLException;
+  }
+
+  /** Reads every ID of the table */
+  @FunctionalInterface
+  interface IdReader {
+    void forEachId(Consumer<? super String> action) throws SQLException;
+  }
+
+  /** A fixed-size Bloom filter whose bits can be set and read from any thread */
+  private static final class Filter {
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+
+    private Filter(long capacity) {
+      long size =
+          (long) Math.ceil(-capacity * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+      int wordCount = (int) Math.max(1, (size + 63) / 64);
+      this.words = new AtomicLongArray(wordCount);
+      this.bits = wordCount * 64L;
+      this.hashes = (int) Math.max(1, Math.round((double) bits / capacity * Math.log(2)));
+    }
+
+    private void put(long h1, long h2) {
+      for (int i = 0; i < hashes; i++) {
+        long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current = words.get(word);
+        while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+          current = words.get(word);
+        }
+      }
+    }
+
+    private boolean mightContain(long h1, long h2) {
+      for (int i = 0; i < hashes; i++) {
+        long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+        if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final String name;
+  private final Counter counter;
+  private final IdReader reader;
+  /** Tells whether the IDs inserted by other clients since a given time have been added */
+  private final LongPredicate tracked;
+  /** The filter answering lookups; null until the first build completes */
+  private volatile Filter filter;
+  /** When the current filter's IDs started being read, from System.nanoTime() */
+  private volatile long builtNanos;
+  /** Earliest time the next build may start, to pace retries after a failure */
+  private volatile long nextBuildNanos;
+  /** The filter being built, which also receives the IDs added meanwhile; guarded by this */
+  private Filter building;
+  private final AtomicBoolean buildScheduled = new AtomicBoolean();
+  private volatile long builds;
+  /** The number of IDs counted by the last build */
+  private volatile long size;
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+
+  /**
+   * Creates an index that is empty until {@link #refreshInBackground()} or the first lookup
+   * builds it.
+   *
+   * @param name The name of the index in log messages, e.g. "patient"
+   * @param counter Counts the rows of the table
+   * @param reader Reads every ID of the table
+   */
+  ExistenceIndex(String name, Counter counter, IdReader reader) {
+    this(name, counter, reader, ChangePoller.shared()::coversSince);
+  }
+
+  /**
+   * Creates an index that learns of other clients' inserts from the given source.
+   *
+   * @param name The name of the index in log messages, e.g. "patient"
+   * @param counter Counts the rows of the table
+   * @param reader Reads every ID of the table
+   * @param tracked Tells whether every ID inserted since a time from System.nanoTime() has been
+   *     passed to {@link #add}; while it does not, no ID is reported missing
+   */
+  ExistenceIndex(String name, Counter counter, IdReader reader, LongPredicate tracked) {
+    this.name = name;
+    this.counter = counter;
+    this.reader = reader;
+    this.tracked = tracked;
+    this.nextBuildNanos = System.nanoTime();
+  }
+
+  /**
+   * Tells whether the ID may exist. A false answer is certain, so the caller can skip the
+   * database; a true answer may be a false positive and must be checked against the database.
+   *
+   * @param id The ID to look up
+   * @return False if the ID certainly does not exist, true if it may exist
+   */
+  public boolean mightContain(String id) {
+    lookups.increment();
+    if (REBUILD_NANOS == 0) {
+      return true;
+    }
+    Filter current = filter;
+    if (current == null || System.nanoTime() - builtNanos > REBUILD_NANOS) {
+      refreshInBackground();
+      return true;
+    }
+    // Another client may have inserted the ID after the filter's rows were read
+    if (!tracked.test(builtNanos)) {
+      return true;
+    }
+    String key = normalize(id);
+    if (key == null) {
+      return true;
+    }
+    long h1 = hash(key, 0);
+    if (current.mightContain(h1, hash(key, h1) | 1)) {
+      return true;
+    }
+    skipped.increment();
+    return false;
+  }
+
+  /**
+   * Records an ID that now exists, so later lookups do not report it missing. Called after the ID
+   * has been inserted.
+   *
+   * @param id The ID
+   */
+  public void add(String id) {
+    String key = normalize(id);
+    if (key == null) {
+      return;
+    }
+    long h1 = hash(key, 0);
+    long h2 = hash(key, h1) | 1;
+    synchronized (this) {
+      Filter current = filter;
+      if (current != null) {
+        current.put(h1, h2);
+      }
+      // An ID inserted while the table is being read may not be seen by the read
+      if (building != null) {
+        building.put(h1, h2);
+      }
+    }
+  }
+
+  /**
+   * Starts building the filter from the table in the background, unless a build is already
+   * scheduled, the last one failed less than a few seconds ago or the index is disabled. Lookups
+   * keep using the previous filter until the new one is complete.
+   */
+  public void refreshInBackground() {
+    if (REBUILD_NANOS == 0
+        || System.nanoTime() - nextBuildNanos < 0
+        || !buildScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    BUILDER.execute(
+        () -> {
+          try {
+            build();
+          } catch (SQLException | RuntimeException e) {
+            nextBuildNanos = System.nanoTime() + RETRY_NANOS;
+            logger.warn("Could not build the {} existence index", name, e);
+          } finally {
+            buildScheduled.set(false);
+          }
+        });
+  }
+
+  /** @return The name of the index */
+  public String getName() {
+    return name;
+  }
+
+  /** @return The number of times the filter has been built */
+  public long getBuilds() {
+    return builds;
+  }
+
+  /** @return The number of IDs in the table when the filter was last built, or 0 before that */
+  public long size() {
+    return size;
+  }
+
+  /** @return The number of lookups */
+  public long getLookups() {
+    return lookups.sum();
+  }
+
+  /** @return The number of lookups that reported the ID missing, each saving a query */
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  /** @return Whether a filter has been built and lookups can report IDs as missing */
+  public boolean isReady() {
+    return filter != null;
+  }
+
+  private void build() throws SQLException {
+    long started = System.nanoTime();
+    long rows = counter.count();
+    Filter fresh = new Filter(Math.max(MIN_CAPACITY, rows + rows / 2));
+    synchronized (this) {
+      building = fresh;
+    }
+    try {
+      reader.forEachId(
+          id -> {
+            String key = normalize(id);
+            if (key != null) {
+              long h1 = hash(key, 0);
+              fresh.put(h1, hash(key, h1) | 1);
+            }
+          });
+      synchronized (this) {
+        filter = fresh;
+        builtNanos = started;
+      }
+      size = rows;
+      builds++;
+      logger.info(
+          "Built the {} existence index from {} row(s) in {} ms",
+          name,
+          rows,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    } finally {
+      synchronized (this) {
+        building = null;
+      }
+    }
+  }
+
+  /**
+   * Returns the form of the ID the filter stores, in which IDs the database treats as equal are
+   * equal, or null if the ID has characters whose equality this class cannot tell.
+   */
+  private static String normalize(String id) {
+    if (id == null) {
+      return null;
+    }
+    String key = id.stripTrailing();
+    for (int i = 0; i < key.length(); i++) {
+      if (key.charAt(i) > 0x7f) {
+        return null;
+      }
+    }
+    return key.toLowerCase(Locale.ROOT);
+  }
+
+  /** 64-bit FNV-1a hash of the key, seeded and then mixed so every bit depends on every char. */
+  private static long hash(String key, long seed) {
+    long h = 0xcbf29ce484222325L ^ seed;
+    for (int i = 0; i < key.length(); i++) {
+      h ^= key.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+}
@@ -1,11 +1,18 @@
 package com.bougastefa.services;
 
+import com.bougastefa.database.DuplicateKeyException;
+import com.bougastefa.database.FilterCriteria;
 import com.bougastefa.database.InsuranceDAO;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.models.Insurance;
+import com.bougastefa.monitoring.DaoMetrics;
 import com.bougastefa.utils.FieldLengthConstants;
 import com.bougastefa.utils.InputValidationUtil;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +25,23 @@ import org.slf4j.LoggerFactory;
 public class InsuranceService {
   private InsuranceDAO insuranceDAO = new InsuranceDAO();
   private static final Logger logger = LoggerFactory.getLogger(InsuranceService.class);
+  private static final DaoMetrics METRICS = DaoMetrics.forDao(InsuranceDAO.class);
+  /**
+   * The insurance providers in memory, shared by all instances. Reads of the whole list, filters,
+   * counts and lookups by ID are answered from it; the list is only re-read after it changed.
+   */
+  private static final ReferenceSnapshot<Insurance> SNAPSHOT =
+      new ReferenceSnapshot<>(
+          "Insurance",
+          Insurance::getInsuranceId,
+          InsuranceDAO.FILTER_COLUMNS,
+          InsuranceDAO.SORT_COLUMNS,
+          Map.<String, Function<Insurance, String>>of(
+              "insuranceID", Insurance::getInsuranceId,
+              "company", Insurance::getCompany,
+              "address", Insurance::getAddress,
+              "phone", Insurance::getPhone),
+          () -> METRICS.call("getAllInsurances", () -> new InsuranceDAO().getAllInsurances()));
 
   /**
    * Validates that the insurance fields don't exceed database column length limits.
@@ -58,39 +82,139 @@ public class InsuranceService {
 
     validateFieldLengths(insurance);
 
-    Insurance existingInsurance = getInsuranceById(insurance.getInsuranceId());
-    if (existingInsurance != null) {
-      throw new IllegalArgumentException(
-          "Insurance ID already exists: " + insurance.getInsuranceId());
-    }
     try {
-      insuranceDAO.addInsurance(insurance);
+      // Inserted directly; the primary key reports an existing insurance
+      METRICS.run("addInsurance", () -> insuranceDAO.addInsurance(insurance));
       logger.info("Insurance added successfully: {}", insurance.getInsuranceId());
+    } catch (DuplicateKeyException e) {
+      throw new IllegalArgumentException(
+          "Insurance ID already exists: " + insurance.getInsuranceId());
     } catch (SQLException e) {
       logger.error("Error adding insurance: {}", insurance.getInsuranceId(), e);
       throw new ServiceException("Failed to add insurance", e);
+    } finally {
+      SNAPSHOT.invalidate();
     }
   }
 
   /**
-   * Retrieves all insurance providers from the database. Returns an empty list instead of throwing
-   * exceptions if a database error occurs, providing graceful degradation for UI components that
-   * depend on this data.
+   * Retrieves all insurance providers, from the in-memory list (see {@link #getSnapshot()}).
+   * Returns an empty list instead of throwing exceptions if a database error occurs, providing
+   * graceful degradation for UI components that depend on this data.
    *
    * @return A List containing all insurance providers, or an empty list if an error occurs
    */
   public List<Insurance> getAllInsurances() {
     try {
-      return insuranceDAO.getAllInsurances();
+      return SNAPSHOT.getAll();
     } catch (SQLException e) {
       logger.error("Error fetching insurances", e);
       return List.of(); // Return an empty list on error
     }
   }
 
+  /**
+   * Retrieves the insurances matching the filter criteria, filtered in memory. Returns an empty
+   * list instead of throwing exceptions if a database error occurs, like {@link
+   * #getAllInsurances()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The matching insurances, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public List<Insurance> getFilteredInsurances(FilterCriteria criteria) {
+    return getFilteredInsurances(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the insurances matching the filter criteria, filtered and sorted in memory the same
+   * way the database would. Returns an empty list instead of throwing exceptions if a database
+   * error occurs, like {@link #getAllInsurances()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @return The matching insurances, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<Insurance> getFilteredInsurances(FilterCriteria criteria, SortSpec sort) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    if (sort == null) {
+      throw new IllegalArgumentException("Sort order cannot be null");
+    }
+    try {
+      return SNAPSHOT.filter(criteria, sort);
+    } catch (SQLException e) {
+      logger.error("Error filtering insurances with {} and {}", criteria, sort, e);
+      return List.of();
+    }
+  }
+
+  /**
+   * Counts all insurances in the in-memory list, for example to show a total next to a filtered
+   * view.
+   *
+   * @return The number of insurances, or -1 if an error occurs
+   */
+  public long countInsurances() {
+    try {
+      return SNAPSHOT.count(FilterCriteria.none());
+    } catch (SQLException e) {
+      logger.error("Error counting insurances", e);
+      return -1;
+    }
+  }
+
+  /**
+   * Counts the insurances matching the filter criteria in the in-memory list, for example to
+   * decide whether a result is small enough to load at once. Conditions on unknown fields are
+   * ignored, as described for the DAO.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The number of matching insurances, or -1 if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public long countFilteredInsurances(FilterCriteria criteria) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    try {
+      return SNAPSHOT.count(criteria);
+    } catch (SQLException e) {
+      logger.error("Error counting insurances with {}", criteria, e);
+      return -1;
+    }
+  }
+
+  /**
+   * Retrieves one page of insurances in ID order. Returns an empty list instead of throwing
+   * exceptions if a database error occurs, like {@link #getAllInsurances()}.
+   *
+   * @param afterInsuranceId The ID of the last insurance of the previous page, or null for the
+   *     first page
+   * @param limit The maximum number of insurances to return
+   * @return The next page of at most limit insurances, or an empty list after the last page or
+   *     if an error occurs
+   * @throws IllegalArgumentException If limit is not positive
+   */
+  public List<Insurance> getInsurancesPage(String afterInsuranceId, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+    try {
+      return METRICS.call(
+          "getInsurancesPage", () -> insuranceDAO.getInsurancesPage(afterInsuranceId, limit));
+    } catch (SQLException e) {
+      logger.error("Error fetching insurances after: {}", afterInsuranceId, e);
+      return List.of();
+    }
+  }
+
   /**
    * Retrieves a specific insurance provider by its ID. Validates that the provided ID is not null
-   * or empty before querying the database.
+   * or empty before looking it up in the in-memory list (see {@link #getSnapshot()}).
    *
    * @param insuranceId The unique identifier of the insurance to retrieve
    * @return The Insurance object if found, or null if the insurance doesn't exist or an error
@@ -102,13 +226,38 @@ public class InsuranceService {
       throw new IllegalArgumentException("Insurance ID cannot be empty");
     }
     try {
-      return insuranceDAO.getInsuranceById(insuranceId);
+      return SNAPSHOT.get(insuranceId);
     } catch (SQLException e) {
       logger.error("Error fetching insurance: {}", insuranceId, e);
       return null;
     }
   }
 
+  /**
+   * Reads the insurance providers with the given IDs from the database, leaving the in-memory
+   * snapshot of the table alone.
+   *
+   * @param insuranceIds The IDs of the providers to read
+   * @return The providers found; IDs of providers that no longer exist are left out
+   * @throws IllegalArgumentException If insuranceIds is null
+   * @throws ServiceException If a database error occurs
+   */
+  public List<Insurance> getInsurancesByIds(Collection<String> insuranceIds) {
+    if (insuranceIds == null) {
+      throw new IllegalArgumentException("Insurance IDs cannot be null");
+    }
+    if (insuranceIds.isEmpty()) {
+      return List.of();
+    }
+    try {
+      return METRICS.call(
+          "getInsurancesByIds", () -> insuranceDAO.getInsurancesByIds(insuranceIds));
+    } catch (SQLException e) {
+      logger.error("Error fetching {} insurance providers by ID", insuranceIds.size(), e);
+      throw new ServiceException("Failed to fetch insurance providers", e);
+    }
+  }
+
   /**
    * Updates an existing insurance provider's information in the database. Validates that the
    * insurance object is not null before proceeding with the update.
@@ -125,11 +274,13 @@ public class InsuranceService {
     validateFieldLengths(insurance);
 
     try {
-      insuranceDAO.updateInsurance(insurance);
+      METRICS.run("updateInsurance", () -> insuranceDAO.updateInsurance(insurance));
       logger.info("Insurance updated successfully: {}", insurance.getInsuranceId());
     } catch (SQLException e) {
       logger.error("Error updating insurance: {}", insurance.getInsuranceId(), e);
       throw new ServiceException("Failed to update insurance", e);
+    } finally {
+      SNAPSHOT.invalidate();
     }
   }
 
@@ -148,11 +299,56 @@ public class InsuranceService {
       throw new IllegalArgumentException("Insurance ID cannot be empty");
     }
     try {
-      insuranceDAO.deleteInsurance(insuranceId);
+      METRICS.run("deleteInsurance", () -> insuranceDAO.deleteInsurance(insuranceId));
       logger.info("Insurance deleted successfully: {}", insuranceId);
     } catch (SQLException e) {
       logger.error("Error deleting insurance: {}", insuranceId, e);
       throw new ServiceException("Failed to delete insurance", e);
+    } finally {
+      SNAPSHOT.invalidate();
+    }
+  }
+
+  /**
+   * Inserts or updates a batch of insurances in a single transaction, for bulk synchronisation
+   * jobs. Unlike addInsurance, an existing ID is not an error: the stored insurance is
+   * overwritten with the given values.
+   *
+   * @param insurances The insurances to insert or update
+   * @throws IllegalArgumentException If the list or any of its elements is null, or a field is
+   *     too long
+   * @throws ServiceException If a database error occurs; nothing is written in that case
+   */
+  public void upsertInsurances(List<Insurance> insurances) {
+    if (insurances == null) {
+      throw new IllegalArgumentException("Insurances cannot be null");
+    }
+    for (Insurance insurance : insurances) {
+      if (insurance == null) {
+        throw new IllegalArgumentException("Insurance cannot be null");
+      }
+      validateFieldLengths(insurance);
     }
+
+    try {
+      METRICS.run("upsertInsurances", () -> insuranceDAO.upsertInsurances(insurances));
+      logger.info("Insurances upserted successfully: {}", insurances.size());
+    } catch (SQLException e) {
+      logger.error("Error upserting insurances", e);
+      throw new ServiceException("Failed to upsert insurances", e);
+    } finally {
+      SNAPSHOT.invalidate();
+    }
+  }
+
+  /**
+   * Returns the in-memory list of insurance providers used by the reads of this service, for
+   * monitoring how often it is re-read and for invalidating it after changes made outside this
+   * service.
+   *
+   * @return The snapshot shared by all instances
+   */
+  public static ReferenceSnapshot<Insurance> getSnapshot() {
+    return SNAPSHOT;
   }
 }
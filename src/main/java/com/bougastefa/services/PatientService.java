@@ -1,12 +1,18 @@
 package com.bougastefa.services;
 
+import com.bougastefa.database.DuplicateKeyException;
+import com.bougastefa.database.FilterCriteria;
 import com.bougastefa.database.PatientDAO;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.models.InsuredPatient;
 import com.bougastefa.models.Patient;
+import com.bougastefa.monitoring.DaoMetrics;
 import com.bougastefa.utils.FieldLengthConstants;
 import com.bougastefa.utils.InputValidationUtil;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +25,18 @@ import org.slf4j.LoggerFactory;
 public class PatientService {
   private PatientDAO patientDAO = new PatientDAO();
   private static final Logger logger = LoggerFactory.getLogger(PatientService.class);
+  private static final DaoMetrics METRICS = DaoMetrics.forDao(PatientDAO.class);
+  /** Patients by ID, shared by all instances so every panel benefits from the others' lookups */
+  private static final EntityCache<Patient> CACHE = new EntityCache<>("patient");
+  /** Filtered query results shared with the other services, see {@link ResultCache} */
+  private static final ResultCache RESULTS = ResultCache.shared();
+  /** Patient IDs that may exist, so lookups of IDs that do not exist skip the database */
+  private static final ExistenceIndex INDEX =
+      new ExistenceIndex(
+          "patient",
+          () -> METRICS.call("countPatients", () -> new PatientDAO().countPatients()),
+          action ->
+              METRICS.run("forEachPatientId", () -> new PatientDAO().forEachPatientId(action)));
 
   /**
    * Validates that the patient fields don't exceed database column length limits.
@@ -74,17 +92,20 @@ public class PatientService {
 
     validateFieldLengths(patient);
 
-    Patient existingPatient = getPatientById(patient.getPatientId());
-    if (existingPatient != null) {
-      throw new IllegalArgumentException(
-          "Patient with ID " + patient.getPatientId() + " already exists");
-    }
     try {
-      patientDAO.addPatient(patient);
+      // Recorded first, so a lookup right after the insert commits cannot miss the patient
+      INDEX.add(patient.getPatientId());
+      // Inserted directly; the primary key reports an existing patient
+      METRICS.run("addPatient", () -> patientDAO.addPatient(patient));
       logger.info("Patient added successfully: {}", patient.getPatientId());
+    } catch (DuplicateKeyException e) {
+      throw new IllegalArgumentException(
+          "Patient with ID " + patient.getPatientId() + " already exists");
     } catch (SQLException e) {
       logger.error("Error adding patient: {}", patient.getPatientId(), e);
       throw new ServiceException("Failed to add patient", e);
+    } finally {
+      RESULTS.invalidate("Patient");
     }
   }
 
@@ -97,16 +118,122 @@ public class PatientService {
    */
   public List<Patient> getAllPatients() {
     try {
-      return patientDAO.getAllPatients();
+      return METRICS.call("getAllPatients", patientDAO::getAllPatients);
     } catch (SQLException e) {
       logger.error("Error fetching patients", e);
       return List.of(); // Return an empty list on error
     }
   }
 
+  /**
+   * Retrieves the patients matching the filter criteria, filtered by the database. Returns an empty
+   * list instead of throwing exceptions if a database error occurs, like {@link #getAllPatients()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The matching patients, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public List<Patient> getFilteredPatients(FilterCriteria criteria) {
+    return getFilteredPatients(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the patients matching the filter criteria, filtered and sorted by the database.
+   * Repeated queries are answered from the shared {@link ResultCache} until the tables they read
+   * are written. Returns an empty list instead of throwing exceptions if a database error occurs,
+   * like {@link #getAllPatients()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @return The matching patients, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<Patient> getFilteredPatients(FilterCriteria criteria, SortSpec sort) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    if (sort == null) {
+      throw new IllegalArgumentException("Sort order cannot be null");
+    }
+    try {
+      return RESULTS.get(
+          List.of("Patient", criteria, sort),
+          Set.of("Patient"),
+          () ->
+              METRICS.call(
+                  "getFilteredPatients",
+                  () -> patientDAO.getFilteredPatients(criteria, sort)));
+    } catch (SQLException e) {
+      logger.error("Error filtering patients with {} and {}", criteria, sort, e);
+      return List.of();
+    }
+  }
+
+  /**
+   * Counts all patients without loading them, for example to show a total next to a filtered view.
+   *
+   * @return The number of patients, or -1 if an error occurs
+   */
+  public long countPatients() {
+    try {
+      return METRICS.call("countPatients", patientDAO::countPatients);
+    } catch (SQLException e) {
+      logger.error("Error counting patients", e);
+      return -1;
+    }
+  }
+
+  /**
+   * Counts the patients matching the filter criteria without loading them, for example to decide
+   * whether a result is small enough to load at once. Conditions the database cannot apply are
+   * ignored, as described for the DAO.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The number of matching patients, or -1 if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public long countFilteredPatients(FilterCriteria criteria) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    try {
+      return METRICS.call(
+          "countFilteredPatients", () -> patientDAO.countFilteredPatients(criteria));
+    } catch (SQLException e) {
+      logger.error("Error counting patients with {}", criteria, e);
+      return -1;
+    }
+  }
+
+  /**
+   * Retrieves one page of patients in ID order. Returns an empty list instead of throwing
+   * exceptions if a database error occurs, like {@link #getAllPatients()}.
+   *
+   * @param afterPatientId The ID of the last patient of the previous page, or null for the
+   *     first page
+   * @param limit The maximum number of patients to return
+   * @return The next page of at most limit patients, or an empty list after the last page or
+   *     if an error occurs
+   * @throws IllegalArgumentException If limit is not positive
+   */
+  public List<Patient> getPatientsPage(String afterPatientId, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+    try {
+      return METRICS.call(
+          "getPatientsPage", () -> patientDAO.getPatientsPage(afterPatientId, limit));
+    } catch (SQLException e) {
+      logger.error("Error fetching patients after: {}", afterPatientId, e);
+      return List.of();
+    }
+  }
+
   /**
    * Retrieves a specific patient by their ID. Validates that the provided ID is not null or empty
-   * before querying the database.
+   * before querying the database, which is skipped while the patient is cached (see {@link
+   * #getCache()}) or if the patient certainly does not exist (see {@link #getExistenceIndex()}).
    *
    * @param patientId The unique identifier of the patient to retrieve
    * @return The Patient object if found, or null if the patient doesn't exist or an error occurs
@@ -116,14 +243,43 @@ public class PatientService {
     if (patientId == null || patientId.isEmpty()) {
       throw new IllegalArgumentException("Patient ID cannot be empty");
     }
+    if (!INDEX.mightContain(patientId)) {
+      return null;
+    }
     try {
-      return patientDAO.getPatientById(patientId);
+      return CACHE.get(
+          patientId, id -> METRICS.call("getPatientById", () -> patientDAO.getPatientById(id)));
     } catch (SQLException e) {
       logger.error("Error fetching patient: {}", patientId, e);
       return null;
     }
   }
 
+  /**
+   * Reads the patients with the given IDs from the database, bypassing the cache, for example to
+   * refresh the rows another client has changed.
+   *
+   * @param patientIds The IDs of the patients to read
+   * @return The patients found; IDs of patients that no longer exist are left out
+   * @throws IllegalArgumentException If patientIds is null
+   * @throws ServiceException If a database error occurs, so a failed read is not mistaken for
+   *     patients that were deleted
+   */
+  public List<Patient> getPatientsByIds(Collection<String> patientIds) {
+    if (patientIds == null) {
+      throw new IllegalArgumentException("Patient IDs cannot be null");
+    }
+    if (patientIds.isEmpty()) {
+      return List.of();
+    }
+    try {
+      return METRICS.call("getPatientsByIds", () -> patientDAO.getPatientsByIds(patientIds));
+    } catch (SQLException e) {
+      logger.error("Error fetching {} patients by ID", patientIds.size(), e);
+      throw new ServiceException("Failed to fetch patients", e);
+    }
+  }
+
   /**
    * Updates an existing patient's information in the database. Validates that the patient object is
    * not null before proceeding with the update. If the patient doesn't exist, the DAO will handle
@@ -141,11 +297,14 @@ public class PatientService {
     validateFieldLengths(patient);
 
     try {
-      patientDAO.updatePatient(patient);
+      METRICS.run("updatePatient", () -> patientDAO.updatePatient(patient));
       logger.info("Patient updated successfully: {}", patient.getPatientId());
     } catch (SQLException e) {
       logger.error("Error updating patient: {}", patient.getPatientId(), e);
       throw new ServiceException("Failed to update patient", e);
+    } finally {
+      RESULTS.invalidate("Patient");
+      CACHE.invalidate(patient.getPatientId());
     }
   }
 
@@ -164,11 +323,72 @@ public class PatientService {
       throw new IllegalArgumentException("Patient ID cannot be empty");
     }
     try {
-      patientDAO.deletePatient(patientId);
+      METRICS.run("deletePatient", () -> patientDAO.deletePatient(patientId));
       logger.info("Patient deleted successfully: {}", patientId);
     } catch (SQLException e) {
       logger.error("Error deleting patient: {}", patientId, e);
       throw new ServiceException("Failed to delete patient", e);
+    } finally {
+      RESULTS.invalidate("Patient");
+      CACHE.invalidate(patientId);
+    }
+  }
+
+  /**
+   * Inserts or updates a batch of patients in a single transaction, for bulk synchronisation
+   * jobs. Unlike addPatient, an existing ID is not an error: the stored patient is
+   * overwritten with the given values.
+   *
+   * @param patients The patients to insert or update
+   * @throws IllegalArgumentException If the list or any of its elements is null, or a field is
+   *     too long
+   * @throws ServiceException If a database error occurs; nothing is written in that case
+   */
+  public void upsertPatients(List<Patient> patients) {
+    if (patients == null) {
+      throw new IllegalArgumentException("Patients cannot be null");
+    }
+    for (Patient patient : patients) {
+      if (patient == null) {
+        throw new IllegalArgumentException("Patient cannot be null");
+      }
+      validateFieldLengths(patient);
+    }
+
+    for (Patient patient : patients) {
+      INDEX.add(patient.getPatientId());
+    }
+    try {
+      METRICS.run("upsertPatients", () -> patientDAO.upsertPatients(patients));
+      logger.info("Patients upserted successfully: {}", patients.size());
+    } catch (SQLException e) {
+      logger.error("Error upserting patients", e);
+      throw new ServiceException("Failed to upsert patients", e);
+    } finally {
+      RESULTS.invalidate("Patient");
+      for (Patient patient : patients) {
+        CACHE.invalidate(patient.getPatientId());
+      }
     }
   }
+
+  /**
+   * Returns the cache of patients by ID used by {@link #getPatientById}, for monitoring its hit
+   * rate and for invalidating patients changed outside this service.
+   *
+   * @return The cache shared by all instances
+   */
+  public static EntityCache<Patient> getCache() {
+    return CACHE;
+  }
+
+  /**
+   * Returns the index of patient IDs used by {@link #getPatientById} to skip lookups of patients
+   * that do not exist, for example to build it at startup.
+   *
+   * @return The index shared by all instances
+   */
+  public static ExistenceIndex getExistenceIndex() {
+    return INDEX;
+  }
 }
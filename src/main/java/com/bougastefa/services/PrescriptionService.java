@@ -1,12 +1,20 @@
 package com.bougastefa.services;
 
+import com.bougastefa.database.DuplicateKeyException;
+import com.bougastefa.database.FilterCriteria;
 import com.bougastefa.database.PrescriptionDAO;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.models.Prescription;
+import com.bougastefa.models.PrescriptionView;
+import com.bougastefa.monitoring.DaoMetrics;
 import com.bougastefa.utils.FieldLengthConstants;
 import com.bougastefa.utils.InputValidationUtil;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +27,23 @@ import org.slf4j.LoggerFactory;
 public class PrescriptionService {
   private PrescriptionDAO prescriptionDAO = new PrescriptionDAO();
   private static final Logger logger = LoggerFactory.getLogger(PrescriptionService.class);
+  private static final DaoMetrics METRICS = DaoMetrics.forDao(PrescriptionDAO.class);
+  /** Filtered query results shared with the other services, see {@link ResultCache} */
+  private static final ResultCache RESULTS = ResultCache.shared();
+  /** Prescription IDs that may exist, so lookups of IDs that do not exist skip the database */
+  private static final ExistenceIndex INDEX =
+      new ExistenceIndex(
+          "prescription",
+          () ->
+              METRICS.call(
+                  "countFilteredPrescriptions",
+                  () ->
+                      new PrescriptionDAO()
+                          .countFilteredPrescriptions(FilterCriteria.none(), true)),
+          action ->
+              METRICS.run(
+                  "forEachPrescriptionId",
+                  () -> new PrescriptionDAO().forEachPrescriptionId(action)));
 
   /**
    * Validates that the prescription fields don't exceed database column length limits.
@@ -66,17 +91,20 @@ public class PrescriptionService {
 
     validateFieldLengths(prescription);
 
-    Prescription existingPrescription = getPrescriptionById(prescription.getPrescriptionId());
-    if (existingPrescription != null) {
-      throw new IllegalArgumentException(
-          "Prescription ID already exists: " + prescription.getPrescriptionId());
-    }
     try {
-      prescriptionDAO.addPrescription(prescription);
+      // Recorded first, so a lookup right after the insert commits cannot miss the prescription
+      INDEX.add(prescription.getPrescriptionId());
+      // Inserted directly; the primary key reports an existing prescription
+      METRICS.run("addPrescription", () -> prescriptionDAO.addPrescription(prescription));
       logger.info("Prescription added successfully: {}", prescription.getPrescriptionId());
+    } catch (DuplicateKeyException e) {
+      throw new IllegalArgumentException(
+          "Prescription ID already exists: " + prescription.getPrescriptionId());
     } catch (SQLException e) {
       logger.error("Error adding prescription: {}", prescription.getPrescriptionId(), e);
       throw new ServiceException("Failed to add prescription", e);
+    } finally {
+      RESULTS.invalidate("Prescription");
     }
   }
 
@@ -90,7 +118,8 @@ public class PrescriptionService {
    */
   public List<Prescription> getAllPrescriptions() {
     try {
-      List<Prescription> prescriptions = prescriptionDAO.getAllPrescriptions();
+      List<Prescription> prescriptions =
+          METRICS.call("getAllPrescriptions", prescriptionDAO::getAllPrescriptions);
       if (prescriptions == null) {
         return Collections.emptyList();
       }
@@ -101,9 +130,290 @@ public class PrescriptionService {
     }
   }
 
+  /**
+   * Retrieves the prescriptions matching the filter criteria, filtered by the database. Returns an
+   * empty list instead of throwing exceptions if a database error occurs, like {@link
+   * #getAllPrescriptions()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The matching prescriptions, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public List<Prescription> getFilteredPrescriptions(FilterCriteria criteria) {
+    return getFilteredPrescriptions(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the recent prescriptions matching the filter criteria, filtered and sorted by the
+   * database. Prescriptions that are archived or older than the archive cutoff are left out.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @return The matching prescriptions, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<Prescription> getFilteredPrescriptions(FilterCriteria criteria, SortSpec sort) {
+    return getFilteredPrescriptions(criteria, sort, false);
+  }
+
+  /**
+   * Retrieves the prescriptions matching the filter criteria, filtered and sorted by the database.
+   * Repeated queries are answered from the shared {@link ResultCache} until the tables they read
+   * are written. Returns an empty list instead of throwing exceptions if a database error occurs,
+   * like {@link #getAllPrescriptions()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @param includeHistory true to also include prescriptions that are archived or older than the
+   *     archive cutoff
+   * @return The matching prescriptions, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<Prescription> getFilteredPrescriptions(
+      FilterCriteria criteria, SortSpec sort, boolean includeHistory) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    if (sort == null) {
+      throw new IllegalArgumentException("Sort order cannot be null");
+    }
+    try {
+      return RESULTS.get(
+          List.of("Prescription", criteria, sort, includeHistory),
+          Set.of("Prescription"),
+          () ->
+              METRICS.call(
+                  "getFilteredPrescriptions",
+                  () -> prescriptionDAO.getFilteredPrescriptions(criteria, sort, includeHistory)));
+    } catch (SQLException e) {
+      logger.error("Error filtering prescriptions with {} and {}", criteria, sort, e);
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Retrieves the recent prescriptions dated between two dates, both included, oldest first.
+   *
+   * @param from The earliest date to include
+   * @param to The latest date to include
+   * @return The recent prescriptions in the range, or an empty list if an error occurs
+   * @throws IllegalArgumentException If either date is null or from is after to
+   */
+  public List<Prescription> getPrescriptionsBetween(LocalDate from, LocalDate to) {
+    return getPrescriptionsBetween(from, to, false);
+  }
+
+  /**
+   * Retrieves the prescriptions dated between two dates, both included, oldest first. The database
+   * selects the range through its date index, so only those prescriptions are loaded. Returns an
+   * empty list instead of throwing exceptions if a database error occurs, like {@link
+   * #getAllPrescriptions()}.
+   *
+   * @param from The earliest date to include
+   * @param to The latest date to include
+   * @param includeHistory true to also include prescriptions that are archived or older than the
+   *     archive cutoff
+   * @return The prescriptions in the range, or an empty list if an error occurs
+   * @throws IllegalArgumentException If either date is null or from is after to
+   */
+  public List<Prescription> getPrescriptionsBetween(
+      LocalDate from, LocalDate to, boolean includeHistory) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Start and end dates cannot be null");
+    }
+    if (from.isAfter(to)) {
+      throw new IllegalArgumentException("Start date cannot be after end date");
+    }
+    try {
+      return Collections.unmodifiableList(
+          METRICS.call(
+              "getPrescriptionsBetween",
+              () -> prescriptionDAO.getPrescriptionsBetween(from, to, includeHistory)));
+    } catch (SQLException e) {
+      logger.error("Error fetching prescriptions between {} and {}", from, to, e);
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Retrieves the recent prescriptions matching the filter criteria together with the names of
+   * their drug, doctor and patient, for display.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @return The matching prescriptions with their names, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<PrescriptionView> getFilteredPrescriptionViews(
+      FilterCriteria criteria, SortSpec sort) {
+    return getFilteredPrescriptionViews(criteria, sort, false);
+  }
+
+  /**
+   * Retrieves the prescriptions matching the filter criteria together with the names of their drug,
+   * doctor and patient, for display. The names come from the same query, so no drug, doctor or
+   * patient is looked up per prescription. Repeated queries are answered from the shared {@link
+   * ResultCache} until one of the four tables is written. Returns an empty list instead of throwing
+   * exceptions if a database error occurs, like {@link #getAllPrescriptions()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @param includeHistory true to also include prescriptions that are archived or older than the
+   *     archive cutoff
+   * @return The matching prescriptions with their names, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<PrescriptionView> getFilteredPrescriptionViews(
+      FilterCriteria criteria, SortSpec sort, boolean includeHistory) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    if (sort == null) {
+      throw new IllegalArgumentException("Sort order cannot be null");
+    }
+    try {
+      // The names come from the joined tables, so a write to any of them invalidates the result
+      return RESULTS.get(
+          List.of("PrescriptionView", criteria, sort, includeHistory),
+          Set.of("Prescription", "Drug", "Doctor", "Patient"),
+          () ->
+              METRICS.call(
+                  "getFilteredPrescriptionViews",
+                  () ->
+                      prescriptionDAO.getFilteredPrescriptionViews(
+                          criteria, sort, includeHistory)));
+    } catch (SQLException e) {
+      logger.error("Error filtering prescription views with {} and {}", criteria, sort, e);
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * Reads the recent and undated prescriptions with the given IDs together with their names,
+   * without the result cache, for refreshing single rows of a prescription table.
+   *
+   * @param prescriptionIds The IDs of the prescriptions to read
+   * @return The prescriptions found with their names; IDs of prescriptions that expired or no
+   *     longer exist are left out
+   * @throws IllegalArgumentException If prescriptionIds is null
+   * @throws ServiceException If a database error occurs
+   */
+  public List<PrescriptionView> getRecentPrescriptionViewsByIds(
+      Collection<String> prescriptionIds) {
+    if (prescriptionIds == null) {
+      throw new IllegalArgumentException("Prescription IDs cannot be null");
+    }
+    if (prescriptionIds.isEmpty()) {
+      return List.of();
+    }
+    try {
+      return METRICS.call(
+          "getRecentPrescriptionViewsByIds",
+          () -> prescriptionDAO.getRecentPrescriptionViewsByIds(prescriptionIds));
+    } catch (SQLException e) {
+      logger.error("Error fetching {} prescription views by ID", prescriptionIds.size(), e);
+      throw new ServiceException("Failed to fetch prescriptions", e);
+    }
+  }
+
+  /**
+   * Counts the recent prescriptions without loading them, for example to show a total next to a
+   * filtered view.
+   *
+   * @return The number of prescriptions, or -1 if an error occurs
+   */
+  public long countPrescriptions() {
+    try {
+      return METRICS.call("countPrescriptions", prescriptionDAO::countPrescriptions);
+    } catch (SQLException e) {
+      logger.error("Error counting prescriptions", e);
+      return -1;
+    }
+  }
+
+  /**
+   * Counts the recent prescriptions matching the filter criteria without loading them.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The number of matching prescriptions, or -1 if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public long countFilteredPrescriptions(FilterCriteria criteria) {
+    return countFilteredPrescriptions(criteria, false);
+  }
+
+  /**
+   * Counts the prescriptions matching the filter criteria without loading them, for example to
+   * decide whether a result is small enough to load at once. Conditions the database cannot apply
+   * are ignored, as described for the DAO.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param includeHistory true to also include prescriptions that are archived or older than the
+   *     archive cutoff
+   * @return The number of matching prescriptions, or -1 if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public long countFilteredPrescriptions(FilterCriteria criteria, boolean includeHistory) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    try {
+      return METRICS.call(
+          "countFilteredPrescriptions",
+          () -> prescriptionDAO.countFilteredPrescriptions(criteria, includeHistory));
+    } catch (SQLException e) {
+      logger.error("Error counting prescriptions with {}", criteria, e);
+      return -1;
+    }
+  }
+
+  /**
+   * Retrieves one page of prescriptions, most recent first. The cursor is the date and ID of the
+   * last prescription of the previous page. Returns an empty list instead of throwing exceptions
+   * if a database error occurs, like {@link #getAllPrescriptions()}.
+   *
+   * @param afterDatePrescribed The date of the last prescription of the previous page; null for
+   *     the first page or if that prescription had no date
+   * @param afterPrescriptionId The ID of the last prescription of the previous page, or null for
+   *     the first page
+   * @param limit The maximum number of prescriptions to return
+   * @return Up to limit prescriptions following the cursor, or an empty list after the last page
+   *     or if an error occurs
+   * @throws IllegalArgumentException If limit is not positive, or a date is given without an ID
+   */
+  public List<Prescription> getPrescriptionsPage(
+      LocalDate afterDatePrescribed, String afterPrescriptionId, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+    if (afterDatePrescribed != null && afterPrescriptionId == null) {
+      throw new IllegalArgumentException("Prescription cursor must have a prescription ID");
+    }
+    try {
+      return Collections.unmodifiableList(
+          METRICS.call(
+              "getPrescriptionsPage",
+              () ->
+                  prescriptionDAO.getPrescriptionsPage(
+                      afterDatePrescribed, afterPrescriptionId, limit)));
+    } catch (SQLException e) {
+      logger.error(
+          "Error fetching prescriptions after: {} ({})",
+          afterPrescriptionId,
+          afterDatePrescribed,
+          e);
+      return Collections.emptyList();
+    }
+  }
+
   /**
    * Retrieves a specific prescription by its ID. Validates that the provided ID is not null or
-   * empty before querying the database.
+   * empty before querying the database, which is skipped if the prescription certainly does not
+   * exist (see {@link #getExistenceIndex()}).
    *
    * @param prescriptionId The unique identifier of the prescription to retrieve
    * @return The Prescription object if found, or null if the prescription doesn't exist or an error
@@ -114,8 +424,12 @@ public class PrescriptionService {
     if (prescriptionId == null || prescriptionId.isEmpty()) {
       throw new IllegalArgumentException("Prescription ID cannot be empty");
     }
+    if (!INDEX.mightContain(prescriptionId)) {
+      return null;
+    }
     try {
-      return prescriptionDAO.getPrescriptionById(prescriptionId);
+      return METRICS.call(
+          "getPrescriptionById", () -> prescriptionDAO.getPrescriptionById(prescriptionId));
     } catch (SQLException e) {
       logger.error("Error fetching prescription: {}", prescriptionId, e);
       return null;
@@ -139,11 +453,13 @@ public class PrescriptionService {
     validateFieldLengths(prescription);
 
     try {
-      prescriptionDAO.updatePrescription(prescription);
+      METRICS.run("updatePrescription", () -> prescriptionDAO.updatePrescription(prescription));
       logger.info("Prescription updated successfully: {}", prescription.getPrescriptionId());
     } catch (SQLException e) {
       logger.error("Error updating prescription: {}", prescription.getPrescriptionId(), e);
       throw new ServiceException("Failed to update prescription", e);
+    } finally {
+      RESULTS.invalidate("Prescription");
     }
   }
 
@@ -161,11 +477,58 @@ public class PrescriptionService {
       throw new IllegalArgumentException("Prescription ID cannot be empty");
     }
     try {
-      prescriptionDAO.deletePrescription(prescriptionId);
+      METRICS.run("deletePrescription", () -> prescriptionDAO.deletePrescription(prescriptionId));
       logger.info("Prescription deleted successfully: {}", prescriptionId);
     } catch (SQLException e) {
       logger.error("Error deleting prescription: {}", prescriptionId, e);
       throw new ServiceException("Failed to delete prescription", e);
+    } finally {
+      RESULTS.invalidate("Prescription");
+    }
+  }
+
+  /**
+   * Inserts or updates a batch of prescriptions in a single transaction, for bulk synchronisation
+   * jobs. Unlike addPrescription, an existing ID is not an error: the stored prescription is
+   * overwritten with the given values.
+   *
+   * @param prescriptions The prescriptions to insert or update
+   * @throws IllegalArgumentException If the list or any of its elements is null, or a field is
+   *     too long
+   * @throws ServiceException If a database error occurs; nothing is written in that case
+   */
+  public void upsertPrescriptions(List<Prescription> prescriptions) {
+    if (prescriptions == null) {
+      throw new IllegalArgumentException("Prescriptions cannot be null");
+    }
+    for (Prescription prescription : prescriptions) {
+      if (prescription == null) {
+        throw new IllegalArgumentException("Prescription cannot be null");
+      }
+      validateFieldLengths(prescription);
+    }
+
+    for (Prescription prescription : prescriptions) {
+      INDEX.add(prescription.getPrescriptionId());
     }
+    try {
+      METRICS.run("upsertPrescriptions", () -> prescriptionDAO.upsertPrescriptions(prescriptions));
+      logger.info("Prescriptions upserted successfully: {}", prescriptions.size());
+    } catch (SQLException e) {
+      logger.error("Error upserting prescriptions", e);
+      throw new ServiceException("Failed to upsert prescriptions", e);
+    } finally {
+      RESULTS.invalidate("Prescription");
+    }
+  }
+
+  /**
+   * Returns the index of prescription IDs used by {@link #getPrescriptionById} to skip lookups of
+   * prescriptions that do not exist, for example to build it at startup.
+   *
+   * @return The index shared by all instances
+   */
+  public static ExistenceIndex getExistenceIndex() {
+    return INDEX;
   }
 }
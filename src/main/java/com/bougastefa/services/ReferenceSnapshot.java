@@ -0,0 +1,285 @@
+package com.bougastefa.services;
+
+import com.bougastefa.database.DatabaseConnection;
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
+import com.bougastefa.database.TableVersionDAO;
+import com.bougastefa.monitoring.DaoMetrics;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Immutable in-memory copy of a small reference table, such as the drug or insurance catalogue,
+ * that is only re-read when the table has changed. Lookups by ID, filters, sorts and counts are
+ * answered from the copy without querying the database.
+ *
+ * <p>Whether the copy is current is decided by the table's change counter in TableVersion, which
+ * triggers bump on every write. The counter is checked at most once per {@code
+ * snapshot.checkIntervalMs} (from db.properties), so a change made by another client shows up
+ * within that interval; the owning service calls {@link #invalidate()} after its own writes so
+ * they show up at once. A table without a counter is re-read at every check.
+ *
+ * <p>Lookups and filters behave like the DAOs' SQL conditions under the tables' case-insensitive
+ * collation: IDs and "contains" and exact conditions ignore case, and conditions on fields the
+ * snapshot does not know are ignored. All methods are thread-safe; the returned lists are
+ * immutable and share their entities, which callers must not modify.
+ *
+ * @param <T> The entity type
+ */
+public final class ReferenceSnapshot<T> {
+  private static final long CHECK_INTERVAL_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(
+          DatabaseConnection.getLongProperty("snapshot.checkIntervalMs", 2000));
+
+  /** Reads every row of the table */
+  @FunctionalInterface
+  interface Loader<T> {
+    List<T> loadAll() throws SQLException;
+  }
+
+  /** One consistent copy of the table */
+  private static final class Data<T> {
+    private final long version;
+    private final List<T> rows;
+    private final Map<String, T> byId;
+    /** When the version was last confirmed, from System.nanoTime() */
+    private final long checkedNanos;
+
+    private Data(long version, List<T> rows, Map<String, T> byId, long checkedNanos) {
+      this.version = version;
+      this.rows = rows;
+      this.byId = byId;
+      this.checkedNanos = checkedNanos;
+    }
+
+    private Data<T> confirmedAt(long nanos) {
+      return new Data<>(version, rows, byId, nanos);
+    }
+  }
+
+  private final String table;
+  private final Function<T, String> idOf;
+  /** The filter field names and the value each one reads */
+  private final Map<String, Function<T, String>> fields;
+  /** The sort field names and the value each one reads */
+  private final Map<String, Function<T, String>> sortFields;
+  private final Loader<T> loader;
+  private static final DaoMetrics METRICS = DaoMetrics.forDao(TableVersionDAO.class);
+  private final TableVersionDAO versionDAO = new TableVersionDAO();
+  private volatile Data<T> data;
+  /** Set by invalidate() so the next access checks the version regardless of the interval */
+  private volatile boolean checkNow;
+  private volatile long reloads;
+  private final LongAdder reads = new LongAdder();
+
+  /**
+   * Creates an empty snapshot; the table is first read on first access. The filter and sort
+   * fields are the DAO's, so the snapshot accepts exactly the fields the SQL queries accept.
+   *
+   * @param table The table name, as recorded in TableVersion
+   * @param idOf Returns the ID of an entity
+   * @param filterColumns The DAO's filter field names and the column each one matches
+   * @param sortColumns The DAO's sort field names and the column each one sorts by
+   * @param columnValues The columns the fields map to and the value each one holds in an entity
+   * @param loader Reads every row of the table
+   * @throws IllegalArgumentException If a filter or sort column has no value in columnValues
+   */
+  ReferenceSnapshot(
+      String table,
+      Function<T, String> idOf,
+      Map<String, String> filterColumns,
+      Map<String, String> sortColumns,
+      Map<String, Function<T, String>> columnValues,
+      Loader<T> loader) {
+    this.table = table;
+    this.idOf = idOf;
+    this.fields = resolve(table, filterColumns, columnValues);
+    this.sortFields = resolve(table, sortColumns, columnValues);
+    this.loader = loader;
+  }
+
+  private static <T> Map<String, Function<T, String>> resolve(
+      String table, Map<String, String> columns, Map<String, Function<T, String>> columnValues) {
+    Map<String, Function<T, String>> values = new LinkedHashMap<>();
+    for (Map.Entry<String, String> field : columns.entrySet()) {
+      Function<T, String> value = columnValues.get(field.getValue());
+      if (value == null) {
+        throw new IllegalArgumentException(
+            "No value for column " + table + "." + field.getValue()
+                + " of field " + field.getKey());
+      }
+      values.put(field.getKey(), value);
+    }
+    return Collections.unmodifiableMap(values);
+  }
+
+  /**
+   * Returns every row, in the table's primary key order.
+   *
+   * @return An immutable list of all entities
+   * @throws SQLException If the version cannot be checked or the table cannot be read
+   */
+  public List<T> getAll() throws SQLException {
+    return current().rows;
+  }
+
+  /**
+   * Looks up one entity by ID, ignoring case and trailing spaces as the collation does.
+   *
+   * @param id The entity ID
+   * @return The entity, or null if it does not exist
+   * @throws SQLException If the version cannot be checked or the table cannot be read
+   */
+  public T get(String id) throws SQLException {
+    if (id == null) {
+      return null;
+    }
+    return current().byId.get(id.stripTrailing());
+  }
+
+  /**
+   * Returns the entities matching the criteria in the given order, with the ID breaking ties as in
+   * the DAO's ORDER BY.
+   *
+   * @param criteria The filter conditions; empty criteria return every entity
+   * @param sort The sort order; primary key order if none
+   * @return An immutable list of the matching entities
+   * @throws IllegalArgumentException If sort names a field that cannot be sorted by
+   * @throws SQLException If the version cannot be checked or the table cannot be read
+   */
+  public List<T> filter(FilterCriteria criteria, SortSpec sort) throws SQLException {
+    if (!sort.isNone() && !sortFields.containsKey(sort.getField())) {
+      throw new IllegalArgumentException("Cannot sort by field: " + sort.getField());
+    }
+    List<T> matches = new ArrayList<>();
+    for (T row : current().rows) {
+      if (matches(row, criteria)) {
+        matches.add(row);
+      }
+    }
+    if (!sort.isNone()) {
+      // NULLs sort first in ascending order and last in descending order, as in MariaDB
+      Comparator<T> order =
+          Comparator.comparing(
+                  sortFields.get(sort.getField()),
+                  Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))
+              .thenComparing(idOf);
+      matches.sort(sort.isAscending() ? order : order.reversed());
+    }
+    return Collections.unmodifiableList(matches);
+  }
+
+  /**
+   * Counts the entities matching the criteria.
+   *
+   * @param criteria The filter conditions; empty criteria count every entity
+   * @return The number of matching entities
+   * @throws SQLException If the version cannot be checked or the table cannot be read
+   */
+  public int count(FilterCriteria criteria) throws SQLException {
+    if (criteria.isEmpty()) {
+      return current().rows.size();
+    }
+    return filter(criteria, SortSpec.none()).size();
+  }
+
+  /** Makes the next access check the table's version, for example after a write to the table. */
+  public void invalidate() {
+    checkNow = true;
+  }
+
+  /** @return The number of times the table has been read */
+  public long getReloads() {
+    return reloads;
+  }
+
+  /** @return The number of reads of the snapshot, including those that re-read the table */
+  public long getReads() {
+    return reads.sum();
+  }
+
+  /** @return The number of entities in the current copy, or 0 before the table is first read */
+  public int size() {
+    Data<T> current = data;
+    return current == null ? 0 : current.rows.size();
+  }
+
+  private boolean matches(T row, FilterCriteria criteria) {
+    for (String field : criteria.getFields()) {
+      Function<T, String> getter = fields.get(field);
+      if (getter == null) {
+        continue;
+      }
+      String value = getter.apply(row);
+      if (value == null) {
+        return false;
+      }
+      // The reference tables have no date fields, so every condition has a term
+      String term = criteria.getValue(field);
+      if (criteria.isExact(field)
+          ? !value.equalsIgnoreCase(term)
+          : !value.toLowerCase(Locale.ROOT).contains(term.toLowerCase(Locale.ROOT))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the current copy, re-reading the table first if its version has changed. */
+  private Data<T> current() throws SQLException {
+    reads.increment();
+    Data<T> current = data;
+    if (isFresh(current, System.nanoTime())) {
+      return current;
+    }
+    synchronized (this) {
+      current = data;
+      long now = System.nanoTime();
+      if (isFresh(current, now)) {
+        return current;
+      }
+      // Cleared before the check, so an invalidation during the check is not lost
+      checkNow = false;
+      try {
+        // The version is read before the rows, so a write during the load triggers another load
+        long version = METRICS.call("getVersion", () -> versionDAO.getVersion(table));
+        if (current != null && version >= 0 && version == current.version) {
+          data = current.confirmedAt(now);
+        } else {
+          data = load(version, now);
+        }
+      } catch (SQLException e) {
+        checkNow = true;
+        throw e;
+      }
+      return data;
+    }
+  }
+
+  private boolean isFresh(Data<T> current, long now) {
+    return current != null && !checkNow && now - current.checkedNanos < CHECK_INTERVAL_NANOS;
+  }
+
+  private Data<T> load(long version, long now) throws SQLException {
+    List<T> loaded = new ArrayList<>(loader.loadAll());
+    // Sorted here rather than by the loader's query, so every loader gets the same order
+    loaded.sort(Comparator.comparing(idOf, String.CASE_INSENSITIVE_ORDER));
+    List<T> rows = Collections.unmodifiableList(loaded);
+    Map<String, T> byId = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    for (T row : rows) {
+      byId.put(idOf.apply(row).stripTrailing(), row);
+    }
+    reloads++;
+    return new Data<>(version, rows, Collections.unmodifiableMap(byId), now);
+  }
+}
@@ -0,0 +1,244 @@
+package com.bougastefa.services;
+
+import com.bougastefa.database.DatabaseConnection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of filtered query results, shared by the services so that re-running the same
+ * filter, sort order or tab switch renders without querying the database.
+ *
+ * <p>Results are keyed by the query and its arguments, such as the entity name, the {@link
+ * com.bougastefa.database.FilterCriteria} and the {@link com.bougastefa.database.SortSpec}, and
+ * record the tables the query reads. A write to a table through the services invalidates every
+ * result that reads it, including joined tables, for example the prescription views after a
+ * doctor is renamed. A query that was already running when a table was invalidated does not store
+ * its result, so a result read before the write cannot end up in the cache.
+ *
+ * <p>The cache holds at most {@code cache.results.maxRows} rows across all results, evicting the
+ * least recently used results first; a result larger than that is not cached. Results are reloaded
+ * once they are older than {@code cache.results.ttlSeconds}, which bounds how long a change made
+ * outside this application can go unnoticed. A size of 0 disables the cache. All methods are
+ * thread-safe. Cached lists are immutable and share their entities, which callers must not modify.
+ */
+public final class ResultCache {
+  private static final int DEFAULT_MAX_ROWS = 50000;
+  private static final long DEFAULT_TTL_SECONDS = 60;
+
+  private static final ResultCache SHARED =
+      new ResultCache(
+          "results",
+          DatabaseConnection.getIntProperty("cache.results.maxRows", DEFAULT_MAX_ROWS),
+          DatabaseConnection.getLongProperty("cache.results.ttlSeconds", DEFAULT_TTL_SECONDS),
+          TimeUnit.SECONDS);
+
+  /** Runs the query on a miss */
+  @FunctionalInterface
+  interface Loader<T> {
+    List<T> load() throws SQLException;
+  }
+
+  /** A cached result, the tables it was read from and when it was loaded */
+  private static final class Entry {
+    private final List<?> rows;
+    private final Set<String> tables;
+    private final long loadedNanos;
+
+    private Entry(List<?> rows, Set<String> tables, long loadedNanos) {
+      this.rows = rows;
+      this.tables = tables;
+      this.loadedNanos = loadedNanos;
+    }
+  }
+
+  private final String name;
+  private final int maxRows;
+  private final long ttlNanos;
+  /** Results in access order, so the eldest result is the least recently used; guarded by this */
+  private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  /** Rows held by all results; guarded by this */
+  private long rows;
+  /** Incremented by every invalidation; guarded by this */
+  private long generation;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates a cache with the given limits.
+   *
+   * @param name The name of the cache in log messages
+   * @param maxRows The most rows kept across all results; 0 disables the cache
+   * @param ttl How long a result is served from the cache before it is reloaded
+   * @param unit The unit of ttl
+   * @throws IllegalArgumentException If maxRows or ttl is negative
+   */
+  ResultCache(String name, int maxRows, long ttl, TimeUnit unit) {
+    if (maxRows < 0 || ttl < 0) {
+      throw new IllegalArgumentException("Cache size and time to live cannot be negative");
+    }
+    this.name = name;
+    this.maxRows = maxRows;
+    this.ttlNanos = unit.toNanos(ttl);
+  }
+
+  /**
+   * Returns the cache shared by all services, configured by the {@code cache.results.*}
+   * properties in db.properties.
+   *
+   * @return The shared cache
+   */
+  public static ResultCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the cached result, or runs the query and caches its result if it is missing or
+   * expired. The query runs outside the cache's lock, so a slow query does not hold up other
+   * lookups.
+   *
+   * @param key The query and its arguments; the elements must implement equals and hashCode
+   * @param tables The tables the query reads, whose writes invalidate the result
+   * @param loader Runs the query on a miss
+   * @param <T> The row type
+   * @return The result, as an immutable list
+   * @throws SQLException If the loader fails; nothing is cached in that case
+   */
+  @SuppressWarnings("unchecked")
+  <T> List<T> get(List<Object> key, Set<String> tables, Loader<T> loader) throws SQLException {
+    long loadGeneration;
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null && System.nanoTime() - entry.loadedNanos < ttlNanos) {
+        hits++;
+        return (List<T>) entry.rows;
+      }
+      if (entry != null) {
+        remove(key);
+      }
+      misses++;
+      loadGeneration = generation;
+    }
+    List<T> result = List.copyOf(loader.load());
+    if (result.size() <= maxRows && maxRows > 0) {
+      synchronized (this) {
+        // An invalidation since the query started may mean the result is already out of date
+        if (generation == loadGeneration) {
+          remove(key);
+          entries.put(key, new Entry(result, tables, System.nanoTime()));
+          rows += result.size();
+          evictToFit();
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Removes every result read from the table, so the next query reads it from the database.
+   * Called after the table has been written.
+   *
+   * @param table The table name, as passed to the queries
+   */
+  public synchronized void invalidate(String table) {
+    generation++;
+    Iterator<Entry> it = entries.values().iterator();
+    while (it.hasNext()) {
+      Entry entry = it.next();
+      if (entry.tables.contains(table)) {
+        rows -= entry.rows.size();
+        it.remove();
+      }
+    }
+  }
+
+  /** Removes every result, for example when the user asks for a fresh view of the data. */
+  public synchronized void invalidateAll() {
+    generation++;
+    entries.clear();
+    rows = 0;
+  }
+
+  /** @return The name of the cache */
+  public String getName() {
+    return name;
+  }
+
+  /** @return The number of results currently cached, including expired ones not yet removed */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** @return The number of rows held by the cached results */
+  public synchronized long getRows() {
+    return rows;
+  }
+
+  /** @return The most rows the cache keeps */
+  public int getMaxRows() {
+    return maxRows;
+  }
+
+  /** @return The number of queries answered from the cache */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** @return The number of queries that had to run against the database */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** @return The number of results removed to make room for others */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /** @return The share of queries answered from the cache, between 0 and 1; 0 before any query */
+  public synchronized double getHitRatio() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ResultCache["
+        + name
+        + ": results="
+        + entries.size()
+        + ", rows="
+        + rows
+        + "/"
+        + maxRows
+        + ", hits="
+        + hits
+        + ", misses="
+        + misses
+        + ", evictions="
+        + evictions
+        + "]";
+  }
+
+  /** Removes one result; the caller holds the lock. */
+  private void remove(List<Object> key) {
+    Entry removed = entries.remove(key);
+    if (removed != null) {
+      rows -= removed.rows.size();
+    }
+  }
+
+  /** Evicts the least recently used results until the rows fit; the caller holds the lock. */
+  private void evictToFit() {
+    Iterator<Map.Entry<List<Object>, Entry>> it = entries.entrySet().iterator();
+    while (rows > maxRows && it.hasNext()) {
+      rows -= it.next().getValue().rows.size();
+      it.remove();
+      evictions++;
+    }
+  }
+}
@@ -1,12 +1,19 @@
 package com.bougastefa.services;
 
+import com.bougastefa.database.DuplicateKeyException;
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
 import com.bougastefa.database.VisitDAO;
 import com.bougastefa.models.Visit;
+import com.bougastefa.monitoring.DaoMetrics;
 import com.bougastefa.utils.FieldLengthConstants;
 import com.bougastefa.utils.InputValidationUtil;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +27,9 @@ import org.slf4j.LoggerFactory;
 public class VisitService {
   private VisitDAO visitDAO = new VisitDAO();
   private static final Logger logger = LoggerFactory.getLogger(VisitService.class);
+  private static final DaoMetrics METRICS = DaoMetrics.forDao(VisitDAO.class);
+  /** Filtered query results shared with the other services, see {@link ResultCache} */
+  private static final ResultCache RESULTS = ResultCache.shared();
 
   /**
    * Validates that the visit fields don't exceed database column length limits.
@@ -58,9 +68,16 @@ public class VisitService {
 
     validateFieldLengths(visit);
 
-    Visit existingVisit =
-        getVisit(visit.getPatientId(), visit.getDoctorId(), visit.getDateOfVisit());
-    if (existingVisit != null) {
+    try {
+      // Inserted directly; the composite primary key reports an existing visit, which also
+      // settles two clients inserting the same key at once
+      METRICS.run("addVisit", () -> visitDAO.addVisit(visit));
+      logger.info(
+          "Visit added successfully for patient: {}, doctor: {}, date: {}",
+          visit.getPatientId(),
+          visit.getDoctorId(),
+          visit.getDateOfVisit());
+    } catch (DuplicateKeyException e) {
       throw new IllegalArgumentException(
           "Visit already exists for patient: "
               + visit.getPatientId()
@@ -68,17 +85,11 @@ public class VisitService {
               + visit.getDoctorId()
               + ", date: "
               + visit.getDateOfVisit());
-    }
-    try {
-      visitDAO.addVisit(visit);
-      logger.info(
-          "Visit added successfully for patient: {}, doctor: {}, date: {}",
-          visit.getPatientId(),
-          visit.getDoctorId(),
-          visit.getDateOfVisit());
     } catch (SQLException e) {
       logger.error("Error adding visit", e);
       throw new ServiceException("Failed to add visit", e);
+    } finally {
+      RESULTS.invalidate("Visit");
     }
   }
 
@@ -91,13 +102,205 @@ public class VisitService {
    */
   public List<Visit> getAllVisits() {
     try {
-      return visitDAO.getAllVisits();
+      return METRICS.call("getAllVisits", visitDAO::getAllVisits);
     } catch (SQLException e) {
       logger.error("Error fetching visits", e);
       return List.of(); // Return an empty list on error
     }
   }
 
+  /**
+   * Retrieves the visits matching the filter criteria, filtered by the database. Returns an empty
+   * list instead of throwing exceptions if a database error occurs, like {@link #getAllVisits()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The matching visits, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public List<Visit> getFilteredVisits(FilterCriteria criteria) {
+    return getFilteredVisits(criteria, SortSpec.none());
+  }
+
+  /**
+   * Retrieves the recent visits matching the filter criteria, filtered and sorted by the database.
+   * Visits that are archived or older than the archive cutoff are left out.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @return The matching visits, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<Visit> getFilteredVisits(FilterCriteria criteria, SortSpec sort) {
+    return getFilteredVisits(criteria, sort, false);
+  }
+
+  /**
+   * Retrieves the visits matching the filter criteria, filtered and sorted by the database.
+   * Repeated queries are answered from the shared {@link ResultCache} until the tables they read
+   * are written. Returns an empty list instead of throwing exceptions if a database error occurs,
+   * like {@link #getAllVisits()}.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param sort The sort order, typically chosen by clicking a column header
+   * @param includeHistory true to also include visits that are archived or older than the
+   *     archive cutoff
+   * @return The matching visits, or an empty list if an error occurs
+   * @throws IllegalArgumentException If criteria or sort is null, or sort names a field that
+   *     cannot be sorted by
+   */
+  public List<Visit> getFilteredVisits(
+      FilterCriteria criteria, SortSpec sort, boolean includeHistory) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    if (sort == null) {
+      throw new IllegalArgumentException("Sort order cannot be null");
+    }
+    try {
+      return RESULTS.get(
+          List.of("Visit", criteria, sort, includeHistory),
+          Set.of("Visit"),
+          () ->
+              METRICS.call(
+                  "getFilteredVisits",
+                  () -> visitDAO.getFilteredVisits(criteria, sort, includeHistory)));
+    } catch (SQLException e) {
+      logger.error("Error filtering visits with {} and {}", criteria, sort, e);
+      return List.of();
+    }
+  }
+
+  /**
+   * Retrieves the recent visits dated between two dates, both included, oldest first.
+   *
+   * @param from The earliest date to include
+   * @param to The latest date to include
+   * @return The recent visits in the range, or an empty list if an error occurs
+   * @throws IllegalArgumentException If either date is null or from is after to
+   */
+  public List<Visit> getVisitsBetween(LocalDate from, LocalDate to) {
+    return getVisitsBetween(from, to, false);
+  }
+
+  /**
+   * Retrieves the visits dated between two dates, both included, oldest first. The database selects
+   * the range through its date index, so only those visits are loaded. Returns an empty list
+   * instead of throwing exceptions if a database error occurs, like {@link #getAllVisits()}.
+   *
+   * @param from The earliest date to include
+   * @param to The latest date to include
+   * @param includeHistory true to also include visits that are archived or older than the
+   *     archive cutoff
+   * @return The visits in the range, or an empty list if an error occurs
+   * @throws IllegalArgumentException If either date is null or from is after to
+   */
+  public List<Visit> getVisitsBetween(LocalDate from, LocalDate to, boolean includeHistory) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Start and end dates cannot be null");
+    }
+    if (from.isAfter(to)) {
+      throw new IllegalArgumentException("Start date cannot be after end date");
+    }
+    try {
+      return METRICS.call(
+          "getVisitsBetween", () -> visitDAO.getVisitsBetween(from, to, includeHistory));
+    } catch (SQLException e) {
+      logger.error("Error fetching visits between {} and {}", from, to, e);
+      return List.of();
+    }
+  }
+
+  /**
+   * Counts the recent visits without loading them, for example to show a total next to a filtered
+   * view.
+   *
+   * @return The number of visits, or -1 if an error occurs
+   */
+  public long countVisits() {
+    try {
+      return METRICS.call("countVisits", visitDAO::countVisits);
+    } catch (SQLException e) {
+      logger.error("Error counting visits", e);
+      return -1;
+    }
+  }
+
+  /**
+   * Counts the recent visits matching the filter criteria without loading them.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @return The number of matching visits, or -1 if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public long countFilteredVisits(FilterCriteria criteria) {
+    return countFilteredVisits(criteria, false);
+  }
+
+  /**
+   * Counts the visits matching the filter criteria without loading them, for example to decide
+   * whether a result is small enough to load at once. Conditions the database cannot apply are
+   * ignored, as described for the DAO.
+   *
+   * @param criteria The filter conditions, typically built from the advanced filter dialog
+   * @param includeHistory true to also include visits that are archived or older than the
+   *     archive cutoff
+   * @return The number of matching visits, or -1 if an error occurs
+   * @throws IllegalArgumentException If criteria is null
+   */
+  public long countFilteredVisits(FilterCriteria criteria, boolean includeHistory) {
+    if (criteria == null) {
+      throw new IllegalArgumentException("Filter criteria cannot be null");
+    }
+    try {
+      return METRICS.call(
+          "countFilteredVisits", () -> visitDAO.countFilteredVisits(criteria, includeHistory));
+    } catch (SQLException e) {
+      logger.error("Error counting visits with {}", criteria, e);
+      return -1;
+    }
+  }
+
+  /**
+   * Retrieves one page of visits in composite key order. The cursor is the key of the last visit
+   * of the previous page; all three parts must be null for the first page. Returns an empty list
+   * instead of throwing exceptions if a database error occurs, like {@link #getAllVisits()}.
+   *
+   * @param afterPatientId The patient ID of the last visit of the previous page, or null
+   * @param afterDoctorId The doctor ID of the last visit of the previous page, or null
+   * @param afterDateOfVisit The date of the last visit of the previous page, or null
+   * @param limit The maximum number of visits to return
+   * @return Up to limit visits following the cursor, or an empty list after the last page or if
+   *     an error occurs
+   * @throws IllegalArgumentException If limit is not positive or the cursor is only partly set
+   */
+  public List<Visit> getVisitsPage(
+      String afterPatientId, String afterDoctorId, LocalDate afterDateOfVisit, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+    int cursorParts =
+        (afterPatientId == null ? 0 : 1)
+            + (afterDoctorId == null ? 0 : 1)
+            + (afterDateOfVisit == null ? 0 : 1);
+    if (cursorParts != 0 && cursorParts != 3) {
+      throw new IllegalArgumentException("Visit cursor must have a patient, doctor and date");
+    }
+    try {
+      return METRICS.call(
+          "getVisitsPage",
+          () -> visitDAO.getVisitsPage(afterPatientId, afterDoctorId, afterDateOfVisit, limit));
+    } catch (SQLException e) {
+      logger.error(
+          "Error fetching visits after patient: {}, doctor: {}, date: {}",
+          afterPatientId,
+          afterDoctorId,
+          afterDateOfVisit,
+          e);
+      return List.of();
+    }
+  }
+
   /**
    * Retrieves a specific visit by its composite key components. Validates that all components of
    * the composite key (patientId, doctorId, dateOfVisit) are not null or empty before querying the
@@ -121,7 +324,7 @@ public class VisitService {
     }
 
     try {
-      return visitDAO.getVisit(patientId, doctorId, dateOfVisit);
+      return METRICS.call("getVisit", () -> visitDAO.getVisit(patientId, doctorId, dateOfVisit));
     } catch (SQLException e) {
       logger.error(
           "Error fetching visit for patient: {}, doctor: {}, date: {}",
@@ -133,6 +336,31 @@ public class VisitService {
     }
   }
 
+  /**
+   * Reads the recent visits with the given keys, in the "patientID|doctorID|yyyy-MM-dd" form the
+   * {@link ChangePoller} reports visits in, so a visit table can refresh the rows that changed.
+   *
+   * @param rowIds The keys of the visits to read
+   * @return The visits found; keys of visits that expired or no longer exist are left out
+   * @throws IllegalArgumentException If rowIds is null or a key is malformed
+   * @throws ServiceException If a database error occurs
+   */
+  public List<Visit> getRecentVisitsByRowIds(Collection<String> rowIds) {
+    if (rowIds == null) {
+      throw new IllegalArgumentException("Visit keys cannot be null");
+    }
+    if (rowIds.isEmpty()) {
+      return List.of();
+    }
+    try {
+      return METRICS.call(
+          "getRecentVisitsByRowIds", () -> visitDAO.getRecentVisitsByRowIds(rowIds));
+    } catch (SQLException e) {
+      logger.error("Error fetching {} visits by key", rowIds.size(), e);
+      throw new ServiceException("Failed to fetch visits", e);
+    }
+  }
+
   /**
    * Updates an existing visit's information in the database. Validates that the visit object is not
    * null before proceeding with the update. The composite key (patientId, doctorId, dateOfVisit) is
@@ -150,7 +378,7 @@ public class VisitService {
     validateFieldLengths(visit);
 
     try {
-      visitDAO.updateVisit(visit);
+      METRICS.run("updateVisit", () -> visitDAO.updateVisit(visit));
       logger.info(
           "Visit updated successfully for patient: {}, doctor: {}, date: {}",
           visit.getPatientId(),
@@ -159,6 +387,8 @@ public class VisitService {
     } catch (SQLException e) {
       logger.error("Error updating visit", e);
       throw new ServiceException("Failed to update visit", e);
+    } finally {
+      RESULTS.invalidate("Visit");
     }
   }
 
@@ -185,7 +415,7 @@ public class VisitService {
     }
 
     try {
-      visitDAO.deleteVisit(patientId, doctorId, dateOfVisit);
+      METRICS.run("deleteVisit", () -> visitDAO.deleteVisit(patientId, doctorId, dateOfVisit));
       logger.info(
           "Visit deleted successfully for patient: {}, doctor: {}, date: {}",
           patientId,
@@ -199,6 +429,8 @@ public class VisitService {
           dateOfVisit,
           e);
       throw new ServiceException("Failed to delete visit", e);
+    } finally {
+      RESULTS.invalidate("Visit");
     }
   }
 
@@ -217,10 +449,85 @@ public class VisitService {
       throw new IllegalArgumentException("Patient ID cannot be empty");
     }
     try {
-      return visitDAO.getPrimaryDoctorId(patientId);
+      return METRICS.call("getPrimaryDoctorId", () -> visitDAO.getPrimaryDoctorId(patientId));
     } catch (SQLException e) {
       logger.error("Error fetching primary doctor for patient: {}", patientId, e);
       return null;
     }
   }
+
+  /**
+   * Determines the primary doctor of many patients at once, for example every patient listed in
+   * a table, with a single query instead of one {@link #getPrimaryDoctorId} call per patient.
+   *
+   * @param patientIds The IDs of the patients to find the primary doctor for
+   * @return Patient ID mapped to the ID of the doctor with the most visits; patients without
+   *     visits are left out, and an empty map is returned if an error occurs
+   * @throws IllegalArgumentException If patientIds is null
+   */
+  public Map<String, String> getPrimaryDoctorIds(Collection<String> patientIds) {
+    if (patientIds == null) {
+      throw new IllegalArgumentException("Patient IDs cannot be null");
+    }
+    if (patientIds.isEmpty()) {
+      return Map.of();
+    }
+    try {
+      return METRICS.call("getPrimaryDoctorIds", () -> visitDAO.getPrimaryDoctorIds(patientIds));
+    } catch (SQLException e) {
+      logger.error("Error fetching primary doctors for {} patients", patientIds.size(), e);
+      return Map.of();
+    }
+  }
+
+  /**
+   * Recomputes every patient's visit counts per doctor, which back {@link #getPrimaryDoctorId},
+   * from the visits in the database. Only needed if visits were changed without going through
+   * this service, since adding and deleting visits keeps the counts up to date.
+   *
+   * @return The number of patient and doctor pairs counted
+   * @throws ServiceException If a database error occurs; the previous counts are kept in that case
+   */
+  public int rebuildVisitCounts() {
+    try {
+      int pairs = METRICS.call("rebuildVisitCounts", visitDAO::rebuildVisitCounts);
+      logger.info("Visit counts rebuilt for {} patient and doctor pairs", pairs);
+      return pairs;
+    } catch (SQLException e) {
+      logger.error("Error rebuilding visit counts", e);
+      throw new ServiceException("Failed to rebuild visit counts", e);
+    }
+  }
+
+  /**
+   * Inserts or updates a batch of visits in a single transaction, for bulk synchronisation
+   * jobs. Unlike addVisit, an existing ID is not an error: the stored visit is
+   * overwritten with the given values.
+   *
+   * @param visits The visits to insert or update
+   * @throws IllegalArgumentException If the list or any of its elements is null, or a field is
+   *     too long
+   * @throws ServiceException If a database error occurs; nothing is written in that case
+   */
+  public void upsertVisits(List<Visit> visits) {
+    if (visits == null) {
+      throw new IllegalArgumentException("Visits cannot be null");
+    }
+    for (Visit visit : visits) {
+      if (visit == null) {
+        throw new IllegalArgumentException("Visit cannot be null");
+      }
+      validateFieldLengths(visit);
+    }
+
+    try {
+      METRICS.run("upsertVisits", () -> visitDAO.upsertVisits(visits));
+      logger.info("Visits upserted successfully: {}", visits.size());
+    } catch (SQLException e) {
+      logger.error("Error upserting visits", e);
+      throw new ServiceException("Failed to upsert visits", e);
+    } finally {
+      RESULTS.invalidate("Visit");
+    }
+  }
 }
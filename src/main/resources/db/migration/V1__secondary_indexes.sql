@@ -0,0 +1,22 @@
+-- Secondary indexes for the foreign key columns and the orderings the DAOs use.
+-- Visit lookups by patient are already served by the (patientID, doctorID, dateOfVisit)
+-- primary key, so only the other Visit columns need an index of their own.
+
+CREATE INDEX IF NOT EXISTS idx_prescription_patient ON Prescription (patientID);
+CREATE INDEX IF NOT EXISTS idx_prescription_doctor ON Prescription (doctorID);
+CREATE INDEX IF NOT EXISTS idx_prescription_drug ON Prescription (drugID);
+-- Backs getAllPrescriptions and the keyset pages, which sort most recent first
+CREATE INDEX IF NOT EXISTS idx_prescription_date ON Prescription (dateprescribed, prescriptionID);
+
+CREATE INDEX IF NOT EXISTS idx_visit_doctor ON Visit (doctorID);
+CREATE INDEX IF NOT EXISTS idx_visit_date ON Visit (dateOfVisit);
+
+CREATE INDEX IF NOT EXISTS idx_patient_insurance ON Patient (insuranceID);
+
+-- @uses-index idx_prescription_patient: SELECT prescriptionID FROM Prescription WHERE patientID = 'P1'
+-- @uses-index idx_prescription_doctor: SELECT prescriptionID FROM Prescription WHERE doctorID = 'D1'
+-- @uses-index idx_prescription_drug: SELECT prescriptionID FROM Prescription WHERE drugID = 'DR1'
+-- @uses-index idx_prescription_date: SELECT prescriptionID FROM Prescription WHERE dateprescribed < '2000-01-01' ORDER BY dateprescribed DESC, prescriptionID DESC
+-- @uses-index idx_visit_doctor: SELECT patientID FROM Visit WHERE doctorID = 'D1'
+-- @uses-index idx_visit_date: SELECT patientID FROM Visit WHERE dateOfVisit BETWEEN '2000-01-01' AND '2000-01-31'
+-- @uses-index idx_patient_insurance: SELECT patientID FROM Patient WHERE insuranceID = 'I1'
@@ -0,0 +1,13 @@
+-- FULLTEXT indexes for the drug searches. MATCH needs an index on exactly the columns it
+-- names, so each single-column search has its own index and the ranked search across all
+-- three columns has a combined one.
+
+CREATE FULLTEXT INDEX IF NOT EXISTS ft_drug_name ON Drug (drugname);
+CREATE FULLTEXT INDEX IF NOT EXISTS ft_drug_sideeffects ON Drug (sideeffects);
+CREATE FULLTEXT INDEX IF NOT EXISTS ft_drug_benefits ON Drug (benefits);
+CREATE FULLTEXT INDEX IF NOT EXISTS ft_drug_text ON Drug (drugname, sideeffects, benefits);
+
+-- @uses-index ft_drug_name: SELECT drugID FROM Drug WHERE MATCH(drugname) AGAINST('+aspirin*' IN BOOLEAN MODE)
+-- @uses-index ft_drug_sideeffects: SELECT drugID FROM Drug WHERE MATCH(sideeffects) AGAINST('+nausea*' IN BOOLEAN MODE)
+-- @uses-index ft_drug_benefits: SELECT drugID FROM Drug WHERE MATCH(benefits) AGAINST('+pain*' IN BOOLEAN MODE)
+-- @uses-index ft_drug_text: SELECT drugID FROM Drug WHERE MATCH(drugname, sideeffects, benefits) AGAINST('+pain*' IN BOOLEAN MODE)
@@ -0,0 +1,26 @@
+-- Indexes for the columns the tables can be sorted by. InnoDB appends the primary key to
+-- every secondary index, so each one also serves the primary key tiebreaker the DAOs add
+-- after the sort column. ID and foreign key columns are covered by earlier migrations.
+
+CREATE INDEX IF NOT EXISTS idx_patient_surname ON Patient (surname);
+CREATE INDEX IF NOT EXISTS idx_patient_firstname ON Patient (firstname);
+CREATE INDEX IF NOT EXISTS idx_patient_postcode ON Patient (postcode);
+
+CREATE INDEX IF NOT EXISTS idx_doctor_surname ON Doctor (surname);
+CREATE INDEX IF NOT EXISTS idx_doctor_firstname ON Doctor (firstname);
+CREATE INDEX IF NOT EXISTS idx_doctor_hospital ON Doctor (hospital);
+CREATE INDEX IF NOT EXISTS idx_doctor_specialization ON Doctor (specialization);
+
+CREATE INDEX IF NOT EXISTS idx_drug_name ON Drug (drugname);
+
+CREATE INDEX IF NOT EXISTS idx_insurance_company ON Insurance (company);
+
+-- @uses-index idx_patient_surname: SELECT patientID FROM Patient WHERE surname > 'M' ORDER BY surname, patientID
+-- @uses-index idx_patient_firstname: SELECT patientID FROM Patient WHERE firstname > 'M' ORDER BY firstname, patientID
+-- @uses-index idx_patient_postcode: SELECT patientID FROM Patient WHERE postcode > 'M' ORDER BY postcode, patientID
+-- @uses-index idx_doctor_surname: SELECT doctorID FROM Doctor WHERE surname > 'M' ORDER BY surname, doctorID
+-- @uses-index idx_doctor_firstname: SELECT doctorID FROM Doctor WHERE firstname > 'M' ORDER BY firstname, doctorID
+-- @uses-index idx_doctor_hospital: SELECT doctorID FROM Doctor WHERE hospital > 'M' ORDER BY hospital, doctorID
+-- @uses-index idx_doctor_specialization: SELECT doctorID FROM Doctor WHERE specialization > 'M' ORDER BY specialization, doctorID
+-- @uses-index idx_drug_name: SELECT drugID FROM Drug WHERE drugname > 'M' ORDER BY drugname, drugID
+-- @uses-index idx_insurance_company: SELECT insuranceID FROM Insurance WHERE company > 'M' ORDER BY company, insuranceID
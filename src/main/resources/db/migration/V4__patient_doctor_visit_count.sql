@@ -0,0 +1,18 @@
+-- Number of visits per patient and doctor, kept up to date by VisitDAO in the same
+-- transaction as every Visit insert and delete, so the primary doctor of a patient is one
+-- index lookup instead of a GROUP BY over the patient's visits.
+-- VisitDAO.rebuildVisitCounts recomputes the table from Visit if it ever drifts.
+
+CREATE TABLE IF NOT EXISTS PatientDoctorVisitCount (
+  patientID varchar(100) NOT NULL,
+  doctorID varchar(100) NOT NULL,
+  visit_count int(11) NOT NULL,
+  PRIMARY KEY (patientID, doctorID),
+  KEY idx_visit_count_patient (patientID, visit_count, doctorID)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT INTO PatientDoctorVisitCount (patientID, doctorID, visit_count)
+SELECT patientID, doctorID, COUNT(*) FROM Visit GROUP BY patientID, doctorID
+ON DUPLICATE KEY UPDATE visit_count = VALUES(visit_count);
+
+-- @uses-index idx_visit_count_patient: SELECT doctorID FROM PatientDoctorVisitCount WHERE patientID = 'P1' ORDER BY visit_count DESC, doctorID DESC LIMIT 1
@@ -0,0 +1,49 @@
+-- Yearly partitions for Visit and archive tables for expired visits and prescriptions.
+-- ArchiveMaintenance adds the partitions of coming years and moves expired rows to the
+-- archive tables; the DAOs only read the archives when history is requested.
+--
+-- Visit is partitioned by RANGE COLUMNS on dateOfVisit, which is part of its primary key.
+-- Partition p<year> holds the dates before January 1 of the following year, so the first
+-- partition also holds every older visit. Prescription cannot be partitioned by date because
+-- its primary key is prescriptionID alone; its expired rows are moved through
+-- idx_prescription_date instead.
+
+CREATE TABLE IF NOT EXISTS VisitArchive (
+  patientID varchar(100) NOT NULL,
+  doctorID varchar(100) NOT NULL,
+  dateOfVisit date NOT NULL,
+  symptoms varchar(200) DEFAULT NULL,
+  diagnosis varchar(200) DEFAULT NULL,
+  PRIMARY KEY (patientID, doctorID, dateOfVisit),
+  KEY idx_visit_archive_doctor (doctorID),
+  KEY idx_visit_archive_date (dateOfVisit)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE IF NOT EXISTS PrescriptionArchive (
+  prescriptionID varchar(100) NOT NULL,
+  dateprescribed date DEFAULT NULL,
+  dosage int(11) DEFAULT NULL,
+  duration int(11) DEFAULT NULL,
+  comment varchar(200) DEFAULT NULL,
+  drugID varchar(50) DEFAULT NULL,
+  doctorID varchar(50) DEFAULT NULL,
+  patientID varchar(50) DEFAULT NULL,
+  PRIMARY KEY (prescriptionID),
+  KEY idx_prescription_archive_date (dateprescribed, prescriptionID),
+  KEY idx_prescription_archive_patient (patientID),
+  KEY idx_prescription_archive_doctor (doctorID),
+  KEY idx_prescription_archive_drug (drugID)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+ALTER TABLE Visit PARTITION BY RANGE COLUMNS (dateOfVisit) (
+  PARTITION p2022 VALUES LESS THAN ('2023-01-01'),
+  PARTITION p2023 VALUES LESS THAN ('2024-01-01'),
+  PARTITION p2024 VALUES LESS THAN ('2025-01-01'),
+  PARTITION p2025 VALUES LESS THAN ('2026-01-01'),
+  PARTITION p2026 VALUES LESS THAN ('2027-01-01'),
+  PARTITION p2027 VALUES LESS THAN ('2028-01-01'),
+  PARTITION p_future VALUES LESS THAN (MAXVALUE)
+);
+
+-- @uses-index idx_visit_archive_date: SELECT patientID FROM VisitArchive WHERE dateOfVisit BETWEEN '2000-01-01' AND '2000-01-31'
+-- @uses-index idx_prescription_archive_date: SELECT prescriptionID FROM PrescriptionArchive WHERE dateprescribed < '2000-01-01' ORDER BY dateprescribed DESC, prescriptionID DESC
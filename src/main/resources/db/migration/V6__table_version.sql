@@ -0,0 +1,25 @@
+-- Change counters for the reference tables. Every insert, update and delete bumps the table's
+-- version, so the services can tell whether their in-memory copy of Drug or Insurance is still
+-- current with one primary key lookup instead of re-reading the table.
+
+CREATE TABLE IF NOT EXISTS TableVersion (
+  table_name varchar(64) NOT NULL,
+  version bigint(20) NOT NULL DEFAULT 0,
+  PRIMARY KEY (table_name)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT IGNORE INTO TableVersion (table_name, version) VALUES ('Drug', 0), ('Insurance', 0);
+
+CREATE TRIGGER IF NOT EXISTS trg_drug_version_insert AFTER INSERT ON Drug FOR EACH ROW
+  UPDATE TableVersion SET version = version + 1 WHERE table_name = 'Drug';
+CREATE TRIGGER IF NOT EXISTS trg_drug_version_update AFTER UPDATE ON Drug FOR EACH ROW
+  UPDATE TableVersion SET version = version + 1 WHERE table_name = 'Drug';
+CREATE TRIGGER IF NOT EXISTS trg_drug_version_delete AFTER DELETE ON Drug FOR EACH ROW
+  UPDATE TableVersion SET version = version + 1 WHERE table_name = 'Drug';
+
+CREATE TRIGGER IF NOT EXISTS trg_insurance_version_insert AFTER INSERT ON Insurance FOR EACH ROW
+  UPDATE TableVersion SET version = version + 1 WHERE table_name = 'Insurance';
+CREATE TRIGGER IF NOT EXISTS trg_insurance_version_update AFTER UPDATE ON Insurance FOR EACH ROW
+  UPDATE TableVersion SET version = version + 1 WHERE table_name = 'Insurance';
+CREATE TRIGGER IF NOT EXISTS trg_insurance_version_delete AFTER DELETE ON Insurance FOR EACH ROW
+  UPDATE TableVersion SET version = version + 1 WHERE table_name = 'Insurance';
@@ -0,0 +1,110 @@
+-- Change tracking for clients that keep data in memory. Every row carries the time of its last
+-- insert or update, and deletes leave a tombstone in DeletedRow, so ChangePoller can ask each
+-- table for the rows changed since it last looked with one range scan over an index.
+--
+-- Each change also records the client that made it, so ChangePoller can leave out the changes
+-- this client made itself and has already shown. Every pooled connection sets
+-- @health_track_client to the ID of its application instance; triggers copy it into updated_by
+-- on insert and update, and into deleted_by on delete. Changes made outside the application leave
+-- the columns NULL and are reported to every client.
+--
+-- Visit rows are identified in DeletedRow by patientID|doctorID|dateOfVisit. Partitions dropped
+-- by the archive maintenance leave no tombstones; other clients stop showing those visits at
+-- their next reload. ChangePoller deletes tombstones older than changes.tombstoneRetentionHours.
+
+CREATE TABLE IF NOT EXISTS DeletedRow (
+  table_name varchar(64) NOT NULL,
+  row_id varchar(320) NOT NULL,
+  deleted_at timestamp(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+  deleted_by varchar(36) NULL,
+  KEY idx_deleted_row_time (deleted_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+ALTER TABLE Patient
+  ADD COLUMN IF NOT EXISTS updated_at timestamp(6) NOT NULL
+    DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+  ADD COLUMN IF NOT EXISTS updated_by varchar(36) NULL,
+  ADD INDEX IF NOT EXISTS idx_patient_updated_at (updated_at);
+
+ALTER TABLE Doctor
+  ADD COLUMN IF NOT EXISTS updated_at timestamp(6) NOT NULL
+    DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+  ADD COLUMN IF NOT EXISTS updated_by varchar(36) NULL,
+  ADD INDEX IF NOT EXISTS idx_doctor_updated_at (updated_at);
+
+ALTER TABLE Visit
+  ADD COLUMN IF NOT EXISTS updated_at timestamp(6) NOT NULL
+    DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+  ADD COLUMN IF NOT EXISTS updated_by varchar(36) NULL,
+  ADD INDEX IF NOT EXISTS idx_visit_updated_at (updated_at);
+
+ALTER TABLE Drug
+  ADD COLUMN IF NOT EXISTS updated_at timestamp(6) NOT NULL
+    DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+  ADD COLUMN IF NOT EXISTS updated_by varchar(36) NULL,
+  ADD INDEX IF NOT EXISTS idx_drug_updated_at (updated_at);
+
+ALTER TABLE Insurance
+  ADD COLUMN IF NOT EXISTS updated_at timestamp(6) NOT NULL
+    DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+  ADD COLUMN IF NOT EXISTS updated_by varchar(36) NULL,
+  ADD INDEX IF NOT EXISTS idx_insurance_updated_at (updated_at);
+
+ALTER TABLE Prescription
+  ADD COLUMN IF NOT EXISTS updated_at timestamp(6) NOT NULL
+    DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
+  ADD COLUMN IF NOT EXISTS updated_by varchar(36) NULL,
+  ADD INDEX IF NOT EXISTS idx_prescription_updated_at (updated_at);
+
+CREATE TRIGGER IF NOT EXISTS trg_patient_author_insert BEFORE INSERT ON Patient FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_patient_author_update BEFORE UPDATE ON Patient FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_doctor_author_insert BEFORE INSERT ON Doctor FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_doctor_author_update BEFORE UPDATE ON Doctor FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_visit_author_insert BEFORE INSERT ON Visit FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_visit_author_update BEFORE UPDATE ON Visit FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_drug_author_insert BEFORE INSERT ON Drug FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_drug_author_update BEFORE UPDATE ON Drug FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_insurance_author_insert BEFORE INSERT ON Insurance FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_insurance_author_update BEFORE UPDATE ON Insurance FOR EACH ROW
+  SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_prescription_author_insert BEFORE INSERT ON Prescription
+  FOR EACH ROW SET NEW.updated_by = @health_track_client;
+CREATE TRIGGER IF NOT EXISTS trg_prescription_author_update BEFORE UPDATE ON Prescription
+  FOR EACH ROW SET NEW.updated_by = @health_track_client;
+
+CREATE TRIGGER IF NOT EXISTS trg_patient_deleted AFTER DELETE ON Patient FOR EACH ROW
+  INSERT INTO DeletedRow (table_name, row_id, deleted_by)
+  VALUES ('Patient', OLD.patientID, @health_track_client);
+CREATE TRIGGER IF NOT EXISTS trg_doctor_deleted AFTER DELETE ON Doctor FOR EACH ROW
+  INSERT INTO DeletedRow (table_name, row_id, deleted_by)
+  VALUES ('Doctor', OLD.doctorID, @health_track_client);
+CREATE TRIGGER IF NOT EXISTS trg_visit_deleted AFTER DELETE ON Visit FOR EACH ROW
+  INSERT INTO DeletedRow (table_name, row_id, deleted_by)
+  VALUES (
+    'Visit', CONCAT_WS('|', OLD.patientID, OLD.doctorID, OLD.dateOfVisit), @health_track_client);
+CREATE TRIGGER IF NOT EXISTS trg_drug_deleted AFTER DELETE ON Drug FOR EACH ROW
+  INSERT INTO DeletedRow (table_name, row_id, deleted_by)
+  VALUES ('Drug', OLD.drugID, @health_track_client);
+CREATE TRIGGER IF NOT EXISTS trg_insurance_deleted AFTER DELETE ON Insurance FOR EACH ROW
+  INSERT INTO DeletedRow (table_name, row_id, deleted_by)
+  VALUES ('Insurance', OLD.insuranceID, @health_track_client);
+CREATE TRIGGER IF NOT EXISTS trg_prescription_deleted AFTER DELETE ON Prescription FOR EACH ROW
+  INSERT INTO DeletedRow (table_name, row_id, deleted_by)
+  VALUES ('Prescription', OLD.prescriptionID, @health_track_client);
+
+-- @uses-index idx_patient_updated_at: SELECT updated_at FROM Patient WHERE updated_at > '2000-01-01'
+-- @uses-index idx_doctor_updated_at: SELECT updated_at FROM Doctor WHERE updated_at > '2000-01-01'
+-- @uses-index idx_visit_updated_at: SELECT updated_at FROM Visit WHERE updated_at > '2000-01-01'
+-- @uses-index idx_drug_updated_at: SELECT updated_at FROM Drug WHERE updated_at > '2000-01-01'
+-- @uses-index idx_insurance_updated_at: SELECT updated_at FROM Insurance WHERE updated_at > '2000-01-01'
+-- @uses-index idx_prescription_updated_at: SELECT updated_at FROM Prescription WHERE updated_at > '2000-01-01'
+-- @uses-index idx_deleted_row_time: SELECT row_id FROM DeletedRow WHERE deleted_at > '2000-01-01'
@@ -0,0 +1,150 @@
+package com.bougastefa.database;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/** Unit tests for the WHERE clauses and cache keys built from {@link FilterCriteria}. */
+public class FilterCriteriaTest extends TestCase {
+  private static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+
+  static {
+    COLUMNS.put("patientId", "patientID");
+    COLUMNS.put("surname", "surname");
+    COLUMNS.put("dateOfVisit", "dateOfVisit");
+  }
+
+  public void testNoConditionsGiveNoClause() {
+    List<String> params = new ArrayList<>();
+    assertEquals("", FilterCriteria.none().toWhereClause(COLUMNS, params));
+    assertTrue(params.isEmpty());
+    assertTrue(FilterCriteria.none().isEmpty());
+  }
+
+  public void testContainsUsesLikeWithEscapedTerm() {
+    List<String> params = new ArrayList<>();
+    String where =
+        FilterCriteria.none().contains("surname", "50%_off").toWhereClause(COLUMNS, params);
+    assertEquals(" WHERE surname LIKE ?", where);
+    assertEquals(List.of("%50\\%\\_off%"), params);
+  }
+
+  public void testEmptyOrNullTermAddsNoCondition() {
+    assertSame(FilterCriteria.none(), FilterCriteria.none().contains("surname", ""));
+    assertSame(FilterCriteria.none(), FilterCriteria.none().contains("surname", null));
+  }
+
+  public void testEqualToUsesEquality() {
+    List<String> params = new ArrayList<>();
+    String where =
+        FilterCriteria.none().equalTo("patientId", "P001").toWhereClause(COLUMNS, params);
+    assertEquals(" WHERE patientID = ?", where);
+    assertEquals(List.of("P001"), params);
+  }
+
+  public void testEqualToRejectsNull() {
+    try {
+      FilterCriteria.none().equalTo("patientId", null);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  public void testConditionsAreJoinedInOrderAdded() {
+    List<String> params = new ArrayList<>();
+    String where =
+        FilterCriteria.none()
+            .contains("surname", "Smith")
+            .equalTo("patientId", "P001")
+            .toWhereClause(COLUMNS, params);
+    assertEquals(" WHERE surname LIKE ? AND patientID = ?", where);
+    assertEquals(List.of("%Smith%", "P001"), params);
+  }
+
+  public void testUnsupportedFieldsAreLeftOut() {
+    List<String> params = new ArrayList<>();
+    String where =
+        FilterCriteria.none()
+            .contains("diagnosis", "flu")
+            .contains("surname", "Smith")
+            .toWhereClause(COLUMNS, params);
+    assertEquals(" WHERE surname LIKE ?", where);
+    assertEquals(List.of("%Smith%"), params);
+  }
+
+  public void testEscapeLike() {
+    assertEquals("plain", FilterCriteria.escapeLike("plain"));
+    assertEquals("100\\%", FilterCriteria.escapeLike("100%"));
+    assertEquals("a\\_b", FilterCriteria.escapeLike("a_b"));
+    // The backslash is escaped first, so the escapes added for % and _ are not doubled
+    assertEquals("c:\\\\dir\\%", FilterCriteria.escapeLike("c:\\dir%"));
+  }
+
+  public void testBetweenWithBothBounds() {
+    List<String> params = new ArrayList<>();
+    String where =
+        FilterCriteria.none()
+            .between("dateOfVisit", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31))
+            .toWhereClause(COLUMNS, params);
+    assertEquals(" WHERE dateOfVisit >= ? AND dateOfVisit <= ?", where);
+    assertEquals(List.of("2024-01-01", "2024-12-31"), params);
+  }
+
+  public void testBetweenWithOpenBounds() {
+    List<String> params = new ArrayList<>();
+    String where =
+        FilterCriteria.none()
+            .between("dateOfVisit", LocalDate.of(2024, 1, 1), null)
+            .toWhereClause(COLUMNS, params);
+    assertEquals(" WHERE dateOfVisit >= ?", where);
+    assertEquals(List.of("2024-01-01"), params);
+
+    params.clear();
+    where =
+        FilterCriteria.none()
+            .between("dateOfVisit", null, LocalDate.of(2024, 12, 31))
+            .toWhereClause(COLUMNS, params);
+    assertEquals(" WHERE dateOfVisit <= ?", where);
+    assertEquals(List.of("2024-12-31"), params);
+
+    assertSame(FilterCriteria.none(), FilterCriteria.none().between("dateOfVisit", null, null));
+  }
+
+  public void testBetweenRejectsReversedRange() {
+    try {
+      FilterCriteria.none()
+          .between("dateOfVisit", LocalDate.of(2024, 2, 1), LocalDate.of(2024, 1, 1));
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  public void testEqualsIgnoresOrderAndCase() {
+    FilterCriteria first =
+        FilterCriteria.none().contains("surname", "Smith").equalTo("patientId", "P1");
+    FilterCriteria second =
+        FilterCriteria.none().equalTo("patientId", "p1").contains("surname", "SMITH");
+    assertEquals(first, second);
+    assertEquals(first.hashCode(), second.hashCode());
+  }
+
+  public void testEqualsDistinguishesConditionKinds() {
+    FilterCriteria contains = FilterCriteria.none().contains("patientId", "P1");
+    FilterCriteria exact = FilterCriteria.none().equalTo("patientId", "P1");
+    assertFalse(contains.equals(exact));
+    assertFalse(contains.equals(FilterCriteria.none().contains("patientId", "P2")));
+
+    LocalDate day = LocalDate.of(2024, 1, 1);
+    FilterCriteria from = FilterCriteria.none().between("dateOfVisit", day, null);
+    FilterCriteria to = FilterCriteria.none().between("dateOfVisit", null, day);
+    assertFalse(from.equals(to));
+    FilterCriteria same = FilterCriteria.none().between("dateOfVisit", day, null);
+    assertEquals(from, same);
+    assertEquals(from.hashCode(), same.hashCode());
+  }
+}
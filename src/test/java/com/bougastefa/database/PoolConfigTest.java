@@ -0,0 +1,43 @@
+package com.bougastefa.database;
+
+import java.util.Properties;
+import junit.framework.TestCase;
+
+/** Unit tests for the validation of the {@code db.pool.*} settings by {@link PoolConfig}. */
+public class PoolConfigTest extends TestCase {
+  public void testMissingKeysUseTheDefaults() {
+    PoolConfig config = PoolConfig.fromProperties(new Properties());
+    assertEquals(2, config.getMinSize());
+    assertEquals(10, config.getMaxSize());
+    assertEquals(60000, config.getEvictionIntervalMillis());
+    assertEquals(64, config.getStatementCacheSize());
+  }
+
+  public void testIntegerOutOfRangeIsRejectedRatherThanWrapped() {
+    assertRejected("db.pool.maxSize", "4294967297", "db.pool.maxSize must be");
+  }
+
+  public void testNonPositiveEvictionIntervalIsRejected() {
+    assertRejected("db.pool.evictionIntervalMs", "0", "db.pool.evictionIntervalMs must");
+    assertRejected("db.pool.evictionIntervalMs", "-1", "db.pool.evictionIntervalMs must");
+  }
+
+  public void testNegativeTimeoutsAreRejected() {
+    assertRejected("db.pool.acquireTimeoutMs", "-1", "db.pool.acquireTimeoutMs must");
+    assertRejected("db.pool.idleTimeoutMs", "-1", "db.pool.idleTimeoutMs must");
+    assertRejected("db.pool.validationIntervalMs", "-1", "db.pool.validationIntervalMs must");
+    assertRejected(
+        "db.pool.validationTimeoutSeconds", "-1", "db.pool.validationTimeoutSeconds must");
+  }
+
+  private static void assertRejected(String key, String value, String message) {
+    Properties props = new Properties();
+    props.setProperty(key, value);
+    try {
+      PoolConfig.fromProperties(props);
+      fail("Expected IllegalArgumentException for " + key + "=" + value);
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().startsWith(message));
+    }
+  }
+}
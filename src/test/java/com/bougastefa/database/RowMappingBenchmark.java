@@ -0,0 +1,206 @@
+package com.bougastefa.database;
+
+import com.bougastefa.models.InsuredPatient;
+import com.bougastefa.models.Patient;
+import com.bougastefa.models.Visit;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * Measures the per-row cost of turning result sets into model objects, comparing the previous
+ * {@code SELECT *} with name-based {@code rs.getString("column")} lookups against the DAOs'
+ * explicit column lists and ordinal {@link RowMapper}s.
+ *
+ * <p>The benchmark fills temporary copies of the Visit and Patient tables (1,000,000 rows each by
+ * default) on a single connection, so the real tables are not touched. Result sets are fully
+ * buffered by the driver before the mapping loop starts, so the mapping figure excludes network
+ * transfer, which is reported separately. It needs the database from docker-compose and a
+ * generous heap:
+ *
+ * <pre>
+ * MAVEN_OPTS=-Xmx2g mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.bougastefa.database.RowMappingBenchmark -Dexec.args="1000000 3"
+ * </pre>
+ *
+ * The arguments are the number of rows per table and the number of measured rounds.
+ */
+public class RowMappingBenchmark {
+  private static final int INSERT_BATCH_SIZE = 5000;
+
+  /** The Visit mapping used before explicit column lists */
+  private static final RowMapper<Visit> VISIT_BY_NAME =
+      rs ->
+          new Visit(
+              rs.getDate("dateOfVisit").toLocalDate(),
+              rs.getString("symptoms"),
+              rs.getString("diagnosis"),
+              rs.getString("doctorID"),
+              rs.getString("patientID"));
+
+  /** The Patient mapping used before explicit column lists */
+  private static final RowMapper<Patient> PATIENT_BY_NAME =
+      rs -> {
+        String insuranceId = rs.getString("insuranceID");
+        if (insuranceId != null) {
+          return new InsuredPatient(
+              rs.getString("patientID"),
+              rs.getString("firstname"),
+              rs.getString("surname"),
+              rs.getString("postcode"),
+              rs.getString("address"),
+              rs.getString("email"),
+              rs.getString("phone"),
+              insuranceId);
+        }
+        return new Patient(
+            rs.getString("patientID"),
+            rs.getString("firstname"),
+            rs.getString("surname"),
+            rs.getString("postcode"),
+            rs.getString("address"),
+            rs.getString("email"),
+            rs.getString("phone"));
+      };
+
+  public static void main(String[] args) throws SQLException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    // Only this session's temporary tables are written, which no replica read has to wait for
+    try (Connection conn = DatabaseConnection.getPrimaryReadConnection()) {
+      System.out.printf("Filling temporary tables with %,d rows each...%n", rows);
+      fillVisits(conn, rows);
+      fillPatients(conn, rows);
+
+      System.out.printf(
+          "%n%-8s %-26s %5s %12s %12s%n", "table", "mapping", "round", "fetch ms", "map ns/row");
+      for (int round = 1; round <= rounds; round++) {
+        measure(
+            conn, "visit", "SELECT * + names", "SELECT * FROM bench_visit", VISIT_BY_NAME, round);
+        measure(
+            conn,
+            "visit",
+            "columns + ordinals",
+            "SELECT " + VisitDAO.COLUMNS + " FROM bench_visit",
+            VisitDAO.ROW_MAPPER,
+            round);
+        measure(
+            conn,
+            "patient",
+            "SELECT * + names",
+            "SELECT * FROM bench_patient",
+            PATIENT_BY_NAME,
+            round);
+        measure(
+            conn,
+            "patient",
+            "columns + ordinals",
+            "SELECT " + PatientDAO.COLUMNS + " FROM bench_patient",
+            PatientDAO.ROW_MAPPER,
+            round);
+      }
+    }
+  }
+
+  /** Runs the query, then times the mapping loop over the buffered rows. */
+  private static void measure(
+      Connection conn, String table, String label, String sql, RowMapper<?> mapper, int round)
+      throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      long start = System.nanoTime();
+      try (ResultSet rs = stmt.executeQuery(sql)) {
+        long fetched = System.nanoTime();
+        long count = 0;
+        int checksum = 0;
+        while (rs.next()) {
+          // Use the result so the JIT cannot drop the mapping
+          checksum += System.identityHashCode(mapper.mapRow(rs)) & 1;
+          count++;
+        }
+        long mapped = System.nanoTime();
+        System.out.printf(
+            "%-8s %-26s %5d %12.1f %12.1f%s%n",
+            table,
+            label,
+            round,
+            (fetched - start) / 1_000_000.0,
+            count == 0 ? 0.0 : (double) (mapped - fetched) / count,
+            checksum < 0 ? "!" : "");
+      }
+    }
+  }
+
+  private static void fillVisits(Connection conn, int rows) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP TEMPORARY TABLE IF EXISTS bench_visit");
+      stmt.execute("CREATE TEMPORARY TABLE bench_visit LIKE Visit");
+    }
+    LocalDate firstDay = LocalDate.of(2015, 1, 1);
+    String sql =
+        "INSERT INTO bench_visit (patientID, doctorID, dateOfVisit, symptoms, diagnosis)"
+            + " VALUES (?, ?, ?, ?, ?)";
+    insertRows(
+        conn,
+        sql,
+        rows,
+        (stmt, i) -> {
+          stmt.setString(1, "P" + (i / 10));
+          stmt.setString(2, "D" + (i % 10));
+          stmt.setDate(3, Date.valueOf(firstDay.plusDays(i % 3650)));
+          stmt.setString(4, "Headache and mild fever reported for two days");
+          stmt.setString(5, "Seasonal influenza, rest and fluids advised");
+        });
+  }
+
+  private static void fillPatients(Connection conn, int rows) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP TEMPORARY TABLE IF EXISTS bench_patient");
+      stmt.execute("CREATE TEMPORARY TABLE bench_patient LIKE Patient");
+    }
+    String sql =
+        "INSERT INTO bench_patient (patientID, firstname, surname, postcode, address, phone,"
+            + " email, insuranceID) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    insertRows(
+        conn,
+        sql,
+        rows,
+        (stmt, i) -> {
+          stmt.setString(1, "P" + i);
+          stmt.setString(2, "Firstname" + (i % 1000));
+          stmt.setString(3, "Surname" + (i % 5000));
+          stmt.setString(4, "AB" + (i % 100) + " 1CD");
+          stmt.setString(5, i + " High Street, Springfield");
+          stmt.setString(6, "07700" + (100000 + i % 900000));
+          stmt.setString(7, "patient" + i + "@example.com");
+          stmt.setString(8, i % 2 == 0 ? "I" + (i % 50) : null);
+        });
+  }
+
+  /** Binds the parameters of one generated row */
+  private interface RowBinder {
+    void bind(PreparedStatement stmt, int index) throws SQLException;
+  }
+
+  private static void insertRows(Connection conn, String sql, int rows, RowBinder binder)
+      throws SQLException {
+    conn.setAutoCommit(false);
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      for (int i = 0; i < rows; i++) {
+        binder.bind(stmt, i);
+        stmt.addBatch();
+        if ((i + 1) % INSERT_BATCH_SIZE == 0) {
+          stmt.executeBatch();
+        }
+      }
+      stmt.executeBatch();
+      conn.commit();
+    } finally {
+      conn.setAutoCommit(true);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.bougastefa.database;
+
+import java.util.List;
+import junit.framework.TestCase;
+
+/** Unit tests for reading migrations.list and parsing the scripts, without a database. */
+public class SchemaMigratorTest extends TestCase {
+  /**
+   * Checksums of the shipped scripts as recorded in schema_version. A script must never change
+   * once it has shipped, because databases that applied it would silently keep the old version.
+   */
+  private static final long[] SHIPPED_CHECKSUMS = {
+    131461488L,
+    1411874615L,
+    153703284L,
+    1713702576L,
+    2843357435L,
+    2585895055L,
+    2268877175L,
+  };
+
+  public void testListedMigrationsLoadInVersionOrder() {
+    List<SchemaMigrator.Migration> migrations = SchemaMigrator.loadMigrations();
+    assertTrue(migrations.size() >= SHIPPED_CHECKSUMS.length);
+    for (int i = 0; i < migrations.size(); i++) {
+      SchemaMigrator.Migration migration = migrations.get(i);
+      assertEquals(i + 1, migration.version);
+      assertTrue(migration.script.startsWith("V" + migration.version + "__"));
+      assertFalse(migration.description.contains("_"));
+      assertFalse(migration.script + " has no statements", migration.statements.isEmpty());
+    }
+  }
+
+  public void testShippedScriptsAreUnchanged() {
+    List<SchemaMigrator.Migration> migrations = SchemaMigrator.loadMigrations();
+    for (int i = 0; i < SHIPPED_CHECKSUMS.length; i++) {
+      assertEquals(
+          migrations.get(i).script + " was edited after it shipped; add a new migration instead",
+          SHIPPED_CHECKSUMS[i],
+          migrations.get(i).checksum);
+    }
+  }
+
+  public void testChecksumIsStable() {
+    SchemaMigrator.Migration first = SchemaMigrator.parse("test/V99__parser_sample.sql", 99, "a");
+    SchemaMigrator.Migration second = SchemaMigrator.parse("test/V99__parser_sample.sql", 99, "a");
+    assertEquals(first.checksum, second.checksum);
+  }
+
+  public void testStatementsAreSplitAtTheDelimiter() {
+    SchemaMigrator.Migration migration =
+        SchemaMigrator.parse("test/V99__parser_sample.sql", 99, "parser_sample");
+    assertEquals("parser sample", migration.description);
+    assertEquals(4, migration.statements.size());
+    assertEquals(
+        "CREATE INDEX IF NOT EXISTS idx_sample ON Sample (name)", migration.statements.get(0));
+    // A semicolon inside the line does not end the statement, only one at the end of a line
+    assertEquals("INSERT INTO Sample (name)\nVALUES ('a;b')", migration.statements.get(1));
+    // Inside DELIMITER //, the semicolons of the trigger body stay part of the statement
+    String trigger = migration.statements.get(2);
+    assertTrue(trigger.startsWith("CREATE TRIGGER trg_sample"));
+    assertTrue(trigger.contains("SET NEW.name = TRIM(NEW.name);"));
+    assertTrue(trigger.endsWith("END"));
+    assertEquals("DROP TABLE IF EXISTS SampleCopy", migration.statements.get(3));
+  }
+
+  public void testIndexChecksAreCollected() {
+    SchemaMigrator.Migration migration =
+        SchemaMigrator.parse("test/V99__parser_sample.sql", 99, "parser_sample");
+    assertEquals(1, migration.indexChecks.size());
+    assertEquals("idx_sample", migration.indexChecks.get(0).index);
+    assertEquals("SELECT id FROM Sample WHERE name = 'x'", migration.indexChecks.get(0).query);
+  }
+
+  public void testUnterminatedStatementIsRejected() {
+    try {
+      SchemaMigrator.parse("test/V98__unterminated.sql", 98, "unterminated");
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage().contains("unterminated statement"));
+    }
+  }
+
+  public void testMissingScriptIsRejected() {
+    try {
+      SchemaMigrator.parse("test/V97__missing.sql", 97, "missing");
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage().contains("not found"));
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.bougastefa.database;
+
+import java.util.Map;
+import junit.framework.TestCase;
+
+/** Unit tests for the ORDER BY clauses built from {@link SortSpec}. */
+public class SortSpecTest extends TestCase {
+  private static final Map<String, String> COLUMNS =
+      Map.of("surname", "surname", "patientId", "patientID");
+
+  public void testNoneGivesNoClause() {
+    assertEquals("", SortSpec.none().toOrderByClause(COLUMNS, "patientID"));
+    assertTrue(SortSpec.none().isNone());
+  }
+
+  public void testTiebreakerFollowsInSameDirection() {
+    assertEquals(
+        " ORDER BY surname ASC, patientID ASC",
+        SortSpec.ascending("surname").toOrderByClause(COLUMNS, "patientID"));
+    assertEquals(
+        " ORDER BY surname DESC, patientID DESC",
+        SortSpec.descending("surname").toOrderByClause(COLUMNS, "patientID"));
+  }
+
+  public void testSortColumnIsNotRepeatedAsTiebreaker() {
+    assertEquals(
+        " ORDER BY patientID DESC",
+        SortSpec.descending("patientId").toOrderByClause(COLUMNS, "patientID"));
+  }
+
+  public void testCompositeKeyTiebreakers() {
+    assertEquals(
+        " ORDER BY surname ASC, patientID ASC, doctorID ASC",
+        SortSpec.ascending("surname").toOrderByClause(COLUMNS, "patientID", "doctorID"));
+  }
+
+  public void testUnsortableFieldIsRejected() {
+    try {
+      SortSpec.ascending("symptoms").toOrderByClause(COLUMNS, "patientID");
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  public void testToggle() {
+    SortSpec ascending = SortSpec.none().toggle("surname");
+    assertEquals(SortSpec.ascending("surname"), ascending);
+    assertEquals(SortSpec.descending("surname"), ascending.toggle("surname"));
+    assertEquals(SortSpec.ascending("surname"), ascending.toggle("surname").toggle("surname"));
+    assertEquals(SortSpec.ascending("patientId"), ascending.toggle("patientId"));
+  }
+}
@@ -0,0 +1,179 @@
+package com.bougastefa.database;
+
+import com.bougastefa.models.Doctor;
+import com.bougastefa.models.Drug;
+import com.bougastefa.models.Insurance;
+import com.bougastefa.models.Patient;
+import com.bougastefa.models.Prescription;
+import com.bougastefa.models.Visit;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Compares the cost of the existing DAO CRUD methods with cold statement preparation (no
+ * statement cache, client-side prepares, so every call parses the SQL again) against the cached
+ * configuration (per-connection statement cache plus MariaDB server-side prepared statements).
+ *
+ * <p>This is not a unit test: it needs the database from docker-compose to be running. Run it
+ * with:
+ *
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.bougastefa.database.StatementCacheBenchmark
+ * </pre>
+ *
+ * Optional arguments are the number of warm-up and measured iterations per method (defaults 200
+ * and 2000). Both configurations use a single pooled connection so connection setup cost is
+ * excluded from the numbers.
+ */
+public class StatementCacheBenchmark {
+
+  /** A DAO call under measurement */
+  private interface DaoCall {
+    void run() throws SQLException;
+  }
+
+  public static void main(String[] args) throws SQLException {
+    int warmup = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+    Map<String, DaoCall> calls = buildCalls();
+    if (calls.isEmpty()) {
+      System.out.println("The database has no sample rows; run init.sql first.");
+      return;
+    }
+
+    Map<String, Double> cold = run("cold", coldProperties(), calls, warmup, iterations);
+    Map<String, Double> cached = run("cached", cachedProperties(), calls, warmup, iterations);
+
+    System.out.printf(
+        "%n%-32s %12s %12s %9s%n", "DAO method", "cold us/op", "cached us/op", "speedup");
+    for (String name : calls.keySet()) {
+      double coldMicros = cold.get(name);
+      double cachedMicros = cached.get(name);
+      System.out.printf(
+          "%-32s %12.1f %12.1f %8.2fx%n",
+          name, coldMicros, cachedMicros, coldMicros / cachedMicros);
+    }
+  }
+
+  /** Picks sample keys from the existing data and builds one call per CRUD method. */
+  private static Map<String, DaoCall> buildCalls() throws SQLException {
+    PatientDAO patientDAO = new PatientDAO();
+    DoctorDAO doctorDAO = new DoctorDAO();
+    DrugDAO drugDAO = new DrugDAO();
+    InsuranceDAO insuranceDAO = new InsuranceDAO();
+    PrescriptionDAO prescriptionDAO = new PrescriptionDAO();
+    VisitDAO visitDAO = new VisitDAO();
+
+    Map<String, DaoCall> calls = new LinkedHashMap<>();
+    List<Patient> patients = patientDAO.getAllPatients();
+    if (!patients.isEmpty()) {
+      Patient patient = patients.get(0);
+      calls.put(
+          "PatientDAO.getPatientById", () -> patientDAO.getPatientById(patient.getPatientId()));
+      // Writes the row back unchanged
+      calls.put("PatientDAO.updatePatient", () -> patientDAO.updatePatient(patient));
+    }
+    List<Doctor> doctors = doctorDAO.getAllDoctors();
+    if (!doctors.isEmpty()) {
+      String doctorId = doctors.get(0).getDoctorId();
+      calls.put("DoctorDAO.getDoctorById", () -> doctorDAO.getDoctorById(doctorId));
+    }
+    List<Drug> drugs = drugDAO.getAllDrugs();
+    if (!drugs.isEmpty()) {
+      String drugId = drugs.get(0).getDrugId();
+      calls.put("DrugDAO.getDrugById", () -> drugDAO.getDrugById(drugId));
+    }
+    List<Insurance> insurances = insuranceDAO.getAllInsurances();
+    if (!insurances.isEmpty()) {
+      String insuranceId = insurances.get(0).getInsuranceId();
+      calls.put("InsuranceDAO.getInsuranceById", () -> insuranceDAO.getInsuranceById(insuranceId));
+    }
+    List<Prescription> prescriptions = prescriptionDAO.getAllPrescriptions();
+    if (!prescriptions.isEmpty()) {
+      String prescriptionId = prescriptions.get(0).getPrescriptionId();
+      calls.put(
+          "PrescriptionDAO.getPrescriptionById",
+          () -> prescriptionDAO.getPrescriptionById(prescriptionId));
+    }
+    List<Visit> visits = visitDAO.getAllVisits();
+    if (!visits.isEmpty()) {
+      Visit visit = visits.get(0);
+      calls.put(
+          "VisitDAO.getVisit",
+          () ->
+              visitDAO.getVisit(
+                  visit.getPatientId(), visit.getDoctorId(), visit.getDateOfVisit()));
+      calls.put(
+          "VisitDAO.getPrimaryDoctorId", () -> visitDAO.getPrimaryDoctorId(visit.getPatientId()));
+    }
+    return calls;
+  }
+
+  /** Runs every call against a single-connection pool built from the given properties. */
+  private static Map<String, Double> run(
+      String label, Properties props, Map<String, DaoCall> calls, int warmup, int iterations)
+      throws SQLException {
+    Properties connectionProps = DatabaseConnection.buildConnectionProperties();
+    for (String key : props.stringPropertyNames()) {
+      if (key.startsWith("db.driver.")) {
+        connectionProps.setProperty(key.substring("db.driver.".length()), props.getProperty(key));
+      }
+    }
+    ConnectionPool pool =
+        new ConnectionPool(
+            DatabaseConnection.getUrl(), connectionProps, PoolConfig.fromProperties(props));
+    ConnectionPool previous = DatabaseConnection.replacePool(pool);
+    Map<String, Double> results = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<String, DaoCall> call : calls.entrySet()) {
+        for (int i = 0; i < warmup; i++) {
+          call.getValue().run();
+        }
+        List<Long> samples = new ArrayList<>(iterations);
+        for (int i = 0; i < iterations; i++) {
+          long start = System.nanoTime();
+          call.getValue().run();
+          samples.add(System.nanoTime() - start);
+        }
+        double averageMicros =
+            samples.stream().mapToLong(Long::longValue).average().orElse(0) / 1000.0;
+        results.put(call.getKey(), averageMicros);
+      }
+      System.out.println(label + ": " + pool.getStats());
+    } finally {
+      DatabaseConnection.replacePool(previous);
+      pool.close();
+    }
+    return results;
+  }
+
+  private static Properties coldProperties() {
+    Properties props = singleConnection();
+    props.setProperty("db.pool.statementCacheSize", "0");
+    props.setProperty("db.driver.useServerPrepStmts", "false");
+    props.setProperty("db.driver.cachePrepStmts", "false");
+    return props;
+  }
+
+  private static Properties cachedProperties() {
+    Properties props = singleConnection();
+    if (props.getProperty("db.pool.statementCacheSize", "0").trim().equals("0")) {
+      props.setProperty("db.pool.statementCacheSize", "64");
+    }
+    props.setProperty("db.driver.useServerPrepStmts", "true");
+    return props;
+  }
+
+  private static Properties singleConnection() {
+    Properties props = DatabaseConnection.getProperties();
+    props.setProperty("db.pool.minSize", "1");
+    props.setProperty("db.pool.maxSize", "1");
+    return props;
+  }
+}
@@ -0,0 +1,107 @@
+package com.bougastefa.gui.components;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import junit.framework.TestCase;
+
+/** Unit tests for writing and reading back the rows of a {@link TableSnapshot}. */
+public class TableSnapshotTest extends TestCase {
+  private static final String[] COLUMNS = {"ID", "Name", "Age", "Visits", "Cost"};
+  private static final Object[] ROW = {"P1", "A", 1, 2L, 3.0};
+  private static final String SOURCE = "jdbc:mariadb://localhost:3306/test";
+
+  private Path directory;
+
+  @Override
+  protected void setUp() throws IOException {
+    directory = Files.createTempDirectory("table-snapshot-test");
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  public void testRowsSurviveTheRoundTrip() throws IOException {
+    Object[][] rows = {
+      {"P1", "Ren\u00e9e \u00c5berg", 42, 7L, 12.5},
+      {"P2", null, null, Long.MAX_VALUE, -0.25},
+      {"P3", "", Integer.MIN_VALUE, 0L, Double.MAX_VALUE}
+    };
+    snapshot("Patient", COLUMNS).write(rows);
+
+    Object[][] loaded = snapshot("Patient", COLUMNS).load();
+    assertNotNull(loaded);
+    assertEquals(rows.length, loaded.length);
+    for (int i = 0; i < rows.length; i++) {
+      for (int j = 0; j < COLUMNS.length; j++) {
+        assertEquals("row " + i + ", column " + j, rows[i][j], loaded[i][j]);
+      }
+    }
+  }
+
+  public void testEmptyTableSurvivesTheRoundTrip() throws IOException {
+    snapshot("Drug", COLUMNS).write(new Object[0][]);
+    Object[][] loaded = snapshot("Drug", COLUMNS).load();
+    assertNotNull(loaded);
+    assertEquals(0, loaded.length);
+  }
+
+  public void testOtherTypesAreSavedAsText() throws IOException {
+    snapshot("Visit", new String[] {"Date"})
+        .write(new Object[][] {{java.sql.Date.valueOf("2024-03-01")}});
+    Object[][] loaded = snapshot("Visit", new String[] {"Date"}).load();
+    assertEquals("2024-03-01", loaded[0][0]);
+  }
+
+  public void testFileSavedWithOtherColumnsIsIgnored() throws IOException {
+    snapshot("Patient", COLUMNS).write(new Object[][] {ROW});
+    String[] renamed = COLUMNS.clone();
+    renamed[1] = "Full Name";
+    assertNull(snapshot("Patient", renamed).load());
+    assertNull(snapshot("Patient", new String[] {"ID"}).load());
+  }
+
+  public void testDamagedFileIsIgnored() throws IOException {
+    snapshot("Patient", COLUMNS).write(new Object[][] {ROW});
+    Path file = directory.resolve("patient.snapshot");
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+    assertNull(snapshot("Patient", COLUMNS).load());
+
+    Files.write(file, new byte[] {1, 2, 3});
+    assertNull(snapshot("Patient", COLUMNS).load());
+  }
+
+  public void testFileSavedForAnotherDatabaseIsIgnored() throws IOException {
+    snapshot("Patient", COLUMNS).write(new Object[][] {ROW});
+    String other = "jdbc:mariadb://replica:3306/test";
+    assertNull(new TableSnapshot(directory, other, "Patient", COLUMNS).load());
+  }
+
+  public void testFileCanBeReplacedAfterItWasRead() throws IOException {
+    snapshot("Patient", COLUMNS).write(new Object[][] {ROW});
+    assertNotNull(snapshot("Patient", COLUMNS).load());
+    Object[] changed = ROW.clone();
+    changed[1] = "B";
+    snapshot("Patient", COLUMNS).write(new Object[][] {changed});
+    assertEquals("B", snapshot("Patient", COLUMNS).load()[0][1]);
+  }
+
+  public void testMissingFileOrDisabledSnapshotLoadsNothing() {
+    assertNull(snapshot("Doctor", COLUMNS).load());
+    assertNull(new TableSnapshot(null, SOURCE, "Doctor", COLUMNS).load());
+  }
+
+  private TableSnapshot snapshot(String name, String[] columns) {
+    return new TableSnapshot(directory, SOURCE, name, columns);
+  }
+}
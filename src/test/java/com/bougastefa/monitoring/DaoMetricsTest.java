@@ -0,0 +1,57 @@
+package com.bougastefa.monitoring;
+
+import java.sql.SQLException;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link DaoMetrics}. */
+public class DaoMetricsTest extends TestCase {
+  /** Stands in for a DAO */
+  public static class SampleDAO {
+    public List<String> getNames() {
+      return List.of("a", "b");
+    }
+
+    public void deleteName() {}
+  }
+
+  public void testCallRecordsLatencyRowsAndErrors() throws SQLException {
+    DaoMetrics metrics = DaoMetrics.forDao(SampleDAO.class);
+    SampleDAO dao = new SampleDAO();
+    assertEquals(List.of("a", "b"), metrics.call("getNames", dao::getNames));
+    try {
+      metrics.call(
+          "getNames",
+          () -> {
+            throw new SQLException("connection lost");
+          });
+      fail("Expected SQLException");
+    } catch (SQLException expected) {
+      // expected
+    }
+    metrics.run("deleteName", dao::deleteName);
+
+    MethodStats stats = metrics.stats("getNames");
+    assertEquals(2, stats.getCalls());
+    assertEquals(1, stats.getErrors());
+    assertEquals(2, stats.getRows());
+    assertEquals(1, metrics.stats("deleteName").getCalls());
+  }
+
+  public void testUnknownMethodIsRejectedBeforeTheCall() throws SQLException {
+    DaoMetrics metrics = DaoMetrics.forDao(SampleDAO.class);
+    boolean[] ran = new boolean[1];
+    try {
+      metrics.call(
+          "getNmes",
+          () -> {
+            ran[0] = true;
+            return null;
+          });
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("SampleDAO"));
+    }
+    assertFalse(ran[0]);
+  }
+}
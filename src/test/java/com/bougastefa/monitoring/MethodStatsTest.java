@@ -0,0 +1,72 @@
+package com.bougastefa.monitoring;
+
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/** Unit tests for the counters and latency percentiles of {@link MethodStats}. */
+public class MethodStatsTest extends TestCase {
+  private static final long MICROS = TimeUnit.MICROSECONDS.toNanos(1);
+
+  public void testEmptyStatsReportZero() {
+    MethodStats stats = new MethodStats();
+    assertEquals(0, stats.getCalls());
+    assertEquals(0.0, stats.getMeanMillis(), 0);
+    assertEquals(0.0, stats.getP50Millis(), 0);
+    assertEquals(0.0, stats.getMaxMillis(), 0);
+  }
+
+  public void testCountersAddUp() {
+    MethodStats stats = new MethodStats();
+    stats.record(2 * MICROS, 10, false);
+    stats.record(4 * MICROS, 0, true);
+    assertEquals(2, stats.getCalls());
+    assertEquals(1, stats.getErrors());
+    assertEquals(10, stats.getRows());
+    assertEquals(0.003, stats.getMeanMillis(), 1e-9);
+    assertEquals(0.004, stats.getMaxMillis(), 1e-9);
+  }
+
+  public void testPercentilesAreWithinAQuarterOfTheirValue() {
+    MethodStats stats = new MethodStats();
+    // 1 to 1000 microseconds, once each
+    for (int i = 1; i <= 1000; i++) {
+      stats.record(i * MICROS, 1, false);
+    }
+    assertBetween(0.500, 0.500 * 1.25, stats.getP50Millis());
+    assertBetween(0.950, 0.950 * 1.25, stats.getP95Millis());
+    assertBetween(0.990, 1.000, stats.getP99Millis());
+    assertEquals(1.0, stats.getMaxMillis(), 1e-9);
+  }
+
+  public void testPercentileNeverExceedsTheMaximum() {
+    MethodStats stats = new MethodStats();
+    stats.record(1025 * MICROS, 0, false);
+    assertEquals(stats.getMaxMillis(), stats.getP50Millis(), 1e-9);
+    assertEquals(stats.getMaxMillis(), stats.getP99Millis(), 1e-9);
+  }
+
+  public void testBucketsCoverTinyAndHugeLatencies() {
+    MethodStats stats = new MethodStats();
+    stats.record(0, 0, false);
+    stats.record(3, 0, false);
+    stats.record(Long.MAX_VALUE, 0, false);
+    assertEquals(3, stats.getCalls());
+    assertEquals(0.000003, stats.getP50Millis(), 1e-12);
+    assertEquals(Long.MAX_VALUE / 1e6, stats.getP99Millis(), 1);
+  }
+
+  public void testResetClearsEverything() {
+    MethodStats stats = new MethodStats();
+    stats.record(5 * MICROS, 3, true);
+    stats.reset();
+    assertEquals(0, stats.getCalls());
+    assertEquals(0, stats.getErrors());
+    assertEquals(0, stats.getRows());
+    assertEquals(0.0, stats.getP99Millis(), 0);
+    assertEquals(0.0, stats.getMaxMillis(), 0);
+  }
+
+  private static void assertBetween(double low, double high, double actual) {
+    assertTrue(actual + " is not between " + low + " and " + high, actual >= low && actual <= high);
+  }
+}
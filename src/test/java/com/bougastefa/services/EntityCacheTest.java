@@ -0,0 +1,100 @@
+package com.bougastefa.services;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/** Unit tests for the eviction and invalidation rules of {@link EntityCache}. */
+public class EntityCacheTest extends TestCase {
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private String load(String id) {
+    loads.incrementAndGet();
+    return "entity " + id;
+  }
+
+  public void testSecondLookupIsAHit() throws SQLException {
+    EntityCache<String> cache = new EntityCache<>("test", 10, 1, TimeUnit.HOURS);
+    assertEquals("entity D1", cache.get("D1", this::load));
+    assertEquals("entity D1", cache.get("D1", this::load));
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  public void testLeastRecentlyUsedIsEvicted() throws SQLException {
+    EntityCache<String> cache = new EntityCache<>("test", 2, 1, TimeUnit.HOURS);
+    cache.get("D1", this::load);
+    cache.get("D2", this::load);
+    // Using D1 again makes D2 the least recently used
+    cache.get("D1", this::load);
+    cache.get("D3", this::load);
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+
+    loads.set(0);
+    cache.get("D1", this::load);
+    assertEquals(0, loads.get());
+    cache.get("D2", this::load);
+    assertEquals(1, loads.get());
+  }
+
+  public void testExpiredEntryIsReloaded() throws SQLException {
+    EntityCache<String> cache = new EntityCache<>("test", 10, 0, TimeUnit.SECONDS);
+    cache.get("D1", this::load);
+    cache.get("D1", this::load);
+    assertEquals(2, loads.get());
+  }
+
+  public void testInvalidateForcesReload() throws SQLException {
+    EntityCache<String> cache = new EntityCache<>("test", 10, 1, TimeUnit.HOURS);
+    cache.get("D1", this::load);
+    cache.invalidate("D1");
+    cache.get("D1", this::load);
+    assertEquals(2, loads.get());
+  }
+
+  public void testLoadOverlappingAnInvalidationIsNotStored() throws SQLException {
+    EntityCache<String> cache = new EntityCache<>("test", 10, 1, TimeUnit.HOURS);
+    // The entity is written while its old row is being read
+    String value =
+        cache.get(
+            "D1",
+            id -> {
+              cache.invalidate(id);
+              return "stale " + id;
+            });
+    assertEquals("stale D1", value);
+    assertEquals(0, cache.size());
+    assertEquals("entity D1", cache.get("D1", this::load));
+  }
+
+  public void testMissingAndFailedLoadsAreNotCached() {
+    EntityCache<String> cache = new EntityCache<>("test", 10, 1, TimeUnit.HOURS);
+    try {
+      assertNull(cache.get("D1", id -> null));
+    } catch (SQLException e) {
+      fail(e.getMessage());
+    }
+    try {
+      cache.get(
+          "D2",
+          id -> {
+            throw new SQLException("connection lost");
+          });
+      fail("Expected SQLException");
+    } catch (SQLException expected) {
+      // expected
+    }
+    assertEquals(0, cache.size());
+  }
+
+  public void testSizeZeroDisablesTheCache() throws SQLException {
+    EntityCache<String> cache = new EntityCache<>("test", 0, 1, TimeUnit.HOURS);
+    cache.get("D1", this::load);
+    cache.get("D1", this::load);
+    assertEquals(2, loads.get());
+    assertEquals(0, cache.size());
+  }
+}
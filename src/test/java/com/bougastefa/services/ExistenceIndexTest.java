@@ -0,0 +1,104 @@
+package com.bougastefa.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/** Unit tests for the lookups of {@link ExistenceIndex}, with the table read from a list. */
+public class ExistenceIndexTest extends TestCase {
+  private static final int ROWS = 10000;
+
+  private final List<String> ids = new ArrayList<>();
+
+  @Override
+  protected void setUp() {
+    for (int i = 0; i < ROWS; i++) {
+      ids.add("P" + i);
+    }
+  }
+
+  private ExistenceIndex build(boolean tracked) throws InterruptedException {
+    ExistenceIndex index =
+        new ExistenceIndex("test", ids::size, action -> ids.forEach(action), nanos -> tracked);
+    return awaitBuild(index);
+  }
+
+  private static ExistenceIndex awaitBuild(ExistenceIndex index) throws InterruptedException {
+    index.refreshInBackground();
+    for (int i = 0; i < 500 && !index.isReady(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue("The index was not built", index.isReady());
+    return index;
+  }
+
+  public void testNoFalseNegativesForTableIds() throws InterruptedException {
+    ExistenceIndex index = build(true);
+    for (String id : ids) {
+      assertTrue(id, index.mightContain(id));
+    }
+    assertEquals(ROWS, index.size());
+  }
+
+  public void testNoFalseNegativesForAddedIds() throws InterruptedException {
+    ExistenceIndex index = build(true);
+    for (int i = 0; i < ROWS; i++) {
+      index.add("N" + i);
+    }
+    for (int i = 0; i < ROWS; i++) {
+      assertTrue("N" + i, index.mightContain("N" + i));
+    }
+  }
+
+  public void testIdAddedWhileBuildingIsKept() throws InterruptedException {
+    ExistenceIndex[] holder = new ExistenceIndex[1];
+    holder[0] =
+        new ExistenceIndex(
+            "test",
+            ids::size,
+            action -> {
+              // Inserted after the read passed its position in the table
+              holder[0].add("LATE");
+              ids.forEach(action);
+            },
+            nanos -> true);
+    ExistenceIndex index = awaitBuild(holder[0]);
+    assertTrue(index.mightContain("LATE"));
+  }
+
+  public void testIdsCompareLikeTheCollation() throws InterruptedException {
+    ExistenceIndex index = build(true);
+    assertTrue(index.mightContain("p17"));
+    assertTrue(index.mightContain("P17   "));
+    // The collation may equate accented letters with others, so these are never reported missing
+    assertTrue(index.mightContain("P\u00e917"));
+  }
+
+  public void testMissingIdsAreSkipped() throws InterruptedException {
+    ExistenceIndex index = build(true);
+    int missing = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (!index.mightContain("X" + i)) {
+        missing++;
+      }
+    }
+    // The false positive rate is 1%, so nearly every absent ID is reported missing
+    assertTrue("Only " + missing + " of 1000 reported missing", missing > 950);
+    assertEquals(missing, index.getSkipped());
+  }
+
+  public void testNegativesAreNotTrustedWithoutChangeTracking() throws InterruptedException {
+    ExistenceIndex index = build(false);
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(index.mightContain("X" + i));
+    }
+    assertEquals(0, index.getSkipped());
+  }
+
+  public void testEveryIdMayExistBeforeTheFirstBuild() {
+    ExistenceIndex index =
+        new ExistenceIndex("test", ids::size, action -> ids.forEach(action), nanos -> true);
+    assertFalse(index.isReady());
+    assertTrue(index.mightContain("X1"));
+  }
+}
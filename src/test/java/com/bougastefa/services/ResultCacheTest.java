@@ -0,0 +1,114 @@
+package com.bougastefa.services;
+
+import com.bougastefa.database.FilterCriteria;
+import com.bougastefa.database.SortSpec;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/** Unit tests for the eviction and invalidation rules of {@link ResultCache}. */
+public class ResultCacheTest extends TestCase {
+  private static final Set<String> PATIENT = Set.of("Patient");
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private ResultCache.Loader<String> rows(int count) {
+    return () -> {
+      loads.incrementAndGet();
+      return Collections.nCopies(count, "row");
+    };
+  }
+
+  private static List<Object> key(String name) {
+    return List.of("Patient", FilterCriteria.none().contains("surname", name), SortSpec.none());
+  }
+
+  public void testEqualCriteriaShareAResult() throws SQLException {
+    ResultCache cache = new ResultCache("test", 100, 1, TimeUnit.HOURS);
+    cache.get(key("Smith"), PATIENT, rows(3));
+    List<String> again = cache.get(key("SMITH"), PATIENT, rows(3));
+    assertEquals(3, again.size());
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getHits());
+  }
+
+  public void testLeastRecentlyUsedIsEvictedToFitTheRows() throws SQLException {
+    ResultCache cache = new ResultCache("test", 10, 1, TimeUnit.HOURS);
+    cache.get(key("a"), PATIENT, rows(4));
+    cache.get(key("b"), PATIENT, rows(4));
+    // Using a again makes b the least recently used
+    cache.get(key("a"), PATIENT, rows(4));
+    cache.get(key("c"), PATIENT, rows(4));
+    assertEquals(2, cache.size());
+    assertEquals(8, cache.getRows());
+    assertEquals(1, cache.getEvictions());
+
+    loads.set(0);
+    cache.get(key("a"), PATIENT, rows(4));
+    assertEquals(0, loads.get());
+    cache.get(key("b"), PATIENT, rows(4));
+    assertEquals(1, loads.get());
+  }
+
+  public void testResultLargerThanTheCacheIsNotStored() throws SQLException {
+    ResultCache cache = new ResultCache("test", 10, 1, TimeUnit.HOURS);
+    cache.get(key("a"), PATIENT, rows(5));
+    assertEquals(11, cache.get(key("big"), PATIENT, rows(11)).size());
+    assertEquals(1, cache.size());
+    assertEquals(5, cache.getRows());
+    assertEquals(0, cache.getEvictions());
+  }
+
+  public void testInvalidateRemovesResultsReadingTheTable() throws SQLException {
+    ResultCache cache = new ResultCache("test", 100, 1, TimeUnit.HOURS);
+    cache.get(List.of("prescriptions"), Set.of("Prescription", "Doctor"), rows(2));
+    cache.get(List.of("patients"), PATIENT, rows(3));
+    cache.invalidate("Doctor");
+    assertEquals(1, cache.size());
+    assertEquals(3, cache.getRows());
+
+    loads.set(0);
+    cache.get(List.of("prescriptions"), Set.of("Prescription", "Doctor"), rows(2));
+    cache.get(List.of("patients"), PATIENT, rows(3));
+    assertEquals(1, loads.get());
+  }
+
+  public void testQueryOverlappingAnInvalidationIsNotStored() throws SQLException {
+    ResultCache cache = new ResultCache("test", 100, 1, TimeUnit.HOURS);
+    // The table is written while the query is reading it
+    List<String> result =
+        cache.get(
+            key("a"),
+            PATIENT,
+            () -> {
+              cache.invalidate("Patient");
+              return List.of("stale");
+            });
+    assertEquals(List.of("stale"), result);
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getRows());
+  }
+
+  public void testExpiredResultIsReloaded() throws SQLException {
+    ResultCache cache = new ResultCache("test", 100, 0, TimeUnit.SECONDS);
+    cache.get(key("a"), PATIENT, rows(1));
+    cache.get(key("a"), PATIENT, rows(1));
+    assertEquals(2, loads.get());
+    assertEquals(1, cache.getRows());
+  }
+
+  public void testCachedResultIsImmutable() throws SQLException {
+    ResultCache cache = new ResultCache("test", 100, 1, TimeUnit.HOURS);
+    List<String> result = cache.get(key("a"), PATIENT, rows(1));
+    try {
+      result.add("more");
+      fail("Expected UnsupportedOperationException");
+    } catch (UnsupportedOperationException expected) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1 @@
+CREATE TABLE Sample (id INT)
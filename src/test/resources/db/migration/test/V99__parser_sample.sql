@@ -0,0 +1,16 @@
+-- Sample script for SchemaMigratorTest; it is not listed in migrations.list.
+
+CREATE INDEX IF NOT EXISTS idx_sample ON Sample (name);
+
+-- @uses-index idx_sample: SELECT id FROM Sample WHERE name = 'x'
+INSERT INTO Sample (name)
+VALUES ('a;b');
+
+DELIMITER //
+CREATE TRIGGER trg_sample BEFORE INSERT ON Sample FOR EACH ROW
+BEGIN
+  SET NEW.name = TRIM(NEW.name);
+END//
+DELIMITER ;
+
+DROP TABLE IF EXISTS SampleCopy;